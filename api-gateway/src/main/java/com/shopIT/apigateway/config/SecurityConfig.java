@@ -1,5 +1,7 @@
 package com.shopit.apigateway.config;
 
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
@@ -13,10 +15,17 @@ import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.util.Optional;
+
 @Configuration
 @EnableWebFluxSecurity
 public class SecurityConfig {
 
+    // Header the services take the caller from for their own per-user rate limits, see authenticatedUserFilter
+    public static final String AUTHENTICATED_USER = "X-Authenticated-User";
+
     @Bean
     public SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity serverHttpSecurity) {
         serverHttpSecurity
@@ -25,6 +34,38 @@ public class SecurityConfig {
         return serverHttpSecurity.build();
     }
 
+    // Key of the gateway rate limiter (RequestRateLimiter filter in application.properties). Runs after the
+    // security filters, so for a request with a valid JWT the principal is its JwtAuthenticationToken whose name is
+    // the JWT subject. Requests without a JWT are limited by the client's IP address instead.
+    @Bean
+    public KeyResolver principalKeyResolver() {
+        return exchange -> exchange.getPrincipal()
+                .map(Principal::getName)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+                    return remoteAddress != null && remoteAddress.getAddress() != null
+                            ? remoteAddress.getAddress().getHostAddress()
+                            : "anonymous";
+                }));
+    }
+
+    // Relays the subject of the JWT validated above to the services in AUTHENTICATED_USER, so they don't have to
+    // validate the JWT again nor trust its unverified claims. The value sent by the client is always removed first,
+    // so it can't pick the bucket it's rate limited by. The services are only reached through this gateway.
+    @Bean
+    public GlobalFilter authenticatedUserFilter() {
+        return (exchange, chain) -> exchange.getPrincipal()
+                .map(Principal::getName)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(username -> chain.filter(exchange.mutate()
+                        .request(request -> request.headers(headers -> {
+                            headers.remove(AUTHENTICATED_USER);
+                            username.ifPresent(name -> headers.set(AUTHENTICATED_USER, name));
+                        }))
+                        .build()));
+    }
+
     public static class TokenRelayGatewayFilter implements WebFilter {
 
         @Override
@@ -0,0 +1,169 @@
+package com.shopit.apigateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.factory.RequestRateLimiterGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// The RequestRateLimiter filter as configured in application.properties, with the JWT subject key resolver of
+// SecurityConfig and an in-memory limiter instead of Redis. The filter chain after it stands for the load balanced
+// call to the service.
+class GatewayRateLimitTest {
+
+    private static final int LIMIT = 10;
+
+    private final KeyResolver keyResolver = new SecurityConfig().principalKeyResolver();
+
+    private final GatewayFilter rateLimitFilter;
+
+    private final AtomicInteger downstreamCalls = new AtomicInteger();
+
+    private final GatewayFilterChain downstream = exchange -> {
+        downstreamCalls.incrementAndGet();
+        return Mono.empty();
+    };
+
+    GatewayRateLimitTest() {
+        RequestRateLimiterGatewayFilterFactory factory =
+                new RequestRateLimiterGatewayFilterFactory(new InMemoryRateLimiter(LIMIT), keyResolver);
+        rateLimitFilter = factory.apply(factory.newConfig());
+    }
+
+    @Test
+    void requestsOverTheLimitDoNotReachTheService() {
+        int rejected = 0;
+        for (int i = 0; i < 100; i++) {
+            ServerWebExchange exchange = exchangeOf("alice");
+            rateLimitFilter.filter(exchange, downstream).block();
+            if (exchange.getResponse().getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                rejected++;
+            }
+        }
+
+        assertEquals(LIMIT, downstreamCalls.get());
+        assertEquals(100 - LIMIT, rejected);
+    }
+
+    @Test
+    void eachJwtSubjectHasItsOwnLimit() {
+        for (int i = 0; i < LIMIT; i++) {
+            rateLimitFilter.filter(exchangeOf("alice"), downstream).block();
+        }
+
+        ServerWebExchange exchange = exchangeOf("bob");
+        rateLimitFilter.filter(exchange, downstream).block();
+
+        assertEquals(LIMIT + 1, downstreamCalls.get());
+        assertEquals("9", exchange.getResponse().getHeaders().getFirst("X-RateLimit-Remaining"));
+    }
+
+    @Test
+    void keyResolverUsesJwtSubjectOrClientAddress() {
+        assertEquals("alice", keyResolver.resolve(exchangeOf("alice")).block());
+
+        MockServerWebExchange anonymous = MockServerWebExchange.from(MockServerHttpRequest
+                .get("/shopit/products/getAllProducts")
+                .remoteAddress(new InetSocketAddress("10.0.0.7", 50000)));
+        assertEquals("10.0.0.7", keyResolver.resolve(anonymous).block());
+    }
+
+    @Test
+    void servicesGetTheJwtSubjectNotTheClientHeader() {
+        GlobalFilter authenticatedUserFilter = new SecurityConfig().authenticatedUserFilter();
+        AtomicReference<List<String>> relayed = new AtomicReference<>();
+        GatewayFilterChain service = exchange -> {
+            relayed.set(exchange.getRequest().getHeaders().get(SecurityConfig.AUTHENTICATED_USER));
+            return Mono.empty();
+        };
+
+        ServerWebExchange authenticated = exchangeOf("alice");
+        authenticated = authenticated.mutate()
+                .request(request -> request.header(SecurityConfig.AUTHENTICATED_USER, "bob"))
+                .build();
+        authenticatedUserFilter.filter(authenticated, service).block();
+        assertEquals(List.of("alice"), relayed.get());
+
+        MockServerWebExchange anonymous = MockServerWebExchange.from(MockServerHttpRequest
+                .get("/shopit/products/getAllProducts")
+                .header(SecurityConfig.AUTHENTICATED_USER, "bob"));
+        authenticatedUserFilter.filter(anonymous, service).block();
+        assertNull(relayed.get());
+    }
+
+    private static ServerWebExchange exchangeOf(String subject) {
+        Jwt jwt = Jwt.withTokenValue("token")
+                .header("alg", "none")
+                .subject(subject)
+                .build();
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest
+                .get("/shopit/products/getAllProducts"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+                .id("product-service")
+                .uri("lb://product-service")
+                .predicate(ex -> true)
+                .build());
+        return exchange.mutate()
+                .principal(Mono.just(new JwtAuthenticationToken(jwt)))
+                .build();
+    }
+
+    // Stand-in for RedisRateLimiter: a bucket of a fixed no. of tokens per key, never refilled
+    private static class InMemoryRateLimiter implements RateLimiter<Object> {
+
+        private final long limit;
+
+        private final ConcurrentMap<String, AtomicLong> tokens = new ConcurrentHashMap<>();
+
+        InMemoryRateLimiter(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public Mono<Response> isAllowed(String routeId, String id) {
+            long remaining = tokens.computeIfAbsent(id, key -> new AtomicLong(limit)).decrementAndGet();
+            Map<String, String> headers = new HashMap<>();
+            headers.put("X-RateLimit-Remaining", String.valueOf(Math.max(remaining, 0)));
+            return Mono.just(new Response(remaining >= 0, headers));
+        }
+
+        @Override
+        public Map<String, Object> getConfig() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public Class<Object> getConfigClass() {
+            return Object.class;
+        }
+
+        @Override
+        public Object newConfig() {
+            return new Object();
+        }
+    }
+}
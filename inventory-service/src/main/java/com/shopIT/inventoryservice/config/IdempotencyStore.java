@@ -0,0 +1,21 @@
+package com.shopit.inventoryservice.config;
+
+import com.shopit.inventoryservice.dto.IdempotentResponse;
+
+import java.time.Duration;
+
+// Dedupe store of the Idempotency-Keys, see IdempotentRequests
+public interface IdempotencyStore {
+
+    // Stores the value with the time-to-live only if the key is not present (atomically). Returns the value already
+    // present, null when it was stored.
+    IdempotentResponse putIfAbsent(String key, IdempotentResponse value, Duration timeToLive);
+
+    // Stores the value only while the one present is still the given claim (same fingerprint and claim token,
+    // atomically), so a request whose claim expired and was taken by a retry can't overwrite the retry's entry.
+    // Returns whether it was stored.
+    boolean replace(String key, IdempotentResponse claim, IdempotentResponse value, Duration timeToLive);
+
+    // Removes the key only while its value is still the given claim, like replace. Returns whether it was removed.
+    boolean remove(String key, IdempotentResponse claim);
+}
@@ -0,0 +1,13 @@
+package com.shopit.inventoryservice.config;
+
+import com.shopit.inventoryservice.dto.InventoryChangeRow;
+
+import java.util.List;
+
+// Feed of inventory changes read by the other services (order-service keeps a replica of the quantities from it).
+// An event is the quantity and version of every skuCode changed by one write, right after its commit. The events of
+// a skuCode can be published out of the order of its commits, a reader keeps the one with the highest version.
+public interface InventoryChangeFeed {
+
+    void publish(List<InventoryChangeRow> changes);
+}
@@ -0,0 +1,227 @@
+package com.shopit.inventoryservice.config;
+
+import io.github.bucket4j.BlockingBucket;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BucketListener;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.EstimationProbe;
+import io.github.bucket4j.SchedulingBucket;
+import io.github.bucket4j.TokensInheritanceStrategy;
+import io.github.bucket4j.VerboseBucket;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bucket of this instance that leases a slice of tokens from the distributed (Redis) bucket and consumes them
+// locally, so only one request per lease goes to Redis instead of every request doing a remote compare-and-swap.
+// A token is only ever admitted here after it was consumed from the distributed bucket, so all instances together
+// never admit more than the distributed bucket allows.
+//
+// Accuracy bounds:
+// 1. Up to leaseSize tokens per instance can be held unused, so a user can be rejected by one instance while
+//    another still holds its tokens. Unused tokens are given back to the distributed bucket once the lease expires,
+//    by the next request or else by the sweep of RateLimitConfig that runs every leaseTimeToLive, so they are held
+//    at most 2 * leaseTimeToLive.
+// 2. Tokens leased just before a refill can be used after it, so in one refill interval an instance can admit at
+//    most leaseSize tokens more than the TPS, and only until leaseTimeToLive is over.
+public class LeasedBucket implements Bucket {
+
+    private final Bucket remoteBucket;
+
+    private final long leaseSize;
+
+    private final long leaseTimeToLiveNanos;
+
+    // Tokens leased and not consumed yet, decremented without locking on every request
+    private final AtomicLong localTokens = new AtomicLong();
+
+    // Only one thread at a time goes to Redis for a new lease, the others wait and use it
+    private final ReentrantLock leaseLock = new ReentrantLock();
+
+    private volatile long leaseExpiresAt = System.nanoTime();
+
+    // Set once this bucket is released, i.e. RateLimitConfig replaced or evicted it or the instance is stopping. A
+    // request that got it just before then consumes straight from the distributed bucket, so it can't lease tokens
+    // that nobody would give back.
+    private volatile boolean released;
+
+    public LeasedBucket(Bucket remoteBucket, long leaseSize, Duration leaseTimeToLive) {
+        this.remoteBucket = remoteBucket;
+        this.leaseSize = leaseSize;
+        this.leaseTimeToLiveNanos = leaseTimeToLive.toNanos();
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        if (released) {
+            return remoteBucket.tryConsume(numTokens);
+        }
+        if (System.nanoTime() - leaseExpiresAt < 0 && consumeLocally(numTokens)) {
+            return true;
+        }
+        return leaseAndConsume(numTokens);
+    }
+
+    @Override
+    public ConsumptionProbe tryConsumeAndReturnRemaining(long numTokens) {
+        if (tryConsume(numTokens)) {
+            return ConsumptionProbe.consumed(localTokens.get(), 0);
+        }
+        // Time until the distributed bucket refills is unknown here without another Redis call
+        return ConsumptionProbe.rejected(localTokens.get(), 0, 0);
+    }
+
+    // Tokens of this instance's lease, no Redis call
+    @Override
+    public long getAvailableTokens() {
+        return localTokens.get();
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible() {
+        return tryConsumeAsMuchAsPossible(Long.MAX_VALUE);
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible(long limit) {
+        long available;
+        do {
+            available = localTokens.get();
+        } while (available > 0 && !localTokens.compareAndSet(available, available - Math.min(available, limit)));
+        return Math.max(Math.min(available, limit), 0);
+    }
+
+    // Gives the unused tokens back to the distributed bucket and stops leasing, e.g. before this instance shuts down
+    public void release() {
+        released = true;
+        leaseLock.lock();
+        try {
+            returnLease();
+        } finally {
+            leaseLock.unlock();
+        }
+    }
+
+    // Gives the unused tokens back if the lease has expired, for a user who sent no request since. Skipped while a
+    // request holds the lock, as that one returns the expired lease itself before leasing again.
+    public void releaseIfExpired() {
+        if (!leaseLock.tryLock()) {
+            return;
+        }
+        try {
+            if (System.nanoTime() - leaseExpiresAt >= 0) {
+                returnLease();
+            }
+        } finally {
+            leaseLock.unlock();
+        }
+    }
+
+    private boolean consumeLocally(long numTokens) {
+        long available;
+        do {
+            available = localTokens.get();
+            if (available < numTokens) {
+                return false;
+            }
+        } while (!localTokens.compareAndSet(available, available - numTokens));
+        return true;
+    }
+
+    private boolean leaseAndConsume(long numTokens) {
+        leaseLock.lock();
+        try {
+            if (released) {
+                return remoteBucket.tryConsume(numTokens);
+            }
+            long now = System.nanoTime();
+            if (now - leaseExpiresAt >= 0) {
+                returnLease();
+                leaseExpiresAt = now + leaseTimeToLiveNanos;
+            }
+
+            // Other threads keep consuming the lease without the lock, so lease again until this request got its
+            // tokens or the distributed bucket has none left
+            while (!consumeLocally(numTokens)) {
+                long leased = remoteBucket.tryConsumeAsMuchAsPossible(
+                        Math.max(leaseSize, numTokens) - localTokens.get());
+                if (leased == 0) {
+                    return false;
+                }
+                localTokens.addAndGet(leased);
+            }
+            return true;
+        } finally {
+            leaseLock.unlock();
+        }
+    }
+
+    private void returnLease() {
+        long unused = localTokens.getAndSet(0);
+        if (unused > 0) {
+            remoteBucket.addTokens(unused);
+        }
+    }
+
+    // Operations below are not part of the request path and go straight to the distributed bucket
+
+    @Override
+    public BlockingBucket asBlocking() {
+        return remoteBucket.asBlocking();
+    }
+
+    @Override
+    public SchedulingBucket asScheduler() {
+        return remoteBucket.asScheduler();
+    }
+
+    @Override
+    public VerboseBucket asVerbose() {
+        return remoteBucket.asVerbose();
+    }
+
+    @Override
+    public long consumeIgnoringRateLimits(long tokens) {
+        return remoteBucket.consumeIgnoringRateLimits(tokens);
+    }
+
+    @Override
+    public EstimationProbe estimateAbilityToConsume(long numTokens) {
+        return remoteBucket.estimateAbilityToConsume(numTokens);
+    }
+
+    @Override
+    public void addTokens(long tokensToAdd) {
+        remoteBucket.addTokens(tokensToAdd);
+    }
+
+    @Override
+    public void forceAddTokens(long tokensToAdd) {
+        remoteBucket.forceAddTokens(tokensToAdd);
+    }
+
+    @Override
+    public void reset() {
+        leaseLock.lock();
+        try {
+            returnLease();
+        } finally {
+            leaseLock.unlock();
+        }
+        remoteBucket.reset();
+    }
+
+    @Override
+    public void replaceConfiguration(BucketConfiguration newConfiguration,
+                                     TokensInheritanceStrategy tokensInheritanceStrategy) {
+        remoteBucket.replaceConfiguration(newConfiguration, tokensInheritanceStrategy);
+    }
+
+    @Override
+    public Bucket toListenable(BucketListener listener) {
+        return new LeasedBucket(remoteBucket.toListenable(listener), leaseSize,
+                Duration.ofNanos(leaseTimeToLiveNanos));
+    }
+}
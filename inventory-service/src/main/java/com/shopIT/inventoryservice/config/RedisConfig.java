@@ -4,6 +4,7 @@ import com.giffing.bucket4j.spring.boot.starter.config.cache.SyncCacheResolver;
 import com.giffing.bucket4j.spring.boot.starter.config.cache.jcache.JCacheCacheResolver;
 import io.github.bucket4j.distributed.proxy.ProxyManager;
 import io.github.bucket4j.grid.jcache.JCacheProxyManager;
+import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
 import org.redisson.jcache.configuration.RedissonConfiguration;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,6 +14,7 @@ import org.springframework.context.annotation.Primary;
 
 import javax.cache.CacheManager;
 import javax.cache.Caching;
+import java.time.Duration;
 
 @Configuration
 public class RedisConfig {
@@ -39,6 +41,15 @@ public class RedisConfig {
         return new JCacheProxyManager<>(cacheManager.getCache("cache"));
     }
 
+    @Bean
+    public InventoryChangeFeed inventoryChangeFeed(RedissonClient redissonClient,
+                                                   @Value("${inventory.change-feed.stream}") String streamName,
+                                                   @Value("${inventory.change-feed.max-length}") int maxLength,
+                                                   @Value("${inventory.change-feed.publish-timeout}")
+                                                   Duration publishTimeout) {
+        return new RedisInventoryChangeFeed(redissonClient, streamName, maxLength, publishTimeout);
+    }
+
     @Bean
     @Primary
     public SyncCacheResolver bucket4jCacheResolver(CacheManager cacheManager) {
@@ -0,0 +1,80 @@
+package com.shopit.inventoryservice.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shopit.inventoryservice.dto.IdempotentResponse;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.TypedJsonJacksonCodec;
+
+import java.time.Duration;
+import java.util.List;
+
+// IdempotencyStore in Redis, shared by all the instances so a retry landing on another instance is deduped too. One
+// round trip per call, putIfAbsent is a SET NX with the expiry, replace and remove a Lua script comparing the claim
+// with the value present and writing it in the same step.
+public class RedisIdempotencyStore implements IdempotencyStore {
+
+    private static final String IS_CLAIMED = "local present = redis.call('get', KEYS[1]) "
+            + "if not present then return 0 end "
+            + "local value = cjson.decode(present) "
+            + "if value.fingerprint ~= ARGV[1] or value.claimToken ~= ARGV[2] then return 0 end ";
+
+    // ARGV: fingerprint, claim token, new value, time-to-live in millis
+    private static final String REPLACE_IF_CLAIMED = IS_CLAIMED
+            + "redis.call('set', KEYS[1], ARGV[3], 'px', ARGV[4]) return 1";
+
+    // ARGV: fingerprint, claim token
+    private static final String REMOVE_IF_CLAIMED = IS_CLAIMED
+            + "redis.call('del', KEYS[1]) return 1";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final RedissonClient redissonClient;
+
+    private final TypedJsonJacksonCodec codec = new TypedJsonJacksonCodec(IdempotentResponse.class);
+
+    public RedisIdempotencyStore(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    @Override
+    public IdempotentResponse putIfAbsent(final String key, final IdempotentResponse value,
+                                          final Duration timeToLive) {
+        final RBucket<IdempotentResponse> bucket = redissonClient.getBucket(key, codec);
+        if (bucket.setIfAbsent(value, timeToLive)) {
+            return null;
+        }
+        final IdempotentResponse present = bucket.get();
+        // Expired in between, try once more
+        if (present == null && bucket.setIfAbsent(value, timeToLive)) {
+            return null;
+        }
+        return present;
+    }
+
+    @Override
+    public boolean replace(final String key, final IdempotentResponse claim, final IdempotentResponse value,
+                           final Duration timeToLive) {
+        return redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, REPLACE_IF_CLAIMED,
+                RScript.ReturnType.BOOLEAN, List.of(key), claim.getFingerprint(), claim.getClaimToken(),
+                toJson(value), String.valueOf(timeToLive.toMillis()));
+    }
+
+    @Override
+    public boolean remove(final String key, final IdempotentResponse claim) {
+        return redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, REMOVE_IF_CLAIMED,
+                RScript.ReturnType.BOOLEAN, List.of(key), claim.getFingerprint(), claim.getClaimToken());
+    }
+
+    // Same JSON as the codec writes, so the entry is read back by get like the others
+    private static String toJson(final IdempotentResponse value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
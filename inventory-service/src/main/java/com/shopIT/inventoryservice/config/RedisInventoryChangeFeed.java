@@ -0,0 +1,49 @@
+package com.shopit.inventoryservice.config;
+
+import com.shopit.inventoryservice.dto.InventoryChangeRow;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.client.codec.StringCodec;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// InventoryChangeFeed on a Redis Stream, one entry (XADD) per event with a skuCode -> "<quantity>:<version>" field per
+// skuCode. Plain strings so that any Redis client can read it. The stream keeps about the last maxLength entries
+// (trimmed non-strictly, which costs Redis less), a reader starting from the beginning replays those.
+public class RedisInventoryChangeFeed implements InventoryChangeFeed {
+
+    private final RStream<String, String> stream;
+
+    private final int maxLength;
+
+    private final Duration publishTimeout;
+
+    public RedisInventoryChangeFeed(RedissonClient redissonClient, String streamName, int maxLength,
+                                    Duration publishTimeout) {
+        this.stream = redissonClient.getStream(streamName, StringCodec.INSTANCE);
+        this.maxLength = maxLength;
+        this.publishTimeout = publishTimeout;
+    }
+
+    // Waits for Redis to add the entry, at most publishTimeout, so a slow Redis can't hold the caller for long
+    @Override
+    public void publish(final List<InventoryChangeRow> changes) {
+        final Map<String, String> entries = new LinkedHashMap<>();
+        changes.forEach(change -> entries.put(change.getSkuCode(), change.getQuantity() + ":" + change.getVersion()));
+        try {
+            stream.addAsync(StreamAddArgs.entries(entries).trimNonStrict().maxLen(maxLength).noLimit())
+                    .toCompletableFuture()
+                    .get(publishTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
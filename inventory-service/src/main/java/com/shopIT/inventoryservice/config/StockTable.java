@@ -0,0 +1,108 @@
+package com.shopit.inventoryservice.config;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// In-memory skuCode -> (id, quantity) table. Every skuCode gets a slot once and keeps it, the quantities are plain
+// ints in fixed size segments (no Integer or entity per skuCode), so a lookup is one hash lookup of the skuCode plus
+// an array read, and adding to a quantity is an atomic add on its slot without any lock.
+//
+// Only a new skuCode takes the lock, to append its slot. The slot is published in the map after its id and quantity
+// are written, so a reader that finds the slot always finds its values too. A skuCode put again gets the id and
+// quantity of the row read from the DB (the row can have been deleted and inserted again with a new id).
+public class StockTable {
+
+    // Returned by quantity() for a skuCode not in the table
+    public static final int MISSING = -1;
+
+    private static final int SEGMENT_BITS = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final ConcurrentHashMap<String, Integer> slots;
+
+    private final ReentrantLock appendLock = new ReentrantLock(); // Not synchronized, it can block a virtual thread
+
+    private volatile AtomicIntegerArray[] quantitySegments = new AtomicIntegerArray[0];
+
+    private volatile AtomicIntegerArray[] idSegments = new AtomicIntegerArray[0];
+
+    private int size; // Guarded by appendLock
+
+    public StockTable(int expectedSize) {
+        this.slots = new ConcurrentHashMap<>(expectedSize);
+    }
+
+    public int quantity(final String skuCode) {
+        final Integer slot = slots.get(skuCode);
+        return slot == null ? MISSING : quantitySegments[slot >>> SEGMENT_BITS].get(slot & SEGMENT_MASK);
+    }
+
+    // id of the inventory row of the skuCode, MISSING if it's not in the table
+    public int id(final String skuCode) {
+        final Integer slot = slots.get(skuCode);
+        return slot == null ? MISSING : idSegments[slot >>> SEGMENT_BITS].get(slot & SEGMENT_MASK);
+    }
+
+    // Sets the id and quantity as read from the DB, adding the skuCode if it's not in the table yet
+    public void put(final int id, final String skuCode, final int quantity) {
+        final Integer slot = slots.get(skuCode);
+        if (slot != null) {
+            set(slot, id, quantity);
+            return;
+        }
+
+        appendLock.lock();
+        try {
+            final Integer existingSlot = slots.get(skuCode);
+            if (existingSlot != null) {
+                set(existingSlot, id, quantity);
+                return;
+            }
+            final int newSlot = size;
+            if ((newSlot >>> SEGMENT_BITS) == quantitySegments.length) {
+                addSegment();
+            }
+            set(newSlot, id, quantity);
+            // Interned, so the table and the rest of the service share one String per skuCode
+            slots.put(skuCode.intern(), newSlot);
+            size++;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Adds delta (negative to deduct) to the quantity of the skuCode. false when it's not in the table.
+    public boolean add(final String skuCode, final int delta) {
+        final Integer slot = slots.get(skuCode);
+        if (slot == null) {
+            return false;
+        }
+        quantitySegments[slot >>> SEGMENT_BITS].addAndGet(slot & SEGMENT_MASK, delta);
+        return true;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    private void set(final int slot, final int id, final int quantity) {
+        idSegments[slot >>> SEGMENT_BITS].set(slot & SEGMENT_MASK, id);
+        quantitySegments[slot >>> SEGMENT_BITS].set(slot & SEGMENT_MASK, quantity);
+    }
+
+    // Segments are never moved or resized, only the arrays pointing to them are copied, so readers of the old
+    // arrays keep reading the same (live) segments.
+    private void addSegment() {
+        final int segments = quantitySegments.length;
+        final AtomicIntegerArray[] newQuantitySegments = new AtomicIntegerArray[segments + 1];
+        final AtomicIntegerArray[] newIdSegments = new AtomicIntegerArray[segments + 1];
+        System.arraycopy(quantitySegments, 0, newQuantitySegments, 0, segments);
+        System.arraycopy(idSegments, 0, newIdSegments, 0, segments);
+        newQuantitySegments[segments] = new AtomicIntegerArray(SEGMENT_SIZE);
+        newIdSegments[segments] = new AtomicIntegerArray(SEGMENT_SIZE);
+        idSegments = newIdSegments;
+        quantitySegments = newQuantitySegments;
+    }
+}
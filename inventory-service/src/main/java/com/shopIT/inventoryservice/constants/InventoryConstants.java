@@ -4,6 +4,47 @@ public class InventoryConstants {
     public static final String API_CHECK = "%s Token available, API call to %s !";
     public static final String ADDED_IN_INVENTORY = "Added in inventory with ID ";
     public static final String RATE_LIMIT_EXCEEDED = "Rate Limit Exceeded !!";
+    public static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    public static final String AUTHENTICATED_USER = "X-Authenticated-User";
     public static final String EMPTY_INVENTORY = "No inventory exists which contains this product, so creating new one !";
     public static final String INVENTORY_NOT_SAVED = "Error while saving/finalizing the Inventory !!";
+    public static final String RESERVED_STOCK = "Reserved stock with reservation ID: ";
+    public static final String CONFIRMED_RESERVATION = "Confirmed reservation with ID: ";
+    public static final String RELEASED_RESERVATION = "Released reservation with ID: ";
+    public static final String PRODUCT_NOT_IN_STOCK = "Product(s) is out of stock !!";
+    public static final String RESERVATION_404 = "Reservation with this ID not present or already finalized !!";
+    public static final String INVALID_RESERVATION = "Reservation must contain skuCode(s) with quantity more than 0 !!";
+    public static final String RESERVED = "RESERVED";
+    public static final String RESERVATION_REPEATED = "Reservation already made, returned as it is: ";
+    public static final String RESERVATION_EXPIRED = "Reservation with this ID expired and its stock was released: ";
+    public static final String RESERVATIONS_EXPIRED = "Released %d expired reservation(s)";
+    public static final String RESERVATIONS_NOT_EXPIRED = "Error while releasing the expired reservations !!";
+    public static final String OUT_OF_STOCK = "OUT_OF_STOCK";
+    public static final String INVALID = "INVALID";
+    public static final String RESERVED_BATCH = "Reserved stock for %d of %d orders in the batch";
+    public static final String CONFIRMED_RESERVATIONS = "Confirmed %d of %d reservations in the batch";
+    public static final String RELEASED_RESERVATIONS = "Released %d of %d reservations in the batch";
+    public static final String BATCH_RESERVATION_REPEATED = "Batch reserved meanwhile by another attempt, reserving it again";
+    public static final String UPSERTED_IN_INVENTORY = "Added in inventory the quantity of %d skuCode(s)";
+    public static final String INVALID_INVENTORY = "Inventory must contain skuCode(s) with quantity more than 0 !!";
+    public static final String TOO_MANY_SKU_CODES = "At most %d skuCodes can be added at a time !!";
+    public static final String LEASED_RATE_LIMIT = "leased";
+    public static final String LEASES_NOT_RETURNED = "Error while returning the expired rate limit leases !!";
+    public static final String CHANGE_NOT_PUBLISHED = "Error while publishing the inventory change of skuCodes: ";
+    public static final String CHANGES_NOT_RESYNCED = "Error while publishing the quantities of all the skuCodes !!";
+    public static final String CHANGE_RESYNC_LOCK = "inventoryChangeResyncLock";
+    public static final String WRITE_THROUGH_STOCK_TABLE = "write-through";
+    public static final String STOCK_TABLE_LOADED = "Stock table loaded from DB, no. of skuCodes: ";
+    public static final String STOCK_TABLE_NOT_LOADED = "Error while reconciling the stock table with the DB !!";
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String ADD_IN_INVENTORY = "addInInventory";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    public static final String IDEMPOTENCY_KEY_PREFIX = "idempotency:";
+    public static final String IN_MEMORY_IDEMPOTENCY_STORE = "in-memory";
+    public static final String IDEMPOTENCY_KEY_IN_USE = "Request with this Idempotency-Key still in progress, retry later: ";
+    public static final String IDEMPOTENCY_KEY_REUSED = "Idempotency-Key already used for another request: ";
+    public static final String IDEMPOTENCY_STORE_NOT_REACHABLE = "Error while claiming the Idempotency-Key, no dedupe for: ";
+    public static final String IDEMPOTENT_RESPONSE_NOT_SAVED = "Error while saving the response of the idempotent request: ";
+    public static final String IDEMPOTENCY_CLAIM_LOST = "Idempotency-Key no longer held by this request (its claim expired), left as it is: ";
+    public static final String VIRTUAL_THREAD_PINNED = "Virtual thread pinned to its carrier for %s ms at: %s";
 }
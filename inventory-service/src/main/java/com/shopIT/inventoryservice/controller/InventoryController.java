@@ -1,14 +1,17 @@
 package com.shopit.inventoryservice.controller;
 
-import com.shopit.inventoryservice.config.RateLimitConfig;
 import com.shopit.inventoryservice.constants.InventoryConstants;
+import com.shopit.inventoryservice.dto.InventoryBatchReservationDtoRequest;
 import com.shopit.inventoryservice.dto.InventoryDtoRequest;
 import com.shopit.inventoryservice.dto.InventoryDtoResponse;
-import com.shopit.inventoryservice.exception.RateLimitExceededException;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoRequest;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoResponse;
+import com.shopit.inventoryservice.exception.InvalidInventoryException;
+import com.shopit.inventoryservice.service.IdempotentRequests;
 import com.shopit.inventoryservice.service.InventoryService;
-import io.github.bucket4j.Bucket;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -21,44 +24,111 @@ import java.util.List;
 public class InventoryController {
 
     private final InventoryService inventoryService;
-    private final RateLimitConfig rateLimitConfig;
 
-    public InventoryController(InventoryService inventoryService, RateLimitConfig rateLimitConfig) {
+    private final IdempotentRequests idempotentRequests;
+
+    public InventoryController(InventoryService inventoryService, IdempotentRequests idempotentRequests) {
         this.inventoryService = inventoryService;
-        this.rateLimitConfig = rateLimitConfig;
+        this.idempotentRequests = idempotentRequests;
     }
 
-    @Value("${api.username}")
-    private String username;
+    @Value("${inventory.bulk-upsert.max-size}")
+    private int maxUpsertSize;
 
     // Using @RequestParam for multiple inputs
     @GetMapping("/quantity")
     public ResponseEntity<List<InventoryDtoResponse>> quantityInStock(@RequestParam List<String> skuCode) {
-        Bucket bucket = rateLimitConfig.resolveBucket(username); // Getting the bucket
-
-        if (bucket.tryConsume(1)) {
-            log.info(String.format(InventoryConstants.API_CHECK, bucket.getAvailableTokens() + 1,
-                    "quantityInStock allowed"));
-            final List<InventoryDtoResponse> inventoryDtoResponseList = inventoryService.quantityInStock(skuCode);
-            return ResponseEntity.status(HttpStatus.OK).body(inventoryDtoResponseList);
-        } else {
-            log.info(String.format(InventoryConstants.API_CHECK, "0", "quantityInStock rejected"));
-            throw new RateLimitExceededException(InventoryConstants.RATE_LIMIT_EXCEEDED);
-        }
+        final List<InventoryDtoResponse> inventoryDtoResponseList = inventoryService.quantityInStock(skuCode);
+        return ResponseEntity.status(HttpStatus.OK).body(inventoryDtoResponseList);
     }
 
+    // With an Idempotency-Key the quantity is added once, a retry with the same key and body gets the first response
+    // (header Idempotent-Replayed: true) instead of adding it again, see IdempotentRequests.
     @PostMapping("/addInInventory")
-    public ResponseEntity<String> addInInventory(@RequestBody InventoryDtoRequest inventoryDtoRequest) {
-        Bucket bucket = rateLimitConfig.resolveBucket(username); // Getting the bucket
-
-        if (bucket.tryConsume(1)) {
-            log.info(String.format(InventoryConstants.API_CHECK, bucket.getAvailableTokens() + 1,
-                    "addInInventory allowed"));
-            final Integer id = inventoryService.addInInventory(inventoryDtoRequest);
-            return ResponseEntity.status(HttpStatus.OK).body(InventoryConstants.ADDED_IN_INVENTORY + id);
-        } else {
-            log.info(String.format(InventoryConstants.API_CHECK, "0", "addInInventory rejected"));
-            throw new RateLimitExceededException(InventoryConstants.RATE_LIMIT_EXCEEDED);
+    public ResponseEntity<String> addInInventory(
+            @RequestHeader(value = InventoryConstants.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @RequestBody InventoryDtoRequest inventoryDtoRequest) {
+        return idempotentRequests.execute(InventoryConstants.ADD_IN_INVENTORY, idempotencyKey, inventoryDtoRequest,
+                () -> {
+                    final Integer id = inventoryService.addInInventory(inventoryDtoRequest);
+                    return ResponseEntity.status(HttpStatus.OK).body(InventoryConstants.ADDED_IN_INVENTORY + id);
+                });
+    }
+
+    // Adds the quantity of many skuCodes (thousands at a time) in one call, see InventoryService.bulkUpsert
+    @PostMapping("/bulkUpsert")
+    public ResponseEntity<String> bulkUpsert(@RequestBody List<InventoryDtoRequest> inventoryDtoRequestList) {
+        if (inventoryDtoRequestList.size() > maxUpsertSize) {
+            throw new InvalidInventoryException(String.format(InventoryConstants.TOO_MANY_SKU_CODES, maxUpsertSize));
+        }
+        final int skuCodes = inventoryService.bulkUpsert(inventoryDtoRequestList);
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(String.format(InventoryConstants.UPSERTED_IN_INVENTORY, skuCodes));
+    }
+
+    // Atomically reserves the stock of all the products of an order, used by order service while placing the order.
+    @PostMapping("/reserve")
+    public ResponseEntity<InventoryReservationDtoResponse> reserve(
+            @RequestBody InventoryReservationDtoRequest inventoryReservationDtoRequest) {
+        String reservationId;
+        try {
+            reservationId = inventoryService.reserve(inventoryReservationDtoRequest);
+        }
+        catch (DataIntegrityViolationException ex) {
+            // Another attempt of the same reservation (a retry or hedge of order service) reserved it first
+            if (!inventoryService.isReserved(inventoryReservationDtoRequest.getReservationId())) {
+                throw ex;
+            }
+            reservationId = inventoryReservationDtoRequest.getReservationId();
+            log.info(InventoryConstants.RESERVATION_REPEATED + reservationId);
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(InventoryReservationDtoResponse.builder()
+                .reservationId(reservationId)
+                .status(InventoryConstants.RESERVED)
+                .build());
+    }
+
+    // Reserves the stock of a batch of orders in one call, used by order service for bulk placement. Every order is
+    // reserved all-or-nothing on its own, the result of each (in the order of the requests) tells whether it was.
+    @PostMapping("/reserveBatch")
+    public ResponseEntity<List<InventoryReservationDtoResponse>> reserveBatch(
+            @RequestBody InventoryBatchReservationDtoRequest inventoryBatchReservationDtoRequest) {
+        List<InventoryReservationDtoResponse> inventoryReservationDtoResponseList;
+        try {
+            inventoryReservationDtoResponseList = inventoryService.reserveBatch(inventoryBatchReservationDtoRequest);
+        }
+        catch (DataIntegrityViolationException ex) {
+            // Another attempt of the same batch (a retry or hedge of order service) reserved some of its orders first
+            // and this one was rolled back. Sent again, those orders get the reservations already made.
+            log.info(InventoryConstants.BATCH_RESERVATION_REPEATED);
+            inventoryReservationDtoResponseList = inventoryService.reserveBatch(inventoryBatchReservationDtoRequest);
         }
+        return ResponseEntity.status(HttpStatus.OK).body(inventoryReservationDtoResponseList);
+    }
+
+    // Confirms the reservations of a batch of placed orders in one call, used by order service for bulk placement.
+    // Answers the reservationIds that couldn't be confirmed (not present or released already), the others are.
+    @PostMapping("/reserve/confirmBatch")
+    public ResponseEntity<List<String>> confirmReservations(@RequestBody List<String> reservationIds) {
+        return ResponseEntity.status(HttpStatus.OK).body(inventoryService.confirmReservations(reservationIds));
+    }
+
+    // Releases the reservations of a batch of orders that could not be placed in one call. Answers the reservationIds
+    // that weren't released by it (not present, confirmed or released already).
+    @PostMapping("/reserve/releaseBatch")
+    public ResponseEntity<List<String>> releaseReservations(@RequestBody List<String> reservationIds) {
+        return ResponseEntity.status(HttpStatus.OK).body(inventoryService.releaseReservations(reservationIds));
+    }
+
+    @PostMapping("/reserve/{reservationId}/confirm")
+    public ResponseEntity<String> confirmReservation(@PathVariable String reservationId) {
+        inventoryService.confirmReservation(reservationId);
+        return ResponseEntity.status(HttpStatus.OK).body(InventoryConstants.CONFIRMED_RESERVATION + reservationId);
+    }
+
+    @PostMapping("/reserve/{reservationId}/release")
+    public ResponseEntity<String> releaseReservation(@PathVariable String reservationId) {
+        inventoryService.releaseReservation(reservationId);
+        return ResponseEntity.status(HttpStatus.OK).body(InventoryConstants.RELEASED_RESERVATION + reservationId);
     }
 }
\ No newline at end of file
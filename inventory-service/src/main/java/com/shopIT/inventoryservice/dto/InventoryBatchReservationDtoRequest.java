@@ -0,0 +1,18 @@
+package com.shopit.inventoryservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class InventoryBatchReservationDtoRequest {
+    // One reservation per order, each of them reserved all-or-nothing independently of the others
+    private List<InventoryReservationDtoRequest> reservationDtoRequestList;
+}
@@ -0,0 +1,17 @@
+package com.shopit.inventoryservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One row of InventoryRepository.findQuantities: the quantity of a skuCode and the version of the row it was read
+// from, as published to the InventoryChangeFeed.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryChangeRow {
+
+    private String skuCode;
+    private Integer quantity;
+    private long version;
+}
@@ -0,0 +1,22 @@
+package com.shopit.inventoryservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class InventoryReservationDtoRequest {
+    // Optional, given by the caller to make the reservation idempotent: a retry (or hedge) of the same call sends the
+    // same reservationId and gets the reservation made by the first one, the stock is deducted once
+    private String reservationId;
+
+    // All the products (skuCode with quantity) of a single order, reserved together or not at all
+    private List<InventoryDtoRequest> inventoryDtoRequestList;
+}
@@ -4,6 +4,8 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -16,6 +18,9 @@ import lombok.NoArgsConstructor;
 @Builder // To implement Builder Design
 @Entity // This is used to map this class to relational DB table. @Document is used for
         // non-relational DB like mongoDB
+// One row per skuCode, enforced by the DB. Without the unique index two concurrent adds of a new skuCode could
+// both find no row and insert one each, and bulkUpsert relies on it to hit the existing row (ON DUPLICATE KEY).
+@Table(indexes = @Index(name = "uk_inventory_sku_code", columnList = "skuCode", unique = true))
 public class InventoryEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -24,4 +29,8 @@ public class InventoryEntity {
     private String skuCode;
 
     private Integer quantity;
+
+    // Incremented by every statement changing the quantity, under the row lock, so it orders the changes of the
+    // skuCode like its commits. Published with the quantity, see InventoryChangePublisher.
+    private long version;
 }
\ No newline at end of file
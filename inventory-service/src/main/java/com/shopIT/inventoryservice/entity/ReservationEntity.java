@@ -0,0 +1,56 @@
+package com.shopit.inventoryservice.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+@Entity // This is used to map this class to relational DB table. @Document is used for
+        // non-relational DB like mongoDB
+public class ReservationEntity implements Persistable<String> {
+    @Id
+    private String reservationId;
+
+    @Enumerated(EnumType.STRING)
+    private ReservationStatus status;
+
+    // Quantity deducted for each skuCode, needed to give the stock back when the reservation is released
+    @ElementCollection(fetch = FetchType.EAGER)
+    private Map<String, Integer> skuQuantities;
+
+    // A reservation still RESERVED long after this is released by the ReservationExpirer. null for the reservations
+    // made before it was added, they never expire.
+    private Instant createdAt;
+
+    // A new reservation is always inserted (never merged), so a reservationId that is already present fails on its
+    // primary key instead of overwriting that reservation, see InventoryService.reserve
+    @Transient
+    @Builder.Default
+    private boolean persisted = false;
+
+    @Override
+    public String getId() {
+        return reservationId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+}
@@ -0,0 +1,7 @@
+package com.shopit.inventoryservice.entity;
+
+public enum ReservationStatus {
+    RESERVED,   // Stock is already deducted from the inventory but the order is not finalized yet
+    CONFIRMED,  // Order is placed, stock stays deducted
+    RELEASED    // Order failed/cancelled, stock is given back to the inventory
+}
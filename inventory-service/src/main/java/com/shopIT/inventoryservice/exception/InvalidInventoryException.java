@@ -0,0 +1,7 @@
+package com.shopit.inventoryservice.exception;
+
+public class InvalidInventoryException extends RuntimeException{
+    public InvalidInventoryException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.shopit.inventoryservice.exception;
+
+public class InvalidReservationException extends RuntimeException{
+    public InvalidReservationException(String message){
+        super(message);
+    }
+}
@@ -1,5 +1,7 @@
 package com.shopit.inventoryservice.exception;
 
+import com.shopit.inventoryservice.constants.InventoryConstants;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -15,6 +17,41 @@ public class InventoryControllerAdvice {
 
     @ExceptionHandler(RateLimitExceededException.class)
     public ResponseEntity<String> exception(RateLimitExceededException ex){
-        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .header(InventoryConstants.RATE_LIMIT_REMAINING, String.valueOf(ex.getRemainingTokens()))
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(ProductNotInStockException.class)
+    public ResponseEntity<String> exception(ProductNotInStockException ex){
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(ReservationNotFoundException.class)
+    public ResponseEntity<String> exception(ReservationNotFoundException ex){
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidReservationException.class)
+    public ResponseEntity<String> exception(InvalidReservationException ex){
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidInventoryException.class)
+    public ResponseEntity<String> exception(InvalidInventoryException ex){
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyKeyInUseException.class)
+    public ResponseEntity<String> exception(IdempotencyKeyInUseException ex){
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<String> exception(IdempotencyKeyReusedException ex){
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ex.getMessage());
     }
 }
\ No newline at end of file
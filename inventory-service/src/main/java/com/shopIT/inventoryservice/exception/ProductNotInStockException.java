@@ -0,0 +1,7 @@
+package com.shopit.inventoryservice.exception;
+
+public class ProductNotInStockException extends RuntimeException{
+    public ProductNotInStockException(String message){
+        super(message);
+    }
+}
@@ -1,14 +1,55 @@
 package com.shopit.inventoryservice.repository;
 
+import com.shopit.inventoryservice.dto.InventoryChangeRow;
+import com.shopit.inventoryservice.dto.InventoryDtoResponse;
 import com.shopit.inventoryservice.entity.InventoryEntity;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface InventoryRepository extends JpaRepository<InventoryEntity, Integer> {
+public interface InventoryRepository extends JpaRepository<InventoryEntity, Integer>, InventoryRepositoryCustom {
 
     List<InventoryEntity> findBySkuCodeIn(List<String> skuCode);
 
     Optional<InventoryEntity> findBySkuCode(String skuCode);
+
+    // Rows after the given id (keyset pagination), used to load the whole inventory a page at a time (see
+    // InventoryStockCache). Selects the DTO directly, so no entity is kept in the persistence context.
+    @Query("select new com.shopit.inventoryservice.dto.InventoryDtoResponse(i.id, i.skuCode, i.quantity) "
+            + "from InventoryEntity i where i.id > :afterId order by i.id")
+    List<InventoryDtoResponse> findPageAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    // Current quantity and version of the skuCodes, read from the DB (not from entities already in the persistence
+    // context, which the bulk updates of reserveStock/addStock/upsertStock leave as they were). Used for the change
+    // feed.
+    @Query("select new com.shopit.inventoryservice.dto.InventoryChangeRow(i.skuCode, i.quantity, i.version) "
+            + "from InventoryEntity i where i.skuCode in :skuCodes order by i.skuCode")
+    List<InventoryChangeRow> findQuantities(@Param("skuCodes") Collection<String> skuCodes);
+
+    // Quantity and version of the skuCodes after the given one, in skuCode order (uk_inventory_sku_code). Pages of the
+    // resync of the change feed.
+    @Query("select new com.shopit.inventoryservice.dto.InventoryChangeRow(i.skuCode, i.quantity, i.version) "
+            + "from InventoryEntity i where i.skuCode > :afterSkuCode order by i.skuCode")
+    List<InventoryChangeRow> findChangesAfter(@Param("afterSkuCode") String afterSkuCode, Pageable pageable);
+
+    // Rows of the skuCodes locked (SELECT ... FOR UPDATE) till the end of the transaction, so their quantities can't
+    // change between reading and deducting them. Sorted by skuCode, so concurrent callers lock in the same order.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from InventoryEntity i where i.skuCode in :skuCodes order by i.skuCode")
+    List<InventoryEntity> findBySkuCodeInForUpdate(@Param("skuCodes") Collection<String> skuCodes);
+
+    // Used to give back the stock of a released reservation. Done in the DB itself (quantity = quantity + x)
+    // instead of read-modify-write so that it can't overwrite a concurrent change.
+    @Modifying
+    @Query("update InventoryEntity i set i.quantity = i.quantity + :quantity, i.version = i.version + 1"
+            + " where i.skuCode = :skuCode")
+    int addStock(@Param("skuCode") String skuCode, @Param("quantity") Integer quantity);
 }
@@ -0,0 +1,16 @@
+package com.shopit.inventoryservice.repository;
+
+import java.util.Map;
+
+// Custom fragment of InventoryRepository for the queries which can't be derived from method names or written as
+// a fixed @Query. Spring Data picks the implementation from the class with the 'Impl' suffix.
+public interface InventoryRepositoryCustom {
+
+    // Deducts the quantity of every skuCode in a single conditional UPDATE statement. A row is updated only when
+    // it has enough quantity, so the caller must compare the returned no. of updated rows with the no. of skuCodes.
+    int reserveStock(Map<String, Integer> skuQuantities);
+
+    // Adds the quantity of every skuCode, inserting the skuCodes not present yet, with one statement per skuCode
+    // sent to the DB in JDBC batches of batchSize. No row is read first.
+    void upsertStock(Map<String, Integer> skuQuantities, int batchSize);
+}
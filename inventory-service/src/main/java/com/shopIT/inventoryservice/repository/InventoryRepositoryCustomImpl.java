@@ -0,0 +1,70 @@
+package com.shopit.inventoryservice.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class InventoryRepositoryCustomImpl implements InventoryRepositoryCustom {
+
+    // Insert, or add to the quantity of the row with the same skuCode (uk_inventory_sku_code) in the same statement.
+    // VALUES(quantity) instead of a second parameter lets the MySQL driver rewrite a batch of these into a single
+    // multi-row insert (rewriteBatchedStatements), which it doesn't do with parameters in the UPDATE clause.
+    private static final String UPSERT_STOCK = "insert into inventory_entity (sku_code, quantity, version)"
+            + " values (?, ?, 1) on duplicate key update quantity = quantity + values(quantity), version = version + 1";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int reserveStock(final Map<String, Integer> skuQuantities) {
+        // Builds: CASE i.skuCode WHEN :sku0 THEN :qty0 WHEN :sku1 THEN :qty1 ... ELSE 0 END
+        // so that every skuCode gets its own requested quantity within the same statement.
+        final StringBuilder quantityCase = new StringBuilder("case i.skuCode");
+        for (int i = 0; i < skuQuantities.size(); i++) {
+            quantityCase.append(" when :sku").append(i).append(" then :qty").append(i);
+        }
+        quantityCase.append(" else 0 end");
+
+        // The WHERE condition is evaluated by the DB on the locked row, so two concurrent reservations can never
+        // both see the same old quantity (no lost update and no oversell).
+        final Query query = entityManager.createQuery("update InventoryEntity i"
+                + " set i.quantity = i.quantity - " + quantityCase + ", i.version = i.version + 1"
+                + " where i.skuCode in :skuCodes and i.quantity >= " + quantityCase);
+
+        final List<String> skuCodes = new ArrayList<>(skuQuantities.keySet());
+        for (int i = 0; i < skuCodes.size(); i++) {
+            query.setParameter("sku" + i, skuCodes.get(i));
+            query.setParameter("qty" + i, skuQuantities.get(skuCodes.get(i)));
+        }
+        query.setParameter("skuCodes", skuCodes);
+
+        return query.executeUpdate();
+    }
+
+    @Override
+    public void upsertStock(final Map<String, Integer> skuQuantities, final int batchSize) {
+        // Plain JDBC on the connection of the current transaction, JPQL has no upsert
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPSERT_STOCK)) {
+                int batched = 0;
+                for (Map.Entry<String, Integer> skuQuantity : skuQuantities.entrySet()) {
+                    statement.setString(1, skuQuantity.getKey());
+                    statement.setInt(2, skuQuantity.getValue());
+                    statement.addBatch();
+                    if (++batched % batchSize == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                if (batched % batchSize != 0) {
+                    statement.executeBatch();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package com.shopit.inventoryservice.repository;
+
+import com.shopit.inventoryservice.entity.ReservationEntity;
+import com.shopit.inventoryservice.entity.ReservationStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface ReservationRepository extends JpaRepository<ReservationEntity, String> {
+
+    // Compare-and-set of the status so that a reservation can be confirmed or released only once, even when the
+    // same call is retried or raced. Returns the no. of updated rows ie 1 on success and 0 otherwise.
+    @Modifying
+    @Query("update ReservationEntity r set r.status = :newStatus "
+            + "where r.reservationId = :reservationId and r.status = :currentStatus")
+    int updateStatus(@Param("reservationId") String reservationId,
+                     @Param("currentStatus") ReservationStatus currentStatus,
+                     @Param("newStatus") ReservationStatus newStatus);
+
+    // Same for a batch of reservations, see InventoryService.confirmReservations
+    @Modifying
+    @Query("update ReservationEntity r set r.status = :newStatus "
+            + "where r.reservationId in :reservationIds and r.status = :currentStatus")
+    int updateStatusIn(@Param("reservationIds") Collection<String> reservationIds,
+                       @Param("currentStatus") ReservationStatus currentStatus,
+                       @Param("newStatus") ReservationStatus newStatus);
+
+    // Reservations of the batch still in the given status, locked (SELECT ... FOR UPDATE) till the end of the
+    // transaction so a retried or raced release of the same ones waits and then finds them released. Sorted by id, so
+    // concurrent callers lock in the same order.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from ReservationEntity r where r.reservationId in :reservationIds and r.status = :status "
+            + "order by r.reservationId")
+    List<ReservationEntity> findByIdInAndStatusForUpdate(@Param("reservationIds") Collection<String> reservationIds,
+                                                         @Param("status") ReservationStatus status);
+
+    // Ids of the reservations in the given status created before the given time, oldest first
+    @Query("select r.reservationId from ReservationEntity r "
+            + "where r.status = :status and r.createdAt < :createdBefore order by r.createdAt")
+    List<String> findIdsByStatusAndCreatedAtBefore(@Param("status") ReservationStatus status,
+                                                   @Param("createdBefore") Instant createdBefore, Pageable pageable);
+}
@@ -0,0 +1,145 @@
+package com.shopit.inventoryservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shopit.inventoryservice.config.IdempotencyStore;
+import com.shopit.inventoryservice.constants.InventoryConstants;
+import com.shopit.inventoryservice.dto.IdempotentResponse;
+import com.shopit.inventoryservice.exception.IdempotencyKeyInUseException;
+import com.shopit.inventoryservice.exception.IdempotencyKeyReusedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+// Runs a non-idempotent API (e.g. adding stock in inventory) once per Idempotency-Key sent by the client, so that a retry after a
+// timeout or a lost response doesn't do it twice. The first request claims the key in the IdempotencyStore (one
+// atomic put-if-absent) and stores its response once done, the retries get that response replayed with the
+// Idempotent-Replayed header. Meanwhile a retry gets 409 (IdempotencyKeyInUseException) to try again later.
+// - The key is per scope (API) and can't be reused for another request body, that's 422 (IdempotencyKeyReusedException)
+// - Only a successful (2xx) response is kept, on an error the key is freed so that the retry is run again
+// - Without the header the API is just called, and when the store is not reachable too (logged), i.e. no dedupe
+// - Each claim has a random token, the response is stored (or the key freed) only by the request holding it
+@Service
+@Slf4j
+public class IdempotentRequests {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final IdempotencyStore idempotencyStore;
+
+    private final Duration timeToLive;
+
+    private final Duration inProgressTimeToLive;
+
+    @Autowired
+    public IdempotentRequests(IdempotencyStore idempotencyStore,
+                              @Value("${idempotency.ttl}") Duration timeToLive,
+                              @Value("${idempotency.in-progress-ttl}") Duration inProgressTimeToLive) {
+        this.idempotencyStore = idempotencyStore;
+        this.timeToLive = timeToLive;
+        this.inProgressTimeToLive = inProgressTimeToLive;
+    }
+
+    public ResponseEntity<String> execute(final String scope, final String idempotencyKey, final Object request,
+                                          final Supplier<ResponseEntity<String>> api) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return api.get();
+        }
+        final String key = InventoryConstants.IDEMPOTENCY_KEY_PREFIX + scope + ":" + idempotencyKey;
+        final IdempotentResponse claim = IdempotentResponse.builder()
+                .fingerprint(fingerprint(request))
+                .claimToken(UUID.randomUUID().toString())
+                .build();
+        final ResponseEntity<String> replay = claim(key, idempotencyKey, claim);
+        if (replay != null) {
+            return replay;
+        }
+
+        final ResponseEntity<String> response;
+        try {
+            response = api.get();
+        } catch (RuntimeException ex) {
+            release(key, claim);
+            throw ex;
+        }
+        complete(key, claim, response);
+        return response;
+    }
+
+    // Replayed response when the key was already used for this request, null when this request claimed the key
+    private ResponseEntity<String> claim(final String key, final String idempotencyKey,
+                                         final IdempotentResponse claim) {
+        final IdempotentResponse present;
+        try {
+            present = idempotencyStore.putIfAbsent(key, claim, inProgressTimeToLive);
+        } catch (Exception ex) {
+            // Fail open, the API stays available without the dedupe
+            log.warn(InventoryConstants.IDEMPOTENCY_STORE_NOT_REACHABLE + idempotencyKey, ex);
+            return null;
+        }
+        if (present == null) {
+            return null;
+        }
+        if (!claim.getFingerprint().equals(present.getFingerprint())) {
+            throw new IdempotencyKeyReusedException(InventoryConstants.IDEMPOTENCY_KEY_REUSED + idempotencyKey);
+        }
+        if (present.getStatus() == null) {
+            throw new IdempotencyKeyInUseException(InventoryConstants.IDEMPOTENCY_KEY_IN_USE + idempotencyKey,
+                    Math.max(1, inProgressTimeToLive.toSeconds()));
+        }
+        return ResponseEntity.status(present.getStatus())
+                .header(InventoryConstants.IDEMPOTENT_REPLAYED, Boolean.TRUE.toString())
+                .body(present.getBody());
+    }
+
+    // Only while the key is still held by this claim: once the in-progress entry has expired a retry may have claimed
+    // the key again, its entry is left alone
+    private void complete(final String key, final IdempotentResponse claim, final ResponseEntity<String> response) {
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            release(key, claim);
+            return;
+        }
+        try {
+            if (!idempotencyStore.replace(key, claim, IdempotentResponse.builder()
+                    .fingerprint(claim.getFingerprint())
+                    .status(response.getStatusCode().value())
+                    .body(response.getBody())
+                    .build(), timeToLive)) {
+                log.warn(InventoryConstants.IDEMPOTENCY_CLAIM_LOST + key);
+            }
+        } catch (Exception ex) {
+            // The in-progress entry expires after in-progress-ttl, a retry after that is run again
+            log.warn(InventoryConstants.IDEMPOTENT_RESPONSE_NOT_SAVED + key, ex);
+        }
+    }
+
+    private void release(final String key, final IdempotentResponse claim) {
+        try {
+            if (!idempotencyStore.remove(key, claim)) {
+                log.warn(InventoryConstants.IDEMPOTENCY_CLAIM_LOST + key);
+            }
+        } catch (Exception ex) {
+            log.warn(InventoryConstants.IDEMPOTENT_RESPONSE_NOT_SAVED + key, ex);
+        }
+    }
+
+    // SHA-256 of the request as JSON, the same body always gives the same fingerprint
+    private static String fingerprint(final Object request) {
+        try {
+            final byte[] json = objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException | NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.shopit.inventoryservice.service;
+
+import com.shopit.inventoryservice.config.InventoryChangeFeed;
+import com.shopit.inventoryservice.constants.InventoryConstants;
+import com.shopit.inventoryservice.dto.InventoryChangeRow;
+import com.shopit.inventoryservice.repository.InventoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+
+// Publishes the new quantity and version of the skuCodes changed by a write of InventoryService to the
+// InventoryChangeFeed.
+//
+// Within a transaction the rows are read just before the commit, while the rows written are still locked, so the
+// quantity read is the one being committed. The event is only published after the commit: a rolled back write
+// publishes nothing, and the Redis call is not made with the rows locked. Two writes of the same skuCode committing
+// close together can publish in either order, so every quantity goes with the version of its row (incremented by each
+// change under the row lock), and a reader drops an event with an older version than the one it applied already.
+//
+// A failed publish is only logged, the write itself is not failed for it. The next change of the skuCode carries
+// its quantity again, and so does the next resync (publishAll, see InventoryChangeResync) for a skuCode that doesn't
+// change again.
+@Service
+@Slf4j
+public class InventoryChangePublisher {
+
+    private final InventoryRepository inventoryRepo;
+
+    private final InventoryChangeFeed inventoryChangeFeed;
+
+    private final boolean enabled;
+
+    @Autowired
+    public InventoryChangePublisher(InventoryRepository inventoryRepo, InventoryChangeFeed inventoryChangeFeed,
+                                    @Value("${inventory.change-feed.enabled}") boolean enabled) {
+        this.inventoryRepo = inventoryRepo;
+        this.inventoryChangeFeed = inventoryChangeFeed;
+        this.enabled = enabled;
+    }
+
+    public void publishChanged(final Collection<String> skuCodes) {
+        if (!enabled || skuCodes.isEmpty()) {
+            return;
+        }
+        final List<String> skuCodeList = List.copyOf(skuCodes);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+                private List<InventoryChangeRow> changes = List.of();
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    changes = readChanges(skuCodeList);
+                }
+
+                @Override
+                public void afterCommit() {
+                    publish(skuCodeList, changes);
+                }
+            });
+        } else {
+            // Called outside of a transaction, the rows are committed already
+            publish(skuCodeList, readChanges(skuCodeList));
+        }
+    }
+
+    // Publishes the current quantity and version of every skuCode, an event per page of pageSize skuCodes. A reader
+    // drops the ones it has a newer version of already. Returns the no. of skuCodes published.
+    public int publishAll(final int pageSize) {
+        if (!enabled) {
+            return 0;
+        }
+        int published = 0;
+        String afterSkuCode = "";
+        List<InventoryChangeRow> changes;
+        do {
+            changes = inventoryRepo.findChangesAfter(afterSkuCode, PageRequest.of(0, pageSize));
+            if (changes.isEmpty()) {
+                break;
+            }
+            changes.forEach(change -> change.setQuantity(change.getQuantity() == null ? 0 : change.getQuantity()));
+            // Thrown, the resync is tried again as a whole next time
+            inventoryChangeFeed.publish(changes);
+            published += changes.size();
+            afterSkuCode = changes.get(changes.size() - 1).getSkuCode();
+        } while (changes.size() == pageSize);
+        return published;
+    }
+
+    private List<InventoryChangeRow> readChanges(final Collection<String> skuCodes) {
+        try {
+            final List<InventoryChangeRow> rows = inventoryRepo.findQuantities(skuCodes);
+            rows.forEach(row -> row.setQuantity(row.getQuantity() == null ? 0 : row.getQuantity()));
+            return rows;
+        } catch (Exception ex) {
+            log.warn(InventoryConstants.CHANGE_NOT_PUBLISHED + skuCodes, ex);
+            return List.of();
+        }
+    }
+
+    private void publish(final Collection<String> skuCodes, final List<InventoryChangeRow> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            inventoryChangeFeed.publish(changes);
+        } catch (Exception ex) {
+            log.warn(InventoryConstants.CHANGE_NOT_PUBLISHED + skuCodes, ex);
+        }
+    }
+}
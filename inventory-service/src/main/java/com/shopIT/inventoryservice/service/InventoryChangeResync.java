@@ -0,0 +1,75 @@
+package com.shopit.inventoryservice.service;
+
+import com.shopit.inventoryservice.constants.InventoryConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Every resync-interval publishes the quantity of every skuCode to the change feed again (see
+// InventoryChangePublisher.publishAll). An event lost after its commit (Redis not reachable, the instance stopped
+// before publishing it, or trimmed from the stream before a reader got to it) would otherwise leave the replicas with
+// an old quantity till the next change of the skuCode, which may never come when the replica rejects the orders of it.
+// Only one instance at a time resyncs, behind a Redis lock, the others skip that round.
+@Service
+@Slf4j
+public class InventoryChangeResync implements AutoCloseable {
+
+    private final InventoryChangePublisher inventoryChangePublisher;
+
+    private final RedissonClient redissonClient;
+
+    private final int pageSize;
+
+    private final ScheduledExecutorService resyncer;
+
+    @Autowired
+    public InventoryChangeResync(InventoryChangePublisher inventoryChangePublisher, RedissonClient redissonClient,
+                                 @Value("${inventory.change-feed.resync-interval}") Duration resyncInterval,
+                                 @Value("${inventory.change-feed.resync-page-size}") int pageSize) {
+        this.inventoryChangePublisher = inventoryChangePublisher;
+        this.redissonClient = redissonClient;
+        this.pageSize = pageSize;
+
+        this.resyncer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("inventory-change-resync").daemon().factory());
+        if (resyncInterval.isPositive()) {
+            resyncer.scheduleWithFixedDelay(this::resyncQuietly, resyncInterval.toMillis(), resyncInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Returns the no. of skuCodes published, 0 when another instance is resyncing
+    public int resync() {
+        final RLock lock = redissonClient.getLock(InventoryConstants.CHANGE_RESYNC_LOCK);
+        if (!lock.tryLock()) {
+            return 0;
+        }
+        try {
+            return inventoryChangePublisher.publishAll(pageSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        resyncer.shutdownNow();
+    }
+
+    // A failed resync must not stop the next ones
+    private void resyncQuietly() {
+        try {
+            resync();
+        } catch (Exception ex) {
+            log.warn(InventoryConstants.CHANGES_NOT_RESYNCED, ex);
+        }
+    }
+}
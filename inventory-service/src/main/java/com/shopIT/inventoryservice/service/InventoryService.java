@@ -1,17 +1,39 @@
 package com.shopit.inventoryservice.service;
 
 import com.shopit.inventoryservice.constants.InventoryConstants;
+import com.shopit.inventoryservice.dto.InventoryBatchReservationDtoRequest;
 import com.shopit.inventoryservice.dto.InventoryDtoRequest;
 import com.shopit.inventoryservice.dto.InventoryDtoResponse;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoRequest;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoResponse;
 import com.shopit.inventoryservice.entity.InventoryEntity;
+import com.shopit.inventoryservice.entity.ReservationEntity;
+import com.shopit.inventoryservice.entity.ReservationStatus;
+import com.shopit.inventoryservice.exception.InvalidInventoryException;
+import com.shopit.inventoryservice.exception.InvalidReservationException;
 import com.shopit.inventoryservice.exception.InventoryNotSavedException;
+import com.shopit.inventoryservice.exception.ProductNotInStockException;
+import com.shopit.inventoryservice.exception.ReservationNotFoundException;
 import com.shopit.inventoryservice.repository.InventoryRepository;
+import com.shopit.inventoryservice.repository.ReservationRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
 
 @Service
 @Slf4j
@@ -19,9 +41,23 @@ public class InventoryService {
 
     private final InventoryRepository inventoryRepo;
 
+    private final ReservationRepository reservationRepo;
+
+    private final InventoryStockCache inventoryStockCache;
+
+    private final InventoryChangePublisher inventoryChangePublisher;
+
+    @Value("${inventory.bulk-upsert.batch-size}")
+    private int upsertBatchSize;
+
     @Autowired
-    public InventoryService(InventoryRepository inventoryRepo) {
+    public InventoryService(InventoryRepository inventoryRepo, ReservationRepository reservationRepo,
+                            InventoryStockCache inventoryStockCache,
+                            InventoryChangePublisher inventoryChangePublisher) {
         this.inventoryRepo = inventoryRepo;
+        this.reservationRepo = reservationRepo;
+        this.inventoryStockCache = inventoryStockCache;
+        this.inventoryChangePublisher = inventoryChangePublisher;
     }
 
     public List<InventoryDtoResponse> quantityInStock(final List<String> skuCode) {
@@ -34,48 +70,384 @@ public class InventoryService {
         // correct return type of the
         // method in the repository interface
 
-        return inventoryRepo.findBySkuCodeIn(skuCode).stream()
-                .map(inventoryEntity -> InventoryDtoResponse.builder()
-                        .skuCode(inventoryEntity.getSkuCode())
-                        .id(inventoryEntity.getId())
-                        .quantity(inventoryEntity.getQuantity())
-                        .build())
-                .toList();
+        // Called on every order placement, so served from the in-memory stock table and only the skuCodes missing
+        // from it go to findBySkuCodeIn (see InventoryStockCache)
+        return inventoryStockCache.quantityInStock(skuCode);
     }
 
+    // Adds the quantity of a skuCode, creating it if no inventory contains it yet. Done with the same
+    // INSERT ... ON DUPLICATE KEY UPDATE quantity = quantity + x as bulkUpsert, in the DB itself, so it can't overwrite
+    // a reservation or another add of the skuCode made meanwhile like reading the row and saving it back could.
+    @Transactional
     public Integer addInInventory(final InventoryDtoRequest inventoryDtoRequest) {
-        final Optional<InventoryEntity> inventoryEntityOptional = inventoryRepo
-                .findBySkuCode(inventoryDtoRequest.getSkuCode());
-        InventoryEntity inventoryEntity = null;
-
-        // If no inventory exists which contains this product then we create a new
-        // inventory with given product
-        if (inventoryEntityOptional.isEmpty()) {
-            log.info(InventoryConstants.EMPTY_INVENTORY);
-            inventoryEntity = InventoryEntity.builder()
-                    .quantity(inventoryDtoRequest.getQuantity())
-                    .skuCode(inventoryDtoRequest.getSkuCode())
-                    .build();
-        }
-        // If the product with skuCode already exists in any inventory then we will not
-        // create new inventory for this
-        // and will simply update the quantity of already existing inventory with the
-        // product
-        else {
-            inventoryEntity = inventoryEntityOptional.get();
-            Integer prevQuantity = inventoryEntity.getQuantity();
-            inventoryEntity.setQuantity(prevQuantity + inventoryDtoRequest.getQuantity());
+        if (isInvalid(inventoryDtoRequest)) {
+            throw new InvalidInventoryException(InventoryConstants.INVALID_INVENTORY);
         }
+        final Map<String, Integer> skuQuantities = Map.of(inventoryDtoRequest.getSkuCode(),
+                inventoryDtoRequest.getQuantity());
 
-        try{
-            inventoryRepo.save(inventoryEntity);
+        final InventoryEntity inventoryEntity;
+        try {
+            inventoryRepo.upsertStock(skuQuantities, 1);
+            // The row inserted or updated above, for its id
+            inventoryEntity = inventoryRepo.findBySkuCode(inventoryDtoRequest.getSkuCode()).orElseThrow();
         }
         catch (Exception ex){
             log.error(InventoryConstants.INVENTORY_NOT_SAVED);
             throw new InventoryNotSavedException(InventoryConstants.INVENTORY_NOT_SAVED);
         }
         log.info(InventoryConstants.ADDED_IN_INVENTORY + inventoryEntity.getId());
+        inventoryStockCache.stockAdded(skuQuantities);
+        inventoryChangePublisher.publishChanged(skuQuantities.keySet());
 
         return inventoryEntity.getId();
     }
+
+    // Adds the quantity of many skuCodes at once, e.g. a stock sync from a warehouse. No row is read first: every
+    // skuCode is a single INSERT ... ON DUPLICATE KEY UPDATE, sent in JDBC batches, so there is no window for two
+    // concurrent adds of a new skuCode to both insert it. All of them are added or none.
+    @Transactional
+    public int bulkUpsert(final List<InventoryDtoRequest> inventoryDtoRequestList) {
+        if (inventoryDtoRequestList == null || inventoryDtoRequestList.isEmpty()) {
+            throw new InvalidInventoryException(InventoryConstants.INVALID_INVENTORY);
+        }
+
+        // Same skuCode coming more than once is added up. Sorted, so concurrent bulk upserts lock the rows in the
+        // same order and can't deadlock each other.
+        final Map<String, Integer> skuQuantities = new TreeMap<>();
+        for (InventoryDtoRequest inventoryDtoRequest : inventoryDtoRequestList) {
+            if (isInvalid(inventoryDtoRequest)) {
+                throw new InvalidInventoryException(InventoryConstants.INVALID_INVENTORY);
+            }
+            skuQuantities.merge(inventoryDtoRequest.getSkuCode(), inventoryDtoRequest.getQuantity(), Integer::sum);
+        }
+
+        try {
+            inventoryRepo.upsertStock(skuQuantities, upsertBatchSize);
+        }
+        catch (Exception ex) {
+            log.error(InventoryConstants.INVENTORY_NOT_SAVED, ex);
+            throw new InventoryNotSavedException(InventoryConstants.INVENTORY_NOT_SAVED);
+        }
+        log.info(String.format(InventoryConstants.UPSERTED_IN_INVENTORY, skuQuantities.size()));
+        inventoryStockCache.stockAdded(skuQuantities);
+        inventoryChangePublisher.publishChanged(skuQuantities.keySet());
+
+        return skuQuantities.size();
+    }
+
+    // Reserves (deducts) the stock of all the products of an order in one go. Either every skuCode has enough
+    // quantity and all of them are deducted, or nothing is deducted at all (all-or-nothing).
+    // With the reservationId of the request it's idempotent: a reservationId already present is returned as it is.
+    // Two attempts racing with the same reservationId both deduct, but the second one fails on the primary key of the
+    // reservation and is rolled back (see InventoryController.reserve). A reservationId whose reservation was
+    // released meanwhile (expired, see ReservationExpirer) is not reserved again, it's answered as out of stock.
+    @Transactional
+    public String reserve(final InventoryReservationDtoRequest inventoryReservationDtoRequest) {
+        final Map<String, Integer> skuQuantities = aggregateSkuQuantities(inventoryReservationDtoRequest);
+        final String reservationId = inventoryReservationDtoRequest.getReservationId() == null
+                ? UUID.randomUUID().toString() : inventoryReservationDtoRequest.getReservationId();
+        if (inventoryReservationDtoRequest.getReservationId() != null) {
+            final Optional<ReservationStatus> reservationStatus = reservationRepo.findById(reservationId)
+                    .map(ReservationEntity::getStatus);
+            if (reservationStatus.isPresent()) {
+                repeatedReservation(reservationId, reservationStatus.get());
+                return reservationId;
+            }
+        }
+
+        // Single conditional bulk UPDATE, a row is updated only if it still has the required quantity. If any
+        // skuCode is missing or short then fewer rows are updated, and throwing here rolls back the other rows.
+        final int updatedRows = inventoryRepo.reserveStock(skuQuantities);
+        if (updatedRows != skuQuantities.size()) {
+            log.info(InventoryConstants.PRODUCT_NOT_IN_STOCK);
+            throw new ProductNotInStockException(InventoryConstants.PRODUCT_NOT_IN_STOCK);
+        }
+
+        final ReservationEntity reservationEntity = ReservationEntity.builder()
+                .reservationId(reservationId)
+                .status(ReservationStatus.RESERVED)
+                .skuQuantities(skuQuantities)
+                .createdAt(Instant.now())
+                .build();
+        reservationRepo.save(reservationEntity);
+        // Inserted now, so a duplicate reservationId fails before the change is published
+        reservationRepo.flush();
+        inventoryStockCache.stockDeducted(skuQuantities);
+        inventoryChangePublisher.publishChanged(skuQuantities.keySet());
+
+        log.info(InventoryConstants.RESERVED_STOCK + reservationEntity.getReservationId());
+
+        return reservationEntity.getReservationId();
+    }
+
+    // Reserves the stock of many orders in one go, e.g. a batch of orders placed together. Every order is still
+    // all-or-nothing on its own, but an order out of stock (or invalid) doesn't stop the others from being reserved.
+    // Results are in the order of the requests.
+    // All the skuCodes of the batch are locked and read in one query and the orders are checked against them in
+    // memory, then the total of every skuCode is deducted in one conditional UPDATE like reserve does.
+    // Idempotent per order like reserve: an order whose reservationId is already present gets that reservation back
+    // (or OUT_OF_STOCK if it expired) and isn't deducted again, so a batch sent again after a timeout reserves only
+    // the orders it didn't reserve the first time. The same reservationId twice in a batch is INVALID the second time.
+    @Transactional
+    public List<InventoryReservationDtoResponse> reserveBatch(
+            final InventoryBatchReservationDtoRequest inventoryBatchReservationDtoRequest) {
+        final List<InventoryReservationDtoRequest> reservationDtoRequestList =
+                inventoryBatchReservationDtoRequest.getReservationDtoRequestList();
+        if (reservationDtoRequestList == null || reservationDtoRequestList.isEmpty()) {
+            throw new InvalidReservationException(InventoryConstants.INVALID_RESERVATION);
+        }
+
+        final Map<String, ReservationStatus> existingReservations = new HashMap<>();
+        reservationRepo.findAllById(reservationDtoRequestList.stream()
+                        .map(InventoryReservationDtoRequest::getReservationId)
+                        .filter(Objects::nonNull)
+                        .toList())
+                .forEach(reservationEntity -> existingReservations.put(reservationEntity.getReservationId(),
+                        reservationEntity.getStatus()));
+
+        final List<Map<String, Integer>> skuQuantitiesList = new ArrayList<>(reservationDtoRequestList.size());
+        final Set<String> skuCodes = new TreeSet<>();
+        final Set<String> batchReservationIds = new HashSet<>();
+        for (InventoryReservationDtoRequest inventoryReservationDtoRequest : reservationDtoRequestList) {
+            final String reservationId = inventoryReservationDtoRequest.getReservationId();
+            Map<String, Integer> skuQuantities = null;
+            if (reservationId != null && (existingReservations.containsKey(reservationId)
+                    || !batchReservationIds.add(reservationId))) {
+                // Answered below without being reserved again
+                skuQuantitiesList.add(null);
+                continue;
+            }
+            try {
+                skuQuantities = aggregateSkuQuantities(inventoryReservationDtoRequest);
+                skuCodes.addAll(skuQuantities.keySet());
+            }
+            catch (InvalidReservationException ex) {
+                log.info(InventoryConstants.INVALID_RESERVATION);
+            }
+            skuQuantitiesList.add(skuQuantities);
+        }
+
+        final Map<String, Integer> available = new HashMap<>();
+        if (!skuCodes.isEmpty()) {
+            inventoryRepo.findBySkuCodeInForUpdate(skuCodes).forEach(inventoryEntity ->
+                    available.merge(inventoryEntity.getSkuCode(), inventoryEntity.getQuantity(), Integer::sum));
+        }
+
+        final Instant now = Instant.now();
+        final List<InventoryReservationDtoResponse> inventoryReservationDtoResponseList = new ArrayList<>();
+        final List<ReservationEntity> reservationEntityList = new ArrayList<>();
+        final Map<String, Integer> reservedSkuQuantities = new TreeMap<>();
+        for (int i = 0; i < skuQuantitiesList.size(); i++) {
+            final Map<String, Integer> skuQuantities = skuQuantitiesList.get(i);
+            final String reservationId = reservationDtoRequestList.get(i).getReservationId();
+            final ReservationStatus existingStatus = reservationId == null ? null
+                    : existingReservations.get(reservationId);
+            if (existingStatus != null) {
+                inventoryReservationDtoResponseList.add(repeatedReservationDtoRes(reservationId, existingStatus));
+                continue;
+            }
+            if (skuQuantities == null) {
+                inventoryReservationDtoResponseList.add(InventoryReservationDtoResponse.builder()
+                        .status(InventoryConstants.INVALID)
+                        .build());
+                continue;
+            }
+            // Orders earlier in the batch are served first
+            final boolean inStock = skuQuantities.entrySet().stream()
+                    .allMatch(entry -> available.getOrDefault(entry.getKey(), 0) >= entry.getValue());
+            if (!inStock) {
+                inventoryReservationDtoResponseList.add(InventoryReservationDtoResponse.builder()
+                        .status(InventoryConstants.OUT_OF_STOCK)
+                        .build());
+                continue;
+            }
+            skuQuantities.forEach((skuCode, quantity) -> {
+                available.merge(skuCode, -quantity, Integer::sum);
+                reservedSkuQuantities.merge(skuCode, quantity, Integer::sum);
+            });
+
+            final ReservationEntity reservationEntity = ReservationEntity.builder()
+                    .reservationId(reservationId == null ? UUID.randomUUID().toString() : reservationId)
+                    .status(ReservationStatus.RESERVED)
+                    .skuQuantities(skuQuantities)
+                    .createdAt(now)
+                    .build();
+            reservationEntityList.add(reservationEntity);
+            inventoryReservationDtoResponseList.add(InventoryReservationDtoResponse.builder()
+                    .reservationId(reservationEntity.getReservationId())
+                    .status(InventoryConstants.RESERVED)
+                    .build());
+        }
+
+        // The rows are locked and were checked above, so every one of them is updated. If not (e.g. a skuCode kept
+        // in more than one row) nothing of the batch is reserved.
+        if (!reservedSkuQuantities.isEmpty()
+                && inventoryRepo.reserveStock(reservedSkuQuantities) != reservedSkuQuantities.size()) {
+            log.info(InventoryConstants.PRODUCT_NOT_IN_STOCK);
+            throw new ProductNotInStockException(InventoryConstants.PRODUCT_NOT_IN_STOCK);
+        }
+        reservationRepo.saveAll(reservationEntityList);
+        // Inserted now, so a reservationId reserved meanwhile by another attempt of the batch fails before the
+        // change is published (see InventoryController.reserveBatch)
+        reservationRepo.flush();
+        inventoryStockCache.stockDeducted(reservedSkuQuantities);
+        inventoryChangePublisher.publishChanged(reservedSkuQuantities.keySet());
+
+        log.info(String.format(InventoryConstants.RESERVED_BATCH, reservationEntityList.size(),
+                reservationDtoRequestList.size()));
+
+        return inventoryReservationDtoResponseList;
+    }
+
+    public boolean isReserved(final String reservationId) {
+        return reservationId != null && reservationRepo.existsById(reservationId);
+    }
+
+    // Finalizes the reservation once the order is placed, the stock stays deducted. Confirming it again is a no-op,
+    // so order service can retry a confirmation whose response it didn't get.
+    @Transactional
+    public void confirmReservation(final String reservationId) {
+        if (reservationRepo.updateStatus(reservationId, ReservationStatus.RESERVED,
+                ReservationStatus.CONFIRMED) == 0) {
+            if (reservationRepo.findById(reservationId).map(ReservationEntity::getStatus)
+                    .orElse(null) == ReservationStatus.CONFIRMED) {
+                log.info(InventoryConstants.RESERVATION_REPEATED + reservationId);
+                return;
+            }
+            log.info(InventoryConstants.RESERVATION_404);
+            throw new ReservationNotFoundException(InventoryConstants.RESERVATION_404);
+        }
+        log.info(InventoryConstants.CONFIRMED_RESERVATION + reservationId);
+    }
+
+    // Gives the reserved stock back to the inventory when the order could not be placed.
+    @Transactional
+    public void releaseReservation(final String reservationId) {
+        // Status is changed first so that a retried/raced release can't add the same stock back twice.
+        if (reservationRepo.updateStatus(reservationId, ReservationStatus.RESERVED,
+                ReservationStatus.RELEASED) == 0) {
+            log.info(InventoryConstants.RESERVATION_404);
+            throw new ReservationNotFoundException(InventoryConstants.RESERVATION_404);
+        }
+
+        reservationRepo.findById(reservationId)
+                .map(ReservationEntity::getSkuQuantities)
+                .ifPresent(skuQuantities -> {
+                    skuQuantities.forEach(inventoryRepo::addStock);
+                    inventoryStockCache.stockAdded(skuQuantities);
+                    inventoryChangePublisher.publishChanged(skuQuantities.keySet());
+                });
+
+        log.info(InventoryConstants.RELEASED_RESERVATION + reservationId);
+    }
+
+    // Confirms the reservations of a batch of placed orders in one transaction, like confirmReservation does one.
+    // Confirming again is a no-op, so the batch can be retried. Returns the reservationIds that are not confirmed,
+    // i.e. not present or released already (e.g. expired), in the order of the request.
+    @Transactional
+    public List<String> confirmReservations(final List<String> reservationIds) {
+        if (reservationIds == null || reservationIds.isEmpty()) {
+            throw new InvalidReservationException(InventoryConstants.INVALID_RESERVATION);
+        }
+        reservationRepo.updateStatusIn(reservationIds, ReservationStatus.RESERVED, ReservationStatus.CONFIRMED);
+
+        final Set<String> confirmed = new HashSet<>();
+        reservationRepo.findAllById(reservationIds).forEach(reservationEntity -> {
+            if (reservationEntity.getStatus() == ReservationStatus.CONFIRMED) {
+                confirmed.add(reservationEntity.getReservationId());
+            }
+        });
+        final List<String> notConfirmed = reservationIds.stream()
+                .filter(reservationId -> !confirmed.contains(reservationId))
+                .toList();
+        log.info(String.format(InventoryConstants.CONFIRMED_RESERVATIONS, confirmed.size(), reservationIds.size()));
+        return notConfirmed;
+    }
+
+    // Gives back the stock of the reservations of a batch of orders that could not be placed, in one transaction and
+    // one UPDATE per skuCode however many of the reservations contain it. Only the reservations still RESERVED are
+    // released, so the batch can be retried without adding the same stock back twice. Returns the reservationIds
+    // that are not released by this call (not present, confirmed or released already), in the order of the request.
+    @Transactional
+    public List<String> releaseReservations(final List<String> reservationIds) {
+        if (reservationIds == null || reservationIds.isEmpty()) {
+            throw new InvalidReservationException(InventoryConstants.INVALID_RESERVATION);
+        }
+        final List<ReservationEntity> reservationEntityList =
+                reservationRepo.findByIdInAndStatusForUpdate(reservationIds, ReservationStatus.RESERVED);
+
+        final Set<String> released = new HashSet<>();
+        final Map<String, Integer> skuQuantities = new TreeMap<>();
+        reservationEntityList.forEach(reservationEntity -> {
+            released.add(reservationEntity.getReservationId());
+            reservationEntity.getSkuQuantities().forEach((skuCode, quantity) ->
+                    skuQuantities.merge(skuCode, quantity, Integer::sum));
+        });
+        if (!released.isEmpty()) {
+            // Locked above, so every one of them is still RESERVED
+            reservationRepo.updateStatusIn(released, ReservationStatus.RESERVED, ReservationStatus.RELEASED);
+            skuQuantities.forEach(inventoryRepo::addStock);
+            inventoryStockCache.stockAdded(skuQuantities);
+            inventoryChangePublisher.publishChanged(skuQuantities.keySet());
+        }
+        log.info(String.format(InventoryConstants.RELEASED_RESERVATIONS, released.size(), reservationIds.size()));
+        return reservationIds.stream()
+                .filter(reservationId -> !released.contains(reservationId))
+                .toList();
+    }
+
+    // Same rule for a single add and a bulk upsert: a skuCode and a quantity to add of more than 0
+    private static boolean isInvalid(final InventoryDtoRequest inventoryDtoRequest) {
+        return inventoryDtoRequest.getSkuCode() == null || inventoryDtoRequest.getSkuCode().isBlank()
+                || inventoryDtoRequest.getQuantity() == null || inventoryDtoRequest.getQuantity() <= 0;
+    }
+
+    // Result in a batch of a reservationId already present, see repeatedReservation
+    private InventoryReservationDtoResponse repeatedReservationDtoRes(final String reservationId,
+                                                                      final ReservationStatus reservationStatus) {
+        try {
+            repeatedReservation(reservationId, reservationStatus);
+        }
+        catch (ProductNotInStockException ex) {
+            return InventoryReservationDtoResponse.builder()
+                    .status(InventoryConstants.OUT_OF_STOCK)
+                    .build();
+        }
+        return InventoryReservationDtoResponse.builder()
+                .reservationId(reservationId)
+                .status(InventoryConstants.RESERVED)
+                .build();
+    }
+
+    // A reservationId already present: reserved or confirmed is the same reservation made again, released means it
+    // expired (or the order gave it up) before this attempt, so nothing is held for it any more.
+    private void repeatedReservation(final String reservationId, final ReservationStatus reservationStatus) {
+        if (reservationStatus == ReservationStatus.RELEASED) {
+            log.info(InventoryConstants.RESERVATION_EXPIRED + reservationId);
+            throw new ProductNotInStockException(InventoryConstants.RESERVATION_EXPIRED + reservationId);
+        }
+        log.info(InventoryConstants.RESERVATION_REPEATED + reservationId);
+    }
+
+    // Same skuCode can come more than once in an order, so the quantities are summed up per skuCode. TreeMap keeps
+    // the skuCodes sorted so that concurrent reservations lock the rows in the same order.
+    private Map<String, Integer> aggregateSkuQuantities(
+            final InventoryReservationDtoRequest inventoryReservationDtoRequest) {
+        final List<InventoryDtoRequest> inventoryDtoRequestList =
+                inventoryReservationDtoRequest.getInventoryDtoRequestList();
+
+        if (inventoryDtoRequestList == null || inventoryDtoRequestList.isEmpty()) {
+            throw new InvalidReservationException(InventoryConstants.INVALID_RESERVATION);
+        }
+
+        final Map<String, Integer> skuQuantities = new TreeMap<>();
+        for (InventoryDtoRequest inventoryDtoRequest : inventoryDtoRequestList) {
+            if (isInvalid(inventoryDtoRequest)) {
+                throw new InvalidReservationException(InventoryConstants.INVALID_RESERVATION);
+            }
+            skuQuantities.merge(inventoryDtoRequest.getSkuCode(), inventoryDtoRequest.getQuantity(), Integer::sum);
+        }
+        return skuQuantities;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package com.shopit.inventoryservice.service;
+
+import com.shopit.inventoryservice.config.StockTable;
+import com.shopit.inventoryservice.constants.InventoryConstants;
+import com.shopit.inventoryservice.dto.InventoryDtoResponse;
+import com.shopit.inventoryservice.entity.InventoryEntity;
+import com.shopit.inventoryservice.repository.InventoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Serves quantityInStock from an in-memory StockTable of all the skuCodes instead of querying MySQL on every order
+// placement. The table is loaded at startup and read again from MySQL every reconcile-interval, a skuCode missing
+// from it is read from MySQL (read-through) and added.
+//
+// The table is only for reads. Reservations still check and deduct the stock in MySQL, so a quantity read from here
+// being a bit old (e.g. written by another instance since the last reconcile) can't oversell.
+@Service
+@Slf4j
+public class InventoryStockCache implements AutoCloseable {
+
+    private final InventoryRepository inventoryRepo;
+
+    private final boolean writeThrough;
+
+    private final int loadPageSize;
+
+    private final ScheduledExecutorService reconciler;
+
+    private volatile StockTable stockTable = new StockTable(16);
+
+    @Autowired
+    public InventoryStockCache(InventoryRepository inventoryRepo,
+                               @Value("${inventory.stock-table.mode}") String mode,
+                               @Value("${inventory.stock-table.reconcile-interval}") Duration reconcileInterval,
+                               @Value("${inventory.stock-table.load-page-size}") int loadPageSize) {
+        this.inventoryRepo = inventoryRepo;
+        this.writeThrough = InventoryConstants.WRITE_THROUGH_STOCK_TABLE.equals(mode);
+        this.loadPageSize = loadPageSize;
+
+        reconcile(); // Loaded before the service takes any request
+
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("stock-table-reconciler").daemon().factory());
+        if (reconcileInterval.isPositive()) {
+            reconciler.scheduleWithFixedDelay(this::reconcileQuietly, reconcileInterval.toMillis(),
+                    reconcileInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public List<InventoryDtoResponse> quantityInStock(final List<String> skuCodes) {
+        final StockTable table = stockTable;
+        final List<InventoryDtoResponse> inventoryDtoResponseList = new ArrayList<>(skuCodes.size());
+        List<String> missingSkuCodes = null;
+
+        // Same skuCode asked twice is returned once, like with the IN query
+        for (String skuCode : new LinkedHashSet<>(skuCodes)) {
+            if (skuCode == null) {
+                continue;
+            }
+            final int quantity = table.quantity(skuCode);
+            if (quantity == StockTable.MISSING) {
+                if (missingSkuCodes == null) {
+                    missingSkuCodes = new ArrayList<>();
+                }
+                missingSkuCodes.add(skuCode);
+                continue;
+            }
+            inventoryDtoResponseList.add(InventoryDtoResponse.builder()
+                    .id(table.id(skuCode))
+                    .skuCode(skuCode)
+                    .quantity(quantity)
+                    .build());
+        }
+
+        // Unknown skuCodes, or added by another instance since the last reconcile
+        if (missingSkuCodes != null) {
+            for (InventoryEntity inventoryEntity : inventoryRepo.findBySkuCodeIn(missingSkuCodes)) {
+                table.put(inventoryEntity.getId(), inventoryEntity.getSkuCode(), quantityOf(inventoryEntity));
+                inventoryDtoResponseList.add(InventoryDtoResponse.builder()
+                        .id(inventoryEntity.getId())
+                        .skuCode(inventoryEntity.getSkuCode())
+                        .quantity(inventoryEntity.getQuantity())
+                        .build());
+            }
+        }
+        return inventoryDtoResponseList;
+    }
+
+    // Called by the writes of InventoryService with the quantity added to every skuCode
+    public void stockAdded(final Map<String, Integer> skuQuantities) {
+        applyAfterCommit(skuQuantities, 1);
+    }
+
+    // Called by the writes of InventoryService with the quantity deducted from every skuCode
+    public void stockDeducted(final Map<String, Integer> skuQuantities) {
+        applyAfterCommit(skuQuantities, -1);
+    }
+
+    // Reads all the rows again (in pages by id) into a new table, which then replaces the current one. A skuCode
+    // deleted directly in MySQL is dropped this way, and a change applied to the current table while the new one is
+    // read may be missed by it, until the next reconcile.
+    public void reconcile() {
+        final StockTable newStockTable = new StockTable(Math.max(16, stockTable.size()));
+        Integer afterId = 0;
+        List<InventoryDtoResponse> page;
+        do {
+            page = inventoryRepo.findPageAfter(afterId, PageRequest.of(0, loadPageSize));
+            for (InventoryDtoResponse row : page) {
+                newStockTable.put(row.getId(), row.getSkuCode(), row.getQuantity() == null ? 0 : row.getQuantity());
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == loadPageSize);
+
+        stockTable = newStockTable;
+        log.info(InventoryConstants.STOCK_TABLE_LOADED + newStockTable.size());
+    }
+
+    @Override
+    public void close() {
+        reconciler.shutdownNow();
+    }
+
+    // write-through: the table gets the change once the transaction of the write is committed (right away when
+    // there is none), so a rolled back write never shows. reconciled: the change shows at the next reconcile.
+    private void applyAfterCommit(final Map<String, Integer> skuQuantities, final int sign) {
+        if (!writeThrough || skuQuantities.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(skuQuantities, sign);
+                }
+            });
+        } else {
+            apply(skuQuantities, sign);
+        }
+    }
+
+    private void apply(final Map<String, Integer> skuQuantities, final int sign) {
+        final StockTable table = stockTable;
+        final List<String> newSkuCodes = new ArrayList<>();
+        skuQuantities.forEach((skuCode, quantity) -> {
+            if (!table.add(skuCode, sign * quantity)) {
+                newSkuCodes.add(skuCode);
+            }
+        });
+
+        // A skuCode just inserted has no slot yet, it's read from MySQL which already has the committed quantity
+        if (!newSkuCodes.isEmpty()) {
+            inventoryRepo.findBySkuCodeIn(newSkuCodes).forEach(inventoryEntity -> table.put(inventoryEntity.getId(),
+                    inventoryEntity.getSkuCode(), quantityOf(inventoryEntity)));
+        }
+    }
+
+    // A failed reconcile must not stop the next ones, the table just stays as it is till then
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (Exception ex) {
+            log.error(InventoryConstants.STOCK_TABLE_NOT_LOADED, ex);
+        }
+    }
+
+    private static int quantityOf(final InventoryEntity inventoryEntity) {
+        return inventoryEntity.getQuantity() == null ? 0 : inventoryEntity.getQuantity();
+    }
+}
@@ -0,0 +1,93 @@
+package com.shopit.inventoryservice.service;
+
+import com.shopit.inventoryservice.constants.InventoryConstants;
+import com.shopit.inventoryservice.entity.ReservationStatus;
+import com.shopit.inventoryservice.exception.ReservationNotFoundException;
+import com.shopit.inventoryservice.repository.ReservationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Every sweep-interval releases the reservations still RESERVED expire-after after they were made, giving their
+// stock back. Order service confirms or releases a reservation right after its order is saved (or given up), and
+// keeps confirming the reservation of a placed order till it's acked (its reconciler), so one left RESERVED that long
+// belongs to no order, e.g. the reserve call timed out after the reservation was committed and the order was placed
+// again or dropped. Without this its stock would stay deducted forever.
+// Every instance sweeps, a reservation confirmed or released meanwhile (or by another instance) is skipped as
+// releaseReservation is a compare-and-set of its status.
+@Service
+@Slf4j
+public class ReservationExpirer implements AutoCloseable {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final InventoryService inventoryService;
+
+    private final ReservationRepository reservationRepo;
+
+    private final Duration expireAfter;
+
+    private final ScheduledExecutorService expirer;
+
+    @Autowired
+    public ReservationExpirer(InventoryService inventoryService, ReservationRepository reservationRepo,
+                              @Value("${inventory.reservation.expire-after}") Duration expireAfter,
+                              @Value("${inventory.reservation.sweep-interval}") Duration sweepInterval) {
+        this.inventoryService = inventoryService;
+        this.reservationRepo = reservationRepo;
+        this.expireAfter = expireAfter;
+
+        this.expirer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("reservation-expirer").daemon().factory());
+        if (sweepInterval.isPositive()) {
+            expirer.scheduleWithFixedDelay(this::expireQuietly, sweepInterval.toMillis(), sweepInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Returns the no. of reservations released, each one in a transaction of its own
+    public int expire() {
+        int released = 0;
+        List<String> reservationIds;
+        do {
+            reservationIds = reservationRepo.findIdsByStatusAndCreatedAtBefore(ReservationStatus.RESERVED,
+                    Instant.now().minus(expireAfter), PageRequest.of(0, PAGE_SIZE));
+            for (String reservationId : reservationIds) {
+                try {
+                    inventoryService.releaseReservation(reservationId);
+                    released++;
+                } catch (ReservationNotFoundException ex) {
+                    // Confirmed or released since it was read
+                }
+            }
+        } while (reservationIds.size() == PAGE_SIZE);
+
+        if (released > 0) {
+            log.info(String.format(InventoryConstants.RESERVATIONS_EXPIRED, released));
+        }
+        return released;
+    }
+
+    @Override
+    public void close() {
+        expirer.shutdownNow();
+    }
+
+    private void expireQuietly() {
+        try {
+            expire();
+        } catch (Exception ex) {
+            // Tried again in the next sweep
+            log.error(InventoryConstants.RESERVATIONS_NOT_EXPIRED, ex);
+        }
+    }
+}
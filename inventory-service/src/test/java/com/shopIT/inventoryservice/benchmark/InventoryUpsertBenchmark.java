@@ -0,0 +1,123 @@
+package com.shopit.inventoryservice.benchmark;
+
+import com.shopit.inventoryservice.entity.InventoryEntity;
+import com.shopit.inventoryservice.repository.InventoryRepositoryCustomImpl;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManager;
+import org.h2.tools.Server;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Rows (skuCode quantities) added per second (the rows counter, the score is calls/sec) against an in-memory H2 DB in MySQL mode, served over TCP on loopback
+// so every statement is a round trip like with MySQL (a much shorter one though):
+// - findThenSave: how addInInventory used to add a skuCode, find it by skuCode then insert or update it, one
+//   transaction (i.e. one HTTP call) per skuCode.
+// - bulkUpsert: InventoryRepositoryCustomImpl.upsertStock, one INSERT ... ON DUPLICATE KEY UPDATE per skuCode sent
+//   in JDBC batches of 1000 (inventory.bulk-upsert.batch-size), all in one transaction.
+// Half the skuCodes of every call are new and half were added before. With MySQL's rewriteBatchedStatements a batch
+// is also a single multi-row statement, which H2 doesn't do, so bulkUpsert only gets faster there.
+//
+// Run: mvn -pl inventory-service -Pbenchmark test-compile exec:exec -Dbenchmark=InventoryUpsertBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryUpsertBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int rows;
+
+    private Server h2Server;
+
+    private HikariDataSource dataSource;
+
+    private SessionFactory sessionFactory;
+
+    private final InventoryRepositoryCustomImpl inventoryRepoImpl = new InventoryRepositoryCustomImpl();
+
+    private int calls;
+
+    @Setup
+    public void setUp() throws SQLException {
+        h2Server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:tcp://localhost:" + h2Server.getPort()
+                + "/mem:inventory;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(1);
+
+        final Configuration configuration = new Configuration().addAnnotatedClass(InventoryEntity.class);
+        configuration.getProperties().put(AvailableSettings.DATASOURCE, dataSource);
+        configuration.setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop");
+        // Same naming as Spring Boot, i.e. the inventory_entity.sku_code of the upsert statement
+        configuration.setPhysicalNamingStrategy(
+                new org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy());
+        sessionFactory = configuration.buildSessionFactory();
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+        dataSource.close();
+        h2Server.stop();
+    }
+
+    @Benchmark
+    public void findThenSave(RowCounter rowCounter) {
+        rowCounter.rows += rows;
+        skuQuantities().forEach((skuCode, quantity) -> sessionFactory.inTransaction(session -> {
+            final InventoryEntity inventoryEntity = session
+                    .createQuery("from InventoryEntity i where i.skuCode = :skuCode", InventoryEntity.class)
+                    .setParameter("skuCode", skuCode)
+                    .uniqueResult();
+            if (inventoryEntity == null) {
+                session.persist(InventoryEntity.builder().skuCode(skuCode).quantity(quantity).build());
+            }
+            else {
+                inventoryEntity.setQuantity(inventoryEntity.getQuantity() + quantity);
+            }
+        }));
+    }
+
+    @Benchmark
+    public void bulkUpsert(RowCounter rowCounter) {
+        rowCounter.rows += rows;
+        final Map<String, Integer> skuQuantities = skuQuantities();
+        sessionFactory.inTransaction(session -> {
+            ReflectionTestUtils.setField(inventoryRepoImpl, "entityManager", (EntityManager) session);
+            inventoryRepoImpl.upsertStock(skuQuantities, 1000);
+        });
+    }
+
+    // Rows added, reported by JMH as rows/s next to the calls/s of the benchmark
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    // rows skuCodes, the first half added by the previous call
+    private Map<String, Integer> skuQuantities() {
+        final int first = calls++ * rows / 2;
+        final Map<String, Integer> skuQuantities = new TreeMap<>();
+        for (int i = first; i < first + rows; i++) {
+            skuQuantities.put("SKU-" + i, 1);
+        }
+        return skuQuantities;
+    }
+}
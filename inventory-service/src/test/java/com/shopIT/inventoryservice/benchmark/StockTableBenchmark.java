@@ -0,0 +1,82 @@
+package com.shopit.inventoryservice.benchmark;
+
+import com.shopit.inventoryservice.config.StockTable;
+import com.shopit.inventoryservice.dto.InventoryDtoResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// skuCode lookups per second in memory, for inventories of 10k to 1M skuCodes:
+// - stockTable: StockTable.quantity, what quantityInStock reads per skuCode (see InventoryStockCache).
+// - dtoMap: the straightforward alternative, a ConcurrentHashMap of skuCode to InventoryDtoResponse.
+// The skuCodes looked up are other String instances than the ones in the table, like the ones of a request, and
+// random so that big tables don't fit in the CPU caches. Both allocate nothing per lookup and are in the same range
+// (a hash lookup is most of the cost and it's the same in both), millions of lookups per second against a MySQL
+// round trip per findBySkuCodeIn. What StockTable adds is updating a quantity with an atomic add in place, instead of
+// replacing an object per write, and only the key and its slot no. kept per skuCode instead of a DTO.
+//
+// Run: mvn -pl inventory-service -Pbenchmark test-compile exec:exec -Dbenchmark=StockTableBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockTableBenchmark {
+
+    private static final int LOOKUP_KEYS = 1 << 16;
+
+    @Param({"10000", "100000", "1000000"})
+    private int skuCodes;
+
+    private StockTable stockTable;
+
+    private Map<String, InventoryDtoResponse> dtoMap;
+
+    private String[] lookupKeys;
+
+    @Setup
+    public void setUp() {
+        stockTable = new StockTable(skuCodes);
+        dtoMap = new ConcurrentHashMap<>(skuCodes);
+        for (int i = 0; i < skuCodes; i++) {
+            final String skuCode = skuCode(i);
+            stockTable.put(i + 1, skuCode, i % 100);
+            dtoMap.put(skuCode, InventoryDtoResponse.builder().id(i + 1).skuCode(skuCode).quantity(i % 100).build());
+        }
+
+        lookupKeys = new String[LOOKUP_KEYS];
+        for (int i = 0; i < LOOKUP_KEYS; i++) {
+            lookupKeys[i] = new String(skuCode(ThreadLocalRandom.current().nextInt(skuCodes)));
+        }
+    }
+
+    @Benchmark
+    public int stockTable(Cursor cursor) {
+        return stockTable.quantity(lookupKeys[cursor.next()]);
+    }
+
+    @Benchmark
+    public int dtoMap(Cursor cursor) {
+        return dtoMap.get(lookupKeys[cursor.next()]).getQuantity();
+    }
+
+    private static String skuCode(int i) {
+        return "SKU-" + i;
+    }
+
+    // Next lookup key of the thread
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        int next() {
+            position = (position + 1) & (LOOKUP_KEYS - 1);
+            return position;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.shopit.inventoryservice.config;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.SimpleBucketListener;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A local Bucket4j bucket stands in for the Redis bucket that all the instances share. It counts the calls made
+// to it, i.e. the Redis round trips.
+class LeasedBucketTest {
+
+    private static final int CAPACITY = 1000;
+
+    private final CountingListener remoteCalls = new CountingListener();
+
+    // Refills once per hour, so nothing is refilled while a test runs
+    private final Bucket remoteBucket = Bucket.builder()
+            .addLimit(Bandwidth.classic(CAPACITY, Refill.intervally(CAPACITY, Duration.ofHours(1))))
+            .build()
+            .toListenable(remoteCalls);
+
+    @Test
+    void globalLimitHoldsAcrossInstances() throws InterruptedException {
+        final int instances = 8;
+        final int threadsPerInstance = 4;
+        final int attemptsPerThread = 500; // 16000 attempts for 1000 tokens
+        final List<LeasedBucket> leasedBuckets = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            leasedBuckets.add(new LeasedBucket(remoteBucket, 10, Duration.ofSeconds(30)));
+        }
+
+        final AtomicInteger admitted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executorService = Executors.newFixedThreadPool(instances * threadsPerInstance);
+        for (LeasedBucket leasedBucket : leasedBuckets) {
+            for (int t = 0; t < threadsPerInstance; t++) {
+                executorService.submit(() -> {
+                    start.await();
+                    for (int a = 0; a < attemptsPerThread; a++) {
+                        if (leasedBucket.tryConsume(1)) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        start.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertTrue(admitted.get() <= CAPACITY, "Admitted " + admitted.get() + " of " + CAPACITY);
+
+        // Tokens still leased go back, none got lost or were admitted twice
+        leasedBuckets.forEach(LeasedBucket::release);
+        assertEquals(CAPACITY, admitted.get() + remoteBucket.getAvailableTokens());
+    }
+
+    @Test
+    void consumesLocallyUntilLeaseIsUsedUp() {
+        final LeasedBucket leasedBucket = new LeasedBucket(remoteBucket, 10, Duration.ofSeconds(30));
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(leasedBucket.tryConsume(1));
+        }
+
+        assertEquals(10, remoteCalls.calls.get()); // One Redis call per 10 requests instead of per request
+        assertEquals(CAPACITY - 100, remoteBucket.getAvailableTokens());
+    }
+
+    @Test
+    void expiredLeaseIsGivenBack() throws InterruptedException {
+        final LeasedBucket leasedBucket = new LeasedBucket(remoteBucket, 10, Duration.ofMillis(50));
+        assertTrue(leasedBucket.tryConsume(1));
+        assertEquals(CAPACITY - 10, remoteBucket.getAvailableTokens());
+
+        Thread.sleep(100);
+        assertTrue(leasedBucket.tryConsume(1));
+
+        // The 9 unused tokens of the first lease were given back before leasing 10 again
+        assertEquals(CAPACITY - 11, remoteBucket.getAvailableTokens());
+    }
+
+    @Test
+    void expiredLeaseOfIdleUserIsGivenBackWithoutARequest() throws InterruptedException {
+        final LeasedBucket leasedBucket = new LeasedBucket(remoteBucket, 10, Duration.ofMillis(50));
+        assertTrue(leasedBucket.tryConsume(1));
+
+        // Not expired yet, the lease stays with this instance
+        leasedBucket.releaseIfExpired();
+        assertEquals(CAPACITY - 10, remoteBucket.getAvailableTokens());
+
+        Thread.sleep(100);
+        leasedBucket.releaseIfExpired();
+
+        // The user sent no request since, the 9 unused tokens went back anyway
+        assertEquals(CAPACITY - 1, remoteBucket.getAvailableTokens());
+        assertEquals(0, leasedBucket.getAvailableTokens());
+        assertTrue(leasedBucket.tryConsume(1));
+        assertEquals(CAPACITY - 11, remoteBucket.getAvailableTokens());
+    }
+
+    @Test
+    void releasedBucketConsumesFromRemoteWithoutLeasing() {
+        final LeasedBucket leasedBucket = new LeasedBucket(remoteBucket, 10, Duration.ofSeconds(30));
+        assertTrue(leasedBucket.tryConsume(1));
+
+        leasedBucket.release();
+        // A request that got the bucket before it was replaced still goes through it
+        assertTrue(leasedBucket.tryConsume(1));
+
+        // Only the 2 admitted tokens are gone, nothing is left leased in the released bucket
+        assertEquals(0, leasedBucket.getAvailableTokens());
+        assertEquals(CAPACITY - 2, remoteBucket.getAvailableTokens());
+    }
+
+    @Test
+    void rejectsWhenRemoteBucketIsEmpty() {
+        remoteBucket.tryConsumeAsMuchAsPossible();
+        final LeasedBucket leasedBucket = new LeasedBucket(remoteBucket, 10, Duration.ofSeconds(30));
+
+        assertFalse(leasedBucket.tryConsume(1));
+        assertEquals(0, leasedBucket.getAvailableTokens());
+    }
+
+    private static class CountingListener extends SimpleBucketListener {
+
+        private final AtomicLong calls = new AtomicLong();
+
+        @Override
+        public void onConsumed(long tokens) {
+            calls.incrementAndGet();
+            super.onConsumed(tokens);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.shopit.inventoryservice.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockTableTest {
+
+    @Test
+    void putAddAndMissing() {
+        final StockTable stockTable = new StockTable(16);
+        stockTable.put(7, "OnePlus 11R", 10);
+
+        assertTrue(stockTable.add("OnePlus 11R", -3));
+        assertFalse(stockTable.add("Pixel 8", 1));
+
+        assertEquals(7, stockTable.quantity("OnePlus 11R"));
+        assertEquals(7, stockTable.id("OnePlus 11R"));
+        assertEquals(StockTable.MISSING, stockTable.quantity("Pixel 8"));
+
+        // Put again sets the quantity read from the DB, the skuCode keeps its slot
+        stockTable.put(7, "OnePlus 11R", 20);
+        assertEquals(20, stockTable.quantity("OnePlus 11R"));
+        assertEquals(1, stockTable.size());
+    }
+
+    @Test
+    void putAgainTakesTheNewId() {
+        final StockTable stockTable = new StockTable(16);
+        stockTable.put(7, "OnePlus 11R", 10);
+
+        // Row deleted and inserted again, the reload finds it with another id
+        stockTable.put(12, "OnePlus 11R", 4);
+        assertEquals(12, stockTable.id("OnePlus 11R"));
+        assertEquals(4, stockTable.quantity("OnePlus 11R"));
+        assertEquals(1, stockTable.size());
+    }
+
+    @Test
+    void growsPastOneSegment() {
+        final StockTable stockTable = new StockTable(16);
+        for (int i = 0; i < 10_000; i++) {
+            stockTable.put(i, "SKU-" + i, i * 2);
+        }
+
+        assertEquals(10_000, stockTable.size());
+        for (int i = 0; i < 10_000; i += 997) {
+            assertEquals(i * 2, stockTable.quantity("SKU-" + i));
+            assertEquals(i, stockTable.id("SKU-" + i));
+        }
+    }
+
+    @Test
+    void concurrentWritesAreNotLost() throws Exception {
+        final StockTable stockTable = new StockTable(16);
+        stockTable.put(1, "SKU-0", 0);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int thread = 0; thread < 8; thread++) {
+                final int offset = thread * 1000;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        stockTable.add("SKU-0", 1);
+                        stockTable.put(offset + i, "NEW-" + (offset + i), 1); // Appends new slots meanwhile
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(8000, stockTable.quantity("SKU-0"));
+        assertEquals(8001, stockTable.size());
+    }
+}
@@ -0,0 +1,148 @@
+package com.shopit.inventoryservice.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.embedded.EmbeddedWebServerFactoryCustomizerAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Boots Tomcat and Spring MVC with spring.threads.virtual.enabled=true (and only VirtualThreadConfig of this
+// service's beans) and checks the requests run on virtual threads, so their no. is no longer capped by the pool.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.threads.virtual.enabled=true",
+                "server.tomcat.threads.max=" + VirtualThreadConcurrencyTest.TOMCAT_MAX_THREADS})
+class VirtualThreadConcurrencyTest {
+
+    static final int TOMCAT_MAX_THREADS = 4;
+    private static final int CONCURRENT_REQUESTS = 50;
+
+    private static final CountDownLatch blockedRequests = new CountDownLatch(CONCURRENT_REQUESTS);
+
+    private final Object lock = new Object();
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void requestsRunOnVirtualThreads() throws Exception {
+        assertEquals("true", get("/thread/isVirtual").join());
+        // Async request processing (Callable, DeferredResult) runs on applicationTaskExecutor
+        assertEquals("true", get("/thread/async/isVirtual").join());
+    }
+
+    @Test
+    void moreRequestsBlockAtOnceThanTomcatHasThreads() {
+        // Each request blocks till all of them are in, which a pool of TOMCAT_MAX_THREADS threads could never serve
+        final List<CompletableFuture<String>> responses = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            responses.add(get("/thread/blocked"));
+        }
+
+        for (CompletableFuture<String> response : responses) {
+            assertEquals("true", response.join());
+        }
+    }
+
+    @Test
+    void pinningInsideSynchronizedIsDetected() throws Exception {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        try (VirtualThreadPinningMonitor monitor =
+                     new VirtualThreadPinningMonitor(meterRegistry, Duration.ofMillis(10))) {
+            // Blocking while holding a monitor pins the virtual thread, like the synchronized sections in the
+            // Redisson/JCache path do
+            Thread.ofVirtual().start(() -> {
+                synchronized (lock) {
+                    sleep(50);
+                }
+            }).join();
+
+            // JFR streams the events asynchronously (flushed about every second)
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (monitor.getPinnedCount() == 0 && System.nanoTime() < deadline) {
+                sleep(100);
+            }
+            assertTrue(monitor.getPinnedCount() >= 1);
+        }
+    }
+
+    private CompletableFuture<String> get(final String path) {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/shopit" + path))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(HttpResponse::body);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Configuration
+    @ImportAutoConfiguration({ServletWebServerFactoryAutoConfiguration.class,
+            EmbeddedWebServerFactoryCustomizerAutoConfiguration.class, DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class,
+            TaskExecutionAutoConfiguration.class})
+    @Import({VirtualThreadConfig.class, ThreadController.class})
+    static class VirtualThreadTestConfig {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @RestController
+    static class ThreadController {
+
+        @GetMapping("/thread/isVirtual")
+        public boolean isVirtual() {
+            return Thread.currentThread().isVirtual();
+        }
+
+        @GetMapping("/thread/async/isVirtual")
+        public Callable<Boolean> isVirtualAsync() {
+            return () -> Thread.currentThread().isVirtual();
+        }
+
+        @GetMapping("/thread/blocked")
+        public boolean blocked() throws InterruptedException {
+            blockedRequests.countDown();
+            return blockedRequests.await(20, TimeUnit.SECONDS);
+        }
+    }
+}
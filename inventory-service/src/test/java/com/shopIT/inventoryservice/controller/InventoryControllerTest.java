@@ -1,26 +1,29 @@
 package com.shopit.inventoryservice.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shopit.inventoryservice.config.InMemoryIdempotencyStore;
 import com.shopit.inventoryservice.config.RateLimitConfig;
+import com.shopit.inventoryservice.config.RateLimitInterceptor;
 import com.shopit.inventoryservice.constants.InventoryConstants;
 import com.shopit.inventoryservice.dto.InventoryDtoRequest;
 import com.shopit.inventoryservice.dto.InventoryDtoResponse;
+import com.shopit.inventoryservice.exception.InventoryControllerAdvice;
+import com.shopit.inventoryservice.service.IdempotentRequests;
 import com.shopit.inventoryservice.service.InventoryService;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
 import io.github.bucket4j.Refill;
-import jakarta.servlet.ServletException;
-import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -28,11 +31,14 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -47,12 +53,19 @@ class InventoryControllerTest {
     @Mock
     private RateLimitConfig rateLimitConfig;
 
+    @Spy
+    private IdempotentRequests idempotentRequests =
+            new IdempotentRequests(new InMemoryIdempotencyStore(), Duration.ofHours(24), Duration.ofSeconds(30));
+
     private MockMvc mockMvc;
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
     @BeforeEach
     void mockMvcSetup() {
-        mockMvc = MockMvcBuilders.standaloneSetup(inventoryController).build();
+        mockMvc = MockMvcBuilders.standaloneSetup(inventoryController)
+                .addInterceptors(new RateLimitInterceptor(rateLimitConfig, "gaurav", Map.of()))
+                .setControllerAdvice(new InventoryControllerAdvice())
+                .build();
 
     }
 
@@ -64,8 +77,6 @@ class InventoryControllerTest {
                 .skuCode("OnePlus 11R")
                 .build();
 
-        // Set the value using reflection
-        ReflectionTestUtils.setField(inventoryController, "username", "gaurav");
 
         Bucket bucket = Bucket4j.builder().addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
 
@@ -83,17 +94,18 @@ class InventoryControllerTest {
 
     @Test
     void quantityInStockTestInvalid() throws Exception {
-        // Set the value using reflection
-        ReflectionTestUtils.setField(inventoryController, "username", "gaurav");
 
         Bucket bucket = Bucket4j.builder().addLimit(Bandwidth.classic(1, Refill.intervally(1, Duration.ofMinutes(1)))).build();
         bucket.tryConsume(1);
 
         Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
 
-        Assertions.assertThrows(ServletException.class, () -> mockMvc.perform(get("/inventory/quantity?skuCode='OnePlus 11R'")
-                .contentType(MediaType.APPLICATION_JSON))
-        );
+        ResultActions resultAction = mockMvc.perform(get("/inventory/quantity?skuCode='OnePlus 11R'")
+                .contentType(MediaType.APPLICATION_JSON));
+
+        resultAction.andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "60"))
+                .andExpect(header().string(InventoryConstants.RATE_LIMIT_REMAINING, "0"));
     }
 
     @Test
@@ -103,8 +115,6 @@ class InventoryControllerTest {
                 .skuCode("OnePlus 11R")
                 .build();
 
-        // Set the value using reflection
-        ReflectionTestUtils.setField(inventoryController, "username", "gaurav");
 
         Bucket bucket = Bucket4j.builder().addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
 
@@ -127,17 +137,73 @@ class InventoryControllerTest {
                 .skuCode("OnePlus 11R")
                 .build();
 
-        // Set the value using reflection
-        ReflectionTestUtils.setField(inventoryController, "username", "gaurav");
 
         Bucket bucket = Bucket4j.builder().addLimit(Bandwidth.classic(1, Refill.intervally(1, Duration.ofMinutes(1)))).build();
         bucket.tryConsume(1);
 
         Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
 
-        Assertions.assertThrows(ServletException.class, () -> mockMvc.perform(post("/inventory/addInInventory")
+        ResultActions resultAction = mockMvc.perform(post("/inventory/addInInventory")
                 .content(objectMapper.writeValueAsString(inventoryDtoRequest))
-                .contentType(MediaType.APPLICATION_JSON))
-        );
+                .contentType(MediaType.APPLICATION_JSON));
+
+        resultAction.andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "60"))
+                .andExpect(header().string(InventoryConstants.RATE_LIMIT_REMAINING, "0"));
+    }
+
+    @Test
+    void addInInventoryRetryIsReplayed() throws Exception {
+        InventoryDtoRequest inventoryDtoRequest = InventoryDtoRequest.builder()
+                .quantity(101)
+                .skuCode("OnePlus 11R")
+                .build();
+
+        Bucket bucket = Bucket4j.builder().addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
+
+        Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
+        Mockito.when(inventoryService.addInInventory(any(InventoryDtoRequest.class))).thenReturn(1);
+
+        mockMvc.perform(post("/inventory/addInInventory")
+                        .header(InventoryConstants.IDEMPOTENCY_KEY, "key-1")
+                        .content(objectMapper.writeValueAsString(inventoryDtoRequest))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(InventoryConstants.IDEMPOTENT_REPLAYED));
+
+        // Retry of the same request, the quantity is not added again
+        mockMvc.perform(post("/inventory/addInInventory")
+                        .header(InventoryConstants.IDEMPOTENCY_KEY, "key-1")
+                        .content(objectMapper.writeValueAsString(inventoryDtoRequest))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(InventoryConstants.IDEMPOTENT_REPLAYED, "true"))
+                .andExpect(content().string(InventoryConstants.ADDED_IN_INVENTORY + 1));
+
+        Mockito.verify(inventoryService, times(1)).addInInventory(any(InventoryDtoRequest.class));
+    }
+
+    @Test
+    void addInInventoryKeyReusedForAnotherRequest() throws Exception {
+        Bucket bucket = Bucket4j.builder().addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
+
+        Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
+        Mockito.when(inventoryService.addInInventory(any(InventoryDtoRequest.class))).thenReturn(1);
+
+        mockMvc.perform(post("/inventory/addInInventory")
+                        .header(InventoryConstants.IDEMPOTENCY_KEY, "key-2")
+                        .content(objectMapper.writeValueAsString(InventoryDtoRequest.builder()
+                                .quantity(101).skuCode("OnePlus 11R").build()))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/inventory/addInInventory")
+                        .header(InventoryConstants.IDEMPOTENCY_KEY, "key-2")
+                        .content(objectMapper.writeValueAsString(InventoryDtoRequest.builder()
+                                .quantity(5).skuCode("OnePlus 11R").build()))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnprocessableEntity());
+
+        Mockito.verify(inventoryService, times(1)).addInInventory(any(InventoryDtoRequest.class));
     }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.shopit.inventoryservice.service;
+
+import com.shopit.inventoryservice.config.InventoryChangeFeed;
+import com.shopit.inventoryservice.dto.InventoryChangeRow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Embedded stand-in for the Redis Stream in tests, keeps the published events in order
+public class InMemoryInventoryChangeFeed implements InventoryChangeFeed {
+
+    private final List<InventoryChangeRow> changes = new ArrayList<>();
+
+    @Override
+    public synchronized void publish(List<InventoryChangeRow> changes) {
+        changes.forEach(change ->
+                this.changes.add(new InventoryChangeRow(change.getSkuCode(), change.getQuantity(), change.getVersion())));
+    }
+
+    // Published quantities of the skuCode, oldest first
+    public synchronized List<Integer> quantities(final String skuCode) {
+        return changes(skuCode).map(InventoryChangeRow::getQuantity).toList();
+    }
+
+    // Published quantities of the skuCode ordered by their version, i.e. by the commits of the skuCode
+    public synchronized List<Integer> quantitiesByVersion(final String skuCode) {
+        return changes(skuCode).sorted(Comparator.comparingLong(InventoryChangeRow::getVersion))
+                .map(InventoryChangeRow::getQuantity)
+                .toList();
+    }
+
+    public synchronized List<Long> versions(final String skuCode) {
+        return changes(skuCode).map(InventoryChangeRow::getVersion).toList();
+    }
+
+    public synchronized void clear() {
+        changes.clear();
+    }
+
+    private Stream<InventoryChangeRow> changes(final String skuCode) {
+        return changes.stream().filter(change -> change.getSkuCode().equals(skuCode));
+    }
+}
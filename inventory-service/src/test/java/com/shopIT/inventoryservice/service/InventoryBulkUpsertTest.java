@@ -0,0 +1,157 @@
+package com.shopit.inventoryservice.service;
+
+import com.shopit.inventoryservice.dto.InventoryDtoRequest;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoRequest;
+import com.shopit.inventoryservice.entity.InventoryEntity;
+import com.shopit.inventoryservice.exception.InvalidInventoryException;
+import com.shopit.inventoryservice.repository.InventoryRepository;
+import com.shopit.inventoryservice.repository.ReservationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// H2 in MySQL mode runs the same INSERT ... ON DUPLICATE KEY UPDATE as MySQL. Test level transaction is disabled so
+// that every call commits like it does in the service.
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.datasource.url=jdbc:h2:mem:inventory;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "inventory.bulk-upsert.batch-size=3"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({InventoryService.class, InventoryStockCache.class, InventoryChangePublisher.class,
+        InMemoryInventoryChangeFeed.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryBulkUpsertTest {
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private InventoryRepository inventoryRepo;
+
+    @Autowired
+    private ReservationRepository reservationRepo;
+
+    @AfterEach
+    void cleanUp() {
+        reservationRepo.deleteAll();
+        inventoryRepo.deleteAll();
+    }
+
+    @Test
+    void newSkuCodesAreInsertedAndExistingOnesAdded() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("SKU-0").quantity(10).build());
+
+        // More skuCodes than the batch size, and SKU-1 twice
+        final List<InventoryDtoRequest> inventoryDtoRequestList = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            inventoryDtoRequestList.add(InventoryDtoRequest.builder().skuCode("SKU-" + i).quantity(5).build());
+        }
+        inventoryDtoRequestList.add(InventoryDtoRequest.builder().skuCode("SKU-1").quantity(1).build());
+
+        assertEquals(7, inventoryService.bulkUpsert(inventoryDtoRequestList));
+
+        assertEquals(7, inventoryRepo.count());
+        assertEquals(15, inventoryRepo.findBySkuCode("SKU-0").orElseThrow().getQuantity());
+        assertEquals(6, inventoryRepo.findBySkuCode("SKU-1").orElseThrow().getQuantity());
+        assertEquals(5, inventoryRepo.findBySkuCode("SKU-6").orElseThrow().getQuantity());
+    }
+
+    @Test
+    void concurrentUpsertsOfNewSkuCodeKeepOneRow() throws Exception {
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return inventoryService.bulkUpsert(List.of(
+                            InventoryDtoRequest.builder().skuCode("OnePlus 11R").quantity(1).build()));
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                result.get();
+            }
+        }
+
+        assertEquals(1, inventoryRepo.count());
+        assertEquals(threads, inventoryRepo.findBySkuCode("OnePlus 11R").orElseThrow().getQuantity());
+    }
+
+    @Test
+    void concurrentAddsAndReservationsLoseNoUpdate() throws Exception {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(100).build());
+
+        final int threads = 8;
+        final int calls = 25;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                final boolean adds = i % 2 == 0;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int call = 0; call < calls; call++) {
+                        if (adds) {
+                            inventoryService.addInInventory(InventoryDtoRequest.builder()
+                                    .skuCode("OnePlus 11R")
+                                    .quantity(2)
+                                    .build());
+                        } else {
+                            inventoryService.reserve(InventoryReservationDtoRequest.builder()
+                                    .inventoryDtoRequestList(List.of(InventoryDtoRequest.builder()
+                                            .skuCode("OnePlus 11R")
+                                            .quantity(1)
+                                            .build()))
+                                    .build());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+
+        // 100 to start with, + 4 * 25 * 2 added, - 4 * 25 reserved
+        assertEquals(200, inventoryRepo.findBySkuCode("OnePlus 11R").orElseThrow().getQuantity());
+        assertEquals(100, reservationRepo.count());
+    }
+
+    @Test
+    void duplicateSkuCodeRowIsRejected() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(1).build());
+
+        assertThrows(DataIntegrityViolationException.class, () ->
+                inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(1).build()));
+    }
+
+    @Test
+    void invalidQuantityAddsNothing() {
+        final List<InventoryDtoRequest> inventoryDtoRequestList = List.of(
+                InventoryDtoRequest.builder().skuCode("SKU-0").quantity(5).build(),
+                InventoryDtoRequest.builder().skuCode("SKU-1").quantity(0).build());
+
+        assertThrows(InvalidInventoryException.class, () -> inventoryService.bulkUpsert(inventoryDtoRequestList));
+        assertEquals(0, inventoryRepo.count());
+    }
+}
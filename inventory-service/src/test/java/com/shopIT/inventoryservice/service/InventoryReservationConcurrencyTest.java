@@ -0,0 +1,296 @@
+package com.shopit.inventoryservice.service;
+
+import com.shopit.inventoryservice.constants.InventoryConstants;
+import com.shopit.inventoryservice.dto.InventoryBatchReservationDtoRequest;
+import com.shopit.inventoryservice.dto.InventoryDtoRequest;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoRequest;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoResponse;
+import com.shopit.inventoryservice.entity.InventoryEntity;
+import com.shopit.inventoryservice.exception.ProductNotInStockException;
+import com.shopit.inventoryservice.exception.ReservationNotFoundException;
+import com.shopit.inventoryservice.repository.InventoryRepository;
+import com.shopit.inventoryservice.repository.ReservationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Runs against an in-memory DB (not mocks) because the guarantee under test is given by the conditional UPDATE
+// itself. Test level transaction is disabled so that every thread commits its own reservation.
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Import({InventoryService.class, InventoryStockCache.class, InventoryChangePublisher.class,
+        InMemoryInventoryChangeFeed.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryReservationConcurrencyTest {
+
+    private static final int STOCK = 50;
+    private static final int THREADS = 16;
+    private static final int RESERVATIONS = 400;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private InventoryStockCache inventoryStockCache;
+
+    @Autowired
+    private InventoryRepository inventoryRepo;
+
+    @Autowired
+    private ReservationRepository reservationRepo;
+
+    @Autowired
+    private InMemoryInventoryChangeFeed inventoryChangeFeed;
+
+    @Autowired
+    private InventoryChangePublisher inventoryChangePublisher;
+
+    @AfterEach
+    void cleanUp() {
+        reservationRepo.deleteAll();
+        inventoryRepo.deleteAll();
+        inventoryChangeFeed.clear();
+    }
+
+    @Test
+    void concurrentReservationsOfSameSkuNeverOversell() throws Exception {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(STOCK).build());
+        inventoryStockCache.reconcile(); // Saved directly, not through the service
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger reserved = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        final List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < RESERVATIONS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    inventoryService.reserve(reservationOf("OnePlus 11R", 1));
+                    reserved.incrementAndGet();
+                } catch (ProductNotInStockException ex) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(STOCK, reserved.get());
+        assertEquals(RESERVATIONS - STOCK, rejected.get());
+        assertEquals(0, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+        assertEquals(STOCK, reservationRepo.count());
+        // Every committed reservation (and only those) deducted from the stock table too
+        assertEquals(0, inventoryService.quantityInStock(List.of("OnePlus 11R")).get(0).getQuantity());
+        // One event per committed reservation, each with its own version. Published after the commits, so possibly
+        // out of order, but ordered by version they are the commits: STOCK - 1 down to 0
+        assertEquals(STOCK, Set.copyOf(inventoryChangeFeed.versions("OnePlus 11R")).size());
+        final List<Integer> published = inventoryChangeFeed.quantitiesByVersion("OnePlus 11R");
+        assertEquals(STOCK, published.size());
+        for (int i = 0; i < STOCK; i++) {
+            assertEquals(STOCK - 1 - i, published.get(i));
+        }
+    }
+
+    @Test
+    void publishAllRepublishesQuantitiesWhoseEventWasLost() {
+        // Saved directly, as if their events were never published
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(5).version(3).build());
+        inventoryRepo.save(InventoryEntity.builder().skuCode("Pixel 8").quantity(0).version(7).build());
+        inventoryRepo.save(InventoryEntity.builder().skuCode("iPhone 15").quantity(2).build());
+
+        // Pages of 2 skuCodes
+        assertEquals(3, inventoryChangePublisher.publishAll(2));
+
+        assertEquals(List.of(5), inventoryChangeFeed.quantities("OnePlus 11R"));
+        assertEquals(List.of(3L), inventoryChangeFeed.versions("OnePlus 11R"));
+        assertEquals(List.of(0), inventoryChangeFeed.quantities("Pixel 8"));
+        assertEquals(List.of(7L), inventoryChangeFeed.versions("Pixel 8"));
+        assertEquals(List.of(2), inventoryChangeFeed.quantities("iPhone 15"));
+    }
+
+    @Test
+    void reservationIsAllOrNothing() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(5).build());
+        inventoryRepo.save(InventoryEntity.builder().skuCode("Pixel 8").quantity(1).build());
+
+        final InventoryReservationDtoRequest request = InventoryReservationDtoRequest.builder()
+                .inventoryDtoRequestList(List.of(
+                        InventoryDtoRequest.builder().skuCode("OnePlus 11R").quantity(2).build(),
+                        InventoryDtoRequest.builder().skuCode("Pixel 8").quantity(2).build()))
+                .build();
+
+        assertThrows(ProductNotInStockException.class, () -> inventoryService.reserve(request));
+
+        assertEquals(5, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+        assertEquals(1, inventoryRepo.findBySkuCode("Pixel 8").get().getQuantity());
+        assertEquals(0, reservationRepo.count());
+        // Rolled back, so nothing was published
+        assertEquals(List.of(), inventoryChangeFeed.quantities("OnePlus 11R"));
+    }
+
+    @Test
+    void releaseGivesStockBackOnlyOnce() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(5).build());
+
+        // Same skuCode twice in one order is reserved as a single aggregated quantity
+        final String reservationId = inventoryService.reserve(InventoryReservationDtoRequest.builder()
+                .inventoryDtoRequestList(List.of(
+                        InventoryDtoRequest.builder().skuCode("OnePlus 11R").quantity(1).build(),
+                        InventoryDtoRequest.builder().skuCode("OnePlus 11R").quantity(2).build()))
+                .build());
+        assertEquals(2, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+
+        inventoryService.releaseReservation(reservationId);
+        assertEquals(5, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+
+        assertThrows(ReservationNotFoundException.class, () -> inventoryService.releaseReservation(reservationId));
+        assertThrows(ReservationNotFoundException.class, () -> inventoryService.confirmReservation(reservationId));
+        assertEquals(5, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+        assertEquals(List.of(2, 5), inventoryChangeFeed.quantities("OnePlus 11R"));
+        assertEquals(List.of(1L, 2L), inventoryChangeFeed.versions("OnePlus 11R"));
+    }
+
+    @Test
+    void repeatedReservationIdIsReservedOnce() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(5).build());
+
+        // A retried call of order service sends the same reservationId again
+        final InventoryReservationDtoRequest request = reservationOf("OnePlus 11R", 2);
+        request.setReservationId("order-reservation-1");
+
+        assertEquals("order-reservation-1", inventoryService.reserve(request));
+        assertEquals("order-reservation-1", inventoryService.reserve(request));
+
+        assertEquals(3, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+        assertEquals(1, reservationRepo.count());
+        assertEquals(List.of(3), inventoryChangeFeed.quantities("OnePlus 11R"));
+    }
+
+    @Test
+    void repeatedBatchReservesOnlyWhatWasNotReserved() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(5).build());
+        final InventoryReservationDtoRequest first = reservationOf("OnePlus 11R", 2);
+        first.setReservationId("order-1");
+        final InventoryReservationDtoRequest second = reservationOf("OnePlus 11R", 2);
+        second.setReservationId("order-2");
+        final InventoryReservationDtoRequest duplicate = reservationOf("OnePlus 11R", 1);
+        duplicate.setReservationId("order-2");
+
+        // order-1 was reserved by the attempt whose response order service didn't get
+        inventoryService.reserve(first);
+        final List<InventoryReservationDtoResponse> results = inventoryService.reserveBatch(
+                InventoryBatchReservationDtoRequest.builder()
+                        .reservationDtoRequestList(List.of(first, second, duplicate))
+                        .build());
+
+        assertEquals(List.of("order-1", "order-2"), results.subList(0, 2).stream()
+                .map(InventoryReservationDtoResponse::getReservationId).toList());
+        assertEquals(List.of(InventoryConstants.RESERVED, InventoryConstants.RESERVED, InventoryConstants.INVALID),
+                results.stream().map(InventoryReservationDtoResponse::getStatus).toList());
+        assertEquals(1, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+        assertEquals(2, reservationRepo.count());
+
+        // Released meanwhile (e.g. expired), it isn't reserved again
+        inventoryService.releaseReservation("order-1");
+        assertEquals(InventoryConstants.OUT_OF_STOCK, inventoryService.reserveBatch(
+                InventoryBatchReservationDtoRequest.builder()
+                        .reservationDtoRequestList(List.of(first))
+                        .build()).get(0).getStatus());
+        assertEquals(3, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+    }
+
+    @Test
+    void confirmationCanBeRepeated() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(5).build());
+        final String reservationId = inventoryService.reserve(reservationOf("OnePlus 11R", 2));
+
+        // A retried confirmation of order service
+        inventoryService.confirmReservation(reservationId);
+        inventoryService.confirmReservation(reservationId);
+
+        assertThrows(ReservationNotFoundException.class, () -> inventoryService.releaseReservation(reservationId));
+        assertEquals(3, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+    }
+
+    @Test
+    void batchIsConfirmedAndReleasedOnce() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(10).build());
+        final List<String> reservationIds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            reservationIds.add(inventoryService.reserve(reservationOf("OnePlus 11R", 2)));
+        }
+        assertEquals(2, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+
+        // Orders placed: confirmed once however many times the batch is sent, an unknown one is answered back
+        final List<String> placed = List.of(reservationIds.get(0), reservationIds.get(1), "unknown");
+        assertEquals(List.of("unknown"), inventoryService.confirmReservations(placed));
+        assertEquals(List.of("unknown"), inventoryService.confirmReservations(placed));
+
+        // Orders not saved: their stock is given back once, a confirmed reservation isn't released
+        final List<String> notSaved = List.of(reservationIds.get(2), reservationIds.get(3), reservationIds.get(0));
+        assertEquals(List.of(reservationIds.get(0)), inventoryService.releaseReservations(notSaved));
+        assertEquals(6, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+        assertEquals(notSaved, inventoryService.releaseReservations(notSaved));
+        assertEquals(6, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+
+        // Released, so it can't be confirmed any more
+        assertEquals(List.of(reservationIds.get(2)), inventoryService.confirmReservations(
+                List.of(reservationIds.get(2))));
+        // One change per reservation made, one for the whole release of the batch
+        assertEquals(List.of(8, 6, 4, 2, 6), inventoryChangeFeed.quantities("OnePlus 11R"));
+    }
+
+    @Test
+    void expiredReservationIsReleasedAndNotReservedAgain() {
+        inventoryRepo.save(InventoryEntity.builder().skuCode("OnePlus 11R").quantity(5).build());
+        final InventoryReservationDtoRequest request = reservationOf("OnePlus 11R", 2);
+        request.setReservationId("order-1");
+        inventoryService.reserve(request);
+        final String confirmedId = inventoryService.reserve(reservationOf("OnePlus 11R", 1));
+        inventoryService.confirmReservation(confirmedId);
+        assertEquals(2, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+
+        // Every reservation made till now is old enough, only the one still RESERVED is released
+        final ReservationExpirer reservationExpirer = new ReservationExpirer(inventoryService, reservationRepo,
+                Duration.ofSeconds(-1), Duration.ZERO);
+        assertEquals(1, reservationExpirer.expire());
+        assertEquals(0, reservationExpirer.expire());
+        assertEquals(4, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+
+        // Order service retrying the reservation of that order after it expired
+        assertThrows(ProductNotInStockException.class, () -> inventoryService.reserve(request));
+        assertEquals(4, inventoryRepo.findBySkuCode("OnePlus 11R").get().getQuantity());
+    }
+
+    private InventoryReservationDtoRequest reservationOf(final String skuCode, final int quantity) {
+        return InventoryReservationDtoRequest.builder()
+                .inventoryDtoRequestList(List.of(InventoryDtoRequest.builder()
+                        .skuCode(skuCode)
+                        .quantity(quantity)
+                        .build()))
+                .build();
+    }
+}
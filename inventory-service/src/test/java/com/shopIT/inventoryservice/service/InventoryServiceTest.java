@@ -1,9 +1,17 @@
 package com.shopit.inventoryservice.service;
 
+import com.shopit.inventoryservice.dto.InventoryBatchReservationDtoRequest;
 import com.shopit.inventoryservice.dto.InventoryDtoRequest;
 import com.shopit.inventoryservice.dto.InventoryDtoResponse;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoRequest;
+import com.shopit.inventoryservice.dto.InventoryReservationDtoResponse;
 import com.shopit.inventoryservice.entity.InventoryEntity;
+import com.shopit.inventoryservice.entity.ReservationEntity;
+import com.shopit.inventoryservice.exception.InvalidInventoryException;
+import com.shopit.inventoryservice.exception.InventoryNotSavedException;
+import com.shopit.inventoryservice.exception.ProductNotInStockException;
 import com.shopit.inventoryservice.repository.InventoryRepository;
+import com.shopit.inventoryservice.repository.ReservationRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
@@ -14,11 +22,18 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 
 @ExtendWith(MockitoExtension.class)
 class InventoryServiceTest {
@@ -29,15 +44,24 @@ class InventoryServiceTest {
     @Mock
     private InventoryRepository inventoryRepo;
 
+    @Mock
+    private ReservationRepository reservationRepo;
+
+    @Mock
+    private InventoryStockCache inventoryStockCache;
+
+    @Mock
+    private InventoryChangePublisher inventoryChangePublisher;
+
     @Test
     void quantityInStockTest(){
-        InventoryEntity inventoryEntity = InventoryEntity.builder()
+        InventoryDtoResponse inventoryDtoResponse = InventoryDtoResponse.builder()
                 .id(1)
                 .quantity(101)
                 .skuCode("OnePlus 11R")
                 .build();
 
-        Mockito.when(inventoryRepo.findBySkuCodeIn(any(List.class))).thenReturn(List.of(inventoryEntity));
+        Mockito.when(inventoryStockCache.quantityInStock(any(List.class))).thenReturn(List.of(inventoryDtoResponse));
 
         List<InventoryDtoResponse> actualInventoryDtoResponseList = inventoryService.quantityInStock(List.of("OnePlus 11R"));
 
@@ -48,7 +72,7 @@ class InventoryServiceTest {
     void addInInventoryTestEntityPresent(){
         InventoryEntity inventoryEntity = InventoryEntity.builder()
                 .id(1)
-                .quantity(101)
+                .quantity(202)
                 .skuCode("OnePlus 11R")
                 .build();
 
@@ -63,10 +87,14 @@ class InventoryServiceTest {
         Integer expectedId = 1;
 
         assertEquals(expectedId, actualId);
+        // Added in the DB itself, never read and saved back
+        Mockito.verify(inventoryRepo).upsertStock(Map.of("OnePlus 11R", 101), 1);
+        Mockito.verify(inventoryRepo, Mockito.never()).save(any(InventoryEntity.class));
     }
 
     @Test
     void addInInventoryTestEntityNotPresent(){
+        // Not found even after the upsert, e.g. the DB failed it
         Mockito.when(inventoryRepo.findBySkuCode(any(String.class))).thenReturn(Optional.ofNullable(null));
 
         InventoryDtoRequest inventoryDtoRequest = InventoryDtoRequest.builder()
@@ -74,29 +102,100 @@ class InventoryServiceTest {
                 .skuCode("OnePlus 11R")
                 .build();
 
-        // When we use save() method, it saves and populate the id in the same object
-        // that is passed to it, therefore if we do it normally ie thenReturn(), then it
-        // wont work unless we
-        // do, productEntity = productRepo.save(productEntity); in the service layer.
-        // Therefore, we use this way which capture the passed object and update it as
-        // required.
-        ArgumentCaptor<InventoryEntity> captor = ArgumentCaptor.forClass(InventoryEntity.class);
+        assertThrows(InventoryNotSavedException.class, () -> inventoryService.addInInventory(inventoryDtoRequest));
+        Mockito.verify(inventoryStockCache, Mockito.never()).stockAdded(any());
+    }
+
+    @Test
+    void addInInventoryTestInvalid(){
+        InventoryDtoRequest inventoryDtoRequest = InventoryDtoRequest.builder()
+                .quantity(101)
+                .build();
+
+        assertThrows(InvalidInventoryException.class, () -> inventoryService.addInInventory(inventoryDtoRequest));
+        Mockito.verifyNoInteractions(inventoryRepo);
+    }
+
+    @Test
+    void addInInventoryTestInvalidQuantityOrSkuCode(){
+        for (InventoryDtoRequest inventoryDtoRequest : List.of(
+                InventoryDtoRequest.builder().skuCode("OnePlus 11R").quantity(0).build(),
+                InventoryDtoRequest.builder().skuCode("OnePlus 11R").quantity(-5).build(),
+                InventoryDtoRequest.builder().skuCode(" ").quantity(101).build())) {
+            assertThrows(InvalidInventoryException.class,
+                    () -> inventoryService.addInInventory(inventoryDtoRequest));
+        }
+        Mockito.verifyNoInteractions(inventoryRepo);
+    }
+
+    @Test
+    void reserveTestInStock(){
+        InventoryReservationDtoRequest inventoryReservationDtoRequest = InventoryReservationDtoRequest.builder()
+                .inventoryDtoRequestList(List.of(InventoryDtoRequest.builder()
+                        .quantity(1)
+                        .skuCode("OnePlus 11R")
+                        .build()))
+                .build();
+
+        Mockito.when(inventoryRepo.reserveStock(any(Map.class))).thenReturn(1);
 
-        Mockito.when(inventoryRepo.save(captor.capture())).thenAnswer(invocation -> {
-            // Get the Product entity passed to the save method
-            InventoryEntity savedProduct = captor.getValue();
+        String actualReservationId = inventoryService.reserve(inventoryReservationDtoRequest);
 
-            // Manually set the productId field (assuming it's a Long type)
-            savedProduct.setId(1);
+        assertNotNull(actualReservationId);
+        Mockito.verify(reservationRepo).save(any(ReservationEntity.class));
+        Mockito.verify(inventoryStockCache).stockDeducted(Map.of("OnePlus 11R", 1));
+        Mockito.verify(inventoryChangePublisher).publishChanged(Set.of("OnePlus 11R"));
+    }
 
-            // Return the modified Product entity
-            return savedProduct;
-        });
+    @Test
+    void reserveTestNotInStock(){
+        InventoryReservationDtoRequest inventoryReservationDtoRequest = InventoryReservationDtoRequest.builder()
+                .inventoryDtoRequestList(List.of(
+                        InventoryDtoRequest.builder().quantity(1).skuCode("OnePlus 11R").build(),
+                        InventoryDtoRequest.builder().quantity(1).skuCode("Pixel 8").build()))
+                .build();
 
+        // Only one of the two skuCodes had enough quantity
+        Mockito.when(inventoryRepo.reserveStock(any(Map.class))).thenReturn(1);
 
-        Integer actualId = inventoryService.addInInventory(inventoryDtoRequest);
-        Integer expectedId = 1;
+        assertThrows(ProductNotInStockException.class, () -> inventoryService.reserve(inventoryReservationDtoRequest));
+        Mockito.verify(reservationRepo, Mockito.never()).save(any(ReservationEntity.class));
+    }
 
-        assertEquals(expectedId, actualId);
+    @Test
+    void reserveBatchTest(){
+        InventoryBatchReservationDtoRequest inventoryBatchReservationDtoRequest =
+                InventoryBatchReservationDtoRequest.builder()
+                        .reservationDtoRequestList(List.of(
+                                reservationRequest("OnePlus 11R", 2),
+                                reservationRequest("OnePlus 11R", 2), // Only 1 left after the first order
+                                InventoryReservationDtoRequest.builder().inventoryDtoRequestList(List.of()).build(),
+                                reservationRequest("Pixel 8", 1)))
+                        .build();
+
+        Mockito.when(inventoryRepo.findBySkuCodeInForUpdate(any(Collection.class))).thenReturn(List.of(
+                InventoryEntity.builder().id(1).skuCode("OnePlus 11R").quantity(3).build(),
+                InventoryEntity.builder().id(2).skuCode("Pixel 8").quantity(5).build()));
+        Mockito.when(inventoryRepo.reserveStock(any(Map.class))).thenReturn(2);
+
+        List<InventoryReservationDtoResponse> inventoryReservationDtoResponseList =
+                inventoryService.reserveBatch(inventoryBatchReservationDtoRequest);
+
+        assertEquals(List.of("RESERVED", "OUT_OF_STOCK", "INVALID", "RESERVED"), inventoryReservationDtoResponseList
+                .stream().map(InventoryReservationDtoResponse::getStatus).toList());
+        assertNotNull(inventoryReservationDtoResponseList.get(0).getReservationId());
+        assertNull(inventoryReservationDtoResponseList.get(1).getReservationId());
+        // Total of the reserved orders deducted in one statement
+        Mockito.verify(inventoryRepo).reserveStock(Map.of("OnePlus 11R", 2, "Pixel 8", 1));
+        Mockito.verify(reservationRepo).saveAll(argThat(reservations -> ((List<?>) reservations).size() == 2));
+    }
+
+    private static InventoryReservationDtoRequest reservationRequest(String skuCode, int quantity){
+        return InventoryReservationDtoRequest.builder()
+                .inventoryDtoRequestList(List.of(InventoryDtoRequest.builder()
+                        .quantity(quantity)
+                        .skuCode(skuCode)
+                        .build()))
+                .build();
     }
-}
\ No newline at end of file
+}
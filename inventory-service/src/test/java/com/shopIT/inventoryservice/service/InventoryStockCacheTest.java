@@ -0,0 +1,104 @@
+package com.shopit.inventoryservice.service;
+
+import com.shopit.inventoryservice.dto.InventoryDtoResponse;
+import com.shopit.inventoryservice.entity.InventoryEntity;
+import com.shopit.inventoryservice.repository.InventoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+
+class InventoryStockCacheTest {
+
+    private final InventoryRepository inventoryRepo = Mockito.mock(InventoryRepository.class);
+
+    private InventoryStockCache inventoryStockCache;
+
+    @AfterEach
+    void tearDown() {
+        inventoryStockCache.close();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void loadedInPagesAtStartup() {
+        // Page size 2: a full page means there may be more rows after it
+        Mockito.when(inventoryRepo.findPageAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(
+                row(1, "OnePlus 11R", 5), row(2, "Pixel 8", 3)));
+        Mockito.when(inventoryRepo.findPageAfter(2, PageRequest.of(0, 2))).thenReturn(List.of(
+                row(4, "iPhone 15", 0)));
+
+        inventoryStockCache = new InventoryStockCache(inventoryRepo, "write-through", Duration.ZERO, 2);
+
+        assertEquals(List.of(row(2, "Pixel 8", 3), row(4, "iPhone 15", 0)),
+                inventoryStockCache.quantityInStock(List.of("Pixel 8", "iPhone 15", "Pixel 8")));
+        Mockito.verify(inventoryRepo, Mockito.never()).findBySkuCodeIn(anyList());
+    }
+
+    @Test
+    void missingSkuCodeIsReadThrough() {
+        inventoryStockCache = cache("write-through", row(1, "OnePlus 11R", 5));
+        Mockito.when(inventoryRepo.findBySkuCodeIn(List.of("Pixel 8", "Unknown"))).thenReturn(List.of(
+                InventoryEntity.builder().id(2).skuCode("Pixel 8").quantity(3).build()));
+
+        assertEquals(List.of(row(1, "OnePlus 11R", 5), row(2, "Pixel 8", 3)),
+                inventoryStockCache.quantityInStock(List.of("OnePlus 11R", "Pixel 8", "Unknown")));
+
+        // Added to the table by the first read
+        assertEquals(List.of(row(2, "Pixel 8", 3)), inventoryStockCache.quantityInStock(List.of("Pixel 8")));
+        Mockito.verify(inventoryRepo, Mockito.times(1)).findBySkuCodeIn(anyList());
+    }
+
+    @Test
+    void writeThroughAppliesOnlyCommittedChanges() {
+        inventoryStockCache = cache("write-through", row(1, "OnePlus 11R", 5));
+
+        TransactionSynchronizationManager.initSynchronization();
+        inventoryStockCache.stockDeducted(Map.of("OnePlus 11R", 2));
+
+        // Not committed yet
+        assertEquals(5, inventoryStockCache.quantityInStock(List.of("OnePlus 11R")).get(0).getQuantity());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(3, inventoryStockCache.quantityInStock(List.of("OnePlus 11R")).get(0).getQuantity());
+
+        // No transaction
+        TransactionSynchronizationManager.clearSynchronization();
+        inventoryStockCache.stockAdded(Map.of("OnePlus 11R", 10));
+        assertEquals(13, inventoryStockCache.quantityInStock(List.of("OnePlus 11R")).get(0).getQuantity());
+    }
+
+    @Test
+    void reconciledModeOnlyChangesOnReconcile() {
+        inventoryStockCache = cache("reconciled", row(1, "OnePlus 11R", 5));
+
+        inventoryStockCache.stockDeducted(Map.of("OnePlus 11R", 2));
+        assertEquals(5, inventoryStockCache.quantityInStock(List.of("OnePlus 11R")).get(0).getQuantity());
+
+        Mockito.when(inventoryRepo.findPageAfter(eq(0), any())).thenReturn(List.of(row(1, "OnePlus 11R", 3)));
+        inventoryStockCache.reconcile();
+        assertEquals(3, inventoryStockCache.quantityInStock(List.of("OnePlus 11R")).get(0).getQuantity());
+    }
+
+    private InventoryStockCache cache(final String mode, final InventoryDtoResponse... rows) {
+        Mockito.when(inventoryRepo.findPageAfter(eq(0), any())).thenReturn(List.of(rows));
+        return new InventoryStockCache(inventoryRepo, mode, Duration.ZERO, 100);
+    }
+
+    private static InventoryDtoResponse row(final int id, final String skuCode, final int quantity) {
+        return InventoryDtoResponse.builder().id(id).skuCode(skuCode).quantity(quantity).build();
+    }
+}
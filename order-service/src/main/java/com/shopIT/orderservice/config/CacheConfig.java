@@ -0,0 +1,103 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.dto.CachedValue;
+import com.shopit.orderservice.dto.OrderDtoResponse;
+import com.shopit.orderservice.dto.OrderLineItemsDtoResponse;
+import com.shopit.orderservice.entity.TPSEntity;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RedissonClient;
+import org.redisson.codec.JsonJacksonCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfig {
+
+    // Replaces the RedisCacheManager of Spring Boot, which is still built here from the spring.cache.redis.*
+    // properties and is the L2 of the caches that have an L1 spec (cache.l1.specs).
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, CacheProperties cacheProperties,
+                                     RedissonClient redissonClient, MeterRegistry meterRegistry,
+                                     RedisSerializer<Object> cacheSerializer,
+                                     @Value("#{${cache.l1.specs}}") Map<String, String> localCacheSpecs,
+                                     @Value("${cache.stale-while-revalidate}") Duration staleWhileRevalidate,
+                                     @Value("${cache.early-refresh.beta}") double earlyRefreshBeta,
+                                     @Value("${cache.lock.wait-time}") Duration lockWaitTime,
+                                     @Value("${cache.lock.lease-time}") Duration lockLeaseTime) {
+        final Duration timeToLive = cacheProperties.getRedis().getTimeToLive();
+        final RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager
+                .builder(redisConnectionFactory)
+                .cacheDefaults(redisCacheConfiguration(cacheProperties.getRedis(), cacheSerializer,
+                        staleWhileRevalidate));
+        if (cacheProperties.getRedis().isEnableStatistics()) {
+            builder.enableStatistics();
+        }
+        final RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.initializeCaches();
+
+        // Background refreshes of stale values, at most one per key at a time
+        final ExecutorService refreshExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        return new TwoLevelCacheManager(redisCacheManager, localCacheSpecs,
+                redissonClient.getTopic(OrderConstants.L1_CACHE_INVALIDATION, new JsonJacksonCodec()),
+                meterRegistry,
+                cache -> new StampedeProtectedCache(cache, redissonClient, timeToLive, staleWhileRevalidate,
+                        earlyRefreshBeta, lockWaitTime, lockLeaseTime, refreshExecutor, Clock.systemUTC()));
+    }
+
+    // Format of the values in the Redis caches and the TPS near cache (cache.serializer.format)
+    @Bean
+    public RedisSerializer<Object> cacheSerializer(@Value("${cache.serializer.format}") String format,
+                                                   @Value("${cache.serializer.compression-threshold}")
+                                                   int compressionThreshold) {
+        if (OrderConstants.COMPACT_CACHE_SERIALIZER.equals(format)) {
+            // Only ever add classes at the end, see CompactRedisSerializer
+            return new CompactRedisSerializer(compressionThreshold, List.of(
+                    OrderDtoResponse.class,
+                    OrderLineItemsDtoResponse.class,
+                    TPSEntity.class,
+                    CachedValue.class));
+        }
+        return new JdkSerializationRedisSerializer(getClass().getClassLoader());
+    }
+
+    // Same as the configuration Spring Boot builds from the spring.cache.redis.* properties, apart from the values
+    // written with the cacheSerializer and kept in Redis for their stale period after the TTL
+    private RedisCacheConfiguration redisCacheConfiguration(CacheProperties.Redis redisProperties,
+                                                            RedisSerializer<Object> cacheSerializer,
+                                                            Duration staleWhileRevalidate) {
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(cacheSerializer));
+        if (redisProperties.getTimeToLive() != null) {
+            config = config.entryTtl(redisProperties.getTimeToLive().plus(staleWhileRevalidate));
+        }
+        if (redisProperties.getKeyPrefix() != null) {
+            config = config.prefixCacheNameWith(redisProperties.getKeyPrefix());
+        }
+        if (!redisProperties.isCacheNullValues()) {
+            config = config.disableCachingNullValues();
+        }
+        if (!redisProperties.isUseKeyPrefix()) {
+            config = config.disableKeyPrefix();
+        }
+        return config;
+    }
+}
@@ -0,0 +1,166 @@
+package com.shopit.orderservice.config;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.ImmutableCollectionsSerializers;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Kryo binary format for the cached DTOs instead of JDK serialization, which writes the full class descriptor
+// (class name, field names and types) of every object into every value. Here the classes are registered up front,
+// so a value only has a small class id and the field values. Values of compressionThreshold bytes or more are
+// compressed with LZ4 (e.g. an order with many line items), smaller ones are not worth the CPU.
+//
+// Layout: 1 header byte (RAW or LZ4), for LZ4 followed by the uncompressed length (4 bytes), then the Kryo bytes.
+// Kryo writes the fields in a fixed order, so a changed DTO can't read values written before the change: bump
+// FORMAT_VERSION (or flush the cache) when deploying such a change, values of another version are read as misses.
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte RAW = FORMAT_VERSION << 1;
+
+    private static final byte LZ4 = RAW | 1;
+
+    private static final int LZ4_HEADER_LENGTH = 5;
+
+    // A buffer grown bigger than this by a big value is not kept in the pool
+    private static final int MAX_POOLED_BUFFER = 64 * 1024;
+
+    // Registration ids must be the same in all the instances, so classes are only ever added at the end
+    private final List<Class<?>> registeredClasses;
+
+    private final int compressionThreshold;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    // Kryo instances and buffers are not thread safe and costly to create, so they are pooled
+    private final Pool<Kryo> kryoPool = new Pool<>(true, false, 64) {
+        @Override
+        protected Kryo create() {
+            return createKryo();
+        }
+    };
+
+    private final Pool<Output> outputPool = new Pool<>(true, false, 64) {
+        @Override
+        protected Output create() {
+            return new Output(1024, -1);
+        }
+    };
+
+    // compressionThreshold < 0 turns compression off
+    public CompactRedisSerializer(int compressionThreshold, List<Class<?>> registeredClasses) {
+        this.compressionThreshold = compressionThreshold;
+        this.registeredClasses = List.copyOf(registeredClasses);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        final Kryo kryo = kryoPool.obtain();
+        final Output output = outputPool.obtain();
+        try {
+            output.reset();
+            output.writeByte(RAW);
+            kryo.writeClassAndObject(output, value);
+            final int length = output.position();
+            if (compressionThreshold < 0 || length - 1 < compressionThreshold) {
+                return Arrays.copyOf(output.getBuffer(), length);
+            }
+            return compress(output.getBuffer(), length);
+        } catch (RuntimeException ex) {
+            throw new SerializationException("Could not serialize " + value.getClass().getName(), ex);
+        } finally {
+            if (output.getBuffer().length <= MAX_POOLED_BUFFER) {
+                outputPool.free(output);
+            }
+            kryoPool.free(kryo);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        final Input input;
+        if (bytes[0] == RAW) {
+            input = new Input(bytes, 1, bytes.length - 1);
+        } else if (bytes[0] == LZ4) {
+            input = new Input(decompress(bytes));
+        } else {
+            // Written by another format (version), read as a cache miss
+            return null;
+        }
+        final Kryo kryo = kryoPool.obtain();
+        try {
+            return kryo.readClassAndObject(input);
+        } catch (RuntimeException ex) {
+            throw new SerializationException("Could not deserialize cached value", ex);
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+
+    private byte[] compress(byte[] buffer, int length) {
+        final int uncompressedLength = length - 1;
+        final byte[] compressed = new byte[LZ4_HEADER_LENGTH + compressor.maxCompressedLength(uncompressedLength)];
+        compressed[0] = LZ4;
+        writeInt(compressed, 1, uncompressedLength);
+        final int compressedLength = compressor.compress(buffer, 1, uncompressedLength, compressed,
+                LZ4_HEADER_LENGTH);
+        return Arrays.copyOf(compressed, LZ4_HEADER_LENGTH + compressedLength);
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        final byte[] uncompressed = new byte[readInt(bytes, 1)];
+        decompressor.decompress(bytes, LZ4_HEADER_LENGTH, uncompressed, 0, uncompressed.length);
+        return uncompressed;
+    }
+
+    private Kryo createKryo() {
+        final Kryo kryo = new Kryo();
+        // Cached DTOs are trees, so there are no shared references to track
+        kryo.setReferences(false);
+        // Classes not registered here still work, they are written with their class name
+        kryo.setRegistrationRequired(false);
+        // @NoArgsConstructor is used when present, objects of other classes are created without a constructor
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        // List.of() and Stream.toList() results
+        ImmutableCollectionsSerializers.addDefaultSerializers(kryo);
+        ImmutableCollectionsSerializers.registerSerializers(kryo);
+        kryo.register(ArrayList.class);
+        registeredClasses.forEach(kryo::register);
+        return kryo;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+}
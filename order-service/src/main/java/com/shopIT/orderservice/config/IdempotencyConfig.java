@@ -0,0 +1,22 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IdempotencyConfig {
+
+    // redis (default): shared by all the instances. in-memory: this instance only.
+    @Bean
+    public IdempotencyStore idempotencyStore(@Value("${idempotency.store}") String store,
+                                             ObjectProvider<RedissonClient> redissonClient) {
+        if (OrderConstants.IN_MEMORY_IDEMPOTENCY_STORE.equals(store)) {
+            return new InMemoryIdempotencyStore();
+        }
+        return new RedisIdempotencyStore(redissonClient.getObject());
+    }
+}
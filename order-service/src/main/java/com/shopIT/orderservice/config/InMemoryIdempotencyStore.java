@@ -0,0 +1,71 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.dto.IdempotentResponse;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// IdempotencyStore in the heap of this instance, for a single instance (and tests). A retry sent to another instance
+// is not deduped. Expired keys are treated as absent and purged every PURGE_EVERY puts.
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private static final int PURGE_EVERY = 1024;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger puts = new AtomicInteger();
+
+    @Override
+    public IdempotentResponse putIfAbsent(final String key, final IdempotentResponse value,
+                                          final Duration timeToLive) {
+        purgeOccasionally();
+        final long now = System.nanoTime();
+        final Entry newEntry = new Entry(value, now + timeToLive.toNanos());
+        // compute is atomic per key
+        final Entry entry = entries.compute(key, (k, present) ->
+                present == null || present.isExpired(now) ? newEntry : present);
+        return entry == newEntry ? null : entry.value();
+    }
+
+    @Override
+    public boolean replace(final String key, final IdempotentResponse claim, final IdempotentResponse value,
+                           final Duration timeToLive) {
+        purgeOccasionally();
+        final long now = System.nanoTime();
+        final Entry newEntry = new Entry(value, now + timeToLive.toNanos());
+        return entries.computeIfPresent(key, (k, present) ->
+                present.isClaim(claim, now) ? newEntry : present) == newEntry;
+    }
+
+    @Override
+    public boolean remove(final String key, final IdempotentResponse claim) {
+        final long now = System.nanoTime();
+        final boolean[] removed = new boolean[1];
+        entries.computeIfPresent(key, (k, present) -> {
+            removed[0] = present.isClaim(claim, now);
+            return removed[0] ? null : present;
+        });
+        return removed[0];
+    }
+
+    private void purgeOccasionally() {
+        if (puts.incrementAndGet() % PURGE_EVERY == 0) {
+            final long now = System.nanoTime();
+            entries.values().removeIf(entry -> entry.isExpired(now));
+        }
+    }
+
+    private record Entry(IdempotentResponse value, long expiresAtNanos) {
+        boolean isExpired(final long now) {
+            return now - expiresAtNanos >= 0;
+        }
+
+        boolean isClaim(final IdempotentResponse claim, final long now) {
+            return !isExpired(now) && Objects.equals(value.getFingerprint(), claim.getFingerprint())
+                    && Objects.equals(value.getClaimToken(), claim.getClaimToken());
+        }
+    }
+}
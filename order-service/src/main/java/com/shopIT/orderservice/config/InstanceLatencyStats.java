@@ -0,0 +1,110 @@
+package com.shopit.orderservice.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Latency and no. of in-flight requests of every inventory-service instance, as seen by this order-service instance.
+// It's a filter of the inventory WebClient placed after the load balancer one, so it sees the URL of the instance
+// the request was sent to. doFinally also counts the requests cancelled by a timeout or a hedge, which the load
+// balancer's own lifecycle callbacks miss. Read by LatencyAwareLoadBalancer through cost().
+//
+// Latency is a moving average of the responses (EWMA_WEIGHT for the last one, i.e. about the last 5 responses), so
+// an instance turning slow is avoided after a couple of slow responses. As an avoided instance gets no responses, its
+// latency also decays towards 0 over decay-time while it's not called, then it's tried again.
+//
+// A failed request (connection refused, connection closed, 5xx) counts as a failure-penalty sample (the call timeout),
+// not as its own latency: an instance failing fast would otherwise look like the cheapest one and get the most calls.
+// A request cancelled before its response (timed out, or lost to a hedge) counts with the time it was waited on.
+@Component
+public class InstanceLatencyStats implements ExchangeFilterFunction {
+
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final Map<String, Stats> statsByInstance = new ConcurrentHashMap<>();
+
+    private final double decayNanos;
+
+    private final long failurePenaltyNanos;
+
+    @Autowired
+    public InstanceLatencyStats(@Value("${inventory.load-balancer.decay-time}") Duration decayTime,
+                                @Value("${inventory.call.timeout}") Duration failurePenalty) {
+        this.decayNanos = decayTime.toNanos();
+        this.failurePenaltyNanos = failurePenalty.toNanos();
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(final ClientRequest request, final ExchangeFunction next) {
+        final Stats stats = statsByInstance.computeIfAbsent(key(request.url()), key -> new Stats());
+        return Mono.defer(() -> {
+            stats.inFlight.incrementAndGet();
+            final long start = System.nanoTime();
+            final AtomicBoolean responded = new AtomicBoolean();
+            return next.exchange(request)
+                    .doOnNext(response -> {
+                        responded.set(true);
+                        stats.record(response.statusCode().is5xxServerError()
+                                ? failurePenaltyNanos : System.nanoTime() - start, System.nanoTime());
+                    })
+                    .doOnError(ex -> stats.record(failurePenaltyNanos, System.nanoTime()))
+                    .doOnCancel(() -> {
+                        if (!responded.get()) {
+                            stats.record(System.nanoTime() - start, System.nanoTime());
+                        }
+                    })
+                    .doFinally(signalType -> stats.inFlight.decrementAndGet());
+        });
+    }
+
+    // Expected wait at the instance: its latency times the requests it's already serving, +1 for this one. An
+    // instance not called yet costs 0 while idle (so it's tried once) and the most while its first call is in flight.
+    public double cost(final ServiceInstance instance) {
+        final Stats stats = statsByInstance.get(key(instance.getUri()));
+        return stats == null ? 0 : stats.cost(System.nanoTime());
+    }
+
+    // host:port, the same for the URL of a request and the URI of the instance it was sent to
+    static String key(final URI uri) {
+        final int port = uri.getPort() != -1 ? uri.getPort() : ("https".equals(uri.getScheme()) ? 443 : 80);
+        return uri.getHost() + ":" + port;
+    }
+
+    private final class Stats {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private double latencyNanos;
+
+        private long recordedAt;
+
+        private boolean recorded;
+
+        private synchronized void record(final long sampleNanos, final long now) {
+            latencyNanos = recorded ? latencyNanos * (1 - EWMA_WEIGHT) + sampleNanos * EWMA_WEIGHT : sampleNanos;
+            recordedAt = now;
+            recorded = true;
+        }
+
+        private synchronized double cost(final long now) {
+            final int requests = inFlight.get();
+            if (!recorded) {
+                return requests == 0 ? 0 : Double.MAX_VALUE;
+            }
+            return latencyNanos * Math.exp(-(now - recordedAt) / decayNanos) * (requests + 1);
+        }
+    }
+}
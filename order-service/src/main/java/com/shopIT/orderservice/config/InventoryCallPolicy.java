@@ -0,0 +1,181 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+// Timeout, retries and hedging of the calls to the inventory service, so that one slow or failing attempt (usually
+// one slow inventory instance) doesn't make the whole order slow or fail:
+// - every attempt is bounded by inventory.call.timeout
+// - a failed attempt is retried up to max-retries times after an exponential backoff with jitter, so that the retries
+//   of many orders don't all hit the inventory at the same moment. The error of the last attempt is the one thrown.
+// - hedging: once an attempt takes longer than the hedge percentile of the recent calls, a second one is sent (the
+//   load balancer usually picks another instance for it) and whichever answers first wins, the other is cancelled.
+//   A failed attempt doesn't win, the other one is still waited for.
+// call() is for any call and retries only what surely wasn't processed (connection refused, 503). idempotentCall()
+// is for calls safe to send twice (reserve and reserveBatch with their reservationIds, confirm), those are also
+// retried after a timeout or 5xx and hedged.
+@Component
+@Slf4j
+public class InventoryCallPolicy {
+
+    private final Duration timeout;
+
+    private final int maxRetries;
+
+    private final Duration retryBackoff;
+
+    private final double retryJitter;
+
+    private final boolean hedgeEnabled;
+
+    private final Duration hedgeMinDelay;
+
+    private final LatencyWindow latencyWindow;
+
+    @Autowired
+    public InventoryCallPolicy(@Value("${inventory.call.timeout}") Duration timeout,
+                               @Value("${inventory.call.max-retries}") int maxRetries,
+                               @Value("${inventory.call.retry-backoff}") Duration retryBackoff,
+                               @Value("${inventory.call.retry-jitter}") double retryJitter,
+                               @Value("${inventory.call.hedge.enabled}") boolean hedgeEnabled,
+                               @Value("${inventory.call.hedge.percentile}") double hedgePercentile,
+                               @Value("${inventory.call.hedge.min-delay}") Duration hedgeMinDelay) {
+        this.timeout = timeout;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.retryJitter = retryJitter;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinDelay = hedgeMinDelay;
+        this.latencyWindow = new LatencyWindow(hedgePercentile);
+    }
+
+    public <T> Mono<T> call(final Mono<T> inventoryCall) {
+        return attempt(inventoryCall).retryWhen(retry(InventoryCallPolicy::isNotProcessed));
+    }
+
+    public <T> Mono<T> idempotentCall(final Mono<T> inventoryCall) {
+        return hedged(attempt(inventoryCall)).retryWhen(retry(InventoryCallPolicy::isTransient));
+    }
+
+    // Latency of the successful attempts feeds the hedge delay. Each subscription is a new attempt (a new request).
+    private <T> Mono<T> attempt(final Mono<T> inventoryCall) {
+        return Mono.defer(() -> {
+            final long start = System.nanoTime();
+            return inventoryCall
+                    .timeout(timeout)
+                    .doOnSuccess(value -> latencyWindow.record(System.nanoTime() - start));
+        });
+    }
+
+    // No hedging till there are enough recent calls to know what "slow" is
+    private <T> Mono<T> hedged(final Mono<T> attempt) {
+        if (!hedgeEnabled) {
+            return attempt;
+        }
+        return Mono.defer(() -> {
+            final Duration percentileLatency = latencyWindow.percentileLatency();
+            if (percentileLatency == null) {
+                return attempt;
+            }
+            final Duration hedgeDelay = percentileLatency.compareTo(hedgeMinDelay) > 0
+                    ? percentileLatency : hedgeMinDelay;
+            // First value wins, so a failed attempt doesn't cancel the other one still in flight. An error of the
+            // first attempt before the hedge is sent is not waited on: the hedge isn't sent and the error goes to
+            // the retry right away. When both fail, the error of the first attempt is the one thrown.
+            final AtomicBoolean firstAttemptFailed = new AtomicBoolean();
+            return Mono.firstWithValue(
+                            attempt.doOnError(ex -> firstAttemptFailed.set(true)),
+                            Mono.delay(hedgeDelay).filter(tick -> !firstAttemptFailed.get()).flatMap(tick -> attempt))
+                    .onErrorMap(NoSuchElementException.class, InventoryCallPolicy::firstAttemptError);
+        });
+    }
+
+    // firstWithValue fails with a NoSuchElementException whose cause holds the error of every attempt, in order
+    private static Throwable firstAttemptError(final NoSuchElementException ex) {
+        return ex.getCause() == null ? ex : Exceptions.unwrapMultiple(ex.getCause()).get(0);
+    }
+
+    private Retry retry(final Predicate<Throwable> isRetryable) {
+        return Retry.backoff(maxRetries, retryBackoff)
+                .jitter(retryJitter)
+                .filter(isRetryable)
+                .doBeforeRetry(retrySignal -> log.warn(String.format(OrderConstants.INVENTORY_CALL_RETRIED,
+                        retrySignal.totalRetries() + 1, retrySignal.failure())))
+                .onRetryExhaustedThrow((retrySpec, retrySignal) -> retrySignal.failure());
+    }
+
+    // Connection refused, or 503 (e.g. no inventory instance up, or it's overloaded): the request wasn't processed
+    static boolean isNotProcessed(final Throwable ex) {
+        return (ex instanceof WebClientRequestException && ex.getCause() instanceof ConnectException)
+                || ex instanceof WebClientResponseException.ServiceUnavailable;
+    }
+
+    // Also the ones that may have been processed, e.g. timed out or connection closed while waiting for the response
+    static boolean isTransient(final Throwable ex) {
+        return isNotProcessed(ex)
+                || ex instanceof TimeoutException
+                || ex instanceof WebClientRequestException
+                || (ex instanceof WebClientResponseException responseEx
+                        && responseEx.getStatusCode().is5xxServerError());
+    }
+
+    // Latencies of the last WINDOW_SIZE successful attempts, their percentile computed again every RECOMPUTE_EVERY
+    // attempts (a sort of at most WINDOW_SIZE longs) instead of on every call.
+    private static final class LatencyWindow {
+
+        private static final int WINDOW_SIZE = 1024;
+
+        private static final int MIN_SAMPLES = 100;
+
+        private static final int RECOMPUTE_EVERY = 32;
+
+        private final AtomicLongArray latencies = new AtomicLongArray(WINDOW_SIZE);
+
+        private final AtomicLong recorded = new AtomicLong();
+
+        private final double percentile;
+
+        private volatile Duration percentileLatency; // null till MIN_SAMPLES attempts are recorded
+
+        private LatencyWindow(final double percentile) {
+            this.percentile = percentile;
+        }
+
+        private void record(final long latencyNanos) {
+            final long count = recorded.incrementAndGet();
+            latencies.set((int) ((count - 1) % WINDOW_SIZE), latencyNanos);
+            if (count >= MIN_SAMPLES && count % RECOMPUTE_EVERY == 0) {
+                final int size = (int) Math.min(count, WINDOW_SIZE);
+                final long[] sorted = new long[size];
+                for (int i = 0; i < size; i++) {
+                    sorted[i] = latencies.get(i);
+                }
+                Arrays.sort(sorted);
+                final int index = (int) Math.ceil(percentile / 100 * size) - 1;
+                percentileLatency = Duration.ofNanos(sorted[Math.max(0, Math.min(index, size - 1))]);
+            }
+        }
+
+        private Duration percentileLatency() {
+            return percentileLatency;
+        }
+    }
+}
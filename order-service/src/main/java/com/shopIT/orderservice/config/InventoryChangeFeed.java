@@ -0,0 +1,16 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.dto.InventoryChangeEvent;
+
+import java.util.List;
+
+// Change feed of the inventory quantities published by inventory-service (see its InventoryChangePublisher), after
+// the inventory commits. The events of a skuCode may be out of the order of its commits, their versions are not.
+public interface InventoryChangeFeed {
+
+    // Id to read the feed from its beginning (the events still kept in it)
+    String FIRST_EVENT_ID = "0-0";
+
+    // At most count events published after lastEventId, oldest first. Empty when there are none.
+    List<InventoryChangeEvent> readAfter(String lastEventId, int count);
+}
@@ -0,0 +1,28 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+// Load balancer of the inventory-service instances, used through @LoadBalancerClient in WebClientConfig. Not a
+// @Configuration on purpose: it's loaded only in the load balancer's own context of inventory-service, not in the
+// application context (where it would apply to every service). Without this bean it's the default round-robin.
+public class InventoryLoadBalancerConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "inventory.load-balancer.strategy",
+            havingValue = OrderConstants.LATENCY_AWARE_LOAD_BALANCER)
+    public ReactorLoadBalancer<ServiceInstance> latencyAwareLoadBalancer(
+            Environment environment, LoadBalancerClientFactory loadBalancerClientFactory,
+            InstanceLatencyStats instanceLatencyStats) {
+        final String serviceId = LoadBalancerClientFactory.getName(environment);
+        return new LatencyAwareLoadBalancer(
+                loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                serviceId, instanceLatencyStats);
+    }
+}
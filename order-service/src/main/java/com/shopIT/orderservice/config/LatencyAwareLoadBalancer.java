@@ -0,0 +1,66 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Picks the inventory-service instance by its observed latency and in-flight requests (InstanceLatencyStats)
+// instead of round-robin, which keeps sending a slow instance its share of the orders and so sets the p99.
+// Power of two choices: 2 random instances are compared and the cheaper one wins. That avoids a slow instance as
+// well as comparing all of them would, without sending every order to the single fastest one (making it slow next).
+@Slf4j
+public class LatencyAwareLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+    private final String serviceId;
+
+    private final InstanceLatencyStats instanceLatencyStats;
+
+    public LatencyAwareLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+                                    String serviceId, InstanceLatencyStats instanceLatencyStats) {
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.serviceId = serviceId;
+        this.instanceLatencyStats = instanceLatencyStats;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(final Request request) {
+        final ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+                .getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request).next().map(this::choose);
+    }
+
+    public Response<ServiceInstance> choose(final List<ServiceInstance> instances) {
+        if (instances.isEmpty()) {
+            log.warn(OrderConstants.NO_INSTANCE_AVAILABLE + serviceId);
+            return new EmptyResponse();
+        }
+        if (instances.size() == 1) {
+            return new DefaultResponse(instances.get(0));
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(instances.size());
+        int second = random.nextInt(instances.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        final ServiceInstance firstInstance = instances.get(first);
+        final ServiceInstance secondInstance = instances.get(second);
+        return new DefaultResponse(instanceLatencyStats.cost(firstInstance) <= instanceLatencyStats.cost(secondInstance)
+                ? firstInstance : secondInstance);
+    }
+}
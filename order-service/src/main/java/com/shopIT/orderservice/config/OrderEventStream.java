@@ -0,0 +1,12 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.entity.OutboxEventEntity;
+
+import java.util.List;
+
+// Message stream other services read the order events from, written by the OutboxRelay
+public interface OrderEventStream {
+
+    // All the events or none (throws), in the order given
+    void publish(List<OutboxEventEntity> events);
+}
@@ -1,5 +1,6 @@
 package com.shopit.orderservice.config;
 
+import com.shopit.orderservice.constants.OrderConstants;
 import com.shopit.orderservice.entity.TPSEntity;
 import com.shopit.orderservice.repository.TPSRepository;
 
@@ -8,59 +9,299 @@ import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
 import io.github.bucket4j.Refill;
 import io.github.bucket4j.distributed.proxy.ProxyManager;
-import org.redisson.api.RMapCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.LocalCachedMapOptions;
+import org.redisson.api.RLocalCachedMap;
 import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.LocalCacheInvalidateListener;
+import org.redisson.api.map.MapLoader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.time.Duration;
-import java.util.Optional;
-import java.util.function.Supplier;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Configuration
+@Slf4j
 public class RateLimitConfig {
+    // TPS of a user without a row in the TPS table
+    private static final int DEFAULT_TPS = 10;
+
     public final ProxyManager buckets;
 
     private final TPSRepository tpsRepo;
 
-    private final RedissonClient redissonClient;
+    // Near cache: Redis hash holding the username's TPSEntity plus a bounded copy of it in this JVM's heap. A TPS
+    // change made through this map by any instance is broadcast over Redis pub/sub and evicts the local copy in
+    // every other instance.
+    private final RLocalCachedMap<String, TPSEntity> tpsCache;
+
+    // Fields of a Redis hash can't expire one by one, so the whole hash expires this long after it was created and
+    // every TPS is then loaded from MySQL again, see tps.cache.redis-time-to-live
+    private final Duration tpsRedisTimeToLive;
+
+    // Bucket proxy and its BucketConfiguration built once per username and reused by every request of that user,
+    // instead of allocating a new Refill, Bandwidth, configuration supplier and proxy per request. Rebuilt when the
+    // user's TPS changes, bounded by tps.cache.size like the near cache.
+    private final ConcurrentMap<String, ResolvedBucket> resolvedBuckets = new ConcurrentHashMap<>();
+
+    private final int resolvedBucketsSize;
+
+    // Only one thread at a time evicts from resolvedBuckets once it is full, the others don't wait for it
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // Users without a TPS row, with the time (System.nanoTime) until which they are not looked up in MySQL again.
+    // Nothing is stored in MySQL or Redis for them, they get DEFAULT_TPS.
+    private final ConcurrentMap<String, Long> unknownUsernames = new ConcurrentHashMap<>();
+
+    private final long unknownUsernameTimeToLive;
+
+    // Leased mode: each instance leases rate-limit.lease.size tokens at a time from the Redis bucket and admits
+    // requests from them locally, see LeasedBucket for the accuracy bounds
+    private final boolean leased;
+
+    private final long leaseSize;
+
+    private final Duration leaseTimeToLive;
+
+    // Leased mode only: every leaseTimeToLive gives back the expired leases of users who sent no request since, which
+    // would otherwise hold their tokens until their next request
+    private final ScheduledExecutorService leaseSweeper;
+
+    private final Timer nearCacheLookup;
+
+    private final Timer remoteLookup;
 
     @Autowired
-    public RateLimitConfig(ProxyManager buckets, TPSRepository tpsRepo, RedissonClient redissonClient) {
+    public RateLimitConfig(ProxyManager buckets, TPSRepository tpsRepo, RedissonClient redissonClient,
+                           MeterRegistry meterRegistry, RedisSerializer<Object> cacheSerializer,
+                           @Value("${tps.cache.size}") int tpsCacheSize,
+                           @Value("${tps.cache.time-to-live}") Duration tpsCacheTimeToLive,
+                           @Value("${tps.cache.redis-time-to-live}") Duration tpsRedisTimeToLive,
+                           @Value("${rate-limit.mode}") String rateLimitMode,
+                           @Value("${rate-limit.lease.size}") long leaseSize,
+                           @Value("${rate-limit.lease.time-to-live}") Duration leaseTimeToLive) {
         this.buckets = buckets;
         this.tpsRepo = tpsRepo;
-        this.redissonClient = redissonClient;
+        this.tpsCache = redissonClient.getLocalCachedMap("tpsOrderNearCache",
+                new RedisSerializerCodec(cacheSerializer),
+                LocalCachedMapOptions.<String, TPSEntity>defaults()
+                .cacheSize(tpsCacheSize)
+                .evictionPolicy(LocalCachedMapOptions.EvictionPolicy.LRU)
+                .timeToLive(tpsCacheTimeToLive.toMillis(), TimeUnit.MILLISECONDS)
+                .syncStrategy(LocalCachedMapOptions.SyncStrategy.INVALIDATE)
+                .reconnectionStrategy(LocalCachedMapOptions.ReconnectionStrategy.CLEAR)
+                .loader(tpsLoader()));
+        this.tpsRedisTimeToLive = tpsRedisTimeToLive;
+        this.resolvedBucketsSize = tpsCacheSize;
+        this.unknownUsernameTimeToLive = tpsCacheTimeToLive.toNanos();
+        this.leased = OrderConstants.LEASED_RATE_LIMIT.equals(rateLimitMode);
+        this.leaseSize = leaseSize;
+        this.leaseTimeToLive = leaseTimeToLive;
+        if (leased) {
+            this.leaseSweeper = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("rate-limit-lease-sweeper").daemon().factory());
+            leaseSweeper.scheduleWithFixedDelay(this::releaseExpiredLeasesQuietly, leaseTimeToLive.toMillis(),
+                    leaseTimeToLive.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.leaseSweeper = null;
+        }
+        // A TPS changed by any instance invalidates the near cache entry, the bucket built with the old TPS goes too
+        this.tpsCache.addListener((LocalCacheInvalidateListener<String, TPSEntity>) (key, value) ->
+                release(resolvedBuckets.remove(key)));
+
+        this.nearCacheLookup = tpsLookupTimer(meterRegistry, "near");
+        this.remoteLookup = tpsLookupTimer(meterRegistry, "remote");
+        // Estimated time not spent on Redis/MySQL because the TPS was found in the near cache
+        Gauge.builder("tps.cache.latency.saved", this, config -> config.latencySaved(TimeUnit.SECONDS))
+                .description("Estimated time saved by the TPS near cache")
+                .baseUnit("seconds")
+                .register(meterRegistry);
     }
 
     public Bucket resolveBucket(String key) {
-        Supplier<BucketConfiguration> configurationSupplier = getConfigSupplier(key);
-        return buckets.builder().build(key, configurationSupplier);
-    }
-
-    private Supplier<BucketConfiguration> getConfigSupplier(String key) {
-        RMapCache<String, TPSEntity> cache = redissonClient.getMapCache("tpsOrderCache"); // Cache map created under
-                                                                                          // 'Cache' which will hold
-                                                                                          // the username's TPSentity
-        TPSEntity tpsEntity = cache.get(key);
-
-        if (tpsEntity == null) {
-            Optional<TPSEntity> tpsOpt = tpsRepo.findByUsername(key);
-            // Default TPS value if not found in the database
-            tpsEntity = tpsOpt.orElseGet(() -> TPSEntity.builder()
-                    .username(key)
-                    .tps(10)
-                    .build());
-            tpsRepo.save(tpsEntity);
-            cache.put(key, tpsEntity);
+        int tps = getTps(key).getTps();
+
+        ResolvedBucket resolvedBucket = resolvedBuckets.get(key);
+        if (resolvedBucket != null && resolvedBucket.tps() == tps) {
+            return resolvedBucket.bucket();
         }
 
-        int tps = tpsEntity.getTps();
+        // First request of the user on this instance or its TPS has changed, so the bucket is built (again). Built
+        // atomically per user, concurrent first requests all get the same bucket.
+        evictIfFull();
+        final ResolvedBucket[] replaced = new ResolvedBucket[1];
+        resolvedBucket = resolvedBuckets.compute(key, (username, current) -> {
+            if (current != null && current.tps() == tps) {
+                return current;
+            }
+            replaced[0] = current;
+            return new ResolvedBucket(tps, buildBucket(username, tps));
+        });
+        // Outside of compute as it can go to Redis, a request still using the replaced bucket is fine, see LeasedBucket
+        release(replaced[0]);
+        return resolvedBucket.bucket();
+    }
+
+    // Unused leased tokens go back to the Redis bucket when this instance stops
+    @PreDestroy
+    public void releaseBuckets() {
+        if (leaseSweeper != null) {
+            leaseSweeper.shutdownNow();
+        }
+        resolvedBuckets.values().forEach(this::release);
+    }
+
+    public void releaseExpiredLeases() {
+        for (ResolvedBucket resolvedBucket : resolvedBuckets.values()) {
+            if (resolvedBucket.bucket() instanceof LeasedBucket leasedBucket) {
+                leasedBucket.releaseIfExpired();
+            }
+        }
+    }
+
+    private Bucket buildBucket(String key, int tps) {
+        Bucket bucket = buckets.builder().build(key, getConfig(tps));
+        if (leased) {
+            bucket = new LeasedBucket(bucket, leaseSize, leaseTimeToLive);
+        }
+        return bucket;
+    }
+
+    // Keeps the users still in the near cache, which has the same size and already evicts by LRU. The size can go
+    // over tps.cache.size by the requests building a bucket while one thread evicts.
+    private void evictIfFull() {
+        if (resolvedBuckets.size() < resolvedBucketsSize || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            Set<String> nearCacheKeys = tpsCache.getCachedMap().keySet();
+            resolvedBuckets.forEach((username, resolvedBucket) -> {
+                // Only the bucket seen here, not one built for the user meanwhile
+                if (!nearCacheKeys.contains(username) && resolvedBuckets.remove(username, resolvedBucket)) {
+                    release(resolvedBucket);
+                }
+            });
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void release(ResolvedBucket resolvedBucket) {
+        if (resolvedBucket != null && resolvedBucket.bucket() instanceof LeasedBucket leasedBucket) {
+            leasedBucket.release();
+        }
+    }
+
+    private void releaseExpiredLeasesQuietly() {
+        try {
+            releaseExpiredLeases();
+        } catch (Exception ex) {
+            // Tried again in the next sweep, or returned by the user's next request
+            log.error(OrderConstants.LEASES_NOT_RETURNED, ex);
+        }
+    }
+
+    private BucketConfiguration getConfig(int tps) {
         Refill refill = Refill.intervally(tps, Duration.ofMinutes(1)); // Here tps defines the no. of tokens inserted
                                                                        // every 1 min
         Bandwidth limit = Bandwidth.classic(tps, refill); // Here tps is the max no. of tokens or capacity of the bucket
 
-        return () -> (BucketConfiguration.builder()
+        return BucketConfiguration.builder()
                 .addLimit(limit)
-                .build());
+                .build();
+    }
+
+    private TPSEntity getTps(String key) {
+        long start = System.nanoTime();
+
+        // Local heap lookup, no network call
+        TPSEntity tpsEntity = tpsCache.getCachedMap().get(key);
+        if (tpsEntity != null) {
+            nearCacheLookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return tpsEntity;
+        }
+
+        final Long unknownUntil = unknownUsernames.get(key);
+        if (unknownUntil != null && unknownUntil - start > 0) {
+            nearCacheLookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return defaultTps(key);
+        }
+
+        // Redis lookup, on a miss there the loader reads it from MySQL and stores it in Redis.
+        // Either way it is kept in the near cache for the next calls.
+        tpsEntity = tpsCache.get(key);
+        remoteLookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (tpsEntity != null) {
+            expireTpsCache();
+            unknownUsernames.remove(key);
+            return tpsEntity;
+        }
+
+        // Not in MySQL either. Remembered only here (bounded like the near cache), so a username nobody has given a
+        // TPS to never adds a row to MySQL or an entry to Redis.
+        if (unknownUsernames.size() >= resolvedBucketsSize) {
+            unknownUsernames.clear();
+        }
+        unknownUsernames.put(key, System.nanoTime() + unknownUsernameTimeToLive);
+        return defaultTps(key);
+    }
+
+    // Only a near cache miss gets here, so the extra TTL lookup is once per user per tps.cache.time-to-live at most.
+    // Setting the expiry only when the hash has none (-1) keeps it counting from the hash's creation, it isn't pushed
+    // back by every lookup.
+    private void expireTpsCache() {
+        if (tpsCache.remainTimeToLive() == -1) {
+            tpsCache.expire(tpsRedisTimeToLive);
+        }
+    }
+
+    private static TPSEntity defaultTps(String key) {
+        return TPSEntity.builder()
+                .username(key)
+                .tps(DEFAULT_TPS)
+                .build();
+    }
+
+    private MapLoader<String, TPSEntity> tpsLoader() {
+        return new MapLoader<>() {
+            @Override
+            public TPSEntity load(String key) {
+                // Only the users given a TPS in the database, null (nothing cached) for the others, see getTps
+                return tpsRepo.findByUsername(key).orElse(null);
+            }
+
+            @Override
+            public Iterable<String> loadAllKeys() {
+                return List.of(); // TPS is loaded lazily per username, never preloaded
+            }
+        };
+    }
+
+    private double latencySaved(TimeUnit timeUnit) {
+        return nearCacheLookup.count() * remoteLookup.mean(timeUnit) - nearCacheLookup.totalTime(timeUnit);
+    }
+
+    private static Timer tpsLookupTimer(MeterRegistry meterRegistry, String tier) {
+        return Timer.builder("tps.cache.lookup")
+                .description("Time to get the TPS of a user, hit rate is count(tier=near) / count")
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+
+    private record ResolvedBucket(int tps, Bucket bucket) {
     }
 }
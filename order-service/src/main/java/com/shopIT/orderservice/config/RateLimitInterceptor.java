@@ -0,0 +1,94 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.exception.RateLimitExceededException;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Rate limits every API of this service before the controller is called, instead of each controller method
+// resolving and consuming the bucket itself. The bucket is the one of the caller and each route consumes its cost
+// (rate-limit.route-costs) from it, so expensive APIs use up the caller's TPS faster than cheap ones.
+@Component
+@Slf4j
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimitConfig rateLimitConfig;
+
+    private final String defaultUsername;
+
+    private final Map<String, Integer> routeCosts;
+
+    @Autowired
+    public RateLimitInterceptor(RateLimitConfig rateLimitConfig,
+                                @Value("${api.username}") String defaultUsername,
+                                @Value("#{${rate-limit.route-costs}}") Map<String, Integer> routeCosts) {
+        this.rateLimitConfig = rateLimitConfig;
+        this.defaultUsername = defaultUsername;
+        this.routeCosts = routeCosts;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Async APIs (returning Mono) are dispatched a second time to write the response, that one was already
+        // rate limited
+        if (!(handler instanceof HandlerMethod) || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+
+        // Route pattern like /orders/placeOrder, same for all the versions and path variables of an API
+        final String route = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        final int cost = routeCosts.getOrDefault(route, 1);
+        final Bucket bucket = rateLimitConfig.resolveBucket(resolveUsername(request));
+
+        // One call gives both the remaining tokens and the time until the next refill, no second Redis round trip
+        final ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(cost);
+        if (probe.isConsumed()) {
+            log.info(String.format(OrderConstants.API_CHECK, probe.getRemainingTokens() + cost, route + " allowed"));
+            response.setHeader(OrderConstants.RATE_LIMIT_REMAINING, String.valueOf(probe.getRemainingTokens()));
+            return true;
+        }
+        log.info(String.format(OrderConstants.API_CHECK, probe.getRemainingTokens(), route + " rejected"));
+        throw new RateLimitExceededException(OrderConstants.RATE_LIMIT_EXCEEDED, probe.getRemainingTokens(),
+                retryAfterSeconds(probe));
+    }
+
+    // The authenticated user: set by Spring Security if this service has it, otherwise the subject of the JWT that
+    // the api-gateway has validated, relayed in the OrderConstants.AUTHENTICATED_USER header (the gateway removes that header
+    // from what the client sends, and this service is only reached through it). The JWT itself isn't read here, its
+    // signature isn't checked by this service. Requests without either share the bucket of api.username like before.
+    private String resolveUsername(HttpServletRequest request) {
+        final Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return principal.getName();
+        }
+
+        final String authenticatedUser = request.getHeader(OrderConstants.AUTHENTICATED_USER);
+        if (authenticatedUser != null && !authenticatedUser.isBlank()) {
+            return authenticatedUser;
+        }
+        return defaultUsername;
+    }
+
+    // Rounded up and at least 1 second, e.g. in leased mode the refill time of the Redis bucket is not known without
+    // another call
+    private static long retryAfterSeconds(ConsumptionProbe probe) {
+        final long nanosToWait = probe.getNanosToWaitForRefill();
+        final long seconds = TimeUnit.NANOSECONDS.toSeconds(nanosToWait);
+        return Math.max(1, nanosToWait % TimeUnit.SECONDS.toNanos(1) == 0 ? seconds : seconds + 1);
+    }
+}
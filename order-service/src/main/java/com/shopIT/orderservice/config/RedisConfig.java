@@ -4,6 +4,7 @@ import com.giffing.bucket4j.spring.boot.starter.config.cache.SyncCacheResolver;
 import com.giffing.bucket4j.spring.boot.starter.config.cache.jcache.JCacheCacheResolver;
 import io.github.bucket4j.distributed.proxy.ProxyManager;
 import io.github.bucket4j.grid.jcache.JCacheProxyManager;
+import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
 import org.redisson.jcache.configuration.RedissonConfiguration;
 import org.springframework.beans.factory.annotation.Value;
@@ -27,6 +28,21 @@ public class RedisConfig {
         return config;
     }
 
+    // Change feed of the inventory quantities published by inventory-service, read by the InventoryReplica
+    @Bean
+    public InventoryChangeFeed inventoryChangeFeed(RedissonClient redissonClient,
+                                                   @Value("${inventory.replica.stream}") String streamName) {
+        return new RedisInventoryChangeFeed(redissonClient, streamName);
+    }
+
+    // Stream the order events are published to by the OutboxRelay
+    @Bean
+    public OrderEventStream orderEventStream(RedissonClient redissonClient,
+                                             @Value("${order.outbox.stream}") String streamName,
+                                             @Value("${order.outbox.max-length}") int maxLength) {
+        return new RedisOrderEventStream(redissonClient, streamName, maxLength);
+    }
+
     @Bean
     public CacheManager cacheManager1(Config config) {
         CacheManager manager = Caching.getCachingProvider().getCacheManager();
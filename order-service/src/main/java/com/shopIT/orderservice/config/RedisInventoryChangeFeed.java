@@ -0,0 +1,61 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.dto.InventoryChangeEvent;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamReadArgs;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// InventoryChangeFeed on the Redis Stream written by inventory-service, one entry per event with a
+// skuCode -> "<quantity>:<version>" field per skuCode. Read with a plain XREAD (no consumer group): every order-service instance
+// keeps its own replica, so each one reads every event.
+public class RedisInventoryChangeFeed implements InventoryChangeFeed {
+
+    private final RStream<String, String> stream;
+
+    public RedisInventoryChangeFeed(RedissonClient redissonClient, String streamName) {
+        this.stream = redissonClient.getStream(streamName, StringCodec.INSTANCE);
+    }
+
+    @Override
+    public List<InventoryChangeEvent> readAfter(final String lastEventId, final int count) {
+        final Map<StreamMessageId, Map<String, String>> entries =
+                stream.read(StreamReadArgs.greaterThan(messageId(lastEventId)).count(count));
+
+        final List<InventoryChangeEvent> events = new ArrayList<>(entries.size());
+        // Entries come in the order of their ids
+        entries.forEach((id, fields) -> {
+            final Map<String, Integer> skuQuantities = new LinkedHashMap<>();
+            final Map<String, Long> skuVersions = new LinkedHashMap<>();
+            fields.forEach((skuCode, value) -> {
+                // Entries published before the versions have the quantity only
+                final int colon = value.indexOf(':');
+                if (colon < 0) {
+                    skuQuantities.put(skuCode, Integer.valueOf(value));
+                } else {
+                    skuQuantities.put(skuCode, Integer.valueOf(value.substring(0, colon)));
+                    skuVersions.put(skuCode, Long.valueOf(value.substring(colon + 1)));
+                }
+            });
+            events.add(InventoryChangeEvent.builder()
+                    .eventId(id.toString())
+                    .skuQuantities(skuQuantities)
+                    .skuVersions(skuVersions)
+                    .build());
+        });
+        return events;
+    }
+
+    // Stream ids are "<millis>-<sequence no.>"
+    private static StreamMessageId messageId(final String eventId) {
+        final int dash = eventId.indexOf('-');
+        return new StreamMessageId(Long.parseLong(eventId.substring(0, dash)),
+                Long.parseLong(eventId.substring(dash + 1)));
+    }
+}
@@ -0,0 +1,48 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.entity.OutboxEventEntity;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RStreamAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// OrderEventStream on a Redis Stream, one entry per event with plain string fields so that any Redis client can read
+// it. All the events of a call are sent in one pipelined batch (one round trip) instead of an XADD round trip each.
+// eventId is the outbox row id: an event is published again if the relay fails before deleting its row, consumers
+// drop the ids they have seen.
+public class RedisOrderEventStream implements OrderEventStream {
+
+    private final RedissonClient redissonClient;
+
+    private final String streamName;
+
+    private final int maxLength;
+
+    public RedisOrderEventStream(RedissonClient redissonClient, String streamName, int maxLength) {
+        this.redissonClient = redissonClient;
+        this.streamName = streamName;
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public void publish(final List<OutboxEventEntity> events) {
+        final RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        final RStreamAsync<String, String> stream = batch.getStream(streamName, StringCodec.INSTANCE);
+        for (OutboxEventEntity event : events) {
+            final Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("eventId", String.valueOf(event.getId()));
+            fields.put("orderId", String.valueOf(event.getOrderId()));
+            fields.put("orderNumber", event.getOrderNumber());
+            fields.put("status", event.getOrderStatus().name());
+            fields.put("createdAt", String.valueOf(event.getCreatedAt()));
+            stream.addAsync(StreamAddArgs.entries(fields).trimNonStrict().maxLen(maxLength).noLimit());
+        }
+        batch.execute();
+    }
+}
@@ -0,0 +1,34 @@
+package com.shopit.orderservice.config;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+// Redisson codec writing with the same RedisSerializer as the Spring caches, used by the TPS near cache
+public class RedisSerializerCodec extends BaseCodec {
+
+    private final RedisSerializer<Object> serializer;
+
+    private final Encoder encoder;
+
+    private final Decoder<Object> decoder;
+
+    public RedisSerializerCodec(RedisSerializer<Object> serializer) {
+        this.serializer = serializer;
+        this.encoder = value -> Unpooled.wrappedBuffer(serializer.serialize(value));
+        this.decoder = (buf, state) -> serializer.deserialize(ByteBufUtil.getBytes(buf));
+    }
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+}
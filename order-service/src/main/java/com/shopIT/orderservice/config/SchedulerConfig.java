@@ -0,0 +1,27 @@
+package com.shopit.orderservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+@Configuration
+public class SchedulerConfig {
+
+    // JPA (JDBC) calls are blocking, so in the reactive order placement they must not run on the WebClient's event
+    // loop threads. They are moved to this scheduler instead, sized like the DB connection pool because more threads
+    // than connections would only wait for a connection.
+    // With virtual threads enabled a new virtual thread is used per save instead, waiting for a DB connection then
+    // costs no platform thread and the connection pool alone bounds the concurrency.
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jpaScheduler(@Value("${order.placement.jpa-pool-size}") int jpaPoolSize,
+                                  @Value("${spring.threads.virtual.enabled}") boolean virtualThreads) {
+        if (virtualThreads) {
+            return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "jpa");
+        }
+        return Schedulers.newBoundedElastic(jpaPoolSize, Integer.MAX_VALUE, "jpa");
+    }
+}
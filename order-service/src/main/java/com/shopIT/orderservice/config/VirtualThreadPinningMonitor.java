@@ -0,0 +1,67 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+// A virtual thread which blocks inside a synchronized block/method (or a native frame) can't be unmounted and keeps
+// its carrier thread busy ie it is "pinned". Libraries like Redisson and the JCache (bucket4j) proxy still use
+// synchronized internally, so pinning is watched through the JDK's JFR event instead of being guessed.
+@Slf4j
+public class VirtualThreadPinningMonitor implements AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+
+    private final RecordingStream recordingStream;
+
+    private final Counter pinnedCounter;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry, Duration pinningThreshold) {
+        this.pinnedCounter = Counter.builder("jvm.threads.virtual.pinned")
+                .description("No. of times a virtual thread blocked while pinned to its carrier thread")
+                .register(meterRegistry);
+
+        // Only the pinning which lasts longer than the threshold is reported, along with the stack trace to
+        // find the synchronized section responsible for it.
+        this.recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(pinningThreshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+    }
+
+    public double getPinnedCount() {
+        return pinnedCounter.count();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        log.warn(String.format(OrderConstants.VIRTUAL_THREAD_PINNED, event.getDuration().toMillis(), stackTrace(event)));
+    }
+
+    private String stackTrace(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "";
+        }
+        return event.getStackTrace().getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(this::frame)
+                .collect(Collectors.joining(" <- "));
+    }
+
+    private String frame(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    @Override
+    public void close() {
+        recordingStream.close();
+    }
+}
@@ -1,11 +1,26 @@
 package com.shopit.orderservice.config;
 
+import com.shopit.orderservice.constants.OrderConstants;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
+// Instances of inventory-service are picked by InventoryLoadBalancerConfig (latency-aware) instead of round-robin
+@LoadBalancerClient(name = OrderConstants.INVENTORY_SERVICE, configuration = InventoryLoadBalancerConfig.class)
 public class WebClientConfig {
 
     // With Load balancing
@@ -22,6 +37,82 @@ public class WebClientConfig {
         return WebClient.builder();
     }
 
+    // Pool of the connections to the inventory-service instances (one pool per instance, of up to maxConnections
+    // each), of its own instead of the global one of Reactor Netty shared with every other WebClient.
+    // A connection idle for longer than maxIdleTime is closed by us before the inventory's Tomcat closes it (after
+    // its keep-alive timeout), else a request could be sent on a connection being closed.
+    // metrics(true) publishes the active, idle, pending and total connections of every pool to Micrometer
+    // (reactor.netty.connection.provider.* tagged name=inventory), see /actuator/metrics.
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider inventoryConnectionProvider(
+            @Value("${inventory.http-client.max-connections}") int maxConnections,
+            @Value("${inventory.http-client.pending-acquire-max-count}") int pendingAcquireMaxCount,
+            @Value("${inventory.http-client.pending-acquire-timeout}") Duration pendingAcquireTimeout,
+            @Value("${inventory.http-client.max-idle-time}") Duration maxIdleTime,
+            @Value("${inventory.http-client.max-life-time}") Duration maxLifeTime,
+            @Value("${inventory.http-client.evict-in-background}") Duration evictInBackground,
+            @Value("${inventory.http-client.h2c}") boolean h2c) {
+        final ConnectionProvider.Builder connectionProvider =
+                ConnectionProvider.builder(OrderConstants.INVENTORY_CONNECTION_POOL);
+        if (h2c) {
+            // A new HTTP/2 connection is opened only when the open ones have no free stream (as many as the instance
+            // allows). By default the pool opens up to maxConnections first, as for HTTP/1.1.
+            connectionProvider.allocationStrategy(Http2AllocationStrategy.builder()
+                    .minConnections(1)
+                    .maxConnections(maxConnections)
+                    .build());
+        } else {
+            connectionProvider.maxConnections(maxConnections);
+        }
+        return connectionProvider
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInBackground)
+                .metrics(true)
+                .build();
+    }
+
+    // Reactor Netty client on the inventory pool. With h2c the calls to an instance are sent over HTTP/2 without
+    // TLS and multiplexed on one connection instead of taking a connection each. It's HTTP/2 from the first byte
+    // (prior knowledge), not an upgrade of an HTTP/1.1 request, which servers refuse for a POST with a body, so
+    // every inventory instance needs server.http2.enabled=true.
+    // Not a bean: a ClientHttpConnector bean would become the one of every WebClient Spring Boot builds.
+    public static ClientHttpConnector inventoryClientHttpConnector(final ConnectionProvider inventoryConnectionProvider,
+                                                                   final Duration connectTimeout, final boolean h2c) {
+        final HttpClient httpClient = HttpClient.create(inventoryConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                // TCP keep-alive probes, so a connection the network dropped while idle in the pool is found out
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .protocol(h2c ? HttpProtocol.H2C : HttpProtocol.HTTP11);
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+    // Alternative of RestTemplate and introduced in Spring 5.
+    // WebClient is immutable and thread safe, so it is built only once from the load balanced builder and the same
+    // instance is shared by all the calls to the inventory service instead of calling build() for every order.
+    // InstanceLatencyStats comes after the load balancer filter (added to the builder when it was created), so it
+    // sees the instance each request was sent to.
+    // maxInMemorySize caps the size of a response body read into memory (the reserved stock of a batch of orders),
+    // a bigger one fails with a DataBufferLimitException instead of growing the heap.
+    @Bean
+    public WebClient inventoryWebClient(WebClient.Builder webClientBuilder,
+                                        @Value("${inventory.base-url}") String inventoryBaseUrl,
+                                        InstanceLatencyStats instanceLatencyStats,
+                                        ConnectionProvider inventoryConnectionProvider,
+                                        @Value("${inventory.http-client.connect-timeout}") Duration connectTimeout,
+                                        @Value("${inventory.http-client.h2c}") boolean h2c,
+                                        @Value("${inventory.http-client.max-in-memory-size}") DataSize maxInMemorySize) {
+        return webClientBuilder
+                .baseUrl(inventoryBaseUrl)
+                .clientConnector(inventoryClientHttpConnector(inventoryConnectionProvider, connectTimeout, h2c))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes()))
+                .filter(instanceLatencyStats)
+                .build();
+    }
+
     // Without load balancing
     // @Bean
     // public WebClient webClient(){
@@ -4,9 +4,67 @@ public class OrderConstants {
     public static final String API_CHECK = "%s Token available, API call to %s !";
     public static final String PLACED_ORDER = "Placed order with ID: ";
     public static final String ORDER_404 = "Order with this ID not present !!";
+    public static final String TOO_MANY_ORDER_IDS = "Order details can be fetched for at most %d orders at a time !!";
+    public static final String TOO_MANY_ORDERS = "At most %d orders can be placed at a time !!";
+    public static final String INVALID_ORDER = "Order must contain skuCode(s) with quantity more than 0 !!";
+    public static final String PLACED_ORDERS = "Placed %d of %d orders in the batch";
+    public static final String ORDERS_NOT_SAVED = "Error while saving the batch of orders, saving them one by one !!";
+    public static final String PLACED = "PLACED";
+    public static final String RESERVED = "RESERVED";
+    public static final String OUT_OF_STOCK = "OUT_OF_STOCK";
+    public static final String INVALID = "INVALID";
+    public static final String NOT_SAVED = "NOT_SAVED";
     public static final String INVENTORY_UNREACHABLE = "Can't reach Inventory Server, Try again later !!";
     public static final String INVENTORY_REACHABLE = "Successfully called inventory server from order service !";
     public static final String PRODUCT_NOT_IN_STOCK = "Product(s) is out of stock !!";
     public static final String ORDER_NOT_SAVED = "Error while saving/finalizing the order !!";
     public static final String RATE_LIMIT_EXCEEDED = "Rate Limit Exceeded !!";
-}
\ No newline at end of file
+    public static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    public static final String AUTHENTICATED_USER = "X-Authenticated-User";
+    public static final String REACTIVE_PLACEMENT = "reactive";
+    public static final String RESERVATION_NOT_RELEASED = "Error while releasing the stock reservation with ID: ";
+    public static final String RESERVATION_NOT_CONFIRMED = "Error while confirming the stock reservation with ID: ";
+    public static final String RESERVATION_LOST =
+            "Reservation of a placed order was released before it was confirmed, ID: ";
+    public static final String RESERVATIONS_CONFIRMED = "Confirmed %d stock reservations of placed orders again";
+    public static final String ORDERS_CACHE = "orders";
+    public static final String ORDER_NOT_CACHED = "Error while caching the placed order with ID: ";
+    public static final String LEASED_RATE_LIMIT = "leased";
+    public static final String LEASES_NOT_RETURNED = "Error while returning the expired rate limit leases !!";
+    public static final String L1_CACHE_INVALIDATION = "orderL1CacheInvalidation";
+    public static final String COMPACT_CACHE_SERIALIZER = "compact";
+    public static final String CACHE_LOCK_PREFIX = "cacheLock:";
+    public static final String CACHE_REFRESH_FAILED = "Error while refreshing the cached value with key: ";
+    public static final String CACHE_LOCK_EXPIRED = "Cache lock expired before the value was loaded: ";
+    public static final String INVENTORY_REPLICA_NOT_UPDATED = "Error while reading the inventory change feed !!";
+    public static final String PROVISIONAL = "PROVISIONAL";
+    public static final String ACCEPT_PROVISIONALLY = "accept-provisionally";
+    public static final String PROVISIONAL_ORDER = "Inventory not reachable, accepted order provisionally with ID: ";
+    public static final String PENDING_ORDER_PLACED = "Reserved the stock of the order with ID: ";
+    public static final String PENDING_ORDER_REJECTED = "Stock not available, rejected the order with ID: ";
+    public static final String PROVISIONAL_ORDERS_NOT_RECONCILED = "Error while reserving the provisional orders !!";
+    public static final String PROVISIONAL_ORDERS_LOCK = "provisionalOrdersLock";
+    public static final String OUTBOX_RELAY_LOCK = "outboxRelayLock";
+    public static final String OUTBOX_NOT_RELAYED = "Error while publishing the order events of the outbox !!";
+    public static final String ASYNC_PLACEMENT = "async";
+    public static final String RECEIVED = "RECEIVED";
+    public static final String RECEIVED_ORDER = "Accepted order with ID: %d, its status is at /orders/getOrderStatus/%d";
+    public static final String RECEIVED_ORDER_NOT_QUEUED = "Async placement queue full, order left to the reconciler: ";
+    public static final String RECEIVED_ORDER_NOT_PLACED = "Error while placing the received order with ID: ";
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String PLACE_ORDER = "placeOrder";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    public static final String IDEMPOTENCY_KEY_PREFIX = "idempotency:";
+    public static final String IN_MEMORY_IDEMPOTENCY_STORE = "in-memory";
+    public static final String IDEMPOTENCY_KEY_IN_USE = "Request with this Idempotency-Key still in progress, retry later: ";
+    public static final String IDEMPOTENCY_KEY_REUSED = "Idempotency-Key already used for another request: ";
+    public static final String IDEMPOTENCY_STORE_NOT_REACHABLE = "Error while claiming the Idempotency-Key, no dedupe for: ";
+    public static final String IDEMPOTENT_RESPONSE_NOT_SAVED = "Error while saving the response of the idempotent request: ";
+    public static final String IDEMPOTENCY_CLAIM_LOST = "Idempotency-Key no longer held by this request (its claim expired), left as it is: ";
+    public static final String INVENTORY_SERVICE = "inventory-service";
+    public static final String LATENCY_AWARE_LOAD_BALANCER = "latency-aware";
+    public static final String INVENTORY_CONNECTION_POOL = "inventory";
+    public static final String NO_INSTANCE_AVAILABLE = "No instance available of the service: ";
+    public static final String INVENTORY_CALL_RETRIED = "Retrying the inventory call (retry %d) after: %s";
+    public static final String VIRTUAL_THREAD_PINNED = "Virtual thread pinned to its carrier for %s ms at: %s";
+}
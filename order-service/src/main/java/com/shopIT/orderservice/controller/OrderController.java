@@ -1,19 +1,24 @@
 package com.shopit.orderservice.controller;
 
 import com.shopit.orderservice.constants.OrderConstants;
-import com.shopit.orderservice.config.RateLimitConfig;
 import com.shopit.orderservice.dto.OrderDtoRequest;
 import com.shopit.orderservice.dto.OrderDtoResponse;
-import com.shopit.orderservice.exception.RateLimitExceededException;
+import com.shopit.orderservice.dto.OrderPlacementDtoResponse;
+import com.shopit.orderservice.dto.OrderStatusDtoResponse;
+import com.shopit.orderservice.exception.BatchTooLargeException;
+import com.shopit.orderservice.service.IdempotentRequests;
+import com.shopit.orderservice.service.OrderPlacementWorker;
 import com.shopit.orderservice.service.OrderService;
 
-import io.github.bucket4j.Bucket;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/orders")
@@ -24,16 +29,26 @@ public class OrderController {
 
     private final OrderService orderService;
 
-    private final RateLimitConfig rateLimitConfig;
+    private final OrderPlacementWorker orderPlacementWorker;
+
+    private final IdempotentRequests idempotentRequests;
 
     @Autowired
-    public OrderController(OrderService orderService, RateLimitConfig rateLimitConfig) {
+    public OrderController(OrderService orderService, OrderPlacementWorker orderPlacementWorker,
+                           IdempotentRequests idempotentRequests) {
         this.orderService = orderService;
-        this.rateLimitConfig = rateLimitConfig;
+        this.orderPlacementWorker = orderPlacementWorker;
+        this.idempotentRequests = idempotentRequests;
     }
 
-    @Value("${api.username}")
-    private String username;
+    @Value("${order.placement.mode}")
+    private String placementMode;
+
+    @Value("${order.details.batch.max-size}")
+    private int maxBatchSize;
+
+    @Value("${order.placement.batch.max-size}")
+    private int maxPlacementBatchSize;
 
     // @CrossOrigin(origins = "http://localhost:8080", maxAge = 1000) //Allow
     // crossOrigin request from this origin only
@@ -55,30 +70,69 @@ public class OrderController {
     // potential security risks.
     @GetMapping("/getOrderDetails/{orderId}")
     public ResponseEntity<OrderDtoResponse> getOrderDetails(@PathVariable Integer orderId) {
-        Bucket bucket = rateLimitConfig.resolveBucket(username); // Getting the bucket
-
-        if (bucket.tryConsume(1)) {
-            log.info(String.format(OrderConstants.API_CHECK, bucket.getAvailableTokens() + 1,
-                    "getOrderDetails allowed"));
-            final OrderDtoResponse orderDtoResponse = orderService.getOrderDetails(orderId);
-            return ResponseEntity.status(HttpStatus.OK).body(orderDtoResponse);
-        } else {
-            log.info(String.format(OrderConstants.API_CHECK, "0", "getOrderDetails rejected"));
-            throw new RateLimitExceededException(OrderConstants.RATE_LIMIT_EXCEEDED);
+        final OrderDtoResponse orderDtoResponse = orderService.getOrderDetails(orderId);
+        return ResponseEntity.status(HttpStatus.OK).body(orderDtoResponse);
+    }
+
+    // Status of an order placed asynchronously (202) or provisionally, to poll till it's PLACED or REJECTED
+    @GetMapping("/getOrderStatus/{orderId}")
+    public ResponseEntity<OrderStatusDtoResponse> getOrderStatus(@PathVariable Integer orderId) {
+        final OrderStatusDtoResponse orderStatusDtoResponse = orderService.getOrderStatus(orderId);
+        return ResponseEntity.status(HttpStatus.OK).body(orderStatusDtoResponse);
+    }
+
+    // Details of many orders in one call, e.g. /getOrderDetails?orderIds=1,2,3. Orders not present are left out.
+    @GetMapping("/getOrderDetails")
+    public ResponseEntity<List<OrderDtoResponse>> getOrdersDetails(@RequestParam List<Integer> orderIds) {
+        if (orderIds.size() > maxBatchSize) {
+            throw new BatchTooLargeException(String.format(OrderConstants.TOO_MANY_ORDER_IDS, maxBatchSize));
         }
+        final List<OrderDtoResponse> orderDtoResponseList = orderService.getOrdersDetails(orderIds);
+        return ResponseEntity.status(HttpStatus.OK).body(orderDtoResponseList);
     }
 
+    // Places a batch of orders with one inventory call and one DB transaction, see OrderService.placeOrders. Always
+    // 200 with the result of every order (in the order of the request), unless the inventory service can't be
+    // reached, in which case nothing is placed.
+    @PostMapping("/placeOrders")
+    public ResponseEntity<List<OrderPlacementDtoResponse>> placeOrders(
+            @RequestBody List<OrderDtoRequest> orderDtoRequestList) {
+        if (orderDtoRequestList.size() > maxPlacementBatchSize) {
+            throw new BatchTooLargeException(String.format(OrderConstants.TOO_MANY_ORDERS, maxPlacementBatchSize));
+        }
+        final List<OrderPlacementDtoResponse> orderPlacementDtoResponseList =
+                orderService.placeOrders(orderDtoRequestList);
+        return ResponseEntity.status(HttpStatus.OK).body(orderPlacementDtoResponseList);
+    }
+
+    // Returns Mono so that in reactive mode the Tomcat thread is given back as soon as the call to inventory service
+    // is sent, Spring MVC writes the response later when the Mono completes (async request processing).
+    // 201 when placed, 202 when accepted provisionally (inventory service not reachable, degraded mode) or received
+    // (async mode, nothing reserved yet, see getOrderStatus).
+    // With an Idempotency-Key the order is placed once, a retry with the same key and order gets the first response
+    // (header Idempotent-Replayed: true) instead of a second order, see IdempotentRequests.
     @PostMapping("/placeOrder")
-    public ResponseEntity<String> placeOrder(@RequestBody OrderDtoRequest orderDtoRequest) {
-        Bucket bucket = rateLimitConfig.resolveBucket(username);
-
-        if (bucket.tryConsume(1)) {
-            log.info(String.format(OrderConstants.API_CHECK, bucket.getAvailableTokens() + 1, "placeOrder allowed"));
-            final Integer orderId = orderService.placeOrder(orderDtoRequest);
-            return ResponseEntity.status(HttpStatus.CREATED).body(OrderConstants.PLACED_ORDER + orderId);
-        } else {
-            log.info(String.format(OrderConstants.API_CHECK, "0", "placeOrder rejected"));
-            throw new RateLimitExceededException(OrderConstants.RATE_LIMIT_EXCEEDED);
+    public Mono<ResponseEntity<String>> placeOrder(
+            @RequestHeader(value = OrderConstants.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @RequestBody OrderDtoRequest orderDtoRequest) {
+        return idempotentRequests.executeAsync(OrderConstants.PLACE_ORDER, idempotencyKey, orderDtoRequest,
+                () -> place(orderDtoRequest));
+    }
+
+    private Mono<ResponseEntity<String>> place(final OrderDtoRequest orderDtoRequest) {
+        final Mono<OrderPlacementDtoResponse> placement;
+        if (OrderConstants.REACTIVE_PLACEMENT.equals(placementMode)) {
+            placement = orderService.placeOrderReactive(orderDtoRequest);
+        }
+        else if (OrderConstants.ASYNC_PLACEMENT.equals(placementMode)) {
+            placement = Mono.just(orderPlacementWorker.accept(orderDtoRequest));
+        }
+        else {
+            placement = Mono.just(orderService.placeOrder(orderDtoRequest));
         }
+        return placement.map(orderPlacementDtoResponse -> ResponseEntity
+                .status(OrderConstants.PLACED.equals(orderPlacementDtoResponse.getStatus())
+                        ? HttpStatus.CREATED : HttpStatus.ACCEPTED)
+                .body(orderPlacementDtoResponse.getMessage()));
     }
 }
\ No newline at end of file
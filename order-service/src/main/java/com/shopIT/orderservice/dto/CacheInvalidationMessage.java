@@ -0,0 +1,23 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Broadcast over Redis pub/sub when an entry of a two-level cache is changed, so the other instances drop their
+// in-heap (L1) copy of it, see TwoLevelCacheManager.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CacheInvalidationMessage {
+
+    // Instance that changed the entry, it ignores its own message
+    private String origin;
+
+    private String cacheName;
+
+    // null when the whole cache was cleared
+    private String key;
+}
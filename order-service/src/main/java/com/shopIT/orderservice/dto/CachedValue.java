@@ -0,0 +1,24 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+// Cached value along with when it gets stale, stored in the caches by StampedeProtectedCache
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CachedValue implements Serializable {
+
+    private Object value;
+
+    // Epoch millis after which the value is stale, it's still served (and refreshed) for cache.stale-while-revalidate
+    private long expiresAt;
+
+    // How long loading the value took, the slower it is to load the earlier it's refreshed
+    private long loadMillis;
+}
@@ -0,0 +1,22 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Response stored under an Idempotency-Key, replayed to the retries of the same request
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class IdempotentResponse {
+    private String fingerprint; // Hash of the request body, the key can't be reused for another request
+
+    private String claimToken; // Random per claim, only the request holding it can complete or release the key
+
+    private Integer status; // HTTP status, null while the first request is still being processed
+
+    private String body;
+}
@@ -0,0 +1,17 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class InventoryBatchReservationDtoRequest {
+    private List<InventoryReservationDtoRequest> reservationDtoRequestList;
+}
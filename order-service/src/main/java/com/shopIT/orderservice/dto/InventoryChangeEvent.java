@@ -0,0 +1,25 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// One event of the inventory change feed: the new quantity of every skuCode changed by one write of the inventory,
+// and the version of the inventory row it was read from
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class InventoryChangeEvent {
+    private String eventId; // Id of the stream entry, the feed is read again after the last one applied
+
+    private Map<String, Integer> skuQuantities;
+
+    // Higher version, later commit of the skuCode. A skuCode without one (published before the versions) is always
+    // applied.
+    private Map<String, Long> skuVersions;
+}
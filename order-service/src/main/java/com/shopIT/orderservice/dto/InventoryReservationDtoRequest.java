@@ -0,0 +1,21 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class InventoryReservationDtoRequest {
+    // Given once per reservation, so that its retries and hedges (InventoryCallPolicy.idempotentCall) reserve the
+    // stock only once in the inventory service
+    private String reservationId;
+
+    private List<InventoryDtoRequest> inventoryDtoRequestList;
+}
@@ -0,0 +1,17 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class InventoryReservationDtoResponse {
+    private String reservationId; // null when nothing is reserved
+
+    private String status; // RESERVED, OUT_OF_STOCK or INVALID
+}
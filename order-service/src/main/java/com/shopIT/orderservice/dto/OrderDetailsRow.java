@@ -0,0 +1,20 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One row of OrderRepository.findOrderDetails: an order along with one of its line items. The line item fields are
+// null for an order without line items.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderDetailsRow {
+
+    private Integer orderId;
+    private String orderNumber;
+    private Integer lineItemId;
+    private String skuCode;
+    private Integer price;
+    private Integer quantity;
+}
@@ -0,0 +1,20 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Result of placing an order, one per order of a bulk placement (placeOrders)
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class OrderPlacementDtoResponse {
+    private Integer orderId; // null when the order is not placed
+
+    private String status; // PLACED, PROVISIONAL (placeOrder only), OUT_OF_STOCK, INVALID or NOT_SAVED
+
+    private String message;
+}
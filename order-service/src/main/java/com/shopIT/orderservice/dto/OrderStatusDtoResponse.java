@@ -0,0 +1,18 @@
+package com.shopit.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Where an order is in its placement, polled after an async placement (202)
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class OrderStatusDtoResponse {
+    private Integer orderId;
+
+    private String status; // RECEIVED, PROVISIONAL, PLACED or REJECTED
+}
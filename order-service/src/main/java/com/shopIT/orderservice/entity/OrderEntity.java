@@ -6,6 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 @Data // This will be the equivalent of @Getters, @Setters, @ToString,
@@ -15,14 +17,43 @@ import java.util.List;
 @Builder // To implement Builder Design
 @Entity // This is used to map this class to relational DB table. @Document is used for
         // non-relational DB like mongoDB
+// Confirmations are marked by reservationId
+@Table(indexes = @Index(name = "idx_order_reservation_id", columnList = "reservationId"))
 public class OrderEntity {
 
+    // Ids come from a pooled sequence (a table emulating it on MySQL), one DB call gives the next 50 ids. With
+    // IDENTITY every insert has to run on its own to get its id back, which turns Hibernate's JDBC batching off.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+    @SequenceGenerator(name = "order_seq", sequenceName = "order_seq", allocationSize = 50)
     private Integer id;
 
     private String orderNumber;
 
-    @OneToMany(cascade = CascadeType.ALL) // Learn about Relationships
+    private String reservationId; // Stock reservation in inventory service which is held for this order
+
+    // false from the time the order is PLACED till the inventory service acked the confirmation of its reservation,
+    // the ProvisionalOrderReconciler confirms it again till then. null for the orders that never had a reservation
+    // and the ones placed before this was added.
+    private Boolean reservationConfirmed;
+
+    // null for the orders placed before the status was added, they're all PLACED
+    @Enumerated(EnumType.STRING)
+    private OrderStatus status;
+
+    private Instant createdAt;
+
+    // Bidirectional: the line items own the relationship through their order_id foreign key, so saving an order
+    // is one batch of line item inserts instead of the line items plus a join table row for each of them.
+    // Use addOrderLineItem to keep both sides in sync.
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL) // Learn about Relationships
     private List<OrderLineItemsEntity> orderLineItemsList;
+
+    public void addOrderLineItem(OrderLineItemsEntity orderLineItemsEntity) {
+        if (orderLineItemsList == null) {
+            orderLineItemsList = new ArrayList<>();
+        }
+        orderLineItemsList.add(orderLineItemsEntity);
+        orderLineItemsEntity.setOrder(this);
+    }
 }
\ No newline at end of file
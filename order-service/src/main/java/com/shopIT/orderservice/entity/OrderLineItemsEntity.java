@@ -1,13 +1,19 @@
 package com.shopit.orderservice.entity;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data // This will be the equivalent of @Getters, @Setters, @ToString,
       // @EqualsAndHashCode
@@ -17,8 +23,10 @@ import lombok.NoArgsConstructor;
 @Entity // This is used to map this class to relational DB table. @Document is used for
         // non-relational DB like mongoDB
 public class OrderLineItemsEntity {
+    // Pooled sequence like OrderEntity, so the line items of an order are inserted in JDBC batches
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_line_items_seq")
+    @SequenceGenerator(name = "order_line_items_seq", sequenceName = "order_line_items_seq", allocationSize = 50)
     private Integer id;
 
     private String skuCode;
@@ -26,4 +34,12 @@ public class OrderLineItemsEntity {
     private Integer price;
 
     private Integer quantity;
+
+    // Owner of the relationship (order_id foreign key). Excluded from toString/equals/hashCode, which would
+    // otherwise go back and forth between the order and its line items forever.
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "order_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private OrderEntity order;
 }
\ No newline at end of file
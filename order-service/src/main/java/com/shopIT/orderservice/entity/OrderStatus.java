@@ -0,0 +1,8 @@
+package com.shopit.orderservice.entity;
+
+public enum OrderStatus {
+    RECEIVED, // Accepted by the async placement, its stock is not reserved yet
+    PLACED, // Stock reserved in the inventory
+    PROVISIONAL, // Accepted while the inventory service couldn't be reached, its stock is not reserved yet
+    REJECTED // Was provisional, the stock turned out to be not available when it was reserved
+}
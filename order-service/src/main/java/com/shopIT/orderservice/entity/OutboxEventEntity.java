@@ -0,0 +1,43 @@
+package com.shopit.orderservice.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Event of an order written in the same transaction as the order itself (transactional outbox), so an event exists
+// if and only if its change is committed. The OutboxRelay publishes the rows to the order events stream and deletes
+// them.
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+@Entity // This is used to map this class to relational DB table. @Document is used for
+        // non-relational DB like mongoDB
+public class OutboxEventEntity {
+
+    // Pooled sequence like OrderEntity, also the order in which the events are published
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 50)
+    private Long id;
+
+    private Integer orderId;
+
+    private String orderNumber;
+
+    @Enumerated(EnumType.STRING)
+    private OrderStatus orderStatus; // Status the order moved to, e.g. PLACED
+
+    private Instant createdAt;
+}
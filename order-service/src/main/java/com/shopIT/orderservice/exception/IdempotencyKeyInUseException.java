@@ -0,0 +1,14 @@
+package com.shopit.orderservice.exception;
+
+import lombok.Getter;
+
+@Getter
+public class IdempotencyKeyInUseException extends RuntimeException{
+
+    private final long retryAfterSeconds;
+
+    public IdempotencyKeyInUseException(String message, long retryAfterSeconds){
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,7 @@
+package com.shopit.orderservice.exception;
+
+public class InvalidOrderException extends RuntimeException{
+    public InvalidOrderException(String message){
+        super(message);
+    }
+}
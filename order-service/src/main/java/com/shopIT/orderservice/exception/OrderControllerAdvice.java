@@ -1,6 +1,7 @@
 package com.shopit.orderservice.exception;
 
 import com.shopit.orderservice.constants.OrderConstants;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -14,6 +15,16 @@ public class OrderControllerAdvice {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
 
+    @ExceptionHandler(BatchTooLargeException.class)
+    public ResponseEntity<String> exception(BatchTooLargeException ex){
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidOrderException.class)
+    public ResponseEntity<String> exception(InvalidOrderException ex){
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
     @ExceptionHandler(InventoryNotReachableException.class)
     public ResponseEntity<String> exception(InventoryNotReachableException ex){
         return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
@@ -26,11 +37,26 @@ public class OrderControllerAdvice {
 
     @ExceptionHandler(RateLimitExceededException.class)
     public ResponseEntity<String> exception(RateLimitExceededException ex){
-        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .header(OrderConstants.RATE_LIMIT_REMAINING, String.valueOf(ex.getRemainingTokens()))
+                .body(ex.getMessage());
     }
 
     @ExceptionHandler(OrderNotSavedException.class)
     public ResponseEntity<String> exception(OrderNotSavedException ex){
         return ResponseEntity.status(HttpStatus.NOT_MODIFIED).body(ex.getMessage());
     }
+
+    @ExceptionHandler(IdempotencyKeyInUseException.class)
+    public ResponseEntity<String> exception(IdempotencyKeyInUseException ex){
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<String> exception(IdempotencyKeyReusedException ex){
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ex.getMessage());
+    }
 }
\ No newline at end of file
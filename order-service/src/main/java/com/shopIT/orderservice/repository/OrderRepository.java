@@ -1,7 +1,62 @@
 package com.shopit.orderservice.repository;
 
+import com.shopit.orderservice.dto.OrderDetailsRow;
 import com.shopit.orderservice.entity.OrderEntity;
+import com.shopit.orderservice.entity.OrderStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<OrderEntity, Integer> {
+
+    // Orders along with their line items in a single query, one row per line item, read straight into DTOs. Unlike
+    // findById there is no second query for the (lazy) line items and no entities to manage in the persistence
+    // context. Rows of an order are next to each other, in the order of the line item ids.
+    @Query("select new com.shopit.orderservice.dto.OrderDetailsRow(o.id, o.orderNumber, li.id, li.skuCode, "
+            + "li.price, li.quantity) "
+            + "from OrderEntity o left join o.orderLineItemsList li "
+            + "where o.id in :orderIds "
+            + "order by o.id, li.id")
+    List<OrderDetailsRow> findOrderDetails(@Param("orderIds") Collection<Integer> orderIds);
+
+    // Orders with their line items fetched in the same query, oldest first
+    @EntityGraph(attributePaths = "orderLineItemsList")
+    List<OrderEntity> findByStatusOrderById(OrderStatus status);
+
+    // Same, only the ones created before the given time
+    @EntityGraph(attributePaths = "orderLineItemsList")
+    List<OrderEntity> findByStatusAndCreatedAtBeforeOrderById(OrderStatus status, Instant createdBefore);
+
+    @EntityGraph(attributePaths = "orderLineItemsList")
+    Optional<OrderEntity> findWithLineItemsById(Integer id);
+
+    // Moves an order out of the given status, only if it's still in it. Returns the no. of orders updated (0 or 1).
+    // A reservation it's moved with is not confirmed yet (reservationConfirmed only matters to a PLACED order).
+    @Modifying
+    @Transactional
+    @Query("update OrderEntity o set o.status = :newStatus, o.reservationId = :reservationId, "
+            + "o.reservationConfirmed = false where o.id = :orderId and o.status = :status")
+    int updateStatus(@Param("orderId") Integer orderId, @Param("status") OrderStatus status,
+                     @Param("newStatus") OrderStatus newStatus, @Param("reservationId") String reservationId);
+
+    // Reservations of the PLACED orders created before the given time whose confirmation the inventory service
+    // hasn't acked, oldest first
+    @Query("select o.reservationId from OrderEntity o "
+            + "where o.status = com.shopit.orderservice.entity.OrderStatus.PLACED and o.reservationConfirmed = false "
+            + "and o.createdAt < :createdBefore order by o.id")
+    List<String> findUnconfirmedReservationIds(@Param("createdBefore") Instant createdBefore, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("update OrderEntity o set o.reservationConfirmed = true where o.reservationId in :reservationIds")
+    int markReservationsConfirmed(@Param("reservationIds") Collection<String> reservationIds);
 }
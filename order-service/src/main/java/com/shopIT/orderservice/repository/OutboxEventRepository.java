@@ -0,0 +1,15 @@
+package com.shopit.orderservice.repository;
+
+import com.shopit.orderservice.entity.OutboxEventEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEventEntity, Long> {
+
+    // Oldest events first, a page at a time
+    @Query("select e from OutboxEventEntity e order by e.id")
+    List<OutboxEventEntity> findOldest(Pageable pageable);
+}
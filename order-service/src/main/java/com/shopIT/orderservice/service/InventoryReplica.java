@@ -0,0 +1,180 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.config.InventoryChangeFeed;
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.dto.InventoryChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Local copy of the inventory quantities, kept up to date from the InventoryChangeFeed published by inventory-service.
+// Every poll-interval the events after the last one applied are read and their quantities set. inventory-service
+// publishes after its commits, so two events of a skuCode can come in the reverse order of their commits: the quantity
+// of an event is skipped when its version is not newer than the one applied already for the skuCode, so the replica
+// always ends up with the quantity of the last commit.
+//
+// It's only a hint, the inventory service stays the one deciding on the stock:
+// - pre-check (off by default): an order the replica knows is short of stock is rejected without the inventory call.
+//   A skuCode the replica doesn't know is left to the inventory. An event lost by the inventory service is only made
+//   up for by its next resync of all the quantities, till then a rejected order never corrects the replica.
+// - degraded mode: while the circuit to the inventory service is open, an order the replica covers can be accepted
+//   provisionally and reserved later (see OrderService.placeOrderFallBack).
+// Both only when the replica is fresh, i.e. it read the feed up to its end within max-lag.
+@Service
+@Slf4j
+public class InventoryReplica implements AutoCloseable {
+
+    private final InventoryChangeFeed inventoryChangeFeed;
+
+    private final int batchSize;
+
+    private final Duration maxLag;
+
+    private final boolean preCheck;
+
+    private final Clock clock;
+
+    private final ScheduledExecutorService poller;
+
+    private final Map<String, Integer> quantities = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> versions = new HashMap<>(); // Only used by the polling thread
+
+    // Only between the provisional orders (tryDeduct), an event applied meanwhile just sets the quantity again. A lock
+    // instead of synchronized so that a virtual thread waiting for it is not pinned.
+    private final ReentrantLock deductionLock = new ReentrantLock();
+
+    private String lastEventId = InventoryChangeFeed.FIRST_EVENT_ID; // Only changed by the polling thread
+
+    private volatile Instant caughtUpAt; // Last time the feed was read up to its end, null till the first time
+
+    @Autowired
+    public InventoryReplica(InventoryChangeFeed inventoryChangeFeed,
+                            @Value("${inventory.replica.poll-interval}") Duration pollInterval,
+                            @Value("${inventory.replica.batch-size}") int batchSize,
+                            @Value("${inventory.replica.max-lag}") Duration maxLag,
+                            @Value("${inventory.replica.pre-check}") boolean preCheck) {
+        this(inventoryChangeFeed, pollInterval, batchSize, maxLag, preCheck, Clock.systemUTC());
+    }
+
+    InventoryReplica(InventoryChangeFeed inventoryChangeFeed, Duration pollInterval, int batchSize, Duration maxLag,
+                     boolean preCheck, Clock clock) {
+        this.inventoryChangeFeed = inventoryChangeFeed;
+        this.batchSize = batchSize;
+        this.maxLag = maxLag;
+        this.preCheck = preCheck;
+        this.clock = clock;
+
+        this.poller = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("inventory-replica-poller").daemon().factory());
+        if (pollInterval.isPositive()) {
+            poller.scheduleWithFixedDelay(this::pollQuietly, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Applies the events published since the last poll, in batches till the end of the feed. Returns the no. of
+    // events applied. Called by the polling thread only (and tests).
+    public int poll() {
+        int applied = 0;
+        List<InventoryChangeEvent> events;
+        do {
+            events = inventoryChangeFeed.readAfter(lastEventId, batchSize);
+            for (InventoryChangeEvent event : events) {
+                apply(event);
+                lastEventId = event.getEventId();
+            }
+            applied += events.size();
+        } while (events.size() == batchSize);
+
+        caughtUpAt = clock.instant();
+        return applied;
+    }
+
+    private void apply(final InventoryChangeEvent event) {
+        final Map<String, Long> skuVersions = event.getSkuVersions() == null ? Map.of() : event.getSkuVersions();
+        event.getSkuQuantities().forEach((skuCode, quantity) -> {
+            final Long version = skuVersions.get(skuCode);
+            if (version != null) {
+                final Long appliedVersion = versions.get(skuCode);
+                if (appliedVersion != null && version <= appliedVersion) {
+                    return; // Older (or the same) commit than the one applied already
+                }
+                versions.put(skuCode, version);
+            }
+            quantities.put(skuCode, quantity);
+        });
+    }
+
+    public boolean isFresh() {
+        final Instant at = caughtUpAt;
+        return at != null && !at.plus(maxLag).isBefore(clock.instant());
+    }
+
+    // True only when the replica is fresh and has less than the required quantity of a skuCode it knows
+    public boolean isKnownShort(final Map<String, Integer> skuQuantities) {
+        if (!preCheck || !isFresh()) {
+            return false;
+        }
+        for (Map.Entry<String, Integer> entry : skuQuantities.entrySet()) {
+            final Integer quantity = quantities.get(entry.getKey());
+            if (quantity != null && quantity < entry.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // All-or-nothing: when the replica is fresh and has the required quantity of every skuCode, deducts it locally
+    // and returns true. The deduction only holds the quantity back from the next provisional orders of this instance,
+    // the next event of a skuCode sets it to what the inventory has again.
+    public boolean tryDeduct(final Map<String, Integer> skuQuantities) {
+        if (!isFresh()) {
+            return false;
+        }
+        deductionLock.lock();
+        try {
+            for (Map.Entry<String, Integer> entry : skuQuantities.entrySet()) {
+                final Integer quantity = quantities.get(entry.getKey());
+                if (quantity == null || quantity < entry.getValue()) {
+                    return false;
+                }
+            }
+            skuQuantities.forEach((skuCode, quantity) -> quantities.merge(skuCode, -quantity, Integer::sum));
+            return true;
+        } finally {
+            deductionLock.unlock();
+        }
+    }
+
+    // null when the skuCode is not known
+    public Integer quantity(final String skuCode) {
+        return quantities.get(skuCode);
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+
+    // A failed poll must not stop the next ones, the replica just gets older (and stops being fresh after max-lag)
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (Exception ex) {
+            log.warn(OrderConstants.INVENTORY_REPLICA_NOT_UPDATED, ex);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.entity.OrderEntity;
+import com.shopit.orderservice.entity.OrderStatus;
+import com.shopit.orderservice.entity.OutboxEventEntity;
+import com.shopit.orderservice.repository.OrderRepository;
+import com.shopit.orderservice.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+
+// Every write of an order goes through here: the order and its outbox event are saved in one transaction, so the
+// event is published (by the OutboxRelay) if and only if the order change is committed. A failed save throws like
+// the repository does and saves neither.
+@Service
+public class OrderOutbox {
+
+    private final OrderRepository orderRepo;
+
+    private final OutboxEventRepository outboxEventRepo;
+
+    @Autowired
+    public OrderOutbox(OrderRepository orderRepo, OutboxEventRepository outboxEventRepo) {
+        this.orderRepo = orderRepo;
+        this.outboxEventRepo = outboxEventRepo;
+    }
+
+    @Transactional
+    public OrderEntity save(final OrderEntity orderEntity) {
+        if (orderEntity.getCreatedAt() == null) {
+            orderEntity.setCreatedAt(Instant.now());
+        }
+        orderRepo.save(orderEntity);
+        outboxEventRepo.save(event(orderEntity, orderEntity.getStatus()));
+        return orderEntity;
+    }
+
+    // Orders and events are inserted in JDBC batches (see hibernate.jdbc.batch_size)
+    @Transactional
+    public void saveAll(final Collection<OrderEntity> orderEntityList) {
+        final Instant now = Instant.now();
+        orderEntityList.forEach(orderEntity -> {
+            if (orderEntity.getCreatedAt() == null) {
+                orderEntity.setCreatedAt(now);
+            }
+        });
+        orderRepo.saveAll(orderEntityList);
+        outboxEventRepo.saveAll(orderEntityList.stream()
+                .map(orderEntity -> event(orderEntity, orderEntity.getStatus()))
+                .toList());
+    }
+
+    // Conditional status change (see OrderRepository.updateStatus), the event is written only if the order was
+    // still in the given status. Returns the no. of orders updated (0 or 1).
+    @Transactional
+    public int updateStatus(final OrderEntity orderEntity, final OrderStatus status, final OrderStatus newStatus,
+                            final String reservationId) {
+        final int updated = orderRepo.updateStatus(orderEntity.getId(), status, newStatus, reservationId);
+        if (updated == 1) {
+            outboxEventRepo.save(event(orderEntity, newStatus));
+        }
+        return updated;
+    }
+
+    private static OutboxEventEntity event(final OrderEntity orderEntity, final OrderStatus orderStatus) {
+        return OutboxEventEntity.builder()
+                .orderId(orderEntity.getId())
+                .orderNumber(orderEntity.getOrderNumber())
+                .orderStatus(orderStatus == null ? OrderStatus.PLACED : orderStatus)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
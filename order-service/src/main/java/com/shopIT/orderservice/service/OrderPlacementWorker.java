@@ -0,0 +1,73 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.dto.OrderDtoRequest;
+import com.shopit.orderservice.dto.OrderPlacementDtoResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Async order placement (order.placement.mode=async): the request only saves the order as RECEIVED and queues its id,
+// a fixed no. of worker threads take the ids off the queue and reserve their stock (OrderService.placeReceivedOrder).
+// A peak of orders then waits in the queue instead of holding request threads while the inventory service is slow.
+// The queue is in memory only, the DB is what's durable: an order not queued (queue full) or lost with the instance
+// stays RECEIVED and is placed by the ProvisionalOrderReconciler.
+@Service
+@Slf4j
+public class OrderPlacementWorker implements AutoCloseable {
+
+    private final OrderService orderService;
+
+    private final BlockingQueue<Integer> receivedOrderIds;
+
+    private final List<Thread> workers;
+
+    @Autowired
+    public OrderPlacementWorker(OrderService orderService,
+                                @Value("${order.async.workers}") int workers,
+                                @Value("${order.async.queue-capacity}") int queueCapacity) {
+        this.orderService = orderService;
+        this.receivedOrderIds = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            this.workers.add(Thread.ofPlatform().name("order-placement-worker-" + i).daemon().start(this::work));
+        }
+    }
+
+    // Saves the order (committed once this returns) and queues it for a worker, never waits for the queue
+    public OrderPlacementDtoResponse accept(final OrderDtoRequest orderDtoRequest) {
+        final OrderPlacementDtoResponse orderPlacementDtoResponse = orderService.acceptOrder(orderDtoRequest);
+        if (!receivedOrderIds.offer(orderPlacementDtoResponse.getOrderId())) {
+            log.warn(OrderConstants.RECEIVED_ORDER_NOT_QUEUED + orderPlacementDtoResponse.getOrderId());
+        }
+        return orderPlacementDtoResponse;
+    }
+
+    @Override
+    public void close() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Integer orderId;
+            try {
+                orderId = receivedOrderIds.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            try {
+                orderService.placeReceivedOrder(orderId);
+            } catch (Exception ex) {
+                // Stays RECEIVED, e.g. the inventory service is not reachable
+                log.warn(OrderConstants.RECEIVED_ORDER_NOT_PLACED + orderId, ex);
+            }
+        }
+    }
+}
@@ -1,27 +1,47 @@
 package com.shopit.orderservice.service;
 
+import com.shopit.orderservice.config.InventoryCallPolicy;
 import com.shopit.orderservice.constants.OrderConstants;
 import com.shopit.orderservice.dto.*;
 import com.shopit.orderservice.entity.OrderEntity;
 import com.shopit.orderservice.entity.OrderLineItemsEntity;
+import com.shopit.orderservice.entity.OrderStatus;
+import com.shopit.orderservice.exception.InvalidOrderException;
 import com.shopit.orderservice.exception.InventoryNotReachableException;
 import com.shopit.orderservice.exception.OrderNotFoundException;
 import com.shopit.orderservice.exception.OrderNotSavedException;
 import com.shopit.orderservice.exception.ProductNotInStockException;
 import com.shopit.orderservice.repository.OrderRepository;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
-
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Stream;
 
 @Service // Used to represent a class as business logic handling class and also mark this
 // as @Component so spring IOC container
@@ -30,118 +50,610 @@ import java.util.stream.Stream;
 @Slf4j // Given by lombok for logging purpose
 public class OrderService {
 
+    private static final int UNCONFIRMED_PAGE_SIZE = 100;
+
     private final OrderRepository orderRepo;
 
-    private final WebClient.Builder webClientBuilder;
+    // Writes of the orders, each one along with its outbox event
+    private final OrderOutbox orderOutbox;
+
+    private final WebClient inventoryWebClient;
+
+    private final InventoryCallPolicy inventoryCallPolicy;
+
+    private final Scheduler jpaScheduler;
+
+    // Same "orders" cache that @Cacheable getOrderDetails reads from
+    private final Cache ordersCache;
+
+    private final InventoryReplica inventoryReplica;
+
+    private final boolean acceptProvisionally;
 
     @Autowired
-    public OrderService(OrderRepository orderRepo, WebClient.Builder webClientBuilder) {
+    public OrderService(OrderRepository orderRepo, OrderOutbox orderOutbox, WebClient inventoryWebClient,
+                        InventoryCallPolicy inventoryCallPolicy, Scheduler jpaScheduler, CacheManager cacheManager,
+                        InventoryReplica inventoryReplica,
+                        @Value("${order.placement.degraded-mode}") String degradedMode) {
         this.orderRepo = orderRepo;
-        this.webClientBuilder = webClientBuilder;
+        this.orderOutbox = orderOutbox;
+        this.inventoryWebClient = inventoryWebClient;
+        this.inventoryCallPolicy = inventoryCallPolicy;
+        this.jpaScheduler = jpaScheduler;
+        this.ordersCache = cacheManager.getCache(OrderConstants.ORDERS_CACHE);
+        this.inventoryReplica = inventoryReplica;
+        this.acceptProvisionally = OrderConstants.ACCEPT_PROVISIONALLY.equals(degradedMode);
     }
 
     // Ideally, We do not use caching in case of POST operation.
     @CircuitBreaker(name = "inventoryCall", fallbackMethod = "placeOrderFallBack")
-    public Integer placeOrder(final OrderDtoRequest orderDtoRequest) {
-        // First check if the products with ordered quantity are in stock or not.
-        // If they are in stock, place the order otherwise don't.
+    public OrderPlacementDtoResponse placeOrder(final OrderDtoRequest orderDtoRequest) {
+        // First reserve the products with ordered quantity in the inventory.
+        // If all of them are reserved, place the order otherwise don't.
 
         // IMPORTANT:
-        // A. If we loop through all the products/skuCodes in the order and check if
-        // they are in stock by calling the
-        // inventory service one by one, it will be slower and costly.
-        // B. So instead we will send all the skuCodes/products in single call to the
-        // inventory service and collect
-        // the quantity available in stock for each product/skuCode in a list.
-
-        final List<String> skuCode = orderDtoRequest.getOrderLineItemsDtoRequestList().stream()
-                .map(orderLineItem -> orderLineItem.getSkuCode()).toList();
-
-        // Alternative of RestTemplate and introduced in Spring 5.
-        // If we do not want load balancing then we can directly create webClient like
-        // below without making config class
-        // final WebClient webClient = WebClient.create();
-
-        ResponseEntity<List<InventoryDtoResponse>> inventoryDtoResponseREntity = webClientBuilder.build()
-                .get()
-                // .uri("http://localhost:2334/shopit/inventory/quantity", uriBuilder ->
-                // uriBuilder
-                .uri("http://inventory-service/shopit/inventory/quantity", uriBuilder -> uriBuilder
-                        .queryParam("skuCode", skuCode)
-                        .build())
-                .retrieve()
-                .toEntity(new ParameterizedTypeReference<List<InventoryDtoResponse>>() {
-                }) // Used when its returning-
-                // -Response entity otherwise we use .bodyToMono()
-                .block();
+        // A. If we only check the quantity in stock and then save the order, two orders placed at the same time can
+        // both see the same quantity and the product gets oversold, also the stock is never deducted.
+        // B. So instead we will send all the skuCodes/products with their quantity in single call to the
+        // inventory service, which deducts all of them in one go (all-or-nothing) and returns a reservation id.
+
+        final SkuQuantityIndex skuQuantityIndex =
+                SkuQuantityIndex.ofOrder(orderDtoRequest.getOrderLineItemsDtoRequestList());
+        // Known to be short from the local replica of the inventory, no need to ask the inventory service
+        if (inventoryReplica.isKnownShort(skuQuantityIndex.toMap())) {
+            log.info(OrderConstants.PRODUCT_NOT_IN_STOCK);
+            throw new ProductNotInStockException(OrderConstants.PRODUCT_NOT_IN_STOCK);
+        }
+
+        // Blocking mode: the calling (Tomcat) thread waits here till the inventory service responds.
+        final String orderNumber = UUID.randomUUID().toString(); // Random number generation
+        final InventoryReservationDtoResponse inventoryReservationDtoResponse =
+                reserveStock(orderNumber, skuQuantityIndex).block();
 
         log.info(OrderConstants.INVENTORY_REACHABLE); // provided by @Slf4j
 
-        // Converting into stream for efficient filtering in next steps
-        final Stream<InventoryDtoResponse> inventoryDtoResponseStream = inventoryDtoResponseREntity.getBody()
-                .stream();
-
-        // Since we called the inventory service only once and got all the required
-        // product's quantity
-        // we need to now loop through the orderLineItem list in the order to check if
-        // each ordered product
-        // with quantity 'x' is available in the inventory or not.
-
-        // Here, orderLineItem contains ordered products with required quantity and
-        // InventoryDtoResponse Stream contains all the ordered products with the
-        // available quantity
-        for (OrderLineItemsDtoRequest orderLineItem : orderDtoRequest.getOrderLineItemsDtoRequestList()) {
-            final Optional<InventoryDtoResponse> inventoryDtoResponseSame = inventoryDtoResponseStream
-                    .filter(inventoryDtoResponse -> inventoryDtoResponse.getSkuCode()
-                            .equals(orderLineItem.getSkuCode())) // Filtered to get the
-                    // matching skuCode
-                    // corresponding to the one
-                    // in orderLineItem
-                    .findFirst(); // to collect it
-
-            // If inventoryDtoResponseSame is empty meaning the ordered product is not
-            // present in any inventory
-            // or If the available quantity of any product is less than the required
-            // quantity in the order then
-            // return exception as product(s) not in stock.
-            if (inventoryDtoResponseSame.isEmpty()
-                    || inventoryDtoResponseSame.get().getQuantity() < orderLineItem.getQuantity()) {
-                log.info(OrderConstants.PRODUCT_NOT_IN_STOCK);
-                throw new ProductNotInStockException(OrderConstants.PRODUCT_NOT_IN_STOCK);
+        // Further statements will be executed only when all the products in order are
+        // reserved in the inventory with the required quantity.
+        return placed(saveOrder(orderDtoRequest, orderNumber, inventoryReservationDtoResponse.getReservationId()));
+    }
+
+    // Out of stock is a valid response from the inventory, so it's returned as it is instead of the fallback's
+    // InventoryNotReachableException. Resilience4j picks the fallback with the most specific exception type.
+    public OrderPlacementDtoResponse placeOrderFallBack(final OrderDtoRequest orderDtoRequest,
+                                                        ProductNotInStockException ex) {
+        throw ex;
+    }
+
+    // Same for an order rejected before the inventory service is called, e.g. a line item without a skuCode
+    public OrderPlacementDtoResponse placeOrderFallBack(final OrderDtoRequest orderDtoRequest,
+                                                        InvalidOrderException ex) {
+        throw ex;
+    }
+
+    // Circuit is open, the inventory service is not even called. In accept-provisionally mode the order may still be
+    // accepted from the local replica of the inventory.
+    public OrderPlacementDtoResponse placeOrderFallBack(final OrderDtoRequest orderDtoRequest,
+                                                        CallNotPermittedException ex) {
+        return acceptProvisionally(orderDtoRequest);
+    }
+
+    public OrderPlacementDtoResponse placeOrderFallBack(final OrderDtoRequest orderDtoRequest,
+                                                        RuntimeException runtimeException) {
+        log.warn(OrderConstants.INVENTORY_UNREACHABLE);
+        throw new InventoryNotReachableException(OrderConstants.INVENTORY_UNREACHABLE);
+    }
+
+    // Non-blocking mode of placeOrder: No thread waits for the inventory service, the rest of the pipeline runs
+    // when its response arrives. JPA is blocking by nature so the save is moved to a separate bounded scheduler
+    // (of DB connection pool size) instead of blocking the event loop threads of the WebClient.
+    @CircuitBreaker(name = "inventoryCall", fallbackMethod = "placeOrderReactiveFallBack")
+    public Mono<OrderPlacementDtoResponse> placeOrderReactive(final OrderDtoRequest orderDtoRequest) {
+        final SkuQuantityIndex skuQuantityIndex =
+                SkuQuantityIndex.ofOrder(orderDtoRequest.getOrderLineItemsDtoRequestList());
+        if (inventoryReplica.isKnownShort(skuQuantityIndex.toMap())) {
+            log.info(OrderConstants.PRODUCT_NOT_IN_STOCK);
+            return Mono.error(new ProductNotInStockException(OrderConstants.PRODUCT_NOT_IN_STOCK));
+        }
+        final String orderNumber = UUID.randomUUID().toString();
+        return reserveStock(orderNumber, skuQuantityIndex)
+                .doOnNext(inventoryReservationDtoResponse -> log.info(OrderConstants.INVENTORY_REACHABLE))
+                .publishOn(jpaScheduler)
+                .map(inventoryReservationDtoResponse -> placed(saveOrder(orderDtoRequest, orderNumber,
+                        inventoryReservationDtoResponse.getReservationId())));
+    }
+
+    public Mono<OrderPlacementDtoResponse> placeOrderReactiveFallBack(final OrderDtoRequest orderDtoRequest,
+                                                                      ProductNotInStockException ex) {
+        return Mono.error(ex);
+    }
+
+    public Mono<OrderPlacementDtoResponse> placeOrderReactiveFallBack(final OrderDtoRequest orderDtoRequest,
+                                                                      InvalidOrderException ex) {
+        return Mono.error(ex);
+    }
+
+    // The provisional order is saved on the jpa scheduler, like the placed ones
+    public Mono<OrderPlacementDtoResponse> placeOrderReactiveFallBack(final OrderDtoRequest orderDtoRequest,
+                                                                      CallNotPermittedException ex) {
+        return Mono.fromCallable(() -> acceptProvisionally(orderDtoRequest)).subscribeOn(jpaScheduler);
+    }
+
+    public Mono<OrderPlacementDtoResponse> placeOrderReactiveFallBack(final OrderDtoRequest orderDtoRequest,
+                                                                      RuntimeException runtimeException) {
+        log.warn(OrderConstants.INVENTORY_UNREACHABLE);
+        return Mono.error(new InventoryNotReachableException(OrderConstants.INVENTORY_UNREACHABLE));
+    }
+
+    // Async placement, first half: the order is only saved as RECEIVED (with its outbox event) and its id returned
+    // right away, so the request doesn't wait for the inventory service at all. Its stock is reserved by the
+    // OrderPlacementWorker (placeReceivedOrder), the client polls getOrderStatus for the outcome.
+    public OrderPlacementDtoResponse acceptOrder(final OrderDtoRequest orderDtoRequest) {
+        if (orderDtoRequest.getOrderLineItemsDtoRequestList() == null
+                || orderDtoRequest.getOrderLineItemsDtoRequestList().isEmpty()) {
+            throw new InvalidOrderException(OrderConstants.INVALID_ORDER);
+        }
+        // Known to be short, rejected right away instead of after the reservation
+        if (inventoryReplica.isKnownShort(
+                SkuQuantityIndex.ofOrder(orderDtoRequest.getOrderLineItemsDtoRequestList()).toMap())) {
+            log.info(OrderConstants.PRODUCT_NOT_IN_STOCK);
+            throw new ProductNotInStockException(OrderConstants.PRODUCT_NOT_IN_STOCK);
+        }
+
+        final OrderEntity orderEntity = orderDtoReqToOrderEntity(orderDtoRequest, null);
+        orderEntity.setStatus(OrderStatus.RECEIVED);
+        try {
+            orderOutbox.save(orderEntity);
+        }
+        catch (Exception ex) {
+            log.error(OrderConstants.ORDER_NOT_SAVED);
+            throw new OrderNotSavedException(OrderConstants.ORDER_NOT_SAVED);
+        }
+
+        return orderPlacementDtoRes(orderEntity.getId(), OrderConstants.RECEIVED,
+                String.format(OrderConstants.RECEIVED_ORDER, orderEntity.getId(), orderEntity.getId()));
+    }
+
+    // Async placement, second half: reserves the stock of a RECEIVED order, which is then PLACED or REJECTED.
+    // Returns false when the order is not (or no longer) RECEIVED. Any other failure than out of stock is thrown and
+    // the order stays RECEIVED, it's tried again by the ProvisionalOrderReconciler.
+    @CircuitBreaker(name = "inventoryCall")
+    public boolean placeReceivedOrder(final Integer orderId) {
+        final OrderEntity orderEntity = orderRepo.findWithLineItemsById(orderId).orElse(null);
+        if (orderEntity == null || orderEntity.getStatus() != OrderStatus.RECEIVED) {
+            return false;
+        }
+        return reserveOrder(orderEntity, OrderStatus.RECEIVED);
+    }
+
+    // RECEIVED orders the workers didn't get to (queue full, instance restarted, inventory not reachable), created
+    // before the given time so that the ones still in a worker's queue are left to it. Returns the no. of orders
+    // placed or rejected.
+    @CircuitBreaker(name = "inventoryCall")
+    public int placeReceivedOrders(final Instant createdBefore) {
+        int reconciled = 0;
+        for (OrderEntity orderEntity : orderRepo.findByStatusAndCreatedAtBeforeOrderById(OrderStatus.RECEIVED,
+                createdBefore)) {
+            if (reserveOrder(orderEntity, OrderStatus.RECEIVED)) {
+                reconciled++;
             }
         }
+        return reconciled;
+    }
 
-        // Further statements will be executed only when all the products in order are
-        // present in the inventory with
-        // the required quantity.
+    // Status of an order, not cached as it changes during an async or provisional placement
+    public OrderStatusDtoResponse getOrderStatus(final Integer orderId) {
+        final OrderEntity orderEntity = orderRepo.findById(orderId).orElseThrow(() -> {
+            log.info(OrderConstants.ORDER_404);
+            return new OrderNotFoundException(OrderConstants.ORDER_404);
+        });
+        return OrderStatusDtoResponse.builder()
+                .orderId(orderEntity.getId())
+                // Orders placed before the status was added have none
+                .status(orderEntity.getStatus() == null ? OrderConstants.PLACED : orderEntity.getStatus().name())
+                .build();
+    }
 
-        // Placing the order
-        final OrderEntity orderEntity = OrderEntity.builder()
-                .orderNumber(UUID.randomUUID().toString()) // Random number generation
+    // Bulk placement: the stock of all the orders is reserved in one call to the inventory service and the
+    // reserved orders are saved in one (batched) transaction, instead of a rate-limited call, an inventory round
+    // trip and a transaction per order. Every order is still placed all-or-nothing on its own, an order out of
+    // stock or not saved doesn't fail the others. Results are in the order of the requests.
+    @CircuitBreaker(name = "inventoryCall", fallbackMethod = "placeOrdersFallBack")
+    public List<OrderPlacementDtoResponse> placeOrders(final List<OrderDtoRequest> orderDtoRequestList) {
+        // Every order is reserved under its orderNumber, like placeOrder, so the batch can be sent again
+        final List<String> orderNumbers = orderDtoRequestList.stream()
+                .map(orderDtoRequest -> UUID.randomUUID().toString())
+                .toList();
+        final List<InventoryReservationDtoResponse> inventoryReservationDtoResponseList =
+                reserveStockBatch(orderDtoRequestList, orderNumbers).block();
+
+        log.info(OrderConstants.INVENTORY_REACHABLE);
+
+        final OrderPlacementDtoResponse[] orderPlacementDtoResponses =
+                new OrderPlacementDtoResponse[orderDtoRequestList.size()];
+        final Map<Integer, OrderEntity> reservedOrders = new LinkedHashMap<>(); // By index in the batch
+        for (int i = 0; i < orderDtoRequestList.size(); i++) {
+            final InventoryReservationDtoResponse inventoryReservationDtoResponse =
+                    inventoryReservationDtoResponseList.get(i);
+            if (OrderConstants.RESERVED.equals(inventoryReservationDtoResponse.getStatus())) {
+                reservedOrders.put(i, orderDtoReqToOrderEntity(orderDtoRequestList.get(i), orderNumbers.get(i),
+                        inventoryReservationDtoResponse.getReservationId()));
+            }
+            else if (OrderConstants.OUT_OF_STOCK.equals(inventoryReservationDtoResponse.getStatus())) {
+                orderPlacementDtoResponses[i] = orderPlacementDtoRes(null, OrderConstants.OUT_OF_STOCK,
+                        OrderConstants.PRODUCT_NOT_IN_STOCK);
+            }
+            else {
+                orderPlacementDtoResponses[i] = orderPlacementDtoRes(null, OrderConstants.INVALID,
+                        OrderConstants.INVALID_ORDER);
+            }
+        }
+
+        final Set<OrderEntity> savedOrders = saveOrders(reservedOrders.values());
+        final List<String> placedReservationIds = new ArrayList<>(savedOrders.size());
+        final List<String> notSavedReservationIds = new ArrayList<>();
+        reservedOrders.forEach((i, orderEntity) -> {
+            if (savedOrders.contains(orderEntity)) {
+                placedReservationIds.add(orderEntity.getReservationId());
+                cacheOrder(orderEntity);
+                orderPlacementDtoResponses[i] = orderPlacementDtoRes(orderEntity.getId(), OrderConstants.PLACED,
+                        OrderConstants.PLACED_ORDER + orderEntity.getId());
+            }
+            else {
+                notSavedReservationIds.add(orderEntity.getReservationId());
+                orderPlacementDtoResponses[i] = orderPlacementDtoRes(null, OrderConstants.NOT_SAVED,
+                        OrderConstants.ORDER_NOT_SAVED);
+            }
+        });
+        // One confirm and one release for the whole batch instead of a call per order
+        finalizeReservations(placedReservationIds, "confirm", OrderConstants.RESERVATION_NOT_CONFIRMED);
+        finalizeReservations(notSavedReservationIds, "release", OrderConstants.RESERVATION_NOT_RELEASED);
+
+        log.info(String.format(OrderConstants.PLACED_ORDERS, savedOrders.size(), orderDtoRequestList.size()));
+
+        return List.of(orderPlacementDtoResponses);
+    }
+
+    // Some orders of the batch may be reserved when the inventory service timed out after reserving them: the
+    // attempts of the call reuse their reservationIds so they aren't reserved twice, but a batch sent again by the
+    // client gets new orderNumbers. The reservations of this one are never confirmed, the ReservationExpirer of the
+    // inventory service releases them.
+    public List<OrderPlacementDtoResponse> placeOrdersFallBack(final List<OrderDtoRequest> orderDtoRequestList,
+                                                               RuntimeException runtimeException) {
+        log.warn(OrderConstants.INVENTORY_UNREACHABLE);
+        throw new InventoryNotReachableException(OrderConstants.INVENTORY_UNREACHABLE);
+    }
+
+    // Degraded mode of placeOrder while the circuit to the inventory service is open: when the local replica of the
+    // inventory is fresh and has the stock of every skuCode, the order is saved as PROVISIONAL without a reservation
+    // and reserved once the inventory service is back (see reconcileProvisionalOrders). It can still be REJECTED
+    // then, the replica is only as good as its last event. Otherwise (or in reject mode) it fails as before.
+    private OrderPlacementDtoResponse acceptProvisionally(final OrderDtoRequest orderDtoRequest) {
+        if (!acceptProvisionally || orderDtoRequest.getOrderLineItemsDtoRequestList() == null
+                || !inventoryReplica.tryDeduct(SkuQuantityIndex.ofOrder(
+                        orderDtoRequest.getOrderLineItemsDtoRequestList()).toMap())) {
+            log.warn(OrderConstants.INVENTORY_UNREACHABLE);
+            throw new InventoryNotReachableException(OrderConstants.INVENTORY_UNREACHABLE);
+        }
+
+        final OrderEntity orderEntity = orderDtoReqToOrderEntity(orderDtoRequest, null);
+        orderEntity.setStatus(OrderStatus.PROVISIONAL);
+        try {
+            orderOutbox.save(orderEntity);
+        }
+        catch (Exception ex) {
+            log.error(OrderConstants.ORDER_NOT_SAVED);
+            throw new OrderNotSavedException(OrderConstants.ORDER_NOT_SAVED);
+        }
+
+        // Not cached, its status still changes
+        log.info(OrderConstants.PROVISIONAL_ORDER + orderEntity.getId());
+        return orderPlacementDtoRes(orderEntity.getId(), OrderConstants.PROVISIONAL,
+                OrderConstants.PROVISIONAL_ORDER + orderEntity.getId());
+    }
+
+    // Reserves the stock of the provisional orders, oldest first. Reserved: the order is PLACED. Out of stock: it's
+    // REJECTED. Any other failure ends the round (the inventory service is still not reachable), the remaining orders
+    // are tried again in the next one. Behind the same circuit breaker as the placements, so nothing is sent while
+    // it's open. Returns the no. of orders placed or rejected.
+    @CircuitBreaker(name = "inventoryCall")
+    public int reconcileProvisionalOrders() {
+        int reconciled = 0;
+        for (OrderEntity orderEntity : orderRepo.findByStatusOrderById(OrderStatus.PROVISIONAL)) {
+            if (reserveOrder(orderEntity, OrderStatus.PROVISIONAL)) {
+                reconciled++;
+            }
+        }
+        return reconciled;
+    }
+
+    // Confirms the reservations of the PLACED orders created before the given time that the inventory service hasn't
+    // acked the confirmation of yet (the one sent right after placing the order failed, or the instance stopped before
+    // it was sent), oldest first, a page of them per call. Confirming is a no-op for a reservation confirmed already.
+    // Any failure ends the round, the rest are confirmed in the next one. Returns the no. of reservations confirmed.
+    // Must run well within inventory.reservation.expire-after of the inventory service, which releases a reservation
+    // still not confirmed by then and gives its stock back.
+    @CircuitBreaker(name = "inventoryCall")
+    public int confirmPlacedReservations(final Instant createdBefore) {
+        int confirmed = 0;
+        List<String> reservationIds;
+        do {
+            reservationIds = orderRepo.findUnconfirmedReservationIds(createdBefore,
+                    PageRequest.of(0, UNCONFIRMED_PAGE_SIZE));
+            if (reservationIds.isEmpty()) {
+                break;
+            }
+            // The ones the inventory couldn't confirm were released (expired) already, their stock may be sold
+            // again. Not retried, there's nothing left to confirm.
+            inventoryCallPolicy.idempotentCall(finalizeBatch(reservationIds, "confirm")).block()
+                    .forEach(reservationId -> log.error(OrderConstants.RESERVATION_LOST + reservationId));
+            orderRepo.markReservationsConfirmed(reservationIds);
+            confirmed += reservationIds.size();
+        } while (reservationIds.size() == UNCONFIRMED_PAGE_SIZE);
+
+        if (confirmed > 0) {
+            log.info(String.format(OrderConstants.RESERVATIONS_CONFIRMED, confirmed));
+        }
+        return confirmed;
+    }
+
+    // Reserves the stock of a saved order (line items loaded) that is in the given status, then moves it to PLACED,
+    // or to REJECTED when out of stock. Returns false if another worker/instance moved it first.
+    // The reservationId is the orderNumber, so reserving the same order again (a worker and the reconciler racing,
+    // or a retry after a reserve that timed out once the inventory had committed it) gets the same reservation back
+    // instead of deducting the stock a second time.
+    private boolean reserveOrder(final OrderEntity orderEntity, final OrderStatus status) {
+        final InventoryReservationDtoResponse inventoryReservationDtoResponse;
+        try {
+            inventoryReservationDtoResponse = reserveStock(orderEntity.getOrderNumber(),
+                    SkuQuantityIndex.ofOrderLineItems(orderEntity.getOrderLineItemsList())).block();
+        }
+        catch (ProductNotInStockException ex) {
+            final boolean rejected = orderOutbox.updateStatus(orderEntity, status, OrderStatus.REJECTED, null) == 1;
+            log.info(OrderConstants.PENDING_ORDER_REJECTED + orderEntity.getId());
+            return rejected;
+        }
+
+        final String reservationId = inventoryReservationDtoResponse.getReservationId();
+        if (orderOutbox.updateStatus(orderEntity, status, OrderStatus.PLACED, reservationId) == 0) {
+            // No longer in that status. Placed by whoever moved it, the reservation is the same one and stays held,
+            // else (rejected) there's nothing to hold the stock for.
+            if (orderRepo.findById(orderEntity.getId()).map(OrderEntity::getStatus).orElse(null)
+                    != OrderStatus.PLACED) {
+                finalizeReservation(reservationId, "release", OrderConstants.RESERVATION_NOT_RELEASED);
+            }
+            return false;
+        }
+        finalizeReservation(reservationId, "confirm", OrderConstants.RESERVATION_NOT_CONFIRMED);
+        log.info(OrderConstants.PENDING_ORDER_PLACED + orderEntity.getId());
+        cacheOrder(orderEntity);
+        return true;
+    }
+
+    // Calls the inventory service to reserve all the ordered products in a single call. Nothing is sent until the
+    // returned Mono is subscribed (or blocked upon).
+    private Mono<InventoryReservationDtoResponse> reserveStock(final String reservationId,
+                                                               final SkuQuantityIndex skuQuantityIndex) {
+        // Line items are indexed by skuCode in one pass, so a skuCode ordered in several line items is sent (and
+        // checked by the inventory) once with the total quantity. The reservationId (the orderNumber of the order)
+        // makes the call idempotent, so it can be retried and hedged (every attempt sends the same one).
+        final InventoryReservationDtoRequest inventoryReservationDtoRequest = InventoryReservationDtoRequest.builder()
+                .reservationId(reservationId)
+                .inventoryDtoRequestList(skuQuantityIndex.toInventoryDtoRequestList())
                 .build();
 
-        final List<OrderLineItemsEntity> orderLineItemsEntityList = orderDtoRequest
-                .getOrderLineItemsDtoRequestList()
-                .stream().map(orderLineItem -> orderLIDtoReqToOLIEntity(orderLineItem)).toList();
+        // Same pre-built (load balanced) WebClient is reused for every order, see WebClientConfig.
+        return inventoryCallPolicy.idempotentCall(inventoryWebClient
+                        .post()
+                        .uri("/reserve")
+                        .bodyValue(inventoryReservationDtoRequest)
+                        .retrieve()
+                        .bodyToMono(InventoryReservationDtoResponse.class))
+                // Inventory service returns 409 when any of the ordered product is not present in the inventory
+                // or its available quantity is less than the ordered quantity, or when the reservation of this
+                // order already expired. Nothing is reserved in that case.
+                .onErrorMap(WebClientResponseException.Conflict.class, ex -> {
+                    log.info(OrderConstants.PRODUCT_NOT_IN_STOCK);
+                    return new ProductNotInStockException(OrderConstants.PRODUCT_NOT_IN_STOCK);
+                });
+    }
 
-        orderEntity.setOrderLineItemsList(orderLineItemsEntityList);
+    // Reservation of every order of a batch in one call to the inventory service, each of them reserved
+    // all-or-nothing on its own. Results are in the order of the orders.
+    private Mono<List<InventoryReservationDtoResponse>> reserveStockBatch(
+            final List<OrderDtoRequest> orderDtoRequestList, final List<String> reservationIds) {
+        final List<InventoryReservationDtoRequest> reservationDtoRequestList =
+                new ArrayList<>(orderDtoRequestList.size());
+        for (int i = 0; i < orderDtoRequestList.size(); i++) {
+            final OrderDtoRequest orderDtoRequest = orderDtoRequestList.get(i);
+            List<InventoryDtoRequest> inventoryDtoRequestList;
+            try {
+                inventoryDtoRequestList = SkuQuantityIndex.ofOrder(orderDtoRequest.getOrderLineItemsDtoRequestList())
+                        .toInventoryDtoRequestList();
+            }
+            catch (InvalidOrderException ex) {
+                // Invalid order (e.g. without line items) is sent empty, the inventory marks it INVALID
+                inventoryDtoRequestList = List.of();
+            }
+            reservationDtoRequestList.add(InventoryReservationDtoRequest.builder()
+                    .reservationId(reservationIds.get(i))
+                    .inventoryDtoRequestList(inventoryDtoRequestList)
+                    .build());
+        }
+        final InventoryBatchReservationDtoRequest inventoryBatchReservationDtoRequest =
+                InventoryBatchReservationDtoRequest.builder()
+                        .reservationDtoRequestList(reservationDtoRequestList)
+                        .build();
+
+        // Idempotent per order (the inventory service dedupes the reservationIds), so it's hedged and retried like
+        // reserveStock
+        return inventoryCallPolicy.idempotentCall(inventoryWebClient
+                .post()
+                .uri("/reserveBatch")
+                .bodyValue(inventoryBatchReservationDtoRequest)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<InventoryReservationDtoResponse>>() { }));
+    }
+
+    // Saves the orders in one transaction, their inserts batched together. One order failing rolls the whole
+    // transaction back, so then they are saved one by one to still place all the others. Returns the saved ones.
+    private Set<OrderEntity> saveOrders(final Collection<OrderEntity> orderEntityList) {
+        final Set<OrderEntity> savedOrders = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (orderEntityList.isEmpty()) {
+            return savedOrders;
+        }
+        try {
+            orderOutbox.saveAll(orderEntityList);
+            savedOrders.addAll(orderEntityList);
+            return savedOrders;
+        }
+        catch (Exception ex) {
+            log.error(OrderConstants.ORDERS_NOT_SAVED, ex);
+        }
+
+        for (OrderEntity orderEntity : orderEntityList) {
+            // Ids given in the rolled back transaction are not in the DB, they're saved as new orders again
+            orderEntity.setId(null);
+            orderEntity.getOrderLineItemsList().forEach(orderLineItem -> orderLineItem.setId(null));
+            try {
+                orderOutbox.save(orderEntity);
+                savedOrders.add(orderEntity);
+            }
+            catch (Exception ex) {
+                log.error(OrderConstants.ORDER_NOT_SAVED);
+            }
+        }
+        return savedOrders;
+    }
+
+    private Integer saveOrder(final OrderDtoRequest orderDtoRequest, final String orderNumber,
+                              final String reservationId) {
+        // Placing the order
+        final OrderEntity orderEntity = orderDtoReqToOrderEntity(orderDtoRequest, orderNumber, reservationId);
 
         try{
-            orderRepo.save(orderEntity);
+            orderOutbox.save(orderEntity);
         }
         catch (Exception ex){
             log.error(OrderConstants.ORDER_NOT_SAVED);
+            // Order is not placed so give the reserved stock back to the inventory
+            finalizeReservation(reservationId, "release", OrderConstants.RESERVATION_NOT_RELEASED);
             throw new OrderNotSavedException(OrderConstants.ORDER_NOT_SAVED);
         }
 
+        // Confirmation is not awaited, the stock is already deducted so the order doesn't have to wait for it.
+        finalizeReservation(reservationId, "confirm", OrderConstants.RESERVATION_NOT_CONFIRMED);
+
         log.info(OrderConstants.PLACED_ORDER + orderEntity.getId()); // provided by @Slf4j
 
+        cacheOrder(orderEntity);
+
         return orderEntity.getId();
     }
 
-    public Integer placeOrderFallBack(final OrderDtoRequest orderDtoRequest, RuntimeException runtimeException) {
-        log.warn(OrderConstants.INVENTORY_UNREACHABLE);
-        throw new InventoryNotReachableException(OrderConstants.INVENTORY_UNREACHABLE);
+    // Write-through: the order is cached as it's saved, so the first getOrderDetails of it (usually right after
+    // placing it) is a cache hit instead of a DB read. An order is never changed after this, so the entry stays
+    // correct for the whole TTL.
+    private void cacheOrder(final OrderEntity orderEntity) {
+        try {
+            ordersCache.put(orderEntity.getId(), orderEntityToDtoRes(orderEntity));
+        }
+        catch (RuntimeException ex) {
+            // The order is placed already, getOrderDetails reads it from the DB instead
+            log.warn(OrderConstants.ORDER_NOT_CACHED + orderEntity.getId());
+        }
+    }
+
+    public OrderEntity orderDtoReqToOrderEntity(final OrderDtoRequest orderDtoRequest, final String reservationId) {
+        return orderDtoReqToOrderEntity(orderDtoRequest, UUID.randomUUID().toString(), reservationId);
+    }
+
+    public OrderEntity orderDtoReqToOrderEntity(final OrderDtoRequest orderDtoRequest, final String orderNumber,
+                                                final String reservationId) {
+        final OrderEntity orderEntity = OrderEntity.builder()
+                .orderNumber(orderNumber)
+                .reservationId(reservationId)
+                .reservationConfirmed(reservationId == null ? null : false)
+                .status(OrderStatus.PLACED)
+                .orderLineItemsList(new ArrayList<>(orderDtoRequest.getOrderLineItemsDtoRequestList().size()))
+                .build();
+
+        // Line items point back to the order, their order_id is set as they are inserted
+        orderDtoRequest.getOrderLineItemsDtoRequestList()
+                .forEach(orderLineItem -> orderEntity.addOrderLineItem(orderLIDtoReqToOLIEntity(orderLineItem)));
+        return orderEntity;
+    }
+
+    private OrderPlacementDtoResponse placed(final Integer orderId) {
+        return orderPlacementDtoRes(orderId, OrderConstants.PLACED, OrderConstants.PLACED_ORDER + orderId);
+    }
+
+    private OrderPlacementDtoResponse orderPlacementDtoRes(final Integer orderId, final String status,
+                                                           final String message) {
+        return OrderPlacementDtoResponse.builder()
+                .orderId(orderId)
+                .status(status)
+                .message(message)
+                .build();
+    }
+
+    // Sends confirm/release of the reservation to the inventory service without blocking the current thread.
+    // Confirming again is a no-op in the inventory, so a confirmation is retried like the reservation itself. Once
+    // acked the order is marked confirmed, till then the ProvisionalOrderReconciler sends it again (see
+    // confirmPlacedReservations), so a confirmation lost here never leaves the reservation of a placed order to
+    // expire.
+    private void finalizeReservation(final String reservationId, final String action, final String errorMessage) {
+        if ("confirm".equals(action)) {
+            inventoryCallPolicy.idempotentCall(confirm(reservationId))
+                    .publishOn(jpaScheduler)
+                    .doOnNext(response -> orderRepo.markReservationsConfirmed(List.of(reservationId)))
+                    .subscribe(response -> { }, ex -> log.error(errorMessage + reservationId));
+            return;
+        }
+        inventoryCallPolicy.call(inventoryWebClient
+                        .post()
+                        .uri("/reserve/{reservationId}/{action}", reservationId, action)
+                        .retrieve()
+                        .toBodilessEntity())
+                .subscribe(response -> { }, ex -> log.error(errorMessage + reservationId));
+    }
+
+    // Same as finalizeReservation for the reservations of a batch of orders, in a single call to the inventory
+    // service (see InventoryController confirmBatch/releaseBatch). Both are no-ops for a reservation finalized
+    // already, so the release is retried like the confirmation. The inventory answers the reservations it didn't
+    // finalize: for a confirmation those were released (expired) already.
+    private void finalizeReservations(final List<String> reservationIds, final String action,
+                                      final String errorMessage) {
+        if (reservationIds.isEmpty()) {
+            return;
+        }
+        Mono<List<String>> finalized = inventoryCallPolicy.idempotentCall(finalizeBatch(reservationIds, action));
+        if ("confirm".equals(action)) {
+            finalized = finalized
+                    .publishOn(jpaScheduler)
+                    .doOnNext(notConfirmed -> {
+                        notConfirmed.forEach(reservationId ->
+                                log.error(OrderConstants.RESERVATION_LOST + reservationId));
+                        orderRepo.markReservationsConfirmed(reservationIds);
+                    });
+        }
+        finalized.subscribe(notFinalized -> { }, ex -> log.error(errorMessage + reservationIds));
+    }
+
+    private Mono<List<String>> finalizeBatch(final List<String> reservationIds, final String action) {
+        return inventoryWebClient
+                .post()
+                .uri("/reserve/{action}Batch", action)
+                .bodyValue(reservationIds)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<String>>() { });
+    }
+
+    private Mono<ResponseEntity<Void>> confirm(final String reservationId) {
+        return inventoryWebClient
+                .post()
+                .uri("/reserve/{reservationId}/confirm", reservationId)
+                .retrieve()
+                .toBodilessEntity();
     }
 
     // Cacheable Annotation includes:.
@@ -157,17 +669,72 @@ public class OrderService {
     // preferred way to specify the cache name.
     // In this case, Serialized OrderDtoResponse objects would be stored in "orders"
     // cache with the key "orderId".
-    @Cacheable(key = "#orderId", value = "orders")
+    // sync = true: concurrent misses of a hot order load it once (see StampedeProtectedCache).
+    @Cacheable(key = "#orderId", value = OrderConstants.ORDERS_CACHE, sync = true)
+    // The order and its line items are read in one query (see OrderRepository.findOrderDetails).
     public OrderDtoResponse getOrderDetails(final Integer orderId) {
-        final Optional<OrderEntity> orderEntityOpt = orderRepo.findById(orderId);
+        final List<OrderDtoResponse> orderDtoResponseList = orderDetailsRowsToDtoRes(
+                orderRepo.findOrderDetails(List.of(orderId)));
 
-        if (orderEntityOpt.isEmpty()) {
+        if (orderDtoResponseList.isEmpty()) {
             log.info(OrderConstants.ORDER_404);
             throw new OrderNotFoundException(OrderConstants.ORDER_404);
         }
 
-        final OrderEntity orderEntity = orderEntityOpt.get();
+        return orderDtoResponseList.get(0);
+    }
+
+    // Batch of getOrderDetails: the orders found in the cache are served from it and all the others are read in a
+    // single query and cached, instead of a query (two with the lazy line items) per order. Orders are returned in the
+    // order of the ids asked for, ids not present are left out.
+    public List<OrderDtoResponse> getOrdersDetails(final List<Integer> orderIds) {
+        final Map<Integer, OrderDtoResponse> orderDtoResponseMap = new HashMap<>();
+        final List<Integer> notCachedOrderIds = new ArrayList<>();
+        for (Integer orderId : new LinkedHashSet<>(orderIds)) {
+            final OrderDtoResponse cached = ordersCache.get(orderId, OrderDtoResponse.class);
+            if (cached != null) {
+                orderDtoResponseMap.put(orderId, cached);
+            }
+            else {
+                notCachedOrderIds.add(orderId);
+            }
+        }
+
+        if (!notCachedOrderIds.isEmpty()) {
+            for (OrderDtoResponse orderDtoResponse : orderDetailsRowsToDtoRes(
+                    orderRepo.findOrderDetails(notCachedOrderIds))) {
+                orderDtoResponseMap.put(orderDtoResponse.getId(), orderDtoResponse);
+                ordersCache.put(orderDtoResponse.getId(), orderDtoResponse);
+            }
+        }
+
+        return orderIds.stream().distinct().map(orderDtoResponseMap::get).filter(Objects::nonNull).toList();
+    }
+
+    // Rows of findOrderDetails (one per line item, those of an order next to each other) grouped back into orders
+    public List<OrderDtoResponse> orderDetailsRowsToDtoRes(final List<OrderDetailsRow> orderDetailsRows) {
+        final Map<Integer, OrderDtoResponse> orderDtoResponseMap = new LinkedHashMap<>();
+        for (OrderDetailsRow row : orderDetailsRows) {
+            final OrderDtoResponse orderDtoResponse = orderDtoResponseMap.computeIfAbsent(row.getOrderId(),
+                    orderId -> OrderDtoResponse.builder()
+                            .id(orderId)
+                            .orderNumber(row.getOrderNumber())
+                            .orderLineItemsDtoResponseList(new ArrayList<>())
+                            .build());
+            // No line item columns for an order without line items (left join)
+            if (row.getLineItemId() != null) {
+                orderDtoResponse.getOrderLineItemsDtoResponseList().add(OrderLineItemsDtoResponse.builder()
+                        .id(row.getLineItemId())
+                        .price(row.getPrice())
+                        .quantity(row.getQuantity())
+                        .skuCode(row.getSkuCode())
+                        .build());
+            }
+        }
+        return new ArrayList<>(orderDtoResponseMap.values());
+    }
 
+    public OrderDtoResponse orderEntityToDtoRes(final OrderEntity orderEntity) {
         final OrderDtoResponse orderDtoResponse = OrderDtoResponse.builder()
                 .id(orderEntity.getId())
                 .orderNumber(orderEntity.getOrderNumber())
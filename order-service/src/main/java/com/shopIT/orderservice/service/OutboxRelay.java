@@ -0,0 +1,96 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.config.OrderEventStream;
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.entity.OutboxEventEntity;
+import com.shopit.orderservice.repository.OutboxEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Every relay-interval publishes the outbox rows (OrderOutbox) to the OrderEventStream, oldest first in batches of
+// batch-size, and deletes them once published. At-least-once: a batch published but not deleted (e.g. the instance
+// died in between) is published again next time.
+// Only one instance at a time relays, behind a Redis lock, so the rows are published in the order of their ids. Ids
+// come from a pooled sequence per instance though, so the events of an order written by two instances can still be
+// out of order in the stream. Every event carries the status the order moved to, which only goes forward.
+@Service
+@Slf4j
+public class OutboxRelay implements AutoCloseable {
+
+    private final OutboxEventRepository outboxEventRepo;
+
+    private final OrderEventStream orderEventStream;
+
+    private final RedissonClient redissonClient;
+
+    private final int batchSize;
+
+    private final ScheduledExecutorService relayer;
+
+    @Autowired
+    public OutboxRelay(OutboxEventRepository outboxEventRepo, OrderEventStream orderEventStream,
+                       RedissonClient redissonClient,
+                       @Value("${order.outbox.relay-interval}") Duration relayInterval,
+                       @Value("${order.outbox.batch-size}") int batchSize) {
+        this.outboxEventRepo = outboxEventRepo;
+        this.orderEventStream = orderEventStream;
+        this.redissonClient = redissonClient;
+        this.batchSize = batchSize;
+
+        this.relayer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("outbox-relay").daemon().factory());
+        if (relayInterval.isPositive()) {
+            relayer.scheduleWithFixedDelay(this::relayQuietly, relayInterval.toMillis(), relayInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Returns the no. of events published, 0 when another instance is relaying
+    public int relay() {
+        final RLock lock = redissonClient.getLock(OrderConstants.OUTBOX_RELAY_LOCK);
+        if (!lock.tryLock()) {
+            return 0;
+        }
+        try {
+            int relayed = 0;
+            List<OutboxEventEntity> events;
+            do {
+                events = outboxEventRepo.findOldest(PageRequest.of(0, batchSize));
+                if (events.isEmpty()) {
+                    break;
+                }
+                orderEventStream.publish(events);
+                outboxEventRepo.deleteAllByIdInBatch(events.stream().map(OutboxEventEntity::getId).toList());
+                relayed += events.size();
+            } while (events.size() == batchSize);
+            return relayed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        relayer.shutdownNow();
+    }
+
+    // A failed relay must not stop the next ones, the rows just stay in the outbox till then
+    private void relayQuietly() {
+        try {
+            relay();
+        } catch (Exception ex) {
+            log.warn(OrderConstants.OUTBOX_NOT_RELAYED, ex);
+        }
+    }
+}
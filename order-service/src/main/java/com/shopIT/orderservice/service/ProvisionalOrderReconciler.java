@@ -0,0 +1,76 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Every retry-interval reserves the stock of the orders accepted provisionally (OrderService.reconcileProvisionalOrders)
+// and of the RECEIVED orders of the async placement older than order.async.retry-after, which no worker placed. Then
+// confirms again the reservations of the PLACED orders older than order.reservation.confirm-retry-after that the
+// inventory service hasn't acked the confirmation of (OrderService.confirmPlacedReservations).
+// Only one instance at a time does it, behind a Redis lock, so that two instances never reserve the same order twice.
+@Service
+@Slf4j
+public class ProvisionalOrderReconciler implements AutoCloseable {
+
+    private final OrderService orderService;
+
+    private final RedissonClient redissonClient;
+
+    private final Duration receivedRetryAfter;
+
+    private final Duration confirmRetryAfter;
+
+    private final ScheduledExecutorService reconciler;
+
+    @Autowired
+    public ProvisionalOrderReconciler(OrderService orderService, RedissonClient redissonClient,
+                                      @Value("${order.provisional.retry-interval}") Duration retryInterval,
+                                      @Value("${order.async.retry-after}") Duration receivedRetryAfter,
+                                      @Value("${order.reservation.confirm-retry-after}") Duration confirmRetryAfter) {
+        this.orderService = orderService;
+        this.redissonClient = redissonClient;
+        this.receivedRetryAfter = receivedRetryAfter;
+        this.confirmRetryAfter = confirmRetryAfter;
+
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("provisional-order-reconciler").daemon().factory());
+        if (retryInterval.isPositive()) {
+            reconciler.scheduleWithFixedDelay(this::reconcile, retryInterval.toMillis(), retryInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Skipped when another instance is at it, this one tries again in the next round
+    public void reconcile() {
+        final RLock lock = redissonClient.getLock(OrderConstants.PROVISIONAL_ORDERS_LOCK);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            orderService.reconcileProvisionalOrders();
+            orderService.placeReceivedOrders(Instant.now().minus(receivedRetryAfter));
+            orderService.confirmPlacedReservations(Instant.now().minus(confirmRetryAfter));
+        } catch (Exception ex) {
+            // Circuit open or inventory still not reachable
+            log.warn(OrderConstants.PROVISIONAL_ORDERS_NOT_RECONCILED, ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        reconciler.shutdownNow();
+    }
+}
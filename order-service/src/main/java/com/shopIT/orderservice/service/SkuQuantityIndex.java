@@ -0,0 +1,77 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.dto.InventoryDtoRequest;
+import com.shopit.orderservice.dto.OrderLineItemsDtoRequest;
+import com.shopit.orderservice.entity.OrderLineItemsEntity;
+import com.shopit.orderservice.exception.InvalidOrderException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Quantity per skuCode, built once in a single pass so that a skuCode is then looked up in O(1) instead of
+// filtering a list/stream for every line item (O(n*m)). Quantities of the same skuCode coming more than once
+// are added up, e.g. an order with 2 line items of 1 unit each needs 2 units of that skuCode.
+public final class SkuQuantityIndex {
+
+    private final Map<String, Integer> quantities;
+
+    private SkuQuantityIndex(final int expectedSize) {
+        // Sized up front to avoid rehashing while the index is built; insertion order keeps the requests readable
+        this.quantities = new LinkedHashMap<>((int) (expectedSize / 0.75f) + 1);
+    }
+
+    public static SkuQuantityIndex ofOrder(final List<OrderLineItemsDtoRequest> orderLineItemsDtoRequestList) {
+        if (orderLineItemsDtoRequestList == null || orderLineItemsDtoRequestList.isEmpty()) {
+            throw new InvalidOrderException(OrderConstants.INVALID_ORDER);
+        }
+        final SkuQuantityIndex index = new SkuQuantityIndex(orderLineItemsDtoRequestList.size());
+        for (OrderLineItemsDtoRequest orderLineItem : orderLineItemsDtoRequestList) {
+            index.add(orderLineItem.getSkuCode(), orderLineItem.getQuantity());
+        }
+        return index;
+    }
+
+    // Line items of a saved order, e.g. a provisional one reserved later
+    public static SkuQuantityIndex ofOrderLineItems(final List<OrderLineItemsEntity> orderLineItemsEntityList) {
+        final SkuQuantityIndex index = new SkuQuantityIndex(orderLineItemsEntityList.size());
+        for (OrderLineItemsEntity orderLineItem : orderLineItemsEntityList) {
+            index.add(orderLineItem.getSkuCode(), orderLineItem.getQuantity());
+        }
+        return index;
+    }
+
+    // A line item without a skuCode or a quantity (more than 0) makes the whole order invalid (400)
+    public void add(final String skuCode, final Integer quantity) {
+        if (skuCode == null || quantity == null || quantity <= 0) {
+            throw new InvalidOrderException(OrderConstants.INVALID_ORDER);
+        }
+        quantities.merge(skuCode, quantity, Integer::sum);
+    }
+
+    // 0 when the skuCode is not present at all
+    public int get(final String skuCode) {
+        return quantities.getOrDefault(skuCode, 0);
+    }
+
+    // Read-only view, skuCode -> total quantity
+    public Map<String, Integer> toMap() {
+        return Collections.unmodifiableMap(quantities);
+    }
+
+    public int size() {
+        return quantities.size();
+    }
+
+    // One entry per distinct skuCode, used as the body of the reservation call to the inventory service
+    public List<InventoryDtoRequest> toInventoryDtoRequestList() {
+        return quantities.entrySet().stream()
+                .map(entry -> InventoryDtoRequest.builder()
+                        .skuCode(entry.getKey())
+                        .quantity(entry.getValue())
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,125 @@
+package com.shopit.orderservice.benchmark;
+
+import com.shopit.orderservice.config.InstanceLatencyStats;
+import com.shopit.orderservice.config.WebClientConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Reserve calls per second, 8 at a time, to a fake inventory instance on loopback answering at once, so the cost of
+// the client and its connections is all there is to measure:
+// - newConnectionPerCall: a TCP connection opened (and closed) for every call, no pooling at all.
+// - webClientPerCall: the old behaviour, webClientBuilder.build() for every order. Its connections come from the
+//   global pool of Reactor Netty, but a new WebClient, connector and codecs are created for every call.
+// - sharedWebClient: the inventory WebClient of WebClientConfig on its own pool, over HTTP/1.1.
+// - sharedWebClientH2c: the same with inventory.http-client.h2c=true, all the calls share one connection.
+// Over a real network opening a connection costs a round trip (more with TLS), so reuse is worth even more there.
+//
+// Run: mvn -pl order-service -Pbenchmark test-compile exec:exec -Dbenchmark=InventoryConnectionReuseBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class InventoryConnectionReuseBenchmark {
+
+    private static final String RESERVATION = "{\"skuCode\":\"iphone_13\",\"quantity\":1}";
+
+    private DisposableServer inventoryServer;
+
+    private String inventoryBaseUrl;
+
+    private WebClient newConnectionWebClient;
+
+    private ConnectionProvider http11ConnectionProvider;
+
+    private ConnectionProvider h2cConnectionProvider;
+
+    private WebClient sharedWebClient;
+
+    private WebClient sharedWebClientH2c;
+
+    @Setup
+    public void setUp() {
+        inventoryServer = HttpServer.create()
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .route(routes -> routes.post("/shopit/inventory/reserve", (request, response) -> response
+                        .header("Content-Type", "application/json")
+                        .sendString(request.receive().aggregate()
+                                .thenReturn("{\"reservationId\":\"reservation-1\"}"))))
+                .bindNow();
+        inventoryBaseUrl = "http://localhost:" + inventoryServer.port() + "/shopit/inventory";
+
+        newConnectionWebClient = WebClient.builder()
+                .baseUrl(inventoryBaseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.newConnection()))
+                .build();
+
+        final WebClientConfig webClientConfig = new WebClientConfig();
+        http11ConnectionProvider = connectionProvider(webClientConfig, false);
+        h2cConnectionProvider = connectionProvider(webClientConfig, true);
+        sharedWebClient = inventoryWebClient(webClientConfig, http11ConnectionProvider, false);
+        sharedWebClientH2c = inventoryWebClient(webClientConfig, h2cConnectionProvider, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        http11ConnectionProvider.dispose();
+        h2cConnectionProvider.dispose();
+        inventoryServer.disposeNow();
+    }
+
+    @Benchmark
+    public String newConnectionPerCall() {
+        return reserve(newConnectionWebClient);
+    }
+
+    @Benchmark
+    public String webClientPerCall() {
+        return reserve(WebClient.builder().baseUrl(inventoryBaseUrl).build());
+    }
+
+    @Benchmark
+    public String sharedWebClient() {
+        return reserve(sharedWebClient);
+    }
+
+    @Benchmark
+    public String sharedWebClientH2c() {
+        return reserve(sharedWebClientH2c);
+    }
+
+    private static String reserve(final WebClient inventoryWebClient) {
+        return inventoryWebClient.post()
+                .uri("/reserve")
+                .bodyValue(RESERVATION)
+                .retrieve()
+                .bodyToMono(String.class)
+                .block();
+    }
+
+    // As in application.properties
+    private static ConnectionProvider connectionProvider(final WebClientConfig webClientConfig, final boolean h2c) {
+        return webClientConfig.inventoryConnectionProvider(200, 1000, Duration.ofSeconds(1), Duration.ofSeconds(15),
+                Duration.ofMinutes(5), Duration.ofSeconds(30), h2c);
+    }
+
+    private WebClient inventoryWebClient(final WebClientConfig webClientConfig,
+                                         final ConnectionProvider connectionProvider, final boolean h2c) {
+        return webClientConfig.inventoryWebClient(WebClient.builder(), inventoryBaseUrl,
+                new InstanceLatencyStats(Duration.ofSeconds(10), Duration.ofSeconds(2)), connectionProvider, Duration.ofMillis(500), h2c,
+                DataSize.ofMegabytes(1));
+    }
+}
@@ -0,0 +1,146 @@
+package com.shopit.orderservice.benchmark;
+
+import com.shopit.orderservice.entity.OrderEntity;
+import com.shopit.orderservice.entity.OrderLineItemsEntity;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.CascadeType;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.OneToMany;
+import org.h2.tools.Server;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Orders saved per second (one transaction each) against an in-memory H2 DB served over TCP on loopback, so every
+// statement is a round trip like with MySQL (a much shorter one though):
+// - identity: the old mapping, IDENTITY ids and a join table between orders and line items. Every row is inserted
+//   on its own to get its id back, plus a join table row per line item.
+// - sequence: OrderEntity/OrderLineItemsEntity, pooled sequence ids and an order_id foreign key, inserts sent in
+//   JDBC batches of 50 (hibernate.jdbc.batch_size) like in application.properties.
+// Against MySQL over a real network each round trip saved is worth more, the gap only gets bigger.
+//
+// Run: mvn -pl order-service -Pbenchmark test-compile exec:exec -Dbenchmark=OrderInsertBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderInsertBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int lineItems;
+
+    private Server h2Server;
+
+    private HikariDataSource dataSource;
+
+    private SessionFactory identitySessionFactory;
+
+    private SessionFactory sequenceSessionFactory;
+
+    @Setup
+    public void setUp() throws SQLException {
+        h2Server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:tcp://localhost:" + h2Server.getPort() + "/mem:orders;DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(1);
+
+        identitySessionFactory = sessionFactory(1, IdentityOrderEntity.class, IdentityOrderLineItemsEntity.class);
+        sequenceSessionFactory = sessionFactory(50, OrderEntity.class, OrderLineItemsEntity.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        identitySessionFactory.close();
+        sequenceSessionFactory.close();
+        dataSource.close();
+        h2Server.stop();
+    }
+
+    @Benchmark
+    public Object identity() {
+        final IdentityOrderEntity orderEntity = new IdentityOrderEntity();
+        orderEntity.orderNumber = UUID.randomUUID().toString();
+        orderEntity.orderLineItemsList = new ArrayList<>(lineItems);
+        for (int i = 0; i < lineItems; i++) {
+            final IdentityOrderLineItemsEntity orderLineItemsEntity = new IdentityOrderLineItemsEntity();
+            orderLineItemsEntity.skuCode = "SKU-" + i;
+            orderLineItemsEntity.price = 100;
+            orderLineItemsEntity.quantity = 1;
+            orderEntity.orderLineItemsList.add(orderLineItemsEntity);
+        }
+        identitySessionFactory.inTransaction(session -> session.persist(orderEntity));
+        return orderEntity.id;
+    }
+
+    @Benchmark
+    public Object sequence() {
+        final OrderEntity orderEntity = OrderEntity.builder()
+                .orderNumber(UUID.randomUUID().toString())
+                .orderLineItemsList(new ArrayList<>(lineItems))
+                .build();
+        for (int i = 0; i < lineItems; i++) {
+            orderEntity.addOrderLineItem(OrderLineItemsEntity.builder()
+                    .skuCode("SKU-" + i)
+                    .price(100)
+                    .quantity(1)
+                    .build());
+        }
+        sequenceSessionFactory.inTransaction(session -> session.persist(orderEntity));
+        return orderEntity.getId();
+    }
+
+    private SessionFactory sessionFactory(int batchSize, Class<?>... entities) {
+        final Configuration configuration = new Configuration();
+        for (Class<?> entity : entities) {
+            configuration.addAnnotatedClass(entity);
+        }
+        configuration.getProperties().put(AvailableSettings.DATASOURCE, dataSource);
+        configuration.setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop");
+        configuration.setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(batchSize));
+        configuration.setProperty(AvailableSettings.ORDER_INSERTS, "true");
+        return configuration.buildSessionFactory();
+    }
+
+    // Old mapping of OrderEntity
+    @Entity
+    public static class IdentityOrderEntity {
+
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Integer id;
+
+        String orderNumber;
+
+        String reservationId;
+
+        @OneToMany(cascade = CascadeType.ALL)
+        List<IdentityOrderLineItemsEntity> orderLineItemsList;
+    }
+
+    // Old mapping of OrderLineItemsEntity
+    @Entity
+    public static class IdentityOrderLineItemsEntity {
+
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Integer id;
+
+        String skuCode;
+
+        Integer price;
+
+        Integer quantity;
+    }
+}
@@ -0,0 +1,62 @@
+package com.shopit.orderservice.benchmark;
+
+import com.shopit.orderservice.dto.InventoryDtoRequest;
+import com.shopit.orderservice.dto.OrderLineItemsDtoRequest;
+import com.shopit.orderservice.service.SkuQuantityIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Body of the reservation call to the inventory service, one entry per distinct skuCode of the order: grouping the
+// line items with a stream collector and mapping the groups to requests, against the SkuQuantityIndex
+// (SkuQuantityIndex.ofOrder(...).toInventoryDtoRequestList()) as placeOrder and placeOrders build it.
+// Every 4th line item repeats a skuCode, which both add up.
+//
+// Run: mvn -pl order-service -Pbenchmark test-compile exec:exec -Dbenchmark=SkuQuantityIndexBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkuQuantityIndexBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int lineItems;
+
+    private List<OrderLineItemsDtoRequest> orderLineItemsDtoRequestList;
+
+    @Setup
+    public void setUp() {
+        orderLineItemsDtoRequestList = new ArrayList<>(lineItems);
+        for (int i = 0; i < lineItems; i++) {
+            orderLineItemsDtoRequestList.add(OrderLineItemsDtoRequest.builder()
+                    .skuCode("SKU-" + (i % 4 == 3 ? i - 1 : i))
+                    .price(100)
+                    .quantity(1)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<InventoryDtoRequest> streamGroupingBy() {
+        return orderLineItemsDtoRequestList.stream()
+                .collect(Collectors.groupingBy(OrderLineItemsDtoRequest::getSkuCode, LinkedHashMap::new,
+                        Collectors.summingInt(OrderLineItemsDtoRequest::getQuantity)))
+                .entrySet().stream()
+                .map(entry -> InventoryDtoRequest.builder()
+                        .skuCode(entry.getKey())
+                        .quantity(entry.getValue())
+                        .build())
+                .toList();
+    }
+
+    @Benchmark
+    public List<InventoryDtoRequest> skuQuantityIndex() {
+        return SkuQuantityIndex.ofOrder(orderLineItemsDtoRequestList).toInventoryDtoRequestList();
+    }
+}
@@ -0,0 +1,118 @@
+package com.shopit.orderservice.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryCallPolicyTest {
+
+    private static final Duration FAST = Duration.ofMillis(5);
+    private static final Duration SLOW = Duration.ofMillis(300);
+    private static final int CALLS = 400;
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    void failureIsRetriedOnlyWhenItsSafe() {
+        final InventoryCallPolicy inventoryCallPolicy = policy(Duration.ofMillis(100), false);
+
+        // 503 twice, then reserved
+        final Mono<String> unavailableTwice = Mono.defer(() -> attempts.incrementAndGet() <= 2
+                ? Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null))
+                : Mono.just("reserved"));
+        assertEquals("reserved", inventoryCallPolicy.call(unavailableTwice).block());
+        assertEquals(3, attempts.get());
+
+        // Out of stock is an answer, not a failure
+        attempts.set(0);
+        final Mono<String> outOfStock = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(WebClientResponseException.create(409, "Conflict", null, null, null));
+        });
+        assertThrows(WebClientResponseException.Conflict.class,
+                () -> inventoryCallPolicy.idempotentCall(outOfStock).block());
+        assertEquals(1, attempts.get());
+
+        // Timed out, it may have been processed: retried only when the call is idempotent
+        attempts.set(0);
+        final Mono<String> hanging = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.never();
+        });
+        final RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> inventoryCallPolicy.call(hanging).block());
+        assertTrue(Exceptions.unwrap(ex) instanceof TimeoutException);
+        assertEquals(1, attempts.get());
+
+        attempts.set(0);
+        assertThrows(RuntimeException.class, () -> inventoryCallPolicy.idempotentCall(hanging).block());
+        assertEquals(3, attempts.get());
+    }
+
+    // The first attempt of every 25th call is slow, as if it went to a slow inventory instance. With hedging a second
+    // attempt is sent after the p90 (or 10ms), which is fast and answers first.
+    @Test
+    void hedgingAnswersSlowCallsWithASecondAttempt() {
+        final List<String> withoutHedging = answers(policy(Duration.ofSeconds(1), false));
+        assertEquals(CALLS, attempts.get());
+        assertEquals(CALLS / 25, Collections.frequency(withoutHedging, "slow"));
+
+        final List<String> withHedging = answers(policy(Duration.ofSeconds(1), true));
+        assertTrue(attempts.get() >= CALLS + CALLS / 25, "Attempts: " + attempts.get());
+        assertEquals(0, Collections.frequency(withHedging, "slow"));
+    }
+
+    // The first attempt fails once the hedge is in flight already: the hedge is waited for, not cancelled and retried
+    @Test
+    void failedFirstAttemptDoesNotCancelTheHedge() {
+        final InventoryCallPolicy inventoryCallPolicy = policy(Duration.ofSeconds(1), true);
+        Flux.range(0, 200).flatMap(i -> inventoryCallPolicy.idempotentCall(reserve(1)), 20).blockLast();
+
+        attempts.set(0);
+        final Mono<String> failingThenHedged = Mono.defer(() -> attempts.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(100))
+                        .then(Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null,
+                                null)))
+                : Mono.delay(Duration.ofMillis(150)).thenReturn("hedged"));
+        assertEquals("hedged", inventoryCallPolicy.idempotentCall(failingThenHedged).block());
+        assertEquals(2, attempts.get());
+    }
+
+    // The first 200 calls only fill the latency window the hedge delay comes from
+    private List<String> answers(final InventoryCallPolicy inventoryCallPolicy) {
+        Flux.range(0, 200).flatMap(i -> inventoryCallPolicy.idempotentCall(reserve(i)), 20).blockLast();
+
+        attempts.set(0);
+        return Flux.range(0, CALLS)
+                .flatMap(i -> inventoryCallPolicy.idempotentCall(reserve(i)), 20)
+                .collectList()
+                .block();
+    }
+
+    private Mono<String> reserve(final int call) {
+        final AtomicInteger callAttempts = new AtomicInteger();
+        return Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return callAttempts.getAndIncrement() == 0 && call % 25 == 0
+                    ? Mono.delay(SLOW).thenReturn("slow")
+                    : Mono.delay(FAST).thenReturn("fast");
+        });
+    }
+
+    private static InventoryCallPolicy policy(final Duration timeout, final boolean hedgeEnabled) {
+        return new InventoryCallPolicy(timeout, 2, Duration.ofMillis(10), 0.5, hedgeEnabled, 90,
+                Duration.ofMillis(10));
+    }
+}
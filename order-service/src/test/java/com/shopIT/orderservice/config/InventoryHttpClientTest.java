@@ -0,0 +1,127 @@
+package com.shopit.orderservice.config;
+
+import com.shopit.orderservice.constants.OrderConstants;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The inventory WebClient as WebClientConfig builds it, against a fake inventory instance counting its connections
+class InventoryHttpClientTest {
+
+    // Client address of every connection, the streams of an HTTP/2 connection are channels of their own on the server
+    private final Set<SocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private DisposableServer inventoryServer;
+
+    private ConnectionProvider inventoryConnectionProvider;
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+        // Answers a reserve after 5ms, or with a body of the requested size
+        inventoryServer = HttpServer.create()
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .doOnChannelInit((observer, channel, remoteAddress) -> connections.add(channel.remoteAddress()))
+                .route(routes -> routes
+                        .post("/shopit/inventory/reserve", (request, response) -> response
+                                .sendString(request.receive().aggregate()
+                                        .then(Mono.delay(Duration.ofMillis(5)))
+                                        .thenReturn("{\"reservationId\":\"reservation-1\"}")))
+                        .get("/shopit/inventory/size/{bytes}", (request, response) -> response
+                                .sendString(Mono.just("x".repeat(Integer.parseInt(request.param("bytes")))))))
+                .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (inventoryConnectionProvider != null) {
+            inventoryConnectionProvider.disposeLater().block();
+        }
+        inventoryServer.disposeNow();
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void connectionIsReusedAndPoolIsMeasured() {
+        final WebClient inventoryWebClient = inventoryWebClient(false);
+
+        // One call at a time: a call can start before the connection of the previous one is back in the pool, so it
+        // may open a second one, but not one per call
+        Flux.range(0, 50).concatMap(i -> reserve(inventoryWebClient)).blockLast();
+        assertTrue(connections.size() <= 2, () -> connections.size() + " connections");
+
+        final Gauge totalConnections = meterRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", OrderConstants.INVENTORY_CONNECTION_POOL)
+                .gauge();
+        assertNotNull(totalConnections);
+        assertEquals(connections.size(), totalConnections.value());
+        assertNotNull(meterRegistry.find("reactor.netty.connection.provider.pending.connections").gauge());
+    }
+
+    @Test
+    void concurrentCallsShareOneConnectionWithH2c() {
+        final WebClient inventoryWebClient = inventoryWebClient(true);
+
+        // 20 calls at a time, which over HTTP/1.1 take a connection each
+        Flux.range(0, 40).flatMap(i -> reserve(inventoryWebClient), 20).blockLast();
+        assertEquals(1, connections.size());
+    }
+
+    @Test
+    void tooBigResponseIsRejected() {
+        final WebClient inventoryWebClient = inventoryWebClient(false);
+
+        assertEquals(1000, inventoryWebClient.get().uri("/size/1000").retrieve().bodyToMono(String.class)
+                .block().length());
+        final WebClientResponseException ex = assertThrows(WebClientResponseException.class, () -> inventoryWebClient
+                .get()
+                .uri("/size/" + DataSize.ofKilobytes(2).toBytes())
+                .retrieve()
+                .bodyToMono(String.class)
+                .block());
+        assertTrue(ex.getCause() instanceof DataBufferLimitException);
+    }
+
+    private Mono<String> reserve(final WebClient inventoryWebClient) {
+        return inventoryWebClient.post()
+                .uri("/reserve")
+                .bodyValue("{}")
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+
+    private WebClient inventoryWebClient(final boolean h2c) {
+        inventoryConnectionProvider = new WebClientConfig().inventoryConnectionProvider(50, 1000,
+                Duration.ofSeconds(1), Duration.ofSeconds(15), Duration.ofMinutes(5), Duration.ofSeconds(30), h2c);
+        return new WebClientConfig().inventoryWebClient(WebClient.builder(),
+                "http://localhost:" + inventoryServer.port() + "/shopit/inventory",
+                new InstanceLatencyStats(Duration.ofSeconds(10), Duration.ofSeconds(2)), inventoryConnectionProvider,
+                Duration.ofMillis(500), h2c, DataSize.ofKilobytes(1));
+    }
+}
@@ -0,0 +1,149 @@
+package com.shopit.orderservice.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 3 fake inventory instances, one of them slow, called through a WebClient set up like the inventory one: a load
+// balancer filter picking the instance, then InstanceLatencyStats. Round-robin sends a third of the calls to the slow
+// instance, which sets the p99. The latency-aware load balancer stops sending it calls once it has seen it's slow.
+// An instance answering 503 right away must be avoided the same way, not taken for the fastest one.
+@Slf4j
+class LatencyAwareLoadBalancerTest {
+
+    private static final Duration FAST = Duration.ofMillis(5);
+    private static final Duration SLOW = Duration.ofMillis(150);
+    private static final Duration FAILURE_PENALTY = Duration.ofSeconds(2);
+
+    private final List<DisposableServer> inventoryServers = new ArrayList<>();
+    private final List<ServiceInstance> instances = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        inventoryServers.forEach(DisposableServer::disposeNow);
+    }
+
+    @Test
+    void slowInstanceIsAvoided() {
+        startInstances(FAST, FAST, SLOW);
+        final AtomicInteger next = new AtomicInteger();
+        final long p99RoundRobin = p99Millis(new InstanceLatencyStats(Duration.ofSeconds(10), FAILURE_PENALTY),
+                instanceList -> instanceList.get(next.getAndIncrement() % instanceList.size()));
+
+        final InstanceLatencyStats instanceLatencyStats =
+                new InstanceLatencyStats(Duration.ofSeconds(10), FAILURE_PENALTY);
+        final LatencyAwareLoadBalancer loadBalancer =
+                new LatencyAwareLoadBalancer(null, "inventory-service", instanceLatencyStats);
+        final long p99LatencyAware = p99Millis(instanceLatencyStats,
+                instanceList -> loadBalancer.choose(instanceList).getServer());
+        log.info("p99 of the inventory calls, round-robin: {} ms, latency-aware: {} ms",
+                p99RoundRobin, p99LatencyAware);
+
+        assertTrue(p99RoundRobin >= SLOW.toMillis());
+        assertTrue(p99LatencyAware < SLOW.toMillis() / 2);
+    }
+
+    @Test
+    void fastFailingInstanceIsAvoided() {
+        startInstances(FAST, FAST, null);
+        final InstanceLatencyStats instanceLatencyStats =
+                new InstanceLatencyStats(Duration.ofSeconds(10), FAILURE_PENALTY);
+        final LatencyAwareLoadBalancer loadBalancer =
+                new LatencyAwareLoadBalancer(null, "inventory-service", instanceLatencyStats);
+        final Mono<String> reserve = reserve(instanceLatencyStats,
+                instanceList -> loadBalancer.choose(instanceList).getServer());
+
+        final AtomicInteger failed = new AtomicInteger();
+        final Mono<String> reserveCountingFailures = reserve.onErrorResume(ex -> {
+            failed.incrementAndGet();
+            return Mono.empty();
+        });
+        Flux.range(0, 30).concatMap(i -> reserveCountingFailures).blockLast();
+        Flux.range(0, 500).flatMap(i -> reserveCountingFailures, 8).blockLast();
+        log.info("Failed inventory calls with a fast-failing instance, latency-aware: {} of 530", failed.get());
+
+        // Round-robin would send it a third of the calls
+        assertTrue(failed.get() < 530 / 20);
+    }
+
+    // The first 30 calls (one at a time) are the warm up, then 500 calls 8 at a time
+    private long p99Millis(final InstanceLatencyStats instanceLatencyStats,
+                           final Function<List<ServiceInstance>, ServiceInstance> chooseInstance) {
+        final Mono<String> reserve = reserve(instanceLatencyStats, chooseInstance);
+
+        Flux.range(0, 30).concatMap(i -> reserve).blockLast();
+        final List<Long> latencies = Flux.range(0, 500)
+                .flatMap(i -> Mono.defer(() -> {
+                    final long start = System.nanoTime();
+                    return reserve.map(reserved -> Duration.ofNanos(System.nanoTime() - start).toMillis());
+                }), 8)
+                .sort()
+                .collectList()
+                .block();
+        return latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1);
+    }
+
+    private Mono<String> reserve(final InstanceLatencyStats instanceLatencyStats,
+                                 final Function<List<ServiceInstance>, ServiceInstance> chooseInstance) {
+        final WebClient inventoryWebClient = WebClient.builder()
+                .baseUrl("http://inventory-service/shopit/inventory")
+                .filter(loadBalanced(chooseInstance))
+                .filter(instanceLatencyStats)
+                .build();
+        return inventoryWebClient.post()
+                .uri("/reserve")
+                .bodyValue("{}")
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+
+    // A null latency is an instance answering every call with a 503 right away
+    private void startInstances(final Duration... latencies) {
+        for (Duration latency : latencies) {
+            final DisposableServer inventoryServer = HttpServer.create()
+                    .port(0)
+                    .route(routes -> routes.post("/shopit/inventory/reserve", (request, response) -> latency == null
+                            ? response.status(503).send()
+                            : response.header("Content-Type", "application/json")
+                                    .sendString(request.receive().aggregate()
+                                            .then(Mono.delay(latency))
+                                            .thenReturn("{\"reservationId\":\"reservation-1\"}"))))
+                    .bindNow();
+            inventoryServers.add(inventoryServer);
+            instances.add(new DefaultServiceInstance("inventory-" + instances.size(), "inventory-service",
+                    "localhost", inventoryServer.port(), false));
+        }
+    }
+
+    // Stand-in for the Spring Cloud load balancer filter: the service name of the URL is replaced by the instance
+    private ExchangeFilterFunction loadBalanced(final Function<List<ServiceInstance>, ServiceInstance> chooseInstance) {
+        return (request, next) -> {
+            final ServiceInstance instance = chooseInstance.apply(instances);
+            return next.exchange(ClientRequest.from(request)
+                    .url(UriComponentsBuilder.fromUri(request.url())
+                            .host(instance.getHost())
+                            .port(instance.getPort())
+                            .build(true)
+                            .toUri())
+                    .build());
+        };
+    }
+}
@@ -0,0 +1,198 @@
+package com.shopit.orderservice.repository;
+
+import com.shopit.orderservice.dto.OrderDtoResponse;
+import com.shopit.orderservice.entity.OrderEntity;
+import com.shopit.orderservice.entity.OrderLineItemsEntity;
+import com.shopit.orderservice.entity.OrderStatus;
+import com.shopit.orderservice.entity.OutboxEventEntity;
+import com.shopit.orderservice.service.OrderOutbox;
+import com.shopit.orderservice.service.OrderService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Counts the SQL statements run against an in-memory H2 DB through Hibernate's statistics
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.shopit.orderservice.repository.OrderRepositoryTest$InsertCounter"})
+class OrderRepositoryTest {
+
+    @Autowired
+    private OrderRepository orderRepo;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepo;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private final List<Integer> orderIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 5; i++) {
+            orderIds.add(testEntityManager.persistAndGetId(order(3), Integer.class));
+        }
+        orderIds.add(testEntityManager.persistAndGetId(order(0), Integer.class));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void findByIdLoadsLineItemsInSecondQuery() {
+        final OrderEntity orderEntity = orderRepo.findById(orderIds.get(0)).orElseThrow();
+        assertEquals(3, orderEntity.getOrderLineItemsList().size());
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void orderDetailsAreReadInOneQuery() {
+        final List<OrderDtoResponse> orderDtoResponseList = orderService().orderDetailsRowsToDtoRes(
+                orderRepo.findOrderDetails(List.of(orderIds.get(0))));
+
+        assertEquals(1, orderDtoResponseList.size());
+        assertEquals(3, orderDtoResponseList.get(0).getOrderLineItemsDtoResponseList().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        // Read straight into DTOs, nothing put in the persistence context
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void batchOfOrdersIsReadInOneQuery() {
+        final List<Integer> askedOrderIds = new ArrayList<>(orderIds);
+        askedOrderIds.add(-1); // Not present
+        final OrderService orderService = orderService();
+
+        final List<OrderDtoResponse> orderDtoResponseList = orderService.getOrdersDetails(askedOrderIds);
+
+        assertEquals(orderIds, orderDtoResponseList.stream().map(OrderDtoResponse::getId).toList());
+        assertTrue(orderDtoResponseList.get(orderIds.size() - 1).getOrderLineItemsDtoResponseList().isEmpty());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        // All cached now
+        orderService.getOrdersDetails(orderIds.reversed());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void batchReadsOnlyOrdersNotCached() {
+        final OrderService orderService = orderService();
+        orderService.getOrdersDetails(orderIds.subList(0, 2));
+
+        final List<OrderDtoResponse> orderDtoResponseList = orderService.getOrdersDetails(orderIds);
+
+        assertEquals(orderIds, orderDtoResponseList.stream().map(OrderDtoResponse::getId).toList());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void orderIsInsertedInBatches() {
+        InsertCounter.inserts.set(0);
+
+        orderRepo.save(order(100));
+        testEntityManager.flush();
+
+        // One statement per table, the line items are added to it and sent in batches of 50
+        // (hibernate.jdbc.batch_size). Without batching every one of the 101 inserts is prepared on its own.
+        assertEquals(2, InsertCounter.inserts.get());
+        assertEquals(101, statistics.getEntityInsertCount());
+    }
+
+    @Test
+    void provisionalOrdersAreReadWithLineItemsAndMovedOnce() {
+        final OrderEntity provisional = order(2);
+        provisional.setStatus(OrderStatus.PROVISIONAL);
+        final Integer orderId = testEntityManager.persistAndGetId(provisional, Integer.class);
+        testEntityManager.flush();
+        testEntityManager.clear();
+        statistics.clear();
+
+        final List<OrderEntity> orderEntityList = orderRepo.findByStatusOrderById(OrderStatus.PROVISIONAL);
+        assertEquals(List.of(orderId), orderEntityList.stream().map(OrderEntity::getId).toList());
+        assertEquals(2, orderEntityList.get(0).getOrderLineItemsList().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        assertEquals(1, orderRepo.updateStatus(orderId, OrderStatus.PROVISIONAL, OrderStatus.PLACED, "reservation-1"));
+        // Not provisional anymore
+        assertEquals(0, orderRepo.updateStatus(orderId, OrderStatus.PROVISIONAL, OrderStatus.REJECTED, null));
+        testEntityManager.clear();
+        assertEquals("reservation-1", orderRepo.findById(orderId).orElseThrow().getReservationId());
+    }
+
+    @Test
+    void orderAndItsEventAreSavedTogether() {
+        final OrderOutbox orderOutbox = new OrderOutbox(orderRepo, outboxEventRepo);
+        final OrderEntity received = order(1);
+        received.setStatus(OrderStatus.RECEIVED);
+        orderOutbox.save(received);
+        assertEquals(1, orderOutbox.updateStatus(received, OrderStatus.RECEIVED, OrderStatus.PLACED, "reservation-1"));
+        // Already moved, no event
+        assertEquals(0, orderOutbox.updateStatus(received, OrderStatus.RECEIVED, OrderStatus.REJECTED, null));
+
+        final List<OutboxEventEntity> events = outboxEventRepo.findOldest(PageRequest.of(0, 10));
+        assertEquals(List.of(OrderStatus.RECEIVED, OrderStatus.PLACED),
+                events.stream().map(OutboxEventEntity::getOrderStatus).toList());
+        assertTrue(events.stream().allMatch(event -> received.getId().equals(event.getOrderId())));
+
+        outboxEventRepo.deleteAllByIdInBatch(events.stream().map(OutboxEventEntity::getId).toList());
+        assertTrue(outboxEventRepo.findOldest(PageRequest.of(0, 10)).isEmpty());
+    }
+
+    private OrderService orderService() {
+        return new OrderService(orderRepo, null, null, null, null, new ConcurrentMapCacheManager(), null, "reject");
+    }
+
+    private static OrderEntity order(int lineItems) {
+        final OrderEntity orderEntity = OrderEntity.builder()
+                .orderNumber("order-" + lineItems)
+                .orderLineItemsList(new ArrayList<>())
+                .build();
+        for (int i = 0; i < lineItems; i++) {
+            orderEntity.addOrderLineItem(OrderLineItemsEntity.builder()
+                    .skuCode("sku-" + i)
+                    .price(100 * (i + 1))
+                    .quantity(i + 1)
+                    .build());
+        }
+        return orderEntity;
+    }
+
+    // Counts the insert statements prepared, a batched statement is prepared once and reused for all its rows
+    public static class InsertCounter implements StatementInspector {
+
+        static final AtomicInteger inserts = new AtomicInteger();
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.startsWith("insert")) {
+                inserts.incrementAndGet();
+            }
+            return sql;
+        }
+    }
+}
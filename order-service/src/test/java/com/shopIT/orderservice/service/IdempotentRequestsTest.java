@@ -0,0 +1,155 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.config.IdempotencyStore;
+import com.shopit.orderservice.config.InMemoryIdempotencyStore;
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.dto.OrderDtoRequest;
+import com.shopit.orderservice.dto.OrderLineItemsDtoRequest;
+import com.shopit.orderservice.exception.IdempotencyKeyInUseException;
+import com.shopit.orderservice.exception.IdempotencyKeyReusedException;
+import com.shopit.orderservice.exception.ProductNotInStockException;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+class IdempotentRequestsTest {
+
+    private final IdempotentRequests idempotentRequests =
+            new IdempotentRequests(new InMemoryIdempotencyStore(), Duration.ofHours(24), Duration.ofSeconds(30));
+
+    private final AtomicInteger placedOrders = new AtomicInteger();
+
+    @Test
+    void retryWithSameKeyIsReplayed() {
+        final ResponseEntity<String> first = idempotentRequests.execute(OrderConstants.PLACE_ORDER, "key-1",
+                order(1), this::placeOrder);
+        final ResponseEntity<String> retry = idempotentRequests.execute(OrderConstants.PLACE_ORDER, "key-1",
+                order(1), this::placeOrder);
+
+        assertEquals(1, placedOrders.get());
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+        assertNull(first.getHeaders().getFirst(OrderConstants.IDEMPOTENT_REPLAYED));
+        assertEquals("true", retry.getHeaders().getFirst(OrderConstants.IDEMPOTENT_REPLAYED));
+
+        // Another order with the same key is refused, without a key it's always placed
+        assertThrows(IdempotencyKeyReusedException.class, () -> idempotentRequests.execute(
+                OrderConstants.PLACE_ORDER, "key-1", order(2), this::placeOrder));
+        idempotentRequests.execute(OrderConstants.PLACE_ORDER, null, order(1), this::placeOrder);
+        assertEquals(2, placedOrders.get());
+    }
+
+    @Test
+    void retryWhileInProgressIsRefusedAndFailureFreesTheKey() {
+        final IdempotencyKeyInUseException inUse = assertThrows(IdempotencyKeyInUseException.class, () ->
+                idempotentRequests.execute(OrderConstants.PLACE_ORDER, "key-2", order(1), () ->
+                        // Retry sent while the first one is still being placed
+                        idempotentRequests.execute(OrderConstants.PLACE_ORDER, "key-2", order(1), this::placeOrder)));
+        assertEquals(30, inUse.getRetryAfterSeconds());
+
+        // The first one failed (here with the exception of the retry), so the key is free again
+        assertThrows(ProductNotInStockException.class, () -> idempotentRequests.execute(
+                OrderConstants.PLACE_ORDER, "key-2", order(1), () -> {
+                    throw new ProductNotInStockException(OrderConstants.PRODUCT_NOT_IN_STOCK);
+                }));
+        assertEquals(HttpStatus.CREATED, idempotentRequests.execute(OrderConstants.PLACE_ORDER, "key-2",
+                order(1), this::placeOrder).getStatusCode());
+        assertEquals(1, placedOrders.get());
+    }
+
+    @Test
+    void reactiveRetryIsReplayedOnceTheFirstCompletes() {
+        final ResponseEntity<String> first = idempotentRequests.executeAsync(OrderConstants.PLACE_ORDER, "key-3",
+                order(1), () -> Mono.fromSupplier(this::placeOrder)).block();
+        final ResponseEntity<String> retry = idempotentRequests.executeAsync(OrderConstants.PLACE_ORDER, "key-3",
+                order(1), () -> Mono.fromSupplier(this::placeOrder)).block();
+
+        assertEquals(1, placedOrders.get());
+        assertEquals(first.getBody(), retry.getBody());
+        assertEquals("true", retry.getHeaders().getFirst(OrderConstants.IDEMPOTENT_REPLAYED));
+    }
+
+    @Test
+    void cancelledReactivePlacementKeepsTheKeyInProgress() {
+        // The client went away while its order was being placed
+        idempotentRequests.executeAsync(OrderConstants.PLACE_ORDER, "key-5", order(1),
+                () -> Mono.<ResponseEntity<String>>never().doOnSubscribe(subscription -> placedOrders.incrementAndGet()))
+                .subscribe()
+                .dispose();
+
+        assertThrows(IdempotencyKeyInUseException.class, () -> idempotentRequests.executeAsync(
+                OrderConstants.PLACE_ORDER, "key-5", order(1), () -> Mono.fromSupplier(this::placeOrder)));
+        assertEquals(1, placedOrders.get());
+    }
+
+    @Test
+    void requestWhoseClaimExpiredDoesNotTouchTheRetrysKey() {
+        final InMemoryIdempotencyStore idempotencyStore = new InMemoryIdempotencyStore();
+        final IdempotentRequests shortClaims =
+                new IdempotentRequests(idempotencyStore, Duration.ofHours(24), Duration.ZERO);
+
+        // The first one outlives its claim (in-progress-ttl), a retry claims the key meanwhile and is placed
+        final IdempotentRequests retries =
+                new IdempotentRequests(idempotencyStore, Duration.ofHours(24), Duration.ofSeconds(30));
+        shortClaims.execute(OrderConstants.PLACE_ORDER, "key-6", order(1), () -> {
+            retries.execute(OrderConstants.PLACE_ORDER, "key-6", order(1), this::placeOrder);
+            return placeOrder();
+        });
+
+        // The response stored is the retry's, the first one's was not written over it
+        final ResponseEntity<String> replay = shortClaims.execute(OrderConstants.PLACE_ORDER, "key-6", order(1),
+                this::placeOrder);
+        assertEquals(2, placedOrders.get());
+        assertEquals(OrderConstants.PLACED_ORDER + 1, replay.getBody());
+
+        // Nor can it free the key when it fails
+        assertThrows(ProductNotInStockException.class, () -> shortClaims.execute(OrderConstants.PLACE_ORDER,
+                "key-7", order(1), () -> {
+                    retries.execute(OrderConstants.PLACE_ORDER, "key-7", order(1), this::placeOrder);
+                    throw new ProductNotInStockException(OrderConstants.PRODUCT_NOT_IN_STOCK);
+                }));
+        assertEquals("true", shortClaims.execute(OrderConstants.PLACE_ORDER, "key-7", order(1), this::placeOrder)
+                .getHeaders().getFirst(OrderConstants.IDEMPOTENT_REPLAYED));
+        assertEquals(3, placedOrders.get());
+    }
+
+    @Test
+    void storeNotReachableFailsOpen() {
+        final IdempotencyStore idempotencyStore = Mockito.mock(IdempotencyStore.class);
+        Mockito.when(idempotencyStore.putIfAbsent(anyString(), any(), any()))
+                .thenThrow(new IllegalStateException("Redis down"));
+        final IdempotentRequests withoutStore =
+                new IdempotentRequests(idempotencyStore, Duration.ofHours(24), Duration.ofSeconds(30));
+
+        assertEquals(HttpStatus.CREATED, withoutStore.execute(OrderConstants.PLACE_ORDER, "key-4", order(1),
+                this::placeOrder).getStatusCode());
+        assertEquals(1, placedOrders.get());
+    }
+
+    private ResponseEntity<String> placeOrder() {
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(OrderConstants.PLACED_ORDER + placedOrders.incrementAndGet());
+    }
+
+    private static OrderDtoRequest order(final int quantity) {
+        return OrderDtoRequest.builder()
+                .orderLineItemsDtoRequestList(List.of(OrderLineItemsDtoRequest.builder()
+                        .skuCode("OnePlus 11R")
+                        .price(40000)
+                        .quantity(quantity)
+                        .build()))
+                .build();
+    }
+}
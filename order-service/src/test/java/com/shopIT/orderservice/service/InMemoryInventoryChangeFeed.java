@@ -0,0 +1,33 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.config.InventoryChangeFeed;
+import com.shopit.orderservice.dto.InventoryChangeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Embedded stand-in for the Redis Stream in tests, with ids like Redis gives them ("<millis>-<sequence no.>")
+public class InMemoryInventoryChangeFeed implements InventoryChangeFeed {
+
+    private final List<InventoryChangeEvent> events = new ArrayList<>();
+
+    public synchronized void publish(final Map<String, Integer> skuQuantities) {
+        publish(skuQuantities, Map.of());
+    }
+
+    public synchronized void publish(final Map<String, Integer> skuQuantities, final Map<String, Long> skuVersions) {
+        events.add(InventoryChangeEvent.builder()
+                .eventId("1-" + (events.size() + 1))
+                .skuQuantities(Map.copyOf(skuQuantities))
+                .skuVersions(Map.copyOf(skuVersions))
+                .build());
+    }
+
+    @Override
+    public synchronized List<InventoryChangeEvent> readAfter(final String lastEventId, final int count) {
+        final int after = FIRST_EVENT_ID.equals(lastEventId) ? 0
+                : Integer.parseInt(lastEventId.substring(lastEventId.indexOf('-') + 1));
+        return new ArrayList<>(events.subList(after, Math.min(events.size(), after + count)));
+    }
+}
@@ -0,0 +1,125 @@
+package com.shopit.orderservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryReplicaTest {
+
+    private final InMemoryInventoryChangeFeed inventoryChangeFeed = new InMemoryInventoryChangeFeed();
+
+    private final MutableClock clock = new MutableClock();
+
+    // Batch size 2: a poll reads on till the end of the feed
+    private final InventoryReplica inventoryReplica =
+            new InventoryReplica(inventoryChangeFeed, Duration.ZERO, 2, Duration.ofSeconds(10), true, clock);
+
+    @AfterEach
+    void tearDown() {
+        inventoryReplica.close();
+    }
+
+    @Test
+    void eventsAreAppliedInOrder() {
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 10, "Pixel 8", 3));
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 9));
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 7));
+
+        assertEquals(3, inventoryReplica.poll());
+        assertEquals(7, inventoryReplica.quantity("OnePlus 11R"));
+        assertEquals(3, inventoryReplica.quantity("Pixel 8"));
+        assertNull(inventoryReplica.quantity("iPhone 15"));
+
+        // Only the new ones next time
+        inventoryChangeFeed.publish(Map.of("Pixel 8", 0));
+        assertEquals(1, inventoryReplica.poll());
+        assertEquals(0, inventoryReplica.quantity("Pixel 8"));
+    }
+
+    @Test
+    void olderVersionPublishedLateIsDropped() {
+        // Two reservations committed as version 4 and 5, the one of version 5 published first
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 8, "Pixel 8", 2), Map.of("OnePlus 11R", 5L, "Pixel 8", 3L));
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 9), Map.of("OnePlus 11R", 4L));
+
+        assertEquals(2, inventoryReplica.poll());
+        assertEquals(8, inventoryReplica.quantity("OnePlus 11R"));
+
+        // A newer version is applied, in the same event as an older one of another skuCode
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 7, "Pixel 8", 4), Map.of("OnePlus 11R", 6L, "Pixel 8", 2L));
+        inventoryReplica.poll();
+        assertEquals(7, inventoryReplica.quantity("OnePlus 11R"));
+        assertEquals(2, inventoryReplica.quantity("Pixel 8"));
+    }
+
+    @Test
+    void usedOnlyWhileFresh() {
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 1));
+
+        // Never read yet
+        assertFalse(inventoryReplica.isKnownShort(Map.of("OnePlus 11R", 2)));
+        assertFalse(inventoryReplica.tryDeduct(Map.of("OnePlus 11R", 1)));
+
+        inventoryReplica.poll();
+        assertTrue(inventoryReplica.isKnownShort(Map.of("OnePlus 11R", 2)));
+        // Unknown skuCode is left to the inventory service
+        assertFalse(inventoryReplica.isKnownShort(Map.of("iPhone 15", 2)));
+
+        clock.advance(Duration.ofSeconds(11));
+        assertFalse(inventoryReplica.isFresh());
+        assertFalse(inventoryReplica.isKnownShort(Map.of("OnePlus 11R", 2)));
+    }
+
+    @Test
+    void deductionIsAllOrNothing() {
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 2, "Pixel 8", 1));
+        inventoryReplica.poll();
+
+        assertFalse(inventoryReplica.tryDeduct(Map.of("OnePlus 11R", 1, "Pixel 8", 2)));
+        assertFalse(inventoryReplica.tryDeduct(Map.of("OnePlus 11R", 1, "iPhone 15", 1)));
+        assertEquals(2, inventoryReplica.quantity("OnePlus 11R"));
+
+        assertTrue(inventoryReplica.tryDeduct(Map.of("OnePlus 11R", 2, "Pixel 8", 1)));
+        assertFalse(inventoryReplica.tryDeduct(Map.of("OnePlus 11R", 1)));
+
+        // Next event has the quantity of the inventory again
+        inventoryChangeFeed.publish(Map.of("OnePlus 11R", 5));
+        inventoryReplica.poll();
+        assertEquals(5, inventoryReplica.quantity("OnePlus 11R"));
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(final Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+    }
+}
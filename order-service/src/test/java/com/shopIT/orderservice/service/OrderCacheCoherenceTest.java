@@ -0,0 +1,283 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.config.CacheConfig;
+import com.shopit.orderservice.config.InventoryCallPolicy;
+import com.shopit.orderservice.config.StampedeProtectedCache;
+import com.shopit.orderservice.config.TwoLevelCacheManager;
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.dto.CacheInvalidationMessage;
+import com.shopit.orderservice.dto.OrderDetailsRow;
+import com.shopit.orderservice.dto.OrderDtoRequest;
+import com.shopit.orderservice.dto.OrderDtoResponse;
+import com.shopit.orderservice.dto.OrderLineItemsDtoRequest;
+import com.shopit.orderservice.entity.OrderEntity;
+import com.shopit.orderservice.repository.OrderRepository;
+import com.shopit.orderservice.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RLock;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.JsonJacksonCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+// @Cacheable getOrderDetails and the write-through of placeOrder as done by Spring, through the caches built like
+// CacheConfig does: StampedeProtectedCache over the TwoLevelCacheManager (Caffeine L1) over an in-memory cache
+// standing in for Redis (L2), which keeps every value as the bytes of the compact cacheSerializer. The pub/sub
+// topic delivers to the listeners of all the "instances" created on it and the Redis lock is always free.
+@SpringJUnitConfig
+class OrderCacheCoherenceTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepo;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private SerializingCacheManager redisCacheManager;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.reset(orderRepo);
+        redisCacheManager.getCacheNames().forEach(name -> redisCacheManager.getCache(name).clear());
+        cacheManager.getCache(OrderConstants.ORDERS_CACHE).clear();
+        Mockito.when(orderRepo.save(any(OrderEntity.class))).thenAnswer(invocation -> {
+            final OrderEntity orderEntity = invocation.getArgument(0);
+            orderEntity.setId(7);
+            return orderEntity;
+        });
+    }
+
+    @Test
+    void missIsLoadedOnceAndStoredCompact() {
+        Mockito.when(orderRepo.findOrderDetails(List.of(1))).thenReturn(List.of(
+                new OrderDetailsRow(1, "123", 10, "OnePlus 11R", 1000, 1),
+                new OrderDetailsRow(1, "123", 11, "iPhone 14", 2000, 2)));
+
+        final OrderDtoResponse first = orderService.getOrderDetails(1);
+        final OrderDtoResponse second = orderService.getOrderDetails(1);
+
+        Mockito.verify(orderRepo, Mockito.times(1)).findOrderDetails(List.of(1));
+        assertEquals(first, second);
+        assertEquals("iPhone 14", second.getOrderLineItemsDtoResponseList().get(1).getSkuCode());
+        // In "Redis" as the bytes of the cacheSerializer
+        assertInstanceOf(byte[].class, redisCacheManager.store(OrderConstants.ORDERS_CACHE).get(1));
+    }
+
+    @Test
+    void placedOrderIsReadFromCacheWithoutDbRead() {
+        final Integer orderId = orderService.placeOrder(orderDtoRequest()).getOrderId();
+
+        final OrderDtoResponse orderDtoResponse = orderService.getOrderDetails(orderId);
+
+        Mockito.verify(orderRepo, Mockito.never()).findOrderDetails(any());
+        assertEquals("OnePlus 11R", orderDtoResponse.getOrderLineItemsDtoResponseList().get(0).getSkuCode());
+        // Another instance has no L1 copy yet and reads what was written through to Redis
+        final OrderDtoResponse fromRedis = otherInstance().getCache(OrderConstants.ORDERS_CACHE)
+                .get(orderId, OrderDtoResponse.class);
+        assertEquals(orderDtoResponse, fromRedis);
+    }
+
+    @Test
+    void changeBroadcastDropsL1CopyOfOtherInstance() {
+        final MeterRegistry otherMeterRegistry = new SimpleMeterRegistry();
+        final Cache otherOrdersCache = otherInstance(otherMeterRegistry).getCache(OrderConstants.ORDERS_CACHE);
+        final Cache ordersCache = cacheManager.getCache(OrderConstants.ORDERS_CACHE);
+        ordersCache.put(1, order(1, "first"));
+        assertEquals("first", otherOrdersCache.get(1, OrderDtoResponse.class).getOrderNumber());
+
+        // Changed in Redis without a broadcast, the other instance keeps serving its L1 copy
+        redisCacheManager.getCache(OrderConstants.ORDERS_CACHE).clear();
+        assertEquals("first", otherOrdersCache.get(1, OrderDtoResponse.class).getOrderNumber());
+
+        ordersCache.put(1, order(1, "second"));
+
+        assertEquals("second", otherOrdersCache.get(1, OrderDtoResponse.class).getOrderNumber());
+        // Both puts were broadcast to it
+        assertEquals(2, otherMeterRegistry.get("cache.l1.invalidations").counter().count());
+        // This instance ignores the echo of its own broadcast and keeps its L1 copy
+        assertNotNull(ordersCache.get(1));
+    }
+
+    private CacheManager otherInstance() {
+        return otherInstance(new SimpleMeterRegistry());
+    }
+
+    // Second instance sharing the same Redis and topic
+    private CacheManager otherInstance(MeterRegistry meterRegistry) {
+        return CacheTestConfig.cacheManager(redisCacheManager, redissonClient, meterRegistry);
+    }
+
+    private static OrderDtoResponse order(int orderId, String orderNumber) {
+        return OrderDtoResponse.builder()
+                .id(orderId)
+                .orderNumber(orderNumber)
+                .orderLineItemsDtoResponseList(List.of())
+                .build();
+    }
+
+    private static OrderDtoRequest orderDtoRequest() {
+        return OrderDtoRequest.builder()
+                .orderLineItemsDtoRequestList(List.of(OrderLineItemsDtoRequest.builder()
+                        .skuCode("OnePlus 11R")
+                        .price(1000)
+                        .quantity(1)
+                        .build()))
+                .build();
+    }
+
+    // Redis caches (L2): values are kept as the bytes the cacheSerializer writes, like RedisCacheManager does
+    static class SerializingCacheManager extends ConcurrentMapCacheManager {
+
+        private final RedisSerializer<Object> cacheSerializer;
+
+        private final Map<String, ConcurrentMap<Object, Object>> stores = new ConcurrentHashMap<>();
+
+        SerializingCacheManager(RedisSerializer<Object> cacheSerializer) {
+            this.cacheSerializer = cacheSerializer;
+        }
+
+        ConcurrentMap<Object, Object> store(String name) {
+            return stores.get(name);
+        }
+
+        @Override
+        protected Cache createConcurrentMapCache(String name) {
+            final ConcurrentMap<Object, Object> store = stores.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+            return new ConcurrentMapCache(name, store, false) {
+                @Override
+                protected Object toStoreValue(Object userValue) {
+                    return cacheSerializer.serialize(userValue);
+                }
+
+                @Override
+                protected Object fromStoreValue(Object storeValue) {
+                    return cacheSerializer.deserialize((byte[]) storeValue);
+                }
+            };
+        }
+    }
+
+    @Configuration
+    @EnableCaching
+    static class CacheTestConfig {
+
+        static CacheManager cacheManager(CacheManager redisCacheManager, RedissonClient redissonClient,
+                                         MeterRegistry meterRegistry) {
+            return new TwoLevelCacheManager(redisCacheManager,
+                    Map.of(OrderConstants.ORDERS_CACHE, "maximumSize=100,expireAfterWrite=10m"),
+                    redissonClient.getTopic(OrderConstants.L1_CACHE_INVALIDATION, new JsonJacksonCodec()),
+                    meterRegistry,
+                    cache -> new StampedeProtectedCache(cache, redissonClient, Duration.ofMinutes(10),
+                            Duration.ofMinutes(1), 0, Duration.ofSeconds(1), Duration.ofSeconds(30), Runnable::run,
+                            Clock.systemUTC()));
+        }
+
+        @Bean
+        SerializingCacheManager redisCacheManager() {
+            // Small threshold, so the bigger orders are LZ4 compressed too
+            return new SerializingCacheManager(new CacheConfig().cacheSerializer(
+                    OrderConstants.COMPACT_CACHE_SERIALIZER, 64));
+        }
+
+        // The one @Cacheable uses, i.e. this instance's
+        @Bean
+        @Primary
+        CacheManager cacheManager(SerializingCacheManager redisCacheManager, RedissonClient redissonClient) {
+            return cacheManager(redisCacheManager, redissonClient, new SimpleMeterRegistry());
+        }
+
+        @Bean
+        OrderRepository orderRepo() {
+            return Mockito.mock(OrderRepository.class);
+        }
+
+        @Bean
+        @SuppressWarnings("unchecked")
+        RedissonClient redissonClient() throws InterruptedException {
+            final List<MessageListener<CacheInvalidationMessage>> listeners = new CopyOnWriteArrayList<>();
+            final RTopic topic = Mockito.mock(RTopic.class);
+            Mockito.when(topic.addListener(eq(CacheInvalidationMessage.class), any(MessageListener.class)))
+                    .thenAnswer(invocation -> {
+                        listeners.add(invocation.getArgument(1));
+                        return listeners.size();
+                    });
+            Mockito.when(topic.publishAsync(any())).thenAnswer(invocation -> {
+                listeners.forEach(listener -> listener.onMessage(OrderConstants.L1_CACHE_INVALIDATION,
+                        invocation.getArgument(0)));
+                return null;
+            });
+
+            final RLock lock = Mockito.mock(RLock.class);
+            Mockito.when(lock.tryLock(anyLong(), anyLong(), eq(TimeUnit.MILLISECONDS))).thenReturn(true);
+
+            final RedissonClient redissonClient = Mockito.mock(RedissonClient.class);
+            Mockito.when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(topic);
+            Mockito.when(redissonClient.getLock(anyString())).thenReturn(lock);
+            return redissonClient;
+        }
+
+        @Bean
+        OrderService orderService(OrderRepository orderRepo, CacheManager cacheManager) {
+            // Inventory reserves every order
+            final WebClient inventoryWebClient = WebClient.builder()
+                    .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body("{\"reservationId\":\"reservation-1\"}")
+                            .build()))
+                    .build();
+            return new OrderService(orderRepo,
+                    new OrderOutbox(orderRepo, Mockito.mock(OutboxEventRepository.class)), inventoryWebClient,
+                    new InventoryCallPolicy(Duration.ofSeconds(2), 0, Duration.ofMillis(10), 0.5, false, 95,
+                            Duration.ofMillis(10)),
+                    Schedulers.immediate(), cacheManager, Mockito.mock(InventoryReplica.class),
+                    OrderConstants.ACCEPT_PROVISIONALLY);
+        }
+    }
+}
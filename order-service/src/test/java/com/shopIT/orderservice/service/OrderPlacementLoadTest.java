@@ -0,0 +1,417 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.config.InventoryCallPolicy;
+import com.shopit.orderservice.constants.OrderConstants;
+import com.shopit.orderservice.dto.OrderDtoRequest;
+import com.shopit.orderservice.dto.OrderDtoResponse;
+import com.shopit.orderservice.dto.OrderLineItemsDtoRequest;
+import com.shopit.orderservice.dto.OrderPlacementDtoResponse;
+import com.shopit.orderservice.entity.OrderEntity;
+import com.shopit.orderservice.entity.OrderStatus;
+import com.shopit.orderservice.repository.OrderRepository;
+import com.shopit.orderservice.repository.OutboxEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.reactivestreams.Publisher;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+
+// Compares blocking and reactive order placement with the same fixed no. of request threads (like a Tomcat pool)
+// against a fake inventory service which takes INVENTORY_LATENCY to respond.
+class OrderPlacementLoadTest {
+
+    private static final int REQUEST_THREADS = 4;
+    private static final int ORDERS = 200;
+    private static final Duration INVENTORY_LATENCY = Duration.ofMillis(50);
+
+    private DisposableServer inventoryServer;
+    private Scheduler jpaScheduler;
+    private ExecutorService requestThreads;
+    private OrderService orderService;
+    private final CacheManager cacheManager = new ConcurrentMapCacheManager();
+    private final OrderRepository orderRepo = Mockito.mock(OrderRepository.class);
+    private final AtomicInteger batchReservations = new AtomicInteger();
+    private final Queue<String> finalizedReservations = new ConcurrentLinkedQueue<>();
+    private final Queue<String> finalizeBatches = new ConcurrentLinkedQueue<>();
+    private final Queue<String> reserveRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger reservesInFlight = new AtomicInteger();
+    private final AtomicInteger maxReservesInFlight = new AtomicInteger();
+    private final Queue<String> batchReservationRequests = new ConcurrentLinkedQueue<>();
+    private volatile boolean failFirstBatch;
+    private final AtomicInteger confirmFailures = new AtomicInteger();
+    private final AtomicInteger failedConfirms = new AtomicInteger();
+    // Status of the reservations in the fake inventory, see expireReservations
+    private final Map<String, String> reservations = new ConcurrentHashMap<>();
+    private final InventoryReplica inventoryReplica = Mockito.mock(InventoryReplica.class);
+    private final OutboxEventRepository outboxEventRepo = Mockito.mock(OutboxEventRepository.class);
+    private final Map<Integer, OrderEntity> savedOrders = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        inventoryServer = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .post("/shopit/inventory/reserve", (request, response) -> response
+                                .header("Content-Type", "application/json")
+                                .sendString(request.receive().aggregate().asString()
+                                        .doOnNext(body -> {
+                                            reserveRequests.add(body);
+                                            reservations.putIfAbsent("reservation-1", "RESERVED");
+                                            maxReservesInFlight.accumulateAndGet(reservesInFlight.incrementAndGet(),
+                                                    Math::max);
+                                        })
+                                        .then(Mono.delay(INVENTORY_LATENCY))
+                                        // Before answering, so the next reservation of the thread isn't counted
+                                        .doOnNext(delay -> reservesInFlight.decrementAndGet())
+                                        .thenReturn("{\"reservationId\":\"reservation-1\"}")))
+                        // Batch of 4 orders: 2nd one out of stock, 3rd one without line items
+                        // Answers 500 to the first one when failFirstBatch, as if it failed after reserving
+                        .post("/shopit/inventory/reserveBatch", (request, response) -> {
+                            final boolean fail = batchReservations.incrementAndGet() == 1 && failFirstBatch;
+                            return response
+                                    .status(fail ? 500 : 200)
+                                    .header("Content-Type", "application/json")
+                                    .sendString(request.receive().aggregate().asString()
+                                            .doOnNext(batchReservationRequests::add)
+                                            .thenReturn(fail ? "{}" : "["
+                                            + "{\"reservationId\":\"reservation-1\",\"status\":\"RESERVED\"},"
+                                            + "{\"status\":\"OUT_OF_STOCK\"},"
+                                            + "{\"status\":\"INVALID\"},"
+                                            + "{\"reservationId\":\"reservation-4\",\"status\":\"RESERVED\"}]"));
+                        })
+                        .post("/shopit/inventory/reserve/confirmBatch", (request, response) ->
+                                finalizeBatch(request, response, "confirm"))
+                        .post("/shopit/inventory/reserve/releaseBatch", (request, response) ->
+                                finalizeBatch(request, response, "release"))
+                        .post("/shopit/inventory/reserve/{reservationId}/{action}", (request, response) -> {
+                            final String action = request.param("action");
+                            // Inventory not reachable for the first confirmFailures attempts
+                            if ("confirm".equals(action) && confirmFailures.getAndDecrement() > 0) {
+                                failedConfirms.incrementAndGet();
+                                return response.status(503).send();
+                            }
+                            finalizedReservations.add(request.param("reservationId") + ":" + action);
+                            reservations.computeIfPresent(request.param("reservationId"), (reservationId, status) ->
+                                    "confirm".equals(action) ? "CONFIRMED" : "RELEASED");
+                            return response.send();
+                        }))
+                .bindNow();
+
+        final AtomicInteger ids = new AtomicInteger();
+        Mockito.when(orderRepo.save(any(OrderEntity.class))).thenAnswer(invocation -> {
+            OrderEntity orderEntity = invocation.getArgument(0);
+            orderEntity.setId(ids.incrementAndGet());
+            savedOrders.put(orderEntity.getId(), orderEntity);
+            return orderEntity;
+        });
+        Mockito.when(orderRepo.findWithLineItemsById(any())).thenAnswer(invocation ->
+                Optional.ofNullable(savedOrders.get(invocation.<Integer>getArgument(0))));
+        Mockito.when(orderRepo.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<OrderEntity> orderEntityList = invocation.getArgument(0);
+            final List<OrderEntity> savedOrderEntityList = new ArrayList<>();
+            orderEntityList.forEach(orderEntity -> {
+                orderEntity.setId(ids.incrementAndGet());
+                savedOrderEntityList.add(orderEntity);
+            });
+            return savedOrderEntityList;
+        });
+
+        jpaScheduler = Schedulers.newBoundedElastic(REQUEST_THREADS, Integer.MAX_VALUE, "jpa");
+        requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+        orderService = new OrderService(orderRepo, new OrderOutbox(orderRepo, outboxEventRepo),
+                WebClient.create("http://localhost:" + inventoryServer.port() + "/shopit/inventory"),
+                new InventoryCallPolicy(Duration.ofSeconds(2), 2, Duration.ofMillis(50), 0.5, false, 95,
+                        Duration.ofMillis(10)),
+                jpaScheduler, cacheManager, inventoryReplica, OrderConstants.ACCEPT_PROVISIONALLY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        requestThreads.shutdownNow();
+        jpaScheduler.dispose();
+        inventoryServer.disposeNow();
+    }
+
+    @Test
+    void placedOrderIsWrittenThroughToCache() {
+        final Integer orderId = orderService.placeOrder(orderDtoRequest()).getOrderId();
+
+        final OrderDtoResponse cachedOrder = cacheManager.getCache(OrderConstants.ORDERS_CACHE)
+                .get(orderId, OrderDtoResponse.class);
+        assertEquals(orderId, cachedOrder.getId());
+        assertEquals("OnePlus 11R", cachedOrder.getOrderLineItemsDtoResponseList().get(0).getSkuCode());
+    }
+
+    @Test
+    void batchIsReservedOnceWithResultPerOrder() {
+        final List<OrderPlacementDtoResponse> results = orderService.placeOrders(orderDtoRequestBatch());
+
+        assertEquals(List.of(OrderConstants.PLACED, OrderConstants.OUT_OF_STOCK, OrderConstants.INVALID,
+                OrderConstants.PLACED), results.stream().map(OrderPlacementDtoResponse::getStatus).toList());
+        assertEquals(1, batchReservations.get());
+        Mockito.verify(orderRepo).saveAll(any());
+        Mockito.verify(orderRepo, Mockito.never()).save(any());
+        assertNotNull(cacheManager.getCache(OrderConstants.ORDERS_CACHE).get(results.get(3).getOrderId()));
+        awaitFinalized(Set.of("reservation-1:confirm", "reservation-4:confirm"));
+        assertEquals(List.of("confirm"), List.copyOf(finalizeBatches));
+        Mockito.verify(orderRepo, Mockito.timeout(1000))
+                .markReservationsConfirmed(List.of("reservation-1", "reservation-4"));
+    }
+
+    @Test
+    void asyncOrderIsAcceptedThenPlacedByWorker() {
+        Mockito.when(orderRepo.updateStatus(any(), eq(OrderStatus.RECEIVED), eq(OrderStatus.PLACED),
+                eq("reservation-1"))).thenReturn(1);
+
+        try (OrderPlacementWorker orderPlacementWorker = new OrderPlacementWorker(orderService, 2, 10)) {
+            final OrderPlacementDtoResponse orderPlacementDtoResponse = orderPlacementWorker.accept(orderDtoRequest());
+
+            // Saved (with its event) before the inventory is called
+            assertEquals(OrderConstants.RECEIVED, orderPlacementDtoResponse.getStatus());
+            assertEquals(OrderStatus.RECEIVED, savedOrders.get(orderPlacementDtoResponse.getOrderId()).getStatus());
+            Mockito.verify(outboxEventRepo).save(argThat(event -> event.getOrderStatus() == OrderStatus.RECEIVED));
+
+            awaitFinalized(Set.of("reservation-1:confirm"));
+            Mockito.verify(orderRepo).updateStatus(orderPlacementDtoResponse.getOrderId(), OrderStatus.RECEIVED,
+                    OrderStatus.PLACED, "reservation-1");
+            Mockito.verify(outboxEventRepo, Mockito.timeout(5000))
+                    .save(argThat(event -> event.getOrderStatus() == OrderStatus.PLACED));
+        }
+    }
+
+    @Test
+    void provisionalOrderIsPlacedOnceReserved() {
+        final OrderEntity provisional = orderService.orderDtoReqToOrderEntity(orderDtoRequest(), null);
+        provisional.setId(7);
+        provisional.setStatus(OrderStatus.PROVISIONAL);
+        Mockito.when(orderRepo.findByStatusOrderById(OrderStatus.PROVISIONAL)).thenReturn(List.of(provisional));
+        Mockito.when(orderRepo.updateStatus(7, OrderStatus.PROVISIONAL, OrderStatus.PLACED, "reservation-1"))
+                .thenReturn(1);
+
+        assertEquals(1, orderService.reconcileProvisionalOrders());
+        awaitFinalized(Set.of("reservation-1:confirm"));
+    }
+
+    @Test
+    void orderIsReservedUnderItsOrderNumberEveryTime() {
+        final OrderEntity provisional = orderService.orderDtoReqToOrderEntity(orderDtoRequest(), null);
+        provisional.setId(7);
+        provisional.setStatus(OrderStatus.PROVISIONAL);
+        Mockito.when(orderRepo.findByStatusOrderById(OrderStatus.PROVISIONAL)).thenReturn(List.of(provisional));
+        // Placed by another instance with the same reservation, between its reservation and the status change
+        Mockito.when(orderRepo.updateStatus(7, OrderStatus.PROVISIONAL, OrderStatus.PLACED, "reservation-1"))
+                .thenReturn(0, 1);
+        Mockito.when(orderRepo.findById(7)).thenReturn(Optional.of(OrderEntity.builder()
+                .id(7)
+                .status(OrderStatus.PLACED)
+                .build()));
+
+        assertEquals(0, orderService.reconcileProvisionalOrders());
+        assertEquals(1, orderService.reconcileProvisionalOrders());
+
+        // The same reservationId both times, so the inventory reserves the stock once. Not released for the first
+        // round as the order is placed with it.
+        final String reservationId = "\"reservationId\":\"" + provisional.getOrderNumber() + "\"";
+        assertEquals(2, reserveRequests.size());
+        assertTrue(reserveRequests.stream().allMatch(body -> body.contains(reservationId)), reserveRequests::toString);
+        awaitFinalized(Set.of("reservation-1:confirm"));
+    }
+
+    @Test
+    void batchIsSentAgainWithTheSameReservationIds() {
+        failFirstBatch = true;
+
+        final List<OrderPlacementDtoResponse> results = orderService.placeOrders(orderDtoRequestBatch());
+
+        assertEquals(List.of(OrderConstants.PLACED, OrderConstants.OUT_OF_STOCK, OrderConstants.INVALID,
+                OrderConstants.PLACED), results.stream().map(OrderPlacementDtoResponse::getStatus).toList());
+        assertEquals(2, batchReservations.get());
+        // A reservationId per order, the same ones both times so the inventory dedupes what the first one reserved
+        final List<String> bodies = List.copyOf(batchReservationRequests);
+        assertEquals(2, bodies.size());
+        assertEquals(bodies.get(0), bodies.get(1));
+        assertEquals(4, Pattern.compile("\"reservationId\":\"[^\"]+\"").matcher(bodies.get(0)).results()
+                .map(MatchResult::group).distinct().count(), bodies.get(0));
+    }
+
+    @Test
+    void orderNotSavedDoesNotFailTheBatch() {
+        Mockito.doThrow(new RuntimeException("Broken order")).when(orderRepo).saveAll(any());
+        Mockito.doThrow(new RuntimeException("Broken order")).when(orderRepo).save(argThat(orderEntity ->
+                "reservation-4".equals(orderEntity.getReservationId())));
+
+        final List<OrderPlacementDtoResponse> results = orderService.placeOrders(orderDtoRequestBatch());
+
+        assertEquals(OrderConstants.PLACED, results.get(0).getStatus());
+        assertNotNull(results.get(0).getOrderId());
+        assertEquals(OrderConstants.NOT_SAVED, results.get(3).getStatus());
+        assertNull(results.get(3).getOrderId());
+        awaitFinalized(Set.of("reservation-1:confirm", "reservation-4:release"));
+        assertEquals(Set.of("confirm", "release"), Set.copyOf(finalizeBatches));
+        assertEquals(2, finalizeBatches.size());
+    }
+
+    @Test
+    void lostConfirmationIsSentAgainBeforeTheReservationExpires() {
+        // Every attempt of the confirmation sent right after placing the order fails
+        confirmFailures.set(3);
+        final Integer orderId = orderService.placeOrder(orderDtoRequest()).getOrderId();
+
+        assertEquals(false, savedOrders.get(orderId).getReservationConfirmed());
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (failedConfirms.get() < 3 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(3, failedConfirms.get());
+        Mockito.verify(orderRepo, Mockito.after(200).never()).markReservationsConfirmed(any());
+
+        // The reconciler finds the order still not confirmed and confirms it
+        Mockito.when(orderRepo.findUnconfirmedReservationIds(any(), any())).thenReturn(List.of("reservation-1"));
+        assertEquals(1, orderService.confirmPlacedReservations(Instant.now()));
+        Mockito.verify(orderRepo).markReservationsConfirmed(List.of("reservation-1"));
+
+        // So the expiry of the inventory finds nothing left RESERVED to give back
+        assertEquals(List.of(), expireReservations());
+        assertEquals("CONFIRMED", reservations.get("reservation-1"));
+    }
+
+    @Test
+    void reactivePlacementDoesNotHoldRequestThreadsWhileWaitingForInventory() throws InterruptedException {
+        // Each blocking placement holds its request thread till the inventory answers
+        placeOrders(false, ORDERS);
+        assertTrue(maxReservesInFlight.get() <= REQUEST_THREADS);
+
+        // The request thread only subscribes and is free again, so more reservations wait on the inventory at once
+        // than there are request threads
+        maxReservesInFlight.set(0);
+        placeOrders(true, ORDERS);
+        assertTrue(maxReservesInFlight.get() > REQUEST_THREADS,
+                "Max reservations in flight: " + maxReservesInFlight.get());
+    }
+
+    private void placeOrders(final boolean reactive, final int orders) throws InterruptedException {
+        final CountDownLatch placed = new CountDownLatch(orders);
+        final AtomicInteger failed = new AtomicInteger();
+
+        for (int i = 0; i < orders; i++) {
+            requestThreads.execute(() -> {
+                if (reactive) {
+                    // Request thread only subscribes and is free again, like an async servlet request
+                    orderService.placeOrderReactive(orderDtoRequest())
+                            .subscribe(id -> placed.countDown(), ex -> {
+                                failed.incrementAndGet();
+                                placed.countDown();
+                            });
+                } else {
+                    try {
+                        orderService.placeOrder(orderDtoRequest());
+                    } catch (RuntimeException ex) {
+                        failed.incrementAndGet();
+                    }
+                    placed.countDown();
+                }
+            });
+        }
+
+        assertTrue(placed.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failed.get());
+    }
+
+    private List<OrderDtoRequest> orderDtoRequestBatch() {
+        return List.of(orderDtoRequest(), orderDtoRequest(),
+                OrderDtoRequest.builder().orderLineItemsDtoRequestList(List.of()).build(), orderDtoRequest());
+    }
+
+    // What the ReservationExpirer of the inventory does once expire-after is over: every reservation still RESERVED is
+    // released. Returns the released ones.
+    private List<String> expireReservations() {
+        final List<String> released = new ArrayList<>();
+        reservations.replaceAll((reservationId, status) -> {
+            if ("RESERVED".equals(status)) {
+                released.add(reservationId);
+                return "RELEASED";
+            }
+            return status;
+        });
+        return released;
+    }
+
+    // Confirmation or release of a batch of reservationIds, answers the ones not finalized (released already) like
+    // the inventory
+    private Publisher<Void> finalizeBatch(final HttpServerRequest request, final HttpServerResponse response,
+                                          final String action) {
+        finalizeBatches.add(action);
+        return response
+                .header("Content-Type", "application/json")
+                .sendString(request.receive().aggregate().asString().map(body -> {
+                    final List<String> notFinalized = new ArrayList<>();
+                    Pattern.compile("\"([^\"]+)\"").matcher(body).results()
+                            .map(matchResult -> matchResult.group(1))
+                            .forEach(reservationId -> {
+                                if ("RELEASED".equals(reservations.get(reservationId))) {
+                                    notFinalized.add("\"" + reservationId + "\"");
+                                    return;
+                                }
+                                finalizedReservations.add(reservationId + ":" + action);
+                                reservations.computeIfPresent(reservationId, (id, status) ->
+                                        "confirm".equals(action) ? "CONFIRMED" : "RELEASED");
+                            });
+                    return "[" + String.join(",", notFinalized) + "]";
+                }));
+    }
+
+    // Confirmations and releases are sent without waiting for them
+    private void awaitFinalized(final Set<String> expected) {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Set.copyOf(finalizedReservations).equals(expected) && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(expected, Set.copyOf(finalizedReservations));
+    }
+
+    private OrderDtoRequest orderDtoRequest() {
+        return OrderDtoRequest.builder()
+                .orderLineItemsDtoRequestList(List.of(OrderLineItemsDtoRequest.builder()
+                        .skuCode("OnePlus 11R")
+                        .price(1)
+                        .quantity(1)
+                        .build()))
+                .build();
+    }
+}
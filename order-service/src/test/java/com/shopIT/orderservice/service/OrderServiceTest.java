@@ -1,9 +1,18 @@
 package com.shopit.orderservice.service;
 
+import com.shopit.orderservice.constants.OrderConstants;
 import com.shopit.orderservice.dto.*;
 import com.shopit.orderservice.entity.OrderEntity;
 import com.shopit.orderservice.entity.OrderLineItemsEntity;
+import com.shopit.orderservice.entity.OrderStatus;
+import com.shopit.orderservice.exception.InvalidOrderException;
+import com.shopit.orderservice.exception.InventoryNotReachableException;
+import com.shopit.orderservice.exception.OrderNotFoundException;
+import com.shopit.orderservice.exception.ProductNotInStockException;
 import com.shopit.orderservice.repository.OrderRepository;
+import com.shopit.orderservice.repository.OutboxEventRepository;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,16 +21,21 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 
 @ExtendWith(MockitoExtension.class)
 class OrderServiceTest {
@@ -33,10 +47,19 @@ class OrderServiceTest {
     private OrderRepository orderRepo;
 
     @Mock
-    private WebClient.Builder webClientBuilderMock;
+    private WebClient webClientMock;
 
     @Mock
-    private WebClient webClientMock;
+    private CacheManager cacheManager;
+
+    @Mock
+    private InventoryReplica inventoryReplica;
+
+    @Mock
+    private OrderOutbox orderOutbox;
+
+    @Mock
+    private OutboxEventRepository outboxEventRepo;
 
     @Test
     @Disabled
@@ -86,27 +109,126 @@ class OrderServiceTest {
             return savedProduct;
         });
 
-        Integer actualId = orderService.placeOrder(orderDtoRequest);
+        Integer actualId = orderService.placeOrder(orderDtoRequest).getOrderId();
         Integer expectedId = 1;
 
         assertEquals(expectedId, actualId);
     }
 
+    @Test
+    void orderKnownShortIsRejectedWithoutInventoryCall() {
+        Mockito.when(inventoryReplica.isKnownShort(Map.of("OnePlus 11R", 3))).thenReturn(true);
+
+        assertThrows(ProductNotInStockException.class, () -> orderService.placeOrder(orderDtoRequest("OnePlus 11R", 3)));
+        Mockito.verifyNoInteractions(webClientMock);
+    }
+
+    @Test
+    void lineItemWithoutSkuCodeIsInvalid() {
+        assertThrows(InvalidOrderException.class, () -> orderService.placeOrder(orderDtoRequest(null, 1)));
+        Mockito.verifyNoInteractions(webClientMock);
+    }
+
+    @Test
+    void openCircuitRejectsByDefault() {
+        assertThrows(InventoryNotReachableException.class, () -> orderService.placeOrderFallBack(
+                orderDtoRequest("OnePlus 11R", 1), callNotPermitted()));
+        Mockito.verifyNoInteractions(orderRepo);
+    }
+
+    @Test
+    void openCircuitAcceptsProvisionallyWhenReplicaCovers() {
+        final OrderService degradedOrderService = new OrderService(orderRepo,
+                new OrderOutbox(orderRepo, outboxEventRepo), webClientMock, null, null, cacheManager, inventoryReplica,
+                OrderConstants.ACCEPT_PROVISIONALLY);
+        Mockito.when(inventoryReplica.tryDeduct(Map.of("OnePlus 11R", 1))).thenReturn(true);
+        Mockito.when(orderRepo.save(any(OrderEntity.class))).thenAnswer(invocation -> {
+            OrderEntity orderEntity = invocation.getArgument(0);
+            orderEntity.setId(1);
+            return orderEntity;
+        });
+
+        OrderPlacementDtoResponse orderPlacementDtoResponse = degradedOrderService.placeOrderFallBack(
+                orderDtoRequest("OnePlus 11R", 1), callNotPermitted());
+
+        assertEquals(OrderConstants.PROVISIONAL, orderPlacementDtoResponse.getStatus());
+        assertEquals(1, orderPlacementDtoResponse.getOrderId());
+        Mockito.verify(orderRepo).save(argThat(orderEntity -> orderEntity.getStatus() == OrderStatus.PROVISIONAL
+                && orderEntity.getReservationId() == null));
+        // Its event in the same transaction
+        Mockito.verify(outboxEventRepo).save(argThat(event -> event.getOrderId() == 1
+                && event.getOrderStatus() == OrderStatus.PROVISIONAL));
+
+        // Replica doesn't have the stock
+        Mockito.when(inventoryReplica.tryDeduct(Map.of("Pixel 8", 1))).thenReturn(false);
+        assertThrows(InventoryNotReachableException.class, () -> degradedOrderService.placeOrderFallBack(
+                orderDtoRequest("Pixel 8", 1), callNotPermitted()));
+    }
+
+    @Test
+    void orderStatusTest() {
+        Mockito.when(orderRepo.findById(1)).thenReturn(Optional.of(OrderEntity.builder().id(1)
+                .status(OrderStatus.RECEIVED).build()));
+        // Placed before the status was added
+        Mockito.when(orderRepo.findById(2)).thenReturn(Optional.of(OrderEntity.builder().id(2).build()));
+        Mockito.when(orderRepo.findById(3)).thenReturn(Optional.empty());
+
+        assertEquals(OrderConstants.RECEIVED, orderService.getOrderStatus(1).getStatus());
+        assertEquals(OrderConstants.PLACED, orderService.getOrderStatus(2).getStatus());
+        assertThrows(OrderNotFoundException.class, () -> orderService.getOrderStatus(3));
+    }
+
     @Test
     void getOrderDetailsTest() {
         Integer orderId = 1;
-        OrderEntity orderEntity = OrderEntity.builder()
-                .id(1)
-                .orderLineItemsList(new ArrayList<>())
-                .orderNumber("123")
-                .build();
+        List<OrderDetailsRow> orderDetailsRows = List.of(
+                new OrderDetailsRow(1, "123", 10, "OnePlus 11R", 1000, 1),
+                new OrderDetailsRow(1, "123", 11, "iPhone 14", 2000, 2));
 
-        Mockito.when(orderRepo.findById(orderId)).thenReturn(Optional.of(orderEntity));
+        Mockito.when(orderRepo.findOrderDetails(List.of(orderId))).thenReturn(orderDetailsRows);
 
         Integer expectedOrderId = 1;
         OrderDtoResponse orderDtoResponse = orderService.getOrderDetails(orderId);
 
         assertEquals(expectedOrderId, orderDtoResponse.getId());
+        assertEquals(2, orderDtoResponse.getOrderLineItemsDtoResponseList().size());
+        assertEquals("iPhone 14", orderDtoResponse.getOrderLineItemsDtoResponseList().get(1).getSkuCode());
+    }
+
+    @Test
+    void getOrderDetailsNotFoundTest() {
+        Mockito.when(orderRepo.findOrderDetails(List.of(1))).thenReturn(List.of());
+
+        assertThrows(OrderNotFoundException.class, () -> orderService.getOrderDetails(1));
+    }
+
+    private static OrderDtoRequest orderDtoRequest(String skuCode, int quantity) {
+        return OrderDtoRequest.builder()
+                .orderLineItemsDtoRequestList(List.of(OrderLineItemsDtoRequest.builder()
+                        .price(1)
+                        .quantity(quantity)
+                        .skuCode(skuCode)
+                        .build()))
+                .build();
+    }
+
+    private static CallNotPermittedException callNotPermitted() {
+        return CallNotPermittedException.createCallNotPermittedException(CircuitBreaker.ofDefaults("inventoryCall"));
+    }
+
+    @Test
+    void orderDetailsRowsToDtoResTest() {
+        List<OrderDetailsRow> orderDetailsRows = List.of(
+                new OrderDetailsRow(1, "123", 10, "OnePlus 11R", 1000, 1),
+                new OrderDetailsRow(2, "456", null, null, null, null), // Order without line items
+                new OrderDetailsRow(3, "789", 12, "iPhone 14", 2000, 2));
+
+        List<OrderDtoResponse> orderDtoResponseList = orderService.orderDetailsRowsToDtoRes(orderDetailsRows);
+
+        assertEquals(List.of(1, 2, 3), orderDtoResponseList.stream().map(OrderDtoResponse::getId).toList());
+        assertEquals(1, orderDtoResponseList.get(0).getOrderLineItemsDtoResponseList().size());
+        assertTrue(orderDtoResponseList.get(1).getOrderLineItemsDtoResponseList().isEmpty());
+        assertEquals("789", orderDtoResponseList.get(2).getOrderNumber());
     }
 
     @Test
@@ -0,0 +1,85 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.config.OrderEventStream;
+import com.shopit.orderservice.entity.OrderStatus;
+import com.shopit.orderservice.entity.OutboxEventEntity;
+import com.shopit.orderservice.repository.OutboxEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+
+class OutboxRelayTest {
+
+    private final OutboxEventRepository outboxEventRepo = Mockito.mock(OutboxEventRepository.class);
+
+    private final OrderEventStream orderEventStream = Mockito.mock(OrderEventStream.class);
+
+    private final RedissonClient redissonClient = Mockito.mock(RedissonClient.class);
+
+    private final RLock lock = Mockito.mock(RLock.class);
+
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(redissonClient.getLock(anyString())).thenReturn(lock);
+        Mockito.when(lock.tryLock()).thenReturn(true);
+        // Batch size 2: relays on till the outbox is empty
+        outboxRelay = new OutboxRelay(outboxEventRepo, orderEventStream, redissonClient, Duration.ZERO, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboxRelay.close();
+    }
+
+    @Test
+    void eventsArePublishedInBatchesThenDeleted() {
+        Mockito.when(outboxEventRepo.findOldest(PageRequest.of(0, 2)))
+                .thenReturn(List.of(event(1L), event(2L)))
+                .thenReturn(List.of(event(3L)));
+
+        assertEquals(3, outboxRelay.relay());
+
+        Mockito.verify(orderEventStream).publish(List.of(event(1L), event(2L)));
+        Mockito.verify(outboxEventRepo).deleteAllByIdInBatch(List.of(1L, 2L));
+        Mockito.verify(outboxEventRepo).deleteAllByIdInBatch(List.of(3L));
+        Mockito.verify(lock).unlock();
+    }
+
+    @Test
+    void eventsNotPublishedStayInOutbox() {
+        Mockito.when(outboxEventRepo.findOldest(any())).thenReturn(List.of(event(1L)));
+        Mockito.doThrow(new IllegalStateException("Redis down")).when(orderEventStream).publish(anyList());
+
+        assertThrows(IllegalStateException.class, () -> outboxRelay.relay());
+
+        Mockito.verify(outboxEventRepo, Mockito.never()).deleteAllByIdInBatch(any());
+        Mockito.verify(lock).unlock();
+    }
+
+    @Test
+    void skippedWhileAnotherInstanceRelays() {
+        Mockito.when(lock.tryLock()).thenReturn(false);
+
+        assertEquals(0, outboxRelay.relay());
+        Mockito.verifyNoInteractions(outboxEventRepo, orderEventStream);
+    }
+
+    private static OutboxEventEntity event(final Long id) {
+        return OutboxEventEntity.builder().id(id).orderId(id.intValue()).orderStatus(OrderStatus.PLACED).build();
+    }
+}
@@ -0,0 +1,42 @@
+package com.shopit.orderservice.service;
+
+import com.shopit.orderservice.dto.InventoryDtoRequest;
+import com.shopit.orderservice.dto.OrderLineItemsDtoRequest;
+import com.shopit.orderservice.exception.InvalidOrderException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SkuQuantityIndexTest {
+
+    @Test
+    void ofOrderAddsUpDuplicateSkuCodes() {
+        SkuQuantityIndex index = SkuQuantityIndex.ofOrder(List.of(
+                OrderLineItemsDtoRequest.builder().skuCode("OnePlus 11R").price(1).quantity(1).build(),
+                OrderLineItemsDtoRequest.builder().skuCode("Pixel 8").price(1).quantity(3).build(),
+                OrderLineItemsDtoRequest.builder().skuCode("OnePlus 11R").price(1).quantity(2).build()));
+
+        assertEquals(2, index.size());
+        assertEquals(3, index.get("OnePlus 11R"));
+        assertEquals(0, index.get("iPhone 15"));
+        assertEquals(List.of(
+                InventoryDtoRequest.builder().skuCode("OnePlus 11R").quantity(3).build(),
+                InventoryDtoRequest.builder().skuCode("Pixel 8").quantity(3).build()),
+                index.toInventoryDtoRequestList());
+    }
+
+    @Test
+    void invalidLineItemMakesTheOrderInvalid() {
+        assertThrows(InvalidOrderException.class, () -> SkuQuantityIndex.ofOrder(List.of(
+                OrderLineItemsDtoRequest.builder().skuCode("OnePlus 11R").price(1).quantity(1).build(),
+                OrderLineItemsDtoRequest.builder().price(1).quantity(1).build())));
+        assertThrows(InvalidOrderException.class, () -> SkuQuantityIndex.ofOrder(List.of(
+                OrderLineItemsDtoRequest.builder().skuCode("OnePlus 11R").price(1).build())));
+        assertThrows(InvalidOrderException.class, () -> SkuQuantityIndex.ofOrder(List.of(
+                OrderLineItemsDtoRequest.builder().skuCode("OnePlus 11R").price(1).quantity(0).build())));
+        assertThrows(InvalidOrderException.class, () -> SkuQuantityIndex.ofOrder(null));
+    }
+}
@@ -0,0 +1,64 @@
+package com.shopit.productservice.config;
+
+import com.shopit.productservice.constants.ProductConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Version of the product catalogue, part of every key of the "products" and "productPages" caches. Adding a
+// product bumps it, so every instance reads (and caches) the catalogue under new keys right away, while the entries
+// of the old version are never read again and just expire with their TTL. That's why the TTL can be long without
+// serving a catalogue that misses the new product.
+//
+// The version lives in Redis and each instance keeps a copy of it, so building a cache key costs no Redis call.
+// A bump is broadcast over Redis pub/sub and the copy is read again from Redis whenever the subscription is
+// (re)established, so a broadcast missed while disconnected is caught up on reconnect.
+@Component("productsCacheVersion")
+@Slf4j
+public class ProductsCacheVersion {
+
+    private final RAtomicLong remoteVersion;
+
+    private final RTopic invalidationTopic;
+
+    private final AtomicLong version = new AtomicLong();
+
+    @Autowired
+    public ProductsCacheVersion(RedissonClient redissonClient) {
+        this.remoteVersion = redissonClient.getAtomicLong(ProductConstants.PRODUCTS_CACHE_VERSION);
+        this.invalidationTopic = redissonClient.getTopic(ProductConstants.PRODUCTS_CACHE_INVALIDATION);
+        this.invalidationTopic.addListener(Long.class, (channel, newVersion) -> advanceTo(newVersion));
+        this.invalidationTopic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                // Runs on Redisson's event loop, so the version is read without blocking it
+                remoteVersion.getAsync().thenAccept(ProductsCacheVersion.this::advanceTo);
+            }
+        });
+        advanceTo(remoteVersion.get());
+    }
+
+    // Used in the cache keys, e.g. @Cacheable(key = "@productsCacheVersion.current() + ':' + #root.methodName")
+    public long current() {
+        return version.get();
+    }
+
+    // Makes the cached catalogue stale in all the instances
+    public void invalidate() {
+        final long newVersion = remoteVersion.incrementAndGet();
+        advanceTo(newVersion);
+        invalidationTopic.publish(newVersion);
+        log.info(ProductConstants.PRODUCTS_CACHE_INVALIDATED + newVersion);
+    }
+
+    // Versions only go forward, a late or duplicate broadcast never brings back an older catalogue
+    private void advanceTo(long newVersion) {
+        version.accumulateAndGet(newVersion, Math::max);
+    }
+}
@@ -0,0 +1,290 @@
+package com.shopit.productservice.config;
+
+import com.shopit.productservice.constants.ProductConstants;
+import com.shopit.productservice.dto.CachedValue;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Keeps a hot key expiring (or missing) from sending every concurrent request to the DB at once. Used by
+// @Cacheable(sync = true), which loads the value through get(key, valueLoader):
+// 1. Single flight: concurrent misses of a key in this instance wait for the one load in progress, and across the
+//    instances only the one holding the key's Redis lock loads it, the others read its value from the cache after.
+// 2. Stale-while-revalidate: for cache.stale-while-revalidate after its TTL a value is still served, while one
+//    request refreshes it in the background.
+// 3. Probabilistic early refresh (XFetch): before the TTL a request refreshes the value in the background with a
+//    probability that grows as the TTL gets closer and with the time the value took to load, so a hot key is usually
+//    refreshed before it ever gets stale.
+//
+// Values are stored as CachedValue (the value and when it gets stale), the Redis TTL of the entries is the TTL plus
+// cache.stale-while-revalidate.
+@Slf4j
+public class StampedeProtectedCache implements Cache {
+
+    // Refresh not done because another instance holds the key's lock, i.e. it's refreshing the value
+    private static final Object NOT_LOADED = new Object();
+
+    private final Cache cache;
+
+    private final RedissonClient redissonClient;
+
+    // null when values never get stale
+    private final Duration timeToLive;
+
+    private final long staleWhileRevalidateMillis;
+
+    private final double earlyRefreshBeta;
+
+    private final long lockWaitMillis;
+
+    private final long lockLeaseMillis;
+
+    private final Executor refreshExecutor;
+
+    private final Clock clock;
+
+    // Loads in progress in this instance, by key
+    private final ConcurrentMap<String, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+    public StampedeProtectedCache(Cache cache, RedissonClient redissonClient, Duration timeToLive,
+                                  Duration staleWhileRevalidate, double earlyRefreshBeta, Duration lockWaitTime,
+                                  Duration lockLeaseTime, Executor refreshExecutor, Clock clock) {
+        this.cache = cache;
+        this.redissonClient = redissonClient;
+        this.timeToLive = timeToLive;
+        this.staleWhileRevalidateMillis = staleWhileRevalidate.toMillis();
+        this.earlyRefreshBeta = earlyRefreshBeta;
+        this.lockWaitMillis = lockWaitTime.toMillis();
+        this.lockLeaseMillis = lockLeaseTime.toMillis();
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    @Override
+    public String getName() {
+        return cache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return cache.getNativeCache();
+    }
+
+    // Without a loader to refresh it, a stale value is a miss
+    @Override
+    public ValueWrapper get(Object key) {
+        final CachedValue cached = lookup(key);
+        return cached != null && clock.millis() < cached.getExpiresAt()
+                ? new SimpleValueWrapper(cached.getValue())
+                : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        final ValueWrapper valueWrapper = get(key);
+        final Object value = valueWrapper != null ? valueWrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: "
+                    + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        final CachedValue cached = lookup(key);
+        if (cached != null) {
+            final long now = clock.millis();
+            if (now < cached.getExpiresAt()) {
+                if (refreshEarly(cached, now)) {
+                    refreshAsync(key, valueLoader, cached.getExpiresAt());
+                }
+                return (T) cached.getValue();
+            }
+            if (now - cached.getExpiresAt() < staleWhileRevalidateMillis) {
+                refreshAsync(key, valueLoader, cached.getExpiresAt());
+                return (T) cached.getValue();
+            }
+        }
+        return (T) load(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        cache.put(key, cachedValue(value, 0));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        final ValueWrapper existing = cache.putIfAbsent(key, cachedValue(value, 0));
+        return existing != null && existing.get() instanceof CachedValue cached
+                ? new SimpleValueWrapper(cached.getValue())
+                : existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        cache.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return cache.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return cache.invalidate();
+    }
+
+    // Value missing or past the stale period: the caller waits for it, loaded once for all the concurrent callers
+    private Object load(Object key, Callable<?> valueLoader) {
+        final String localKey = String.valueOf(key);
+        final CompletableFuture<Object> load = new CompletableFuture<>();
+        final CompletableFuture<Object> inFlight = loads.putIfAbsent(localKey, load);
+        if (inFlight != null) {
+            final Object value = await(inFlight);
+            // A background refresh skipped because of another instance, so load it like any other miss
+            return value != NOT_LOADED ? value : load(key, valueLoader);
+        }
+        try {
+            final Object value = loadLocked(key, valueLoader, lockWaitMillis, Long.MIN_VALUE);
+            load.complete(value);
+            return value;
+        } catch (RuntimeException ex) {
+            load.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loads.remove(localKey, load);
+        }
+    }
+
+    // Value still served to the callers while it's loaded again on another thread, once per key at a time
+    private void refreshAsync(Object key, Callable<?> valueLoader, long staleExpiresAt) {
+        final String localKey = String.valueOf(key);
+        final CompletableFuture<Object> load = new CompletableFuture<>();
+        if (loads.putIfAbsent(localKey, load) != null) {
+            return;
+        }
+        final Runnable refresh = () -> {
+            try {
+                // Not waiting for the lock: if another instance holds it, that one is refreshing the value
+                load.complete(loadLocked(key, valueLoader, 0, staleExpiresAt));
+            } catch (RuntimeException ex) {
+                // The current value is served until it's past the stale period
+                log.warn(ProductConstants.CACHE_REFRESH_FAILED + key, ex);
+                load.completeExceptionally(ex);
+            } finally {
+                loads.remove(localKey, load);
+            }
+        };
+        try {
+            refreshExecutor.execute(refresh);
+        } catch (RejectedExecutionException ex) {
+            loads.remove(localKey, load);
+            load.complete(NOT_LOADED);
+        }
+    }
+
+    // Loads the value holding the key's Redis lock, so one instance at a time loads it. Instances that waited for
+    // the lock use the value loaded by the one before them, i.e. one newer than the staleExpiresAt they had seen.
+    private Object loadLocked(Object key, Callable<?> valueLoader, long waitMillis, long staleExpiresAt) {
+        final RLock lock = redissonClient.getLock(ProductConstants.CACHE_LOCK_PREFIX + getName() + ":" + key);
+        final boolean locked = tryLock(lock, waitMillis);
+        if (!locked && waitMillis == 0) {
+            return NOT_LOADED;
+        }
+        // Not locked after waiting: the instance holding the lock is slow or gone, so it's loaded without the lock
+        // instead of failing the request
+        try {
+            final CachedValue cached = lookup(key);
+            if (cached != null && cached.getExpiresAt() > staleExpiresAt && clock.millis() < cached.getExpiresAt()) {
+                return cached.getValue();
+            }
+            final long start = clock.millis();
+            final Object value;
+            try {
+                value = valueLoader.call();
+            } catch (Exception ex) {
+                throw new ValueRetrievalException(key, valueLoader, ex);
+            }
+            cache.put(key, cachedValue(value, clock.millis() - start));
+            return value;
+        } finally {
+            if (locked) {
+                unlock(lock);
+            }
+        }
+    }
+
+    // XFetch: refresh when now - loadMillis * beta * ln(random) >= expiresAt. ln(random) is negative, so the
+    // further the TTL and the faster the load, the less likely.
+    private boolean refreshEarly(CachedValue cached, long now) {
+        return earlyRefreshBeta > 0 && now - cached.getLoadMillis() * earlyRefreshBeta
+                * Math.log(ThreadLocalRandom.current().nextDouble()) >= cached.getExpiresAt();
+    }
+
+    private CachedValue lookup(Object key) {
+        final ValueWrapper valueWrapper = cache.get(key);
+        // Values of another kind (e.g. written before this was used) are misses
+        return valueWrapper != null && valueWrapper.get() instanceof CachedValue cached ? cached : null;
+    }
+
+    private CachedValue cachedValue(Object value, long loadMillis) {
+        return CachedValue.builder()
+                .value(value)
+                .expiresAt(timeToLive != null ? clock.millis() + timeToLive.toMillis() : Long.MAX_VALUE)
+                .loadMillis(loadMillis)
+                .build();
+    }
+
+    private boolean tryLock(RLock lock, long waitMillis) {
+        try {
+            return lock.tryLock(waitMillis, lockLeaseMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void unlock(RLock lock) {
+        try {
+            lock.unlock();
+        } catch (IllegalMonitorStateException ex) {
+            // Lease ran out while loading, the lock was released already
+            log.warn(ProductConstants.CACHE_LOCK_EXPIRED + lock.getName());
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> inFlight) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.shopit.productservice.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+// Cache with a bounded in-heap (L1) copy of the entries in front of the Redis (L2) cache. A hit in L1 costs no
+// network round trip and no deserialization. Every change made through this cache goes to Redis first and is then
+// broadcast, so the other instances drop their L1 copy of the entry (see TwoLevelCacheManager).
+//
+// L1 entries are keyed by the String form of the key, like the Redis keys are. A broadcast that arrives while this
+// instance is reading the old value from Redis can be missed, the L1 time-to-live bounds how long that copy lives.
+public class TwoLevelCache implements Cache {
+
+    private final Cache redisCache;
+
+    private final com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> localCache;
+
+    // Tells the other instances that the given key (null: every key) has changed
+    private final Consumer<String> invalidationPublisher;
+
+    public TwoLevelCache(Cache redisCache, com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> localCache,
+                         Consumer<String> invalidationPublisher) {
+        this.redisCache = redisCache;
+        this.localCache = localCache;
+        this.invalidationPublisher = invalidationPublisher;
+    }
+
+    @Override
+    public String getName() {
+        return redisCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        final String localKey = String.valueOf(key);
+        ValueWrapper valueWrapper = localCache.getIfPresent(localKey);
+        if (valueWrapper == null) {
+            valueWrapper = redisCache.get(key);
+            if (valueWrapper != null) {
+                localCache.put(localKey, valueWrapper);
+            }
+        }
+        return valueWrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        final ValueWrapper valueWrapper = get(key);
+        final Object value = valueWrapper != null ? valueWrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: "
+                    + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        final ValueWrapper valueWrapper = get(key);
+        if (valueWrapper != null) {
+            return (T) valueWrapper.get();
+        }
+        // Loaded (and written to Redis) by the Redis cache, only the L1 copy is added here
+        final T value = redisCache.get(key, valueLoader);
+        localCache.put(String.valueOf(key), new SimpleValueWrapper(value));
+        invalidationPublisher.accept(String.valueOf(key));
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        localCache.put(String.valueOf(key), new SimpleValueWrapper(value));
+        invalidationPublisher.accept(String.valueOf(key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        final ValueWrapper existing = redisCache.putIfAbsent(key, value);
+        // Whichever value is in Redis now is read into L1 on the next get
+        localCache.invalidate(String.valueOf(key));
+        if (existing == null) {
+            invalidationPublisher.accept(String.valueOf(key));
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        localCache.invalidate(String.valueOf(key));
+        invalidationPublisher.accept(String.valueOf(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        final boolean evicted = redisCache.evictIfPresent(key);
+        localCache.invalidate(String.valueOf(key));
+        invalidationPublisher.accept(String.valueOf(key));
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.invalidateAll();
+        invalidationPublisher.accept(null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        final boolean invalidated = redisCache.invalidate();
+        localCache.invalidateAll();
+        invalidationPublisher.accept(null);
+        return invalidated;
+    }
+
+    // Drops the L1 copy only, called when another instance has changed the entry in Redis
+    public void invalidateLocal(String key) {
+        if (key == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(key);
+        }
+    }
+}
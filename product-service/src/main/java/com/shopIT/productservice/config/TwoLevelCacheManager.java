@@ -0,0 +1,126 @@
+package com.shopit.productservice.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shopit.productservice.dto.CacheInvalidationMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.redisson.api.RTopic;
+import org.redisson.api.listener.BaseStatusListener;
+import org.springframework.boot.actuate.metrics.cache.RedisCacheMetrics;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+// CacheManager putting an in-heap (L1) cache in front of the Redis (L2) caches that have an L1 spec, i.e. a
+// Caffeine spec with its size and time-to-live (cache.l1.specs). Caffeine evicts by W-TinyLFU, so the entries read
+// most often stay in the heap. Caches without a spec are the Redis caches as they are.
+//
+// Changes made through a two-level cache are broadcast on a Redis pub/sub topic and every other instance drops its
+// L1 copy of the entry. When the subscription is (re)established all the L1 caches are dropped, as broadcasts may
+// have been missed while disconnected.
+//
+// Every cache created is passed through the cacheDecorator (e.g. StampedeProtectedCache) before it's used.
+//
+// Metrics per tier (tag tier=l1|l2): cache.gets (result=hit|miss), cache.puts, cache.evictions (L1, by size/TTL),
+// cache.removals (L2) and cache.l1.invalidations (L1 entries dropped because of a broadcast).
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final CacheManager redisCacheManager;
+
+    private final Map<String, String> localCacheSpecs;
+
+    private final RTopic invalidationTopic;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Function<Cache, Cache> cacheDecorator;
+
+    // Identifies this instance's broadcasts, so it doesn't drop the entries it has just written
+    private final String origin = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    // Two-level ones only, i.e. the caches having an L1 copy to drop
+    private final ConcurrentMap<String, TwoLevelCache> twoLevelCaches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager redisCacheManager, Map<String, String> localCacheSpecs,
+                                RTopic invalidationTopic, MeterRegistry meterRegistry,
+                                Function<Cache, Cache> cacheDecorator) {
+        this.redisCacheManager = redisCacheManager;
+        this.localCacheSpecs = localCacheSpecs;
+        this.invalidationTopic = invalidationTopic;
+        this.meterRegistry = meterRegistry;
+        this.cacheDecorator = cacheDecorator;
+
+        this.invalidationTopic.addListener(CacheInvalidationMessage.class, (channel, message) -> {
+            final TwoLevelCache twoLevelCache = twoLevelCaches.get(message.getCacheName());
+            if (twoLevelCache != null && !origin.equals(message.getOrigin())) {
+                twoLevelCache.invalidateLocal(message.getKey());
+                invalidations(message.getCacheName()).increment();
+            }
+        });
+        this.invalidationTopic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                twoLevelCaches.values().forEach(twoLevelCache -> twoLevelCache.invalidateLocal(null));
+            }
+        });
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        final Cache cache = caches.get(name);
+        return cache != null ? cache : caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    private Cache createCache(String name) {
+        final Cache redisCache = redisCacheManager.getCache(name);
+        if (redisCache == null) {
+            return null;
+        }
+        if (redisCache instanceof RedisCache cache) {
+            new RedisCacheMetrics(cache, Tags.of("tier", "l2")).bindTo(meterRegistry);
+        }
+
+        final String localCacheSpec = localCacheSpecs.get(name);
+        if (localCacheSpec == null) {
+            return cacheDecorator.apply(redisCache);
+        }
+        final com.github.benmanes.caffeine.cache.Cache<String, Cache.ValueWrapper> localCache = Caffeine
+                .from(localCacheSpec)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, name, Tags.of("tier", "l1"));
+
+        final TwoLevelCache twoLevelCache = new TwoLevelCache(redisCache, localCache,
+                key -> invalidationTopic.publishAsync(CacheInvalidationMessage.builder()
+                        .origin(origin)
+                        .cacheName(name)
+                        .key(key)
+                        .build()));
+        twoLevelCaches.put(name, twoLevelCache);
+        return cacheDecorator.apply(twoLevelCache);
+    }
+
+    private Counter invalidations(String name) {
+        return Counter.builder("cache.l1.invalidations")
+                .description("L1 entries dropped because another instance changed them")
+                .tag("cache", name)
+                .tag("tier", "l1")
+                .register(meterRegistry);
+    }
+}
@@ -4,6 +4,25 @@ public class ProductConstants {
     public static final String API_CHECK = "%s Token available, API call to %s !";
     public static final String ADDED_PRODUCT = "Added product with ID: ";
     public static final String RATE_LIMIT_EXCEEDED = "Rate Limit Exceeded !!";
+    public static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    public static final String AUTHENTICATED_USER = "X-Authenticated-User";
     public static final String PRODUCT_NOT_SAVED = "Error while saving the product !!";
     public static final String PRODUCT_NOT_FOUND = "No products found in the system !!";
+    public static final String LEASED_RATE_LIMIT = "leased";
+    public static final String LEASES_NOT_RETURNED = "Error while returning the expired rate limit leases !!";
+    public static final String PRODUCTS_CACHE_VERSION = "productsCacheVersion";
+    public static final String PRODUCTS_CACHE_INVALIDATION = "productsCacheInvalidation";
+    public static final String PRODUCTS_CACHE_INVALIDATED = "Products cache invalidated, catalogue version: ";
+    public static final String L1_CACHE_INVALIDATION = "productL1CacheInvalidation";
+    public static final String COMPACT_CACHE_SERIALIZER = "compact";
+    public static final String CACHE_LOCK_PREFIX = "cacheLock:";
+    public static final String CACHE_REFRESH_FAILED = "Error while refreshing the cached value with key: ";
+    public static final String CACHE_LOCK_EXPIRED = "Cache lock expired before the value was loaded: ";
+    public static final String IMPORT_PROGRESS = "Products import: %s imported, %s rejected so far";
+    public static final String IMPORT_DONE = "Products import done: %s imported, %s rejected";
+    public static final String IMPORT_HEADER_MISSING = "CSV header must have the productName and price columns !!";
+    public static final String INVALID_ROW = "Invalid row: ";
+    public static final String PRODUCT_NAME_REQUIRED = "productName is required";
+    public static final String INVALID_PRICE = "price must be 0 or more";
+    public static final String VIRTUAL_THREAD_PINNED = "Virtual thread pinned to its carrier for %s ms at: %s";
 }
@@ -1,20 +1,26 @@
 package com.shopit.productservice.controller;
 
 import com.shopit.productservice.constants.ProductConstants;
-import com.shopit.productservice.config.RateLimitConfig;
 import com.shopit.productservice.dto.ProductDtoRequest;
 import com.shopit.productservice.dto.ProductDtoResponse;
-import com.shopit.productservice.exception.RateLimitExceededException;
+import com.shopit.productservice.dto.ProductImportDtoResponse;
+import com.shopit.productservice.dto.ProductPageDtoResponse;
+import com.shopit.productservice.service.ProductImportService;
 import com.shopit.productservice.service.ProductService;
 
-import io.github.bucket4j.Bucket;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.util.ArrayList;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
@@ -24,12 +30,20 @@ public class ProductController {
 
     private final ProductService prodService;
 
-    private final RateLimitConfig rateLimitConfig;
+    private final ProductImportService productImportService;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${products.page.default-size}")
+    private int defaultPageSize;
+
+    @Value("${products.page.max-size}")
+    private int maxPageSize;
 
     @Autowired
-    public ProductController(ProductService prodService, RateLimitConfig rateLimitConfig) {
+    public ProductController(ProductService prodService, ProductImportService productImportService) {
         this.prodService = prodService;
-        this.rateLimitConfig = rateLimitConfig;
+        this.productImportService = productImportService;
     }
 
     // Either you can use this way using Slf4j library, or Lombok already provides
@@ -37,21 +51,53 @@ public class ProductController {
     // private static final Logger logger =
     // LoggerFactory.getLogger(ProductController.class);
 
-    @Value("${api.username}")
-    private String username;
-
     @PostMapping("/addProduct")
     public ResponseEntity<String> addProduct(@RequestBody ProductDtoRequest productDtoRequest) {
-        Bucket bucket = rateLimitConfig.resolveBucket(username);
-
-        if (bucket.tryConsume(1)) {
-            log.info(String.format(ProductConstants.API_CHECK, bucket.getAvailableTokens() + 1, "AddProduct allowed"));
-            final Integer productId = prodService.addProduct(productDtoRequest);
-            return ResponseEntity.status(HttpStatus.CREATED).body(ProductConstants.ADDED_PRODUCT + productId);
-        } else {
-            log.info(String.format(ProductConstants.API_CHECK, "0", "AddProduct rejected"));
-            throw new RateLimitExceededException(ProductConstants.RATE_LIMIT_EXCEEDED);
-        }
+        final Integer productId = prodService.addProduct(productDtoRequest);
+        return ResponseEntity.status(HttpStatus.CREATED).body(ProductConstants.ADDED_PRODUCT + productId);
+    }
+
+    // Keyset pagination: the nextCursor of a page is passed as "after" to get the next page, without it the first
+    // page is returned. The size is kept between 1 and products.page.max-size.
+    @GetMapping
+    public ResponseEntity<ProductPageDtoResponse> getProducts(
+            @RequestParam(defaultValue = "0") Integer after,
+            @RequestParam(required = false) Integer size) {
+        final int pageSize = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        final ProductPageDtoResponse productPageDtoResponse = prodService.getProductsPage(after, pageSize);
+        return ResponseEntity.status(HttpStatus.OK).body(productPageDtoResponse);
+    }
+
+    // All the products as newline delimited JSON (one product per line), each one written as it's read from the DB
+    // so neither the service nor the response holds the whole catalogue. Its own route and not an Accept header
+    // variant of GET /products, so it can have its own rate limit cost.
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamProducts() {
+        final StreamingResponseBody streamingResponseBody = outputStream -> prodService.forEachProduct(product -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(product));
+                outputStream.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // e.g. client disconnected, stops reading from the DB
+            }
+        });
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(streamingResponseBody);
+    }
+
+    // Bulk import of products, the request body is read as it's uploaded instead of being bound to a list first.
+    // Invalid rows don't fail the import, they come back in rejectedRows with their line no.
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<ProductImportDtoResponse> importProductsCsv(InputStream body) throws IOException {
+        final ProductImportDtoResponse productImportDtoResponse = productImportService.importCsv(body);
+        return ResponseEntity.status(HttpStatus.OK).body(productImportDtoResponse);
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ProductImportDtoResponse> importProductsNdjson(InputStream body) throws IOException {
+        final ProductImportDtoResponse productImportDtoResponse = productImportService.importNdjson(body);
+        return ResponseEntity.status(HttpStatus.OK).body(productImportDtoResponse);
     }
 
     // ------------------------- API VERSIONING
@@ -89,31 +135,13 @@ public class ProductController {
     // API VERSIONING using HEADERS VERSIONING:
     @GetMapping(value = "/getAllProducts", headers = "X-API-VERSION=1")
     public ResponseEntity<List<ProductDtoResponse>> getAllProductsV1() {
-        Bucket bucket = rateLimitConfig.resolveBucket(username);
-
-        if (bucket.tryConsume(1)) {
-            log.info(String.format(ProductConstants.API_CHECK, bucket.getAvailableTokens() + 1,
-                    "getAllProducts allowed"));
-            final List<ProductDtoResponse> productDtoResponse = prodService.getAllProducts();
-            return ResponseEntity.status(HttpStatus.OK).body(productDtoResponse);
-        } else {
-            log.info(String.format(ProductConstants.API_CHECK, "0", "getAllProducts rejected"));
-            throw new RateLimitExceededException(ProductConstants.RATE_LIMIT_EXCEEDED);
-        }
+        final List<ProductDtoResponse> productDtoResponse = prodService.getAllProducts();
+        return ResponseEntity.status(HttpStatus.OK).body(productDtoResponse);
     }
 
     @GetMapping(value = "/getAllProducts", headers = "X-API-VERSION=2")
     public ResponseEntity<Object> getAllProductsV2() {
-        Bucket bucket = rateLimitConfig.resolveBucket(username);
-
-        if (bucket.tryConsume(1)) {
-            log.info(String.format(ProductConstants.API_CHECK, bucket.getAvailableTokens() + 1,
-                    "getAllProducts allowed"));
-            final List<ProductDtoResponse> productDtoResponse = prodService.getAllProducts();
-            return ResponseEntity.status(HttpStatus.OK).body(productDtoResponse);
-        } else {
-            log.info(String.format(ProductConstants.API_CHECK, "0", "getAllProducts rejected"));
-            throw new RateLimitExceededException(ProductConstants.RATE_LIMIT_EXCEEDED);
-        }
+        final List<ProductDtoResponse> productDtoResponse = prodService.getAllProducts();
+        return ResponseEntity.status(HttpStatus.OK).body(productDtoResponse);
     }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.shopit.productservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class ProductImportDtoResponse {
+
+    private long importedCount;
+
+    private long rejectedCount;
+
+    // First products.import.max-rejected-rows of the rejected rows, rejectedCount has all of them
+    private List<RejectedRowDtoResponse> rejectedRows;
+}
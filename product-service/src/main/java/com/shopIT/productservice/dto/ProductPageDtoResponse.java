@@ -0,0 +1,21 @@
+package com.shopit.productservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductPageDtoResponse implements Serializable {
+
+    private List<ProductDtoResponse> products;
+
+    // productId to pass as "after" for the next page, null when this is the last page
+    private Integer nextCursor;
+}
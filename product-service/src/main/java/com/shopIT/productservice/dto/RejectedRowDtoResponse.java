@@ -0,0 +1,19 @@
+package com.shopit.productservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data // This will be the equivalent of @Getters, @Setters, @ToString,
+      // @EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder // To implement Builder Design
+public class RejectedRowDtoResponse {
+
+    // Line of the file, starting from 1 (the header of a CSV is line 1)
+    private long line;
+
+    private String reason;
+}
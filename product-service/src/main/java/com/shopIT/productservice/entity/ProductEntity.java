@@ -13,7 +13,9 @@ import lombok.NoArgsConstructor;
 @Builder // To implement Builder Design
 @Entity // This is used to map this class to relational DB table. @Document is used for
         // non-relational DB like mongoDB
-@SequenceGenerator(name = "seq", initialValue = 100, allocationSize = 1) // This is used to generate the ID as required
+// This is used to generate the ID as required. 50 ids are taken from the sequence at a time (pooled-lo, see
+// application.properties), so a batch of inserts (e.g. of the import) doesn't make a sequence round trip per product.
+@SequenceGenerator(name = "seq", initialValue = 100, allocationSize = 50)
 public class ProductEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq")
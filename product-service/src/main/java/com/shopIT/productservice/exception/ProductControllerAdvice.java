@@ -1,6 +1,7 @@
 package com.shopit.productservice.exception;
 
 import com.shopit.productservice.constants.ProductConstants;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -19,8 +20,16 @@ public class ProductControllerAdvice {
         return ResponseEntity.status(HttpStatus.NOT_MODIFIED).body(ex.getMessage());
     }
 
+    @ExceptionHandler(InvalidImportException.class)
+    public ResponseEntity<String> exception(InvalidImportException ex){  // Here whatever the return type we are stating, it will override the return type which is originally mentioned in the Controller class's API.
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
     @ExceptionHandler(RateLimitExceededException.class)
     public ResponseEntity<String> exception(RateLimitExceededException ex){  // Here whatever the return type we are stating, it will override the return type which is originally mentioned in the Controller class's API.
-        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .header(ProductConstants.RATE_LIMIT_REMAINING, String.valueOf(ex.getRemainingTokens()))
+                .body(ex.getMessage());
     }
 }
\ No newline at end of file
@@ -1,7 +1,17 @@
 package com.shopit.productservice.exception;
 
+import lombok.Getter;
+
+@Getter
 public class RateLimitExceededException extends RuntimeException{
-    public RateLimitExceededException(String message){
+
+    private final long remainingTokens;
+
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String message, long remainingTokens, long retryAfterSeconds){
         super(message);
+        this.remainingTokens = remainingTokens;
+        this.retryAfterSeconds = retryAfterSeconds;
     }
-}
\ No newline at end of file
+}
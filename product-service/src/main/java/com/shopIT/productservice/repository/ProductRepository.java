@@ -1,8 +1,33 @@
 package com.shopit.productservice.repository;
 
+import com.shopit.productservice.dto.ProductDtoResponse;
 import com.shopit.productservice.entity.ProductEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.stream.Stream;
 
 // Since we are using JpaRepository, we do not need to add @Repository here because JpaRepository includes it already
 public interface ProductRepository extends JpaRepository<ProductEntity, Integer> {
-}
\ No newline at end of file
+
+    // Keyset pagination: the next page starts after the last productId of the previous one, so MySQL seeks to it
+    // through the primary key index instead of reading and skipping all the rows before it like OFFSET does.
+    // Selects the DTO directly, so no entity is kept in the persistence context.
+    @Query("select new com.shopit.productservice.dto.ProductDtoResponse(p.productId, p.productName, p.description, "
+            + "p.price) from ProductEntity p where p.productId > :afterProductId order by p.productId")
+    List<ProductDtoResponse> findPageAfter(@Param("afterProductId") Integer afterProductId, Pageable pageable);
+
+    // All the products, read row by row as the stream is consumed. Fetch size Integer.MIN_VALUE makes MySQL
+    // Connector/J stream the result set instead of loading it fully in memory. Must be used in a transaction and
+    // closed after.
+    @Query("select new com.shopit.productservice.dto.ProductDtoResponse(p.productId, p.productName, p.description, "
+            + "p.price) from ProductEntity p order by p.productId")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    Stream<ProductDtoResponse> streamAll();
+}
@@ -0,0 +1,197 @@
+package com.shopit.productservice.service;
+
+import com.shopit.productservice.config.ProductsCacheVersion;
+import com.shopit.productservice.constants.ProductConstants;
+import com.shopit.productservice.dto.ProductDtoRequest;
+import com.shopit.productservice.dto.ProductImportDtoResponse;
+import com.shopit.productservice.dto.RejectedRowDtoResponse;
+import com.shopit.productservice.entity.ProductEntity;
+import com.shopit.productservice.exception.InvalidImportException;
+import com.shopit.productservice.exception.ProductNotSavedException;
+import com.shopit.productservice.repository.ProductRepository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Bulk import of products from a CSV or NDJSON file. The file is read and parsed a line at a time and the valid
+// products are saved in chunks of products.import.batch-size, so only one chunk is ever held in memory however big
+// the file is. Invalid rows are skipped and reported with their line no., they don't fail the import.
+//
+// NOTE: A row is one line, so CSV values with line breaks inside quotes are not supported.
+@Service
+@Slf4j
+public class ProductImportService {
+
+    // Columns (and JSON fields) not in ProductDtoRequest are ignored, e.g. an id column of an export
+    private static final CsvMapper csvMapper = CsvMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private static final ObjectReader ndjsonRowReader = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .readerFor(ProductDtoRequest.class);
+
+    private final ProductRepository productRepo;
+
+    private final ProductsCacheVersion productsCacheVersion;
+
+    private final EntityManager entityManager;
+
+    private final int batchSize;
+
+    private final int maxRejectedRows;
+
+    @Autowired
+    public ProductImportService(ProductRepository productRepo, ProductsCacheVersion productsCacheVersion,
+                                EntityManager entityManager,
+                                @Value("${products.import.batch-size}") int batchSize,
+                                @Value("${products.import.max-rejected-rows}") int maxRejectedRows) {
+        this.productRepo = productRepo;
+        this.productsCacheVersion = productsCacheVersion;
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+        this.maxRejectedRows = maxRejectedRows;
+    }
+
+    // First line is the header, it names the columns of the rows in any order e.g. productName,price,description
+    public ProductImportDtoResponse importCsv(final InputStream inputStream) throws IOException {
+        final BufferedReader reader = reader(inputStream);
+        final ObjectReader rowReader = csvRowReader(reader.readLine());
+        return importRows(reader, 1, rowReader::readValue);
+    }
+
+    // One product JSON per line e.g. {"productName":"Pen","description":"Blue","price":10}
+    public ProductImportDtoResponse importNdjson(final InputStream inputStream) throws IOException {
+        return importRows(reader(inputStream), 0, ndjsonRowReader::readValue);
+    }
+
+    private ProductImportDtoResponse importRows(final BufferedReader reader, long lineNo, final RowParser rowParser)
+            throws IOException {
+        final List<ProductEntity> chunk = new ArrayList<>(batchSize);
+        final List<RejectedRowDtoResponse> rejectedRows = new ArrayList<>();
+        long importedCount = 0;
+        long rejectedCount = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                final String rejectReason = addToChunk(line, rowParser, chunk);
+                if (rejectReason != null) {
+                    rejectedCount++;
+                    if (rejectedRows.size() < maxRejectedRows) {
+                        rejectedRows.add(RejectedRowDtoResponse.builder().line(lineNo).reason(rejectReason).build());
+                    }
+                } else if (chunk.size() == batchSize) {
+                    importedCount += saveChunk(chunk);
+                    log.info(String.format(ProductConstants.IMPORT_PROGRESS, importedCount, rejectedCount));
+                }
+            }
+            importedCount += saveChunk(chunk);
+        } finally {
+            // Once for the whole import and not per product or chunk. Also when it fails half way, as the chunks
+            // saved before are committed.
+            if (importedCount > 0) {
+                productsCacheVersion.invalidate();
+            }
+        }
+
+        log.info(String.format(ProductConstants.IMPORT_DONE, importedCount, rejectedCount));
+        return ProductImportDtoResponse.builder()
+                .importedCount(importedCount)
+                .rejectedCount(rejectedCount)
+                .rejectedRows(rejectedRows)
+                .build();
+    }
+
+    // Adds the product of the line to the chunk, or gives why it's rejected
+    private String addToChunk(final String line, final RowParser rowParser, final List<ProductEntity> chunk) {
+        final ProductDtoRequest productDtoRequest;
+        try {
+            productDtoRequest = rowParser.parse(line);
+        } catch (JsonProcessingException ex) {
+            return ProductConstants.INVALID_ROW + ex.getOriginalMessage();
+        }
+
+        if (productDtoRequest == null || productDtoRequest.getProductName() == null
+                || productDtoRequest.getProductName().isBlank()) {
+            return ProductConstants.PRODUCT_NAME_REQUIRED;
+        }
+        if (productDtoRequest.getPrice() == null || productDtoRequest.getPrice() < 0) {
+            return ProductConstants.INVALID_PRICE;
+        }
+
+        chunk.add(ProductEntity.builder()
+                .productName(productDtoRequest.getProductName().trim())
+                .description(productDtoRequest.getDescription())
+                .price(productDtoRequest.getPrice())
+                .build());
+        return null;
+    }
+
+    // saveAll runs in its own transaction, so every chunk is committed on its own and inserted as JDBC batches (ids
+    // come from the pooled sequence, see ProductEntity). The persistence context is cleared after it, otherwise the
+    // open EntityManager of the request (open-in-view) would keep every imported product managed till the end.
+    private int saveChunk(final List<ProductEntity> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        try {
+            productRepo.saveAll(chunk);
+        } catch (Exception ex) {
+            log.error(ProductConstants.PRODUCT_NOT_SAVED, ex);
+            throw new ProductNotSavedException(ProductConstants.PRODUCT_NOT_SAVED);
+        }
+        entityManager.clear();
+
+        final int savedCount = chunk.size();
+        chunk.clear();
+        return savedCount;
+    }
+
+    private ObjectReader csvRowReader(final String header) throws JsonProcessingException {
+        if (header == null) {
+            throw new InvalidImportException(ProductConstants.IMPORT_HEADER_MISSING);
+        }
+
+        final String[] columns = csvMapper.readerFor(String[].class).readValue(header.replace("\uFEFF", "")); // Byte order mark of files saved by Excel
+        final List<String> columnList = Arrays.stream(columns).map(String::trim).toList();
+        if (!columnList.contains("productName") || !columnList.contains("price")) {
+            throw new InvalidImportException(ProductConstants.IMPORT_HEADER_MISSING);
+        }
+
+        final CsvSchema.Builder schema = CsvSchema.builder();
+        columnList.forEach(schema::addColumn);
+        return csvMapper.readerFor(ProductDtoRequest.class).with(schema.build());
+    }
+
+    private static BufferedReader reader(final InputStream inputStream) {
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    @FunctionalInterface
+    private interface RowParser {
+        ProductDtoRequest parse(String line) throws JsonProcessingException;
+    }
+}
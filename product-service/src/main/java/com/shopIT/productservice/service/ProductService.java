@@ -1,8 +1,10 @@
 package com.shopit.productservice.service;
 
+import com.shopit.productservice.config.ProductsCacheVersion;
 import com.shopit.productservice.constants.ProductConstants;
 import com.shopit.productservice.dto.ProductDtoRequest;
 import com.shopit.productservice.dto.ProductDtoResponse;
+import com.shopit.productservice.dto.ProductPageDtoResponse;
 import com.shopit.productservice.entity.ProductEntity;
 import com.shopit.productservice.exception.ProductNotFoundException;
 import com.shopit.productservice.exception.ProductNotSavedException;
@@ -10,9 +12,15 @@ import com.shopit.productservice.repository.ProductRepository;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 // Used to represent a class as business logic handling class and also mark this
@@ -24,9 +32,15 @@ public class ProductService {
 
     private final ProductRepository productRepo;
 
+    private final ProductsCacheVersion productsCacheVersion;
+
+    @Value("${products.page.default-size}")
+    private int defaultPageSize;
+
     @Autowired
-    public ProductService(ProductRepository productRepo) {
+    public ProductService(ProductRepository productRepo, ProductsCacheVersion productsCacheVersion) {
         this.productRepo = productRepo;
+        this.productsCacheVersion = productsCacheVersion;
     }
 
     public Integer addProduct(final ProductDtoRequest productDtoRequest) {
@@ -41,6 +55,10 @@ public class ProductService {
 
         log.info(ProductConstants.ADDED_PRODUCT + productEntity.getProductId()); // provided by @Slf4j
 
+        // The cached catalogue and pages don't have the new product, so they are dropped in all the instances by
+        // moving to a new catalogue version (see ProductsCacheVersion).
+        productsCacheVersion.invalidate();
+
         return productEntity.getProductId();
     }
 
@@ -59,7 +77,10 @@ public class ProductService {
     // different names that take
     // no parameters, and you want to cache their results separately.
     // @Cacheable(key = "'fixedXYZ'", value = "products")
-    @Cacheable(key = "#root.methodName", value = "products")
+    // The key is prefixed with the catalogue version, which changes whenever a product is added.
+    // sync = true: concurrent misses of the key load it once (see StampedeProtectedCache), instead of all of them
+    // running findAll() on MySQL at the same time.
+    @Cacheable(key = "@productsCacheVersion.current() + ':' + #root.methodName", value = "products", sync = true)
     public List<ProductDtoResponse> getAllProducts() {
         final List<ProductEntity> productEntityList = productRepo.findAll();
 
@@ -76,6 +97,37 @@ public class ProductService {
         return productEntityList.stream().map(this::productEntityToDtoRes).toList();
     }
 
+    // One page of products after the given productId, cached per page so a cache entry (and a cache write) is the
+    // size of one page and not the whole catalogue. Only pages of the default size are cached, the size is left out
+    // of the key: a caller picking its own size can't add an entry per size for every cursor, those pages are read
+    // from MySQL each time.
+    @Cacheable(key = "@productsCacheVersion.current() + ':' + #afterProductId",
+            condition = "@productService.isCachedPageSize(#pageSize)", value = "productPages", sync = true)
+    public ProductPageDtoResponse getProductsPage(final Integer afterProductId, final int pageSize) {
+        final List<ProductDtoResponse> products = productRepo.findPageAfter(afterProductId,
+                PageRequest.of(0, pageSize));
+
+        // A full page may have more products after it, a shorter one is the last
+        final Integer nextCursor = products.size() == pageSize ? products.get(pageSize - 1).getProductId() : null;
+        return ProductPageDtoResponse.builder()
+                .products(products)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    public boolean isCachedPageSize(final int pageSize) {
+        return pageSize == defaultPageSize;
+    }
+
+    // Gives all the products one by one to the action as they are read from the DB, never holding the full list.
+    // The transaction keeps the connection (and the MySQL result set) open until the last row is consumed.
+    @Transactional(readOnly = true)
+    public void forEachProduct(final Consumer<ProductDtoResponse> action) {
+        try (Stream<ProductDtoResponse> products = productRepo.streamAll()) {
+            products.forEach(action);
+        }
+    }
+
     public ProductEntity productDtoReqToEntity(final ProductDtoRequest productDtoRequest) {
         // Using builder() provided by lombok to implement conversion in less LOC
         return ProductEntity.builder()
@@ -0,0 +1,71 @@
+package com.shopit.productservice.benchmark;
+
+import com.shopit.productservice.config.CompactRedisSerializer;
+import com.shopit.productservice.dto.ProductDtoResponse;
+import com.shopit.productservice.dto.ProductPageDtoResponse;
+import com.shopit.productservice.entity.TPSEntity;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Writing and reading a cached catalogue (as getAllProducts caches it) with the JDK serialization used before and
+// with CompactRedisSerializer, without and with LZ4. The size of the value in Redis is printed once per
+// format/products combination at the start of its fork. Every product has its own strings, as in the DB (JDK
+// serialization writes a String instance shared by several objects only once).
+//
+// Run: mvn -pl product-service -Pbenchmark test-compile exec:exec -Dbenchmark=CacheSerializerBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheSerializerBenchmark {
+
+    @Param({"jdk", "compact", "compact-lz4"})
+    private String format;
+
+    @Param({"1", "1000"})
+    private int products;
+
+    private RedisSerializer<Object> serializer;
+
+    private List<ProductDtoResponse> catalogue;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        final List<Class<?>> registeredClasses = List.of(ProductDtoResponse.class, ProductPageDtoResponse.class,
+                TPSEntity.class);
+        serializer = switch (format) {
+            case "compact" -> new CompactRedisSerializer(-1, registeredClasses);
+            case "compact-lz4" -> new CompactRedisSerializer(1024, registeredClasses);
+            default -> new JdkSerializationRedisSerializer();
+        };
+        catalogue = IntStream.rangeClosed(1, products)
+                .mapToObj(productId -> ProductDtoResponse.builder()
+                        .productId(productId)
+                        .productName("OnePlus " + productId)
+                        .description("High End Device " + productId + " with 16GB RAM and 512GB storage")
+                        .price(39999)
+                        .build())
+                .toList();
+        serialized = serializer.serialize(catalogue);
+        System.out.printf("%n%s, %d products: %d bytes%n", format, products, serialized.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(catalogue);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(serialized);
+    }
+}
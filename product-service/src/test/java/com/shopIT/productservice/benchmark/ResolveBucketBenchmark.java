@@ -0,0 +1,155 @@
+package com.shopit.productservice.benchmark;
+
+import com.shopit.productservice.config.RateLimitConfig;
+import com.shopit.productservice.entity.TPSEntity;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.redisson.api.RLocalCachedMap;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// resolveBucket + tryConsume as done by every rate limited controller method: building a new configuration
+// supplier and bucket proxy per request (how RateLimitConfig used to do it) against the bucket proxy cached per
+// username. Both read the TPS from the near cache and consume from the same in-memory proxy manager, so the
+// difference is only the resolution of the bucket. Compare gc.alloc.rate.norm (bytes per call) of the two.
+// leasedBucket is rate-limit.mode=leased, where only every 100th call reaches the proxy manager.
+//
+// Run: mvn -pl product-service -Pbenchmark test-compile exec:exec -Dbenchmark=ResolveBucketBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolveBucketBenchmark {
+
+    private static final String USERNAME = "gaurav";
+
+    // Big enough for the bucket to never run out of tokens during the benchmark
+    private static final int TPS = 1_000_000_000;
+
+    private final Map<String, TPSEntity> nearCache = new ConcurrentHashMap<>();
+
+    private ProxyManager<String> buckets;
+
+    private RateLimitConfig rateLimitConfig;
+
+    private RateLimitConfig leasedRateLimitConfig;
+
+    @Setup
+    public void setUp() {
+        nearCache.put(USERNAME, TPSEntity.builder().username(USERNAME).tps(TPS).build());
+        buckets = new InMemoryProxyManager();
+        rateLimitConfig = new RateLimitConfig(buckets, null, redissonClient(nearCache), new SimpleMeterRegistry(),
+                new JdkSerializationRedisSerializer(), 1000, Duration.ofMinutes(5), Duration.ofMinutes(10),
+                "remote", 5, Duration.ofSeconds(2));
+        leasedRateLimitConfig = new RateLimitConfig(buckets, null, redissonClient(nearCache),
+                new SimpleMeterRegistry(), new JdkSerializationRedisSerializer(), 1000, Duration.ofMinutes(5),
+                Duration.ofMinutes(10), "leased", 100, Duration.ofSeconds(2));
+    }
+
+    @Benchmark
+    public boolean rebuiltBucket() {
+        int tps = nearCache.get(USERNAME).getTps();
+        Refill refill = Refill.intervally(tps, Duration.ofMinutes(1));
+        Bandwidth limit = Bandwidth.classic(tps, refill);
+        Supplier<BucketConfiguration> configurationSupplier = () -> (BucketConfiguration.builder()
+                .addLimit(limit)
+                .build());
+        Bucket bucket = buckets.builder().build(USERNAME, configurationSupplier);
+        return bucket.tryConsume(1);
+    }
+
+    @Benchmark
+    public boolean cachedBucket() {
+        Bucket bucket = rateLimitConfig.resolveBucket(USERNAME);
+        return bucket.tryConsume(1);
+    }
+
+    @Benchmark
+    public boolean leasedBucket() {
+        Bucket bucket = leasedRateLimitConfig.resolveBucket(USERNAME);
+        return bucket.tryConsume(1);
+    }
+
+    // Near cache that is always hit, a JDK proxy instead of a mock so no invocation is recorded (and allocated)
+    @SuppressWarnings("unchecked")
+    private static RedissonClient redissonClient(Map<String, TPSEntity> nearCache) {
+        RLocalCachedMap<String, TPSEntity> tpsCache = (RLocalCachedMap<String, TPSEntity>) Proxy.newProxyInstance(
+                RLocalCachedMap.class.getClassLoader(), new Class<?>[]{RLocalCachedMap.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getCachedMap" -> nearCache;
+                    case "addListener" -> 0;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        return (RedissonClient) Proxy.newProxyInstance(RedissonClient.class.getClassLoader(),
+                new Class<?>[]{RedissonClient.class}, (proxy, method, args) -> tpsCache);
+    }
+
+    // Bucket states kept in a map of this JVM, with the same serialization and compare-and-swap as a remote store
+    private static final class InMemoryProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+        private final ConcurrentMap<String, byte[]> states = new ConcurrentHashMap<>();
+
+        private InMemoryProxyManager() {
+            super(ClientSideConfig.getDefault());
+        }
+
+        @Override
+        protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+            return new CompareAndSwapOperation() {
+                @Override
+                public Optional<byte[]> getStateData() {
+                    return Optional.ofNullable(states.get(key));
+                }
+
+                @Override
+                public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                    return originalData == null
+                            ? states.putIfAbsent(key, newData) == null
+                            : states.replace(key, originalData, newData);
+                }
+            };
+        }
+
+        @Override
+        protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected CompletableFuture<Void> removeAsync(String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeProxy(String key) {
+            states.remove(key);
+        }
+
+        @Override
+        public boolean isAsyncModeSupported() {
+            return false;
+        }
+    }
+}
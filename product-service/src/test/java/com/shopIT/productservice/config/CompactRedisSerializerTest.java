@@ -0,0 +1,76 @@
+package com.shopit.productservice.config;
+
+import com.shopit.productservice.dto.ProductDtoResponse;
+import com.shopit.productservice.dto.ProductPageDtoResponse;
+import com.shopit.productservice.entity.TPSEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactRedisSerializerTest {
+
+    private static final List<Class<?>> REGISTERED_CLASSES = List.of(ProductDtoResponse.class,
+            ProductPageDtoResponse.class, TPSEntity.class);
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer(1024, REGISTERED_CLASSES);
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    @Test
+    void catalogueRoundTripIsSmallerThanJdk() {
+        // Stream.toList() as in getAllProducts, an immutable list
+        final List<ProductDtoResponse> products = products(1000);
+
+        final byte[] bytes = serializer.serialize(products);
+
+        assertEquals(products, serializer.deserialize(bytes));
+        final int jdkLength = jdkSerializer.serialize(products).length;
+        assertTrue(bytes.length * 4 < jdkLength, bytes.length + " bytes against " + jdkLength + " with JDK");
+    }
+
+    @Test
+    void onlyValuesAboveThresholdAreCompressed() {
+        final ProductPageDtoResponse page = ProductPageDtoResponse.builder()
+                .products(products(1000))
+                .nextCursor(1000)
+                .build();
+        final CompactRedisSerializer uncompressed = new CompactRedisSerializer(-1, REGISTERED_CLASSES);
+
+        final byte[] compressedBytes = serializer.serialize(page);
+        final byte[] uncompressedBytes = uncompressed.serialize(page);
+
+        assertTrue(compressedBytes.length < uncompressedBytes.length);
+        assertEquals(page, serializer.deserialize(compressedBytes));
+        // Readers don't depend on the threshold of the writer
+        assertEquals(page, uncompressed.deserialize(compressedBytes));
+
+        final TPSEntity tpsEntity = TPSEntity.builder().username("gaurav").tps(15).build();
+        assertEquals(serializer.serialize(tpsEntity).length, uncompressed.serialize(tpsEntity).length);
+        assertEquals(tpsEntity, serializer.deserialize(serializer.serialize(tpsEntity)));
+    }
+
+    @Test
+    void valueOfOtherFormatIsMiss() {
+        final byte[] jdkBytes = jdkSerializer.serialize(products(1));
+
+        assertNull(serializer.deserialize(jdkBytes));
+        assertNull(serializer.deserialize(new byte[0]));
+    }
+
+    private static List<ProductDtoResponse> products(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(productId -> ProductDtoResponse.builder()
+                        .productId(productId)
+                        .productName("OnePlus " + productId)
+                        .description("High End Device")
+                        .price(39999)
+                        .build())
+                .toList();
+    }
+}
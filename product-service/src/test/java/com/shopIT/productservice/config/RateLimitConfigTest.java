@@ -0,0 +1,206 @@
+package com.shopit.productservice.config;
+
+import com.shopit.productservice.entity.TPSEntity;
+import com.shopit.productservice.repository.TPSRepository;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.LocalCachedMapOptions;
+import org.redisson.api.RLocalCachedMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.LocalCacheInvalidateListener;
+import org.redisson.client.codec.Codec;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+@ExtendWith(MockitoExtension.class)
+class RateLimitConfigTest {
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ProxyManager<String> buckets;
+
+    @Mock
+    private TPSRepository tpsRepo;
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private RLocalCachedMap<String, TPSEntity> tpsCache;
+
+    private final Map<String, TPSEntity> nearCache = new HashMap<>();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RedisSerializer<Object> cacheSerializer = new JdkSerializationRedisSerializer();
+
+    private RateLimitConfig rateLimitConfig;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(redissonClient.<String, TPSEntity>getLocalCachedMap(anyString(), any(Codec.class),
+                any(LocalCachedMapOptions.class)))
+                .thenReturn(tpsCache);
+        Mockito.when(tpsCache.getCachedMap()).thenReturn(nearCache);
+
+        rateLimitConfig = new RateLimitConfig(buckets, tpsRepo, redissonClient, meterRegistry, cacheSerializer,
+                1000, Duration.ofMinutes(5), Duration.ofMinutes(10), "remote", 5, Duration.ofSeconds(2));
+    }
+
+    @Test
+    void resolveBucketNearCacheHitSkipsRedis() {
+        nearCache.put("gaurav", TPSEntity.builder().username("gaurav").tps(15).build());
+
+        rateLimitConfig.resolveBucket("gaurav");
+
+        Mockito.verify(tpsCache, Mockito.never()).get(any());
+        assertEquals(1, meterRegistry.get("tps.cache.lookup").tag("tier", "near").timer().count());
+        assertEquals(0, meterRegistry.get("tps.cache.lookup").tag("tier", "remote").timer().count());
+    }
+
+    @Test
+    void resolveBucketNearCacheMissGoesToRedis() {
+        Mockito.when(tpsCache.get("gaurav")).thenReturn(TPSEntity.builder().username("gaurav").tps(15).build());
+
+        rateLimitConfig.resolveBucket("gaurav");
+
+        Mockito.verify(tpsCache).get("gaurav");
+        assertEquals(0, meterRegistry.get("tps.cache.lookup").tag("tier", "near").timer().count());
+        assertEquals(1, meterRegistry.get("tps.cache.lookup").tag("tier", "remote").timer().count());
+    }
+
+    @Test
+    void resolveBucketReusesBucketOfUser() {
+        nearCache.put("gaurav", TPSEntity.builder().username("gaurav").tps(15).build());
+
+        Bucket first = rateLimitConfig.resolveBucket("gaurav");
+        Bucket second = rateLimitConfig.resolveBucket("gaurav");
+
+        assertSame(first, second);
+        Mockito.verify(buckets.builder(), Mockito.times(1)).build(anyString(), any(BucketConfiguration.class));
+    }
+
+    @Test
+    void concurrentFirstRequestsBuildOneBucket() throws Exception {
+        nearCache.put("gaurav", TPSEntity.builder().username("gaurav").tps(15).build());
+        final int threads = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final List<Future<Bucket>> resolved = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            resolved.add(executorService.submit(() -> {
+                start.await();
+                return rateLimitConfig.resolveBucket("gaurav");
+            }));
+        }
+        start.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (Future<Bucket> bucket : resolved) {
+            assertSame(resolved.get(0).get(), bucket.get());
+        }
+        Mockito.verify(buckets.builder(), Mockito.times(1)).build(anyString(), any(BucketConfiguration.class));
+    }
+
+    @Test
+    void resolveBucketRebuildsBucketWhenTpsChanges() {
+        nearCache.put("gaurav", TPSEntity.builder().username("gaurav").tps(15).build());
+        rateLimitConfig.resolveBucket("gaurav");
+
+        nearCache.put("gaurav", TPSEntity.builder().username("gaurav").tps(30).build());
+        rateLimitConfig.resolveBucket("gaurav");
+
+        Mockito.verify(buckets.builder(), Mockito.times(2)).build(anyString(), any(BucketConfiguration.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void resolveBucketRebuildsBucketWhenTpsIsInvalidated() {
+        ArgumentCaptor<LocalCacheInvalidateListener<String, TPSEntity>> invalidateListener =
+                ArgumentCaptor.forClass(LocalCacheInvalidateListener.class);
+        Mockito.verify(tpsCache).addListener(invalidateListener.capture());
+        nearCache.put("gaurav", TPSEntity.builder().username("gaurav").tps(15).build());
+        rateLimitConfig.resolveBucket("gaurav");
+
+        invalidateListener.getValue().onInvalidate("gaurav", null);
+        rateLimitConfig.resolveBucket("gaurav");
+
+        Mockito.verify(buckets.builder(), Mockito.times(2)).build(anyString(), any(BucketConfiguration.class));
+    }
+
+    @Test
+    void tpsLoadedFromRedisGetsTheHashAnExpiry() {
+        Mockito.when(tpsCache.get("gaurav")).thenReturn(TPSEntity.builder().username("gaurav").tps(15).build());
+        Mockito.when(tpsCache.remainTimeToLive()).thenReturn(-1L, 600_000L);
+
+        rateLimitConfig.resolveBucket("gaurav");
+        nearCache.clear();
+        rateLimitConfig.resolveBucket("gaurav");
+
+        // Set once when the hash had none, not pushed back by the later lookups
+        Mockito.verify(tpsCache, Mockito.times(1)).expire(Duration.ofMinutes(10));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unknownUserGetsDefaultTpsWithoutStoringIt() {
+        ArgumentCaptor<LocalCachedMapOptions<String, TPSEntity>> options =
+                ArgumentCaptor.forClass(LocalCachedMapOptions.class);
+        Mockito.verify(redissonClient).getLocalCachedMap(anyString(), any(Codec.class), options.capture());
+
+        // The loader only reads the TPS table, a user not in it is neither saved there nor cached in Redis
+        assertNull(options.getValue().getLoader().load("mallory"));
+        Mockito.verify(tpsRepo).findByUsername("mallory");
+        Mockito.verify(tpsRepo, Mockito.never()).save(any());
+
+        rateLimitConfig.resolveBucket("mallory");
+        rateLimitConfig.resolveBucket("mallory");
+
+        // Looked up once, then known to have the default TPS till tps.cache.time-to-live
+        Mockito.verify(tpsCache, Mockito.times(1)).get("mallory");
+        ArgumentCaptor<BucketConfiguration> bucketConfiguration = ArgumentCaptor.forClass(BucketConfiguration.class);
+        Mockito.verify(buckets.builder()).build(Mockito.eq("mallory"), bucketConfiguration.capture());
+        assertEquals(15, bucketConfiguration.getValue().getBandwidths()[0].getCapacity());
+    }
+
+    @Test
+    void resolveBucketLeasedModeWrapsRedisBucket() {
+        rateLimitConfig = new RateLimitConfig(buckets, tpsRepo, redissonClient, meterRegistry, cacheSerializer,
+                1000, Duration.ofMinutes(5), Duration.ofMinutes(10), "leased", 5, Duration.ofSeconds(2));
+        nearCache.put("gaurav", TPSEntity.builder().username("gaurav").tps(15).build());
+
+        Bucket bucket = rateLimitConfig.resolveBucket("gaurav");
+
+        assertInstanceOf(LeasedBucket.class, bucket);
+        assertSame(bucket, rateLimitConfig.resolveBucket("gaurav"));
+    }
+}
@@ -0,0 +1,183 @@
+package com.shopit.productservice.config;
+
+import com.shopit.productservice.entity.ProductEntity;
+import com.shopit.productservice.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+// An in-memory cache stands in for Redis and the Redis lock is always free. Background refreshes are collected and
+// run by the test, and the time is moved by hand.
+class StampedeProtectedCacheTest {
+
+    private static final Duration TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    private static final Duration STALE_WHILE_REVALIDATE = Duration.ofMinutes(1);
+
+    private final ProductRepository productRepo = Mockito.mock(ProductRepository.class);
+
+    private final RLock lock = Mockito.mock(RLock.class);
+
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    private final ManualClock clock = new ManualClock();
+
+    private final ConcurrentMapCache redisCache = new ConcurrentMapCache("products");
+
+    private StampedeProtectedCache cache;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        Mockito.when(lock.tryLock(anyLong(), anyLong(), eq(TimeUnit.MILLISECONDS))).thenReturn(true);
+
+        cache = cache(0);
+    }
+
+    @Test
+    void thousandConcurrentMissesQueryOnce() throws Exception {
+        final int requests = 1000;
+        Mockito.when(productRepo.findAll()).thenAnswer(invocation -> {
+            Thread.sleep(200); // Slow query, all the requests miss while it runs
+            return List.of(product(1));
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<List<ProductEntity>>> results = new ArrayList<>();
+        try (ExecutorService requestThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests; i++) {
+                results.add(requestThreads.submit(() -> {
+                    start.await();
+                    return cache.get("1:getAllProducts", () -> productRepo.findAll());
+                }));
+            }
+            start.countDown();
+        }
+
+        final Set<List<ProductEntity>> distinctResults = ConcurrentHashMap.newKeySet();
+        for (Future<List<ProductEntity>> result : results) {
+            distinctResults.add(result.get());
+        }
+        Mockito.verify(productRepo, Mockito.times(1)).findAll();
+        assertEquals(Set.of(List.of(product(1))), distinctResults);
+    }
+
+    @Test
+    void staleValueIsServedWhileRefreshed() throws Exception {
+        Mockito.when(productRepo.findAll())
+                .thenReturn(List.of(product(1)))
+                .thenReturn(List.of(product(1), product(2)));
+        cache.get("1:getAllProducts", () -> productRepo.findAll());
+
+        clock.advance(TIME_TO_LIVE.plusSeconds(30));
+
+        // Stale value right away, refreshed once in the background however many requests read it
+        assertEquals(List.of(product(1)), cache.get("1:getAllProducts", () -> productRepo.findAll()));
+        assertEquals(List.of(product(1)), cache.get("1:getAllProducts", () -> productRepo.findAll()));
+        assertEquals(1, refreshes.size());
+
+        refreshes.get(0).run();
+
+        assertEquals(List.of(product(1), product(2)), cache.get("1:getAllProducts", () -> productRepo.findAll()));
+        Mockito.verify(productRepo, Mockito.times(2)).findAll();
+    }
+
+    @Test
+    void valuePastStalePeriodIsLoadedByCaller() throws Exception {
+        Mockito.when(productRepo.findAll())
+                .thenReturn(List.of(product(1)))
+                .thenReturn(List.of(product(1), product(2)));
+        cache.get("1:getAllProducts", () -> productRepo.findAll());
+
+        clock.advance(TIME_TO_LIVE.plus(STALE_WHILE_REVALIDATE));
+
+        assertEquals(List.of(product(1), product(2)), cache.get("1:getAllProducts", () -> productRepo.findAll()));
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    void slowValueIsRefreshedBeforeTimeToLive() throws Exception {
+        cache = cache(1_000_000);
+        final Callable<List<ProductEntity>> slowLoader = () -> {
+            clock.advance(Duration.ofSeconds(1));
+            return productRepo.findAll();
+        };
+        Mockito.when(productRepo.findAll()).thenReturn(List.of(product(1)));
+        cache.get("1:getAllProducts", slowLoader);
+
+        // Far from the TTL, but beta is so high that any value taking a second to load is refreshed
+        clock.advance(Duration.ofMinutes(1));
+        cache.get("1:getAllProducts", slowLoader);
+
+        assertEquals(1, refreshes.size());
+        // Other instance holding the lock means it's refreshing the value already
+        Mockito.when(lock.tryLock(eq(0L), anyLong(), eq(TimeUnit.MILLISECONDS))).thenReturn(false);
+        refreshes.get(0).run();
+        Mockito.verify(productRepo, Mockito.times(1)).findAll();
+    }
+
+    private StampedeProtectedCache cache(double earlyRefreshBeta) {
+        final RedissonClient redissonClient = Mockito.mock(RedissonClient.class);
+        Mockito.when(redissonClient.getLock(anyString())).thenReturn(lock);
+        return new StampedeProtectedCache(redisCache, redissonClient, TIME_TO_LIVE, STALE_WHILE_REVALIDATE,
+                earlyRefreshBeta, Duration.ofSeconds(5), Duration.ofSeconds(30), refreshes::add, clock);
+    }
+
+    private static ProductEntity product(int productId) {
+        return ProductEntity.builder().productId(productId).productName("P" + productId).price(1).build();
+    }
+
+    private static final class ManualClock extends Clock {
+
+        private final AtomicLong millis = new AtomicLong(Instant.parse("2024-01-01T00:00:00Z").toEpochMilli());
+
+        void advance(Duration duration) {
+            millis.addAndGet(duration.toMillis());
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
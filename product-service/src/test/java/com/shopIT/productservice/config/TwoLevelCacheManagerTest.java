@@ -0,0 +1,114 @@
+package com.shopit.productservice.config;
+
+import com.shopit.productservice.dto.CacheInvalidationMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.redisson.api.RTopic;
+import org.redisson.api.listener.MessageListener;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+// An in-memory cache manager stands in for the Redis caches (L2)
+class TwoLevelCacheManagerTest {
+
+    private final ConcurrentMapCacheManager redisCacheManager = new ConcurrentMapCacheManager();
+
+    private final RTopic invalidationTopic = Mockito.mock(RTopic.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TwoLevelCacheManager cacheManager;
+
+    private MessageListener<CacheInvalidationMessage> invalidationListener;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        cacheManager = new TwoLevelCacheManager(redisCacheManager,
+                Map.of("products", "maximumSize=10,expireAfterWrite=10m"), invalidationTopic, meterRegistry,
+                Function.identity());
+
+        final ArgumentCaptor<MessageListener<CacheInvalidationMessage>> captor =
+                ArgumentCaptor.forClass(MessageListener.class);
+        Mockito.verify(invalidationTopic).addListener(eq(CacheInvalidationMessage.class), captor.capture());
+        invalidationListener = captor.getValue();
+    }
+
+    @Test
+    void hitIsServedFromHeap() {
+        final Cache cache = cacheManager.getCache("products");
+        cache.put("1:getAllProducts", "catalogue");
+
+        // Gone from Redis (L2), still in L1
+        redisCacheManager.getCache("products").clear();
+
+        assertEquals("catalogue", cache.get("1:getAllProducts", String.class));
+        assertEquals(1, meterRegistry.get("cache.gets").tags("cache", "products", "tier", "l1", "result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void changeByOtherInstanceDropsLocalCopy() {
+        final Cache cache = cacheManager.getCache("products");
+        cache.put("1:getAllProducts", "catalogue");
+        redisCacheManager.getCache("products").put("1:getAllProducts", "new catalogue");
+
+        invalidationListener.onMessage("productL1CacheInvalidation", CacheInvalidationMessage.builder()
+                .origin("other instance")
+                .cacheName("products")
+                .key("1:getAllProducts")
+                .build());
+
+        assertEquals("new catalogue", cache.get("1:getAllProducts", String.class));
+        assertEquals(1, meterRegistry.get("cache.l1.invalidations").counter().count());
+    }
+
+    @Test
+    void ownChangesAreBroadcastAndIgnored() {
+        final Cache cache = cacheManager.getCache("products");
+        cache.put("1:getAllProducts", "catalogue");
+
+        final ArgumentCaptor<CacheInvalidationMessage> captor = ArgumentCaptor.forClass(
+                CacheInvalidationMessage.class);
+        Mockito.verify(invalidationTopic).publishAsync(captor.capture());
+        assertEquals("products", captor.getValue().getCacheName());
+        assertEquals("1:getAllProducts", captor.getValue().getKey());
+
+        // Echo of its own broadcast
+        redisCacheManager.getCache("products").clear();
+        invalidationListener.onMessage("productL1CacheInvalidation", captor.getValue());
+
+        assertEquals("catalogue", cache.get("1:getAllProducts", String.class));
+    }
+
+    @Test
+    void evictRemovesBothTiers() {
+        final Cache cache = cacheManager.getCache("products");
+        cache.put("1:getAllProducts", "catalogue");
+
+        cache.evict("1:getAllProducts");
+
+        assertNull(cache.get("1:getAllProducts"));
+        assertNull(redisCacheManager.getCache("products").get("1:getAllProducts"));
+        Mockito.verify(invalidationTopic, Mockito.times(2)).publishAsync(any());
+    }
+
+    @Test
+    void cacheWithoutSpecOnlyUsesRedis() {
+        assertSame(redisCacheManager.getCache("orders"), cacheManager.getCache("orders"));
+        assertInstanceOf(TwoLevelCache.class, cacheManager.getCache("products"));
+    }
+}
@@ -2,14 +2,15 @@ package com.shopit.productservice.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.shopit.productservice.config.RateLimitConfig;
+import com.shopit.productservice.config.RateLimitInterceptor;
+import com.shopit.productservice.constants.ProductConstants;
 import com.shopit.productservice.controller.ProductController;
 import com.shopit.productservice.dto.ProductDtoRequest;
 import com.shopit.productservice.dto.ProductDtoResponse;
-import com.shopit.productservice.exception.RateLimitExceededException;
+import com.shopit.productservice.dto.ProductPageDtoResponse;
+import com.shopit.productservice.exception.ProductControllerAdvice;
 import com.shopit.productservice.service.ProductService;
 import io.github.bucket4j.*;
-import jakarta.servlet.ServletException;
-import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,17 +18,25 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -49,7 +58,13 @@ class ProductControllerTest {
 
         @BeforeEach
         void mockMvcSetup() {
-                mockMvc = MockMvcBuilders.standaloneSetup(productController).build();
+                mockMvc = MockMvcBuilders.standaloneSetup(productController)
+                                .addInterceptors(new RateLimitInterceptor(rateLimitConfig, "gaurav",
+                                                Map.of("/products/getAllProducts", 5)))
+                                .setControllerAdvice(new ProductControllerAdvice())
+                                .build();
+                ReflectionTestUtils.setField(productController, "defaultPageSize", 20);
+                ReflectionTestUtils.setField(productController, "maxPageSize", 100);
 
         }
 
@@ -62,8 +77,6 @@ class ProductControllerTest {
                                 .price(55000)
                                 .build();
 
-                // Set the value using reflection
-                ReflectionTestUtils.setField(productController, "username", "gaurav");
 
                 Mockito.when(productService.addProduct(any(ProductDtoRequest.class))).thenReturn(123);
 
@@ -89,8 +102,6 @@ class ProductControllerTest {
                                 .price(55000)
                                 .build();
 
-                // Set the value using reflection
-                ReflectionTestUtils.setField(productController, "username", "gaurav");
 
                 Bucket bucket = Bucket4j.builder()
                                 .addLimit(Bandwidth.classic(1, Refill.intervally(1, Duration.ofMinutes(1)))).build();
@@ -98,10 +109,13 @@ class ProductControllerTest {
 
                 Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
 
-                Assertions.assertThrows(ServletException.class, () -> mockMvc.perform(post("/products/addProduct")
+                ResultActions resultAction = mockMvc.perform(post("/products/addProduct")
                         .content(objectMapper.writeValueAsString(productDtoRequest))
-                        .contentType(MediaType.APPLICATION_JSON))
-                        );
+                        .contentType(MediaType.APPLICATION_JSON));
+
+                resultAction.andExpect(status().isTooManyRequests())
+                        .andExpect(header().string(HttpHeaders.RETRY_AFTER, "60"))
+                        .andExpect(header().string(ProductConstants.RATE_LIMIT_REMAINING, "0"));
         }
 
         @Test
@@ -115,8 +129,6 @@ class ProductControllerTest {
                                 .price(55000)
                                 .build());
 
-                // Set the value using reflection
-                ReflectionTestUtils.setField(productController, "username", "gaurav");
 
                 Mockito.when(productService.getAllProducts()).thenReturn(productDtoResponseList);
 
@@ -144,8 +156,6 @@ class ProductControllerTest {
                                 .price(55000)
                                 .build());
 
-                // Set the value using reflection
-                ReflectionTestUtils.setField(productController, "username", "gaurav");
 
                 Bucket bucket = Bucket4j.builder()
                                 .addLimit(Bandwidth.classic(1, Refill.intervally(1, Duration.ofMinutes(1)))).build();
@@ -153,10 +163,13 @@ class ProductControllerTest {
 
                 Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
 
-                Assertions.assertThrows(ServletException.class, () -> mockMvc.perform(get("/products/getAllProducts")
+                ResultActions resultAction = mockMvc.perform(get("/products/getAllProducts")
                                 .header("X-API-VERSION", "1")
-                                .contentType(MediaType.APPLICATION_JSON))
-                );
+                                .contentType(MediaType.APPLICATION_JSON));
+
+                resultAction.andExpect(status().isTooManyRequests())
+                        .andExpect(header().exists(HttpHeaders.RETRY_AFTER))
+                        .andExpect(header().string(ProductConstants.RATE_LIMIT_REMAINING, "0"));
         }
 
         @Test
@@ -170,8 +183,6 @@ class ProductControllerTest {
                                 .price(55000)
                                 .build());
 
-                // Set the value using reflection
-                ReflectionTestUtils.setField(productController, "username", "gaurav");
 
                 Mockito.when(productService.getAllProducts()).thenReturn(productDtoResponseList);
 
@@ -199,8 +210,6 @@ class ProductControllerTest {
                                 .price(55000)
                                 .build());
 
-                // Set the value using reflection
-                ReflectionTestUtils.setField(productController, "username", "gaurav");
 
                 Bucket bucket = Bucket4j.builder()
                                 .addLimit(Bandwidth.classic(1, Refill.intervally(1, Duration.ofMinutes(1)))).build();
@@ -208,10 +217,161 @@ class ProductControllerTest {
 
                 Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
 
-                Assertions.assertThrows(ServletException.class, () -> mockMvc.perform(get("/products/getAllProducts")
+                ResultActions resultAction = mockMvc.perform(get("/products/getAllProducts")
                                 .header("X-API-VERSION", "2")
+                                .contentType(MediaType.APPLICATION_JSON));
+
+                resultAction.andExpect(status().isTooManyRequests())
+                        .andExpect(header().exists(HttpHeaders.RETRY_AFTER))
+                        .andExpect(header().string(ProductConstants.RATE_LIMIT_REMAINING, "0"));
+        }
+
+        @Test
+        void getAllProductsConsumesRouteCost() throws Exception {
+
+                Mockito.when(productService.getAllProducts()).thenReturn(new ArrayList<>());
+
+                Bucket bucket = Bucket4j.builder()
+                                .addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
+
+                Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
+
+                ResultActions resultAction = mockMvc.perform(get("/products/getAllProducts")
+                                .header("X-API-VERSION", "1")
+                                .contentType(MediaType.APPLICATION_JSON));
+
+                // getAllProducts costs 5 tokens of the 10
+                resultAction.andExpect(status().isOk());
+                resultAction.andExpect(header().string(ProductConstants.RATE_LIMIT_REMAINING, "5"));
+        }
+
+        @Test
+        void addProductUsesBucketOfAuthenticatedUser() throws Exception {
+
+                ProductDtoRequest productDtoRequest = ProductDtoRequest.builder()
+                                .productName("OnePlus 12")
+                                .description("High End Device")
+                                .price(55000)
+                                .build();
+
+                Mockito.when(productService.addProduct(any(ProductDtoRequest.class))).thenReturn(123);
+
+                Bucket bucket = Bucket4j.builder()
+                                .addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
+
+                Mockito.when(rateLimitConfig.resolveBucket(eq("alice"))).thenReturn(bucket);
+
+                // Subject of the JWT validated by the api-gateway
+                ResultActions resultAction = mockMvc.perform(post("/products/addProduct")
+                                .header(ProductConstants.AUTHENTICATED_USER, "alice")
+                                .content(objectMapper.writeValueAsString(productDtoRequest))
+                                .contentType(MediaType.APPLICATION_JSON));
+
+                resultAction.andExpect(status().isCreated());
+                resultAction.andExpect(header().string(ProductConstants.RATE_LIMIT_REMAINING, "9"));
+        }
+
+        @Test
+        void addProductDoesNotTrustUnverifiedJwt() throws Exception {
+
+                ProductDtoRequest productDtoRequest = ProductDtoRequest.builder()
+                                .productName("OnePlus 12")
+                                .description("High End Device")
+                                .price(55000)
+                                .build();
+
+                // Unsigned, anyone could make it with any subject
+                String claims = Base64.getUrlEncoder().withoutPadding()
+                                .encodeToString("{\"sub\":\"alice\"}".getBytes(StandardCharsets.UTF_8));
+
+                Mockito.when(productService.addProduct(any(ProductDtoRequest.class))).thenReturn(123);
+
+                Bucket bucket = Bucket4j.builder()
+                                .addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
+
+                Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
+
+                mockMvc.perform(post("/products/addProduct")
+                                .header(HttpHeaders.AUTHORIZATION, "Bearer header." + claims + ".signature")
+                                .content(objectMapper.writeValueAsString(productDtoRequest))
                                 .contentType(MediaType.APPLICATION_JSON))
-                );
+                                .andExpect(status().isCreated());
+
+                Mockito.verify(rateLimitConfig, Mockito.never()).resolveBucket(eq("alice"));
+        }
+
+        @Test
+        void getProductsTestValid() throws Exception {
+
+                ProductPageDtoResponse productPageDtoResponse = ProductPageDtoResponse.builder()
+                                .products(List.of(ProductDtoResponse.builder()
+                                                .productId(123)
+                                                .productName("OnePlus 12")
+                                                .description("High End Device")
+                                                .price(55000)
+                                                .build()))
+                                .build();
+
+                Mockito.when(productService.getProductsPage(122, 20)).thenReturn(productPageDtoResponse);
+
+                Bucket bucket = Bucket4j.builder()
+                                .addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
+
+                Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
+
+                ResultActions resultAction = mockMvc.perform(get("/products")
+                                .param("after", "122")
+                                .contentType(MediaType.APPLICATION_JSON));
+
+                resultAction.andExpect(status().isOk());
+                resultAction.andExpect(content().string(objectMapper.writeValueAsString(productPageDtoResponse)));
         }
 
+        @Test
+        void getProductsPageSizeIsLimited() throws Exception {
+
+                Mockito.when(productService.getProductsPage(0, 100)).thenReturn(new ProductPageDtoResponse());
+
+                Bucket bucket = Bucket4j.builder()
+                                .addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
+
+                Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
+
+                mockMvc.perform(get("/products").param("size", "5000"))
+                                .andExpect(status().isOk());
+
+                Mockito.verify(productService).getProductsPage(0, 100);
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void streamProductsWritesNdjson() throws Exception {
+
+                Mockito.doAnswer(invocation -> {
+                        Consumer<ProductDtoResponse> action = invocation.getArgument(0);
+                        action.accept(ProductDtoResponse.builder().productId(123).productName("OnePlus 12").build());
+                        action.accept(ProductDtoResponse.builder().productId(124).productName("OnePlus 12R").build());
+                        return null;
+                }).when(productService).forEachProduct(any(Consumer.class));
+
+                Bucket bucket = Bucket4j.builder()
+                                .addLimit(Bandwidth.classic(10, Refill.intervally(10, Duration.ofMinutes(1)))).build();
+
+                Mockito.when(rateLimitConfig.resolveBucket(any(String.class))).thenReturn(bucket);
+
+                MvcResult mvcResult = mockMvc.perform(get("/products/stream")
+                                .accept(MediaType.APPLICATION_NDJSON))
+                                .andReturn();
+
+                mockMvc.perform(asyncDispatch(mvcResult))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                                .andExpect(content().string(
+                                                objectMapper.writeValueAsString(ProductDtoResponse.builder()
+                                                                .productId(123).productName("OnePlus 12").build())
+                                                + "\n"
+                                                + objectMapper.writeValueAsString(ProductDtoResponse.builder()
+                                                                .productId(124).productName("OnePlus 12R").build())
+                                                + "\n"));
+        }
 }
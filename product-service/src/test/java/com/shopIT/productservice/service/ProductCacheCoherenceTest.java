@@ -0,0 +1,182 @@
+package com.shopit.productservice.service;
+
+import com.shopit.productservice.config.ProductsCacheVersion;
+import com.shopit.productservice.dto.ProductDtoRequest;
+import com.shopit.productservice.dto.ProductDtoResponse;
+import com.shopit.productservice.entity.ProductEntity;
+import com.shopit.productservice.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+// @Cacheable as done by Spring with the real cache keys, an in-memory cache in place of Redis. The catalogue
+// version is kept in an AtomicLong standing in for the Redis counter, and the pub/sub topic delivers to the
+// listeners of all the "instances" created on it.
+@SpringJUnitConfig
+@TestPropertySource(properties = "products.page.default-size=2")
+class ProductCacheCoherenceTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepo;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    private final List<ProductEntity> catalogue = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Mockito.reset(productRepo);
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        catalogue.clear();
+        catalogue.add(product(1));
+        Mockito.when(productRepo.findAll()).thenAnswer(invocation -> List.copyOf(catalogue));
+        Mockito.when(productRepo.save(any(ProductEntity.class))).thenAnswer(invocation -> {
+            final ProductEntity productEntity = invocation.getArgument(0);
+            productEntity.setProductId(catalogue.size() + 1);
+            catalogue.add(productEntity);
+            return productEntity;
+        });
+    }
+
+    @Test
+    void addedProductIsVisibleRightAway() {
+        assertEquals(1, productService.getAllProducts().size());
+
+        productService.addProduct(ProductDtoRequest.builder().productName("Creta").price(1500000).build());
+
+        final List<ProductDtoResponse> products = productService.getAllProducts();
+        assertEquals(2, products.size());
+        assertEquals("Creta", products.get(1).getProductName());
+    }
+
+    @Test
+    void otherInstanceMovesToNewVersion() {
+        // Second instance sharing the same Redis
+        final ProductsCacheVersion otherInstance = new ProductsCacheVersion(redissonClient);
+        final long before = otherInstance.current();
+
+        productService.addProduct(ProductDtoRequest.builder().productName("Creta").price(1500000).build());
+
+        assertEquals(before + 1, otherInstance.current());
+    }
+
+    @Test
+    void readsAreServedFromCacheBetweenWrites() {
+        final int reads = 1000;
+        final int writes = 10;
+        for (int i = 0; i < reads; i++) {
+            if (i % (reads / writes) == 0) {
+                productService.addProduct(ProductDtoRequest.builder().productName("P" + i).price(i).build());
+            }
+            productService.getAllProducts();
+        }
+
+        // Only the first read after each write misses, however long the TTL is
+        final long misses = Mockito.mockingDetails(productRepo).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("findAll"))
+                .count();
+        assertEquals(writes, misses);
+        final double hitRate = 1 - (double) misses / reads;
+        assertTrue(hitRate >= 0.99, "Hit rate " + hitRate);
+    }
+
+    @Test
+    void onlyPagesOfDefaultSizeAreCached() {
+        Mockito.when(productRepo.findPageAfter(eq(0), any(PageRequest.class))).thenReturn(List.of(
+                ProductDtoResponse.builder().productId(1).build(), ProductDtoResponse.builder().productId(2).build()));
+
+        productService.getProductsPage(0, 2);
+        productService.getProductsPage(0, 2);
+        Mockito.verify(productRepo, Mockito.times(1)).findPageAfter(0, PageRequest.of(0, 2));
+
+        // Any other size is read from the DB every time, it never adds cache entries
+        productService.getProductsPage(0, 3);
+        productService.getProductsPage(0, 3);
+        Mockito.verify(productRepo, Mockito.times(2)).findPageAfter(0, PageRequest.of(0, 3));
+    }
+
+    private static ProductEntity product(int productId) {
+        return ProductEntity.builder().productId(productId).productName("P" + productId).price(1).build();
+    }
+
+    @Configuration
+    @EnableCaching
+    static class CacheTestConfig {
+
+        @Bean
+        CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager();
+        }
+
+        @Bean
+        ProductRepository productRepo() {
+            return Mockito.mock(ProductRepository.class);
+        }
+
+        @Bean
+        @SuppressWarnings("unchecked")
+        RedissonClient redissonClient() {
+            final AtomicLong counter = new AtomicLong();
+            final RAtomicLong remoteVersion = Mockito.mock(RAtomicLong.class);
+            Mockito.when(remoteVersion.get()).thenAnswer(invocation -> counter.get());
+            Mockito.when(remoteVersion.incrementAndGet()).thenAnswer(invocation -> counter.incrementAndGet());
+
+            final List<MessageListener<Long>> listeners = new CopyOnWriteArrayList<>();
+            final RTopic topic = Mockito.mock(RTopic.class);
+            Mockito.when(topic.addListener(eq(Long.class), any(MessageListener.class))).thenAnswer(invocation -> {
+                listeners.add(invocation.getArgument(1));
+                return listeners.size();
+            });
+            Mockito.when(topic.publish(any())).thenAnswer(invocation -> {
+                listeners.forEach(listener -> listener.onMessage("productsCacheInvalidation",
+                        invocation.getArgument(0)));
+                return (long) listeners.size();
+            });
+
+            final RedissonClient redissonClient = Mockito.mock(RedissonClient.class);
+            Mockito.when(redissonClient.getAtomicLong(anyString())).thenReturn(remoteVersion);
+            Mockito.when(redissonClient.getTopic(anyString())).thenReturn(topic);
+            return redissonClient;
+        }
+
+        @Bean
+        ProductsCacheVersion productsCacheVersion(RedissonClient redissonClient) {
+            return new ProductsCacheVersion(redissonClient);
+        }
+
+        @Bean
+        ProductService productService(ProductRepository productRepo, ProductsCacheVersion productsCacheVersion) {
+            return new ProductService(productRepo, productsCacheVersion);
+        }
+    }
+}
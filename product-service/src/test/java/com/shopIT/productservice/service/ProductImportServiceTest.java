@@ -0,0 +1,130 @@
+package com.shopit.productservice.service;
+
+import com.shopit.productservice.config.ProductsCacheVersion;
+import com.shopit.productservice.dto.ProductImportDtoResponse;
+import com.shopit.productservice.dto.RejectedRowDtoResponse;
+import com.shopit.productservice.entity.ProductEntity;
+import com.shopit.productservice.exception.InvalidImportException;
+import com.shopit.productservice.exception.ProductNotSavedException;
+import com.shopit.productservice.repository.ProductRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+
+class ProductImportServiceTest {
+
+    private final ProductRepository productRepo = Mockito.mock(ProductRepository.class);
+
+    private final ProductsCacheVersion productsCacheVersion = Mockito.mock(ProductsCacheVersion.class);
+
+    private final EntityManager entityManager = Mockito.mock(EntityManager.class);
+
+    // Copy of every chunk given to saveAll, the service reuses the list for the next chunk
+    private final List<List<ProductEntity>> savedChunks = new ArrayList<>();
+
+    private final ProductImportService productImportService = new ProductImportService(productRepo,
+            productsCacheVersion, entityManager, 2, 2);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        Mockito.when(productRepo.saveAll(any())).thenAnswer(invocation -> {
+            final List<ProductEntity> chunk = new ArrayList<>(invocation.getArgument(0, List.class));
+            savedChunks.add(chunk);
+            return chunk;
+        });
+    }
+
+    @Test
+    void csvIsSavedInChunks() throws Exception {
+        final ProductImportDtoResponse response = productImportService.importCsv(body("""
+                price,productName,description
+                10,Pen,"Blue, fine tip"
+                20,Notebook,
+
+                30,Bag,School bag
+                """));
+
+        assertEquals(3, response.getImportedCount());
+        assertEquals(0, response.getRejectedCount());
+        assertEquals(List.of(2, 1), savedChunks.stream().map(List::size).toList());
+        assertEquals(ProductEntity.builder().productName("Pen").description("Blue, fine tip").price(10).build(),
+                savedChunks.get(0).get(0));
+        Mockito.verify(entityManager, Mockito.times(2)).clear();
+        // Once for the whole import
+        Mockito.verify(productsCacheVersion, Mockito.times(1)).invalidate();
+    }
+
+    @Test
+    void invalidRowsAreRejectedWithTheirLine() throws Exception {
+        final ProductImportDtoResponse response = productImportService.importNdjson(body("""
+                {"productName":"Pen","price":10}
+                {"productName":"Pencil","price":"ten"}
+                {"productName":" ","price":5}
+                {"productName":"Eraser","price":-1}
+                {"productName":"Ruler"
+                {"productName":"Bag","description":"School bag","price":30,"productId":7}
+                """));
+
+        assertEquals(2, response.getImportedCount());
+        assertEquals(4, response.getRejectedCount());
+        // Only the first products.import.max-rejected-rows are listed
+        assertEquals(List.of(2L, 3L), response.getRejectedRows().stream().map(RejectedRowDtoResponse::getLine)
+                .toList());
+        assertEquals("productName is required", response.getRejectedRows().get(1).getReason());
+        assertEquals(List.of("Pen", "Bag"), savedChunks.get(0).stream().map(ProductEntity::getProductName).toList());
+        Mockito.verify(productsCacheVersion, Mockito.times(1)).invalidate();
+    }
+
+    @Test
+    void nothingImportedKeepsCache() throws Exception {
+        final ProductImportDtoResponse response = productImportService.importCsv(body("""
+                productName,price
+                Pen,abc
+                """));
+
+        assertEquals(0, response.getImportedCount());
+        assertEquals(1, response.getRejectedCount());
+        Mockito.verify(productRepo, Mockito.never()).saveAll(any());
+        Mockito.verify(productsCacheVersion, Mockito.never()).invalidate();
+    }
+
+    @Test
+    void csvWithoutRequiredColumnsIsRefused() {
+        assertThrows(InvalidImportException.class, () -> productImportService.importCsv(body("""
+                productName,description
+                Pen,Blue
+                """)));
+        assertThrows(InvalidImportException.class, () -> productImportService.importCsv(body("")));
+    }
+
+    @Test
+    void failedChunkStillInvalidatesCommittedOnes() {
+        Mockito.doReturn(List.of()).doThrow(new RuntimeException("DB down")).when(productRepo).saveAll(any());
+
+        assertThrows(ProductNotSavedException.class, () -> productImportService.importCsv(body("""
+                productName,price
+                Pen,10
+                Pencil,5
+                Bag,30
+                """)));
+
+        // First chunk is committed, so the cached catalogue is stale
+        Mockito.verify(productsCacheVersion, Mockito.times(1)).invalidate();
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,7 +1,9 @@
 package com.shopit.productservice.service;
 
+import com.shopit.productservice.config.ProductsCacheVersion;
 import com.shopit.productservice.dto.ProductDtoRequest;
 import com.shopit.productservice.dto.ProductDtoResponse;
+import com.shopit.productservice.dto.ProductPageDtoResponse;
 import com.shopit.productservice.entity.ProductEntity;
 import com.shopit.productservice.repository.ProductRepository;
 import com.shopit.productservice.service.ProductService;
@@ -13,10 +15,14 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import org.springframework.data.domain.PageRequest;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +34,9 @@ class ProductServiceTest {
     @Mock
     private ProductRepository productRepo;
 
+    @Mock
+    private ProductsCacheVersion productsCacheVersion;
+
     @Test
     void addProductTest() {
         final ProductDtoRequest productDtoRequest = ProductDtoRequest.builder()
@@ -59,6 +68,8 @@ class ProductServiceTest {
         Integer expectedId = 123;
 
         assertEquals(expectedId, actualId);
+        // The cached catalogue no longer has all the products
+        Mockito.verify(productsCacheVersion).invalidate();
     }
 
     @Test
@@ -111,4 +122,43 @@ class ProductServiceTest {
         assertEquals(productDtoResponse.getPrice(), productEntity.getPrice());
         assertEquals(productDtoResponse.getProductId(), productEntity.getProductId());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getProductsPageFullPageHasNextCursor() {
+        final List<ProductDtoResponse> products = List.of(
+                ProductDtoResponse.builder().productId(101).productName("OnePlus 12").price(55000).build(),
+                ProductDtoResponse.builder().productId(102).productName("OnePlus 12R").price(39999).build());
+
+        Mockito.when(productRepo.findPageAfter(100, PageRequest.of(0, 2))).thenReturn(products);
+
+        ProductPageDtoResponse productPageDtoResponse = productService.getProductsPage(100, 2);
+
+        assertEquals(products, productPageDtoResponse.getProducts());
+        assertEquals(102, productPageDtoResponse.getNextCursor());
+    }
+
+    @Test
+    void getProductsPageLastPageHasNoNextCursor() {
+        final List<ProductDtoResponse> products = List.of(
+                ProductDtoResponse.builder().productId(101).productName("OnePlus 12").price(55000).build());
+
+        Mockito.when(productRepo.findPageAfter(100, PageRequest.of(0, 2))).thenReturn(products);
+
+        ProductPageDtoResponse productPageDtoResponse = productService.getProductsPage(100, 2);
+
+        assertEquals(1, productPageDtoResponse.getProducts().size());
+        assertNull(productPageDtoResponse.getNextCursor());
+    }
+
+    @Test
+    void forEachProductGivesEveryProduct() {
+        Mockito.when(productRepo.streamAll()).thenReturn(Stream.of(
+                ProductDtoResponse.builder().productId(101).build(),
+                ProductDtoResponse.builder().productId(102).build()));
+
+        final List<Integer> productIds = new ArrayList<>();
+        productService.forEachProduct(product -> productIds.add(product.getProductId()));
+
+        assertEquals(List.of(101, 102), productIds);
+    }
+}